@@ -0,0 +1,69 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * AllocationBudget - fails if painting RenderBenchmark's scene allocates more per frame than its budget.
+ *
+ * -> Frames are painted into a NullGraphics, so what Java2D allocates to rasterize isn't counted, only what the
+ *    plugin allocates: the renderers, their caches, LaneModeStats.  Once the caches are warm the renderers reuse
+ *    their projected coordinates, parallel lines and strokes, so what's left is a few objects per frame and per
+ *    turn arrow or question mark drawn.  Going back to allocating per node or per line blows through the budget.
+ * -> Bytes come from the painting thread's allocation counter (ThreadMXBean), with escape analysis off so they don't
+ *    depend on when the JIT gets to the paint code.  The median frame is compared, since LaneMemory's accounting every
+ *    couple of seconds allocates on the frames it runs in.
+ * -> Budgets are KB per frame per zoom level.  Zoomed in, turn arrows and question marks are drawn, so they're higher.
+ *
+ * Usage: ant alloc-check [-Dalloc.budgets=0.1=32,0.3=96,1=24,3=4,10=4] [-Dbench.frames=50]
+ */
+
+public final class AllocationBudget {
+
+    private static final int WAYS = 2000;
+    private static final int WARMUP_FRAMES = 10;
+
+    public static void main(String[] args) {
+        Map<Double, Double> budgets = parseBudgets(args.length > 0 ? args[0] : "0.1=32,0.3=96,1=24,3=4,10=4");
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        if (!ManagementFactory.getRuntimeMXBean().getInputArguments().contains("-XX:-DoEscapeAnalysis")) {
+            System.out.println("Warning: escape analysis is on, allocations will be lower than with ant.");
+        }
+
+        RenderBenchmark benchmark = new RenderBenchmark(WAYS);
+        System.out.println(String.format("%-8s %10s %12s %12s %12s %8s", "scale", "calls", "KB median", "KB max", "KB budget", ""));
+
+        boolean failed = false;
+        for (Map.Entry<Double, Double> budget : budgets.entrySet()) {
+            benchmark.zoom(budget.getKey());
+            for (int i = 0; i < WARMUP_FRAMES; i++) benchmark.frameWithoutPixels();
+
+            double[] allocated = new double[frames];
+            for (int i = 0; i < frames; i++) {
+                benchmark.frameWithoutPixels();
+                allocated[i] = benchmark.getAllocated() / 1024.0;
+            }
+            Arrays.sort(allocated);
+            double median = allocated[frames / 2];
+            boolean over = median > budget.getValue();
+            failed |= over;
+
+            System.out.println(String.format("%-8s %10d %12.1f %12.1f %12.1f %8s", budget.getKey(), benchmark.getCalls(),
+                    median, allocated[frames - 1], budget.getValue(), over ? "OVER" : "ok"));
+        }
+        System.exit(failed ? 1 : 0); // JOSM leaves non daemon threads behind.
+    }
+
+    // "scale=KB,scale=KB", in the order given.
+    private static Map<Double, Double> parseBudgets(String budgets) {
+        Map<Double, Double> output = new LinkedHashMap<>();
+        for (String budget : budgets.split(",")) {
+            String[] parts = budget.trim().split("=");
+            output.put(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]));
+        }
+        return output;
+    }
+}
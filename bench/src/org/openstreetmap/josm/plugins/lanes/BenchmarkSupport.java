@@ -0,0 +1,65 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import org.openstreetmap.josm.data.Preferences;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.projection.ProjectionRegistry;
+import org.openstreetmap.josm.data.projection.Projections;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.gui.preferences.JosmBaseDirectories;
+import org.openstreetmap.josm.gui.preferences.JosmUrls;
+import org.openstreetmap.josm.tools.Territories;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared setup for the benchmarks: starts the bits of JOSM the plugin needs without the GUI, and makes test ways.
+ */
+public final class BenchmarkSupport {
+
+    private static boolean _initialized = false;
+
+    private BenchmarkSupport() {}
+
+    // Preferences, a projection and the territories, which is enough for Utils (including its images), the map mode
+    // and the renderers to work.  Preferences are never saved, so the user's JOSM settings aren't touched.
+    public static synchronized void initJosm() {
+        if (_initialized) return;
+        System.setProperty("java.awt.headless", "true");
+        Preferences.main().enableSaveOnPut(false);
+        Config.setPreferencesInstance(Preferences.main());
+        Config.setBaseDirectoriesProvider(JosmBaseDirectories.getInstance());
+        Config.setUrlsProvider(JosmUrls.getInstance());
+        ProjectionRegistry.setProjection(Projections.getProjectionByCode("EPSG:3857"));
+        Territories.initialize();
+        _initialized = true;
+    }
+
+    /**
+     * A way with numNodes nodes, segmentLength meters apart, turning by curvature degrees at every node.
+     * @param bearing Direction of the first segment, in degrees clockwise from north.
+     */
+    public static Way makeWay(LatLon start, double bearing, int numNodes, double segmentLength, double curvature) {
+        List<Node> nodes = new ArrayList<>(numNodes);
+        LatLon position = start;
+        double direction = Math.toRadians(bearing);
+        for (int i = 0; i < numNodes; i++) {
+            nodes.add(new Node(position));
+            position = Utils.getLatLonRelative(position, direction, segmentLength);
+            direction += Math.toRadians(curvature);
+        }
+        Way w = new Way();
+        w.setNodes(nodes);
+        return w;
+    }
+
+    // Adds the way and its nodes to the data set (nodes shared with other ways are only added once).
+    public static Way addToDataSet(DataSet ds, Way w) {
+        for (Node n : w.getNodes()) if (n.getDataSet() == null) ds.addPrimitive(n);
+        ds.addPrimitive(w);
+        return w;
+    }
+}
@@ -0,0 +1,156 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import org.openstreetmap.josm.data.osm.Way;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * BuildBenchmark - times the full lane mode build (what happens the first time paint() runs) on generated cities.
+ *
+ * -> Each stage of LaneMappingMode's build is timed on its own: building the road renderers, aligning them, finding
+ *    node intersections, grouping them, and laying out the multi intersections.
+ * -> For each stage it prints the median wall time, how busy the cores were (process CPU time over wall time times
+ *    the number of cores), and for the whole build the peak heap.
+ * -> This isn't a JMH benchmark since a build is seconds long and what matters is the split between the stages.
+ *
+ * Usage: ant bench-build [-Dbench.sizes=1000,10000,100000] [-Dbench.runs=3] [-Dbench.layout=grid|radial]
+ */
+
+public final class BuildBenchmark {
+
+    private static final String[] STAGES = {"build roads", "align roads", "node intersections", "group intersections",
+            "multi intersections"};
+
+    private final LaneMappingMode _mode;
+
+    // Of the last run.
+    private final long[] _wall = new long[STAGES.length];
+    private final long[] _cpu = new long[STAGES.length];
+    private final int[] _count = new int[STAGES.length];
+    private long _peakHeap;
+
+    private BuildBenchmark() {
+        _mode = new LaneMappingMode();
+    }
+
+    public static void main(String[] args) {
+        int[] sizes = Arrays.stream((args.length > 0 ? args[0] : "1000,10000,100000").split(","))
+                .mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        SyntheticNetworkGenerator.Layout layout = SyntheticNetworkGenerator.Layout.valueOf(
+                (args.length > 2 ? args[2] : "grid").toUpperCase());
+
+        BenchmarkSupport.initJosm();
+        BuildBenchmark benchmark = new BuildBenchmark();
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cores, " +
+                Runtime.getRuntime().maxMemory() / (1 << 20) + " MB max heap");
+
+        for (int size : sizes) {
+            List<Way> ways = new ArrayList<>(SyntheticNetworkGenerator.generate(layout, size, true, 1).getWays());
+            benchmark.run(ways); // Warm up.
+
+            long[][] wall = new long[STAGES.length][runs];
+            long[][] cpu = new long[STAGES.length][runs];
+            long[] peak = new long[runs];
+            for (int run = 0; run < runs; run++) {
+                benchmark.run(ways);
+                for (int i = 0; i < STAGES.length; i++) {
+                    wall[i][run] = benchmark._wall[i];
+                    cpu[i][run] = benchmark._cpu[i];
+                }
+                peak[run] = benchmark._peakHeap;
+            }
+            benchmark.print(ways.size(), wall, cpu, peak);
+        }
+        System.exit(0); // JOSM leaves non daemon threads behind.
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Running">
+
+    private void run(List<Way> ways) {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+
+        long start = start(0);
+        List<RoadRenderer> roads = _mode.buildRoadRenderers(ways, null);
+        start = end(0, start, roads.size());
+
+        _mode.alignRoadRenderers(roads);
+        start = end(1, start, roads.size());
+
+        List<NodeIntersectionRenderer> nodeIntersections = _mode.findNodeIntersections(roads, null);
+        start = end(2, start, nodeIntersections.size());
+
+        List<List<NodeIntersectionRenderer>> groups = _mode.groupNodeIntersections(nodeIntersections);
+        start = end(3, start, groups.size());
+
+        List<IntersectionRenderer> intersections = _mode.buildMultiIntersections(groups);
+        end(4, start, intersections.size());
+
+        // Sum of each pool's peak, so a bit high if the young and old generations peaked at different times.
+        _peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) _peakHeap += pool.getPeakUsage().getUsed();
+        }
+    }
+
+    private long start(int stage) {
+        _cpu[stage] = getProcessCpuTime();
+        return System.nanoTime();
+    }
+
+    // Finishes a stage and starts the next one.
+    private long end(int stage, long start, int count) {
+        long now = System.nanoTime();
+        long cpu = getProcessCpuTime();
+        _wall[stage] = now - start;
+        _cpu[stage] = cpu - _cpu[stage];
+        _count[stage] = count;
+        if (stage + 1 < STAGES.length) _cpu[stage + 1] = cpu;
+        return now;
+    }
+
+    private static long getProcessCpuTime() {
+        try {
+            return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+        } catch (Exception e) {
+            return 0; // Not a HotSpot JVM, the utilization will show as 0.
+        }
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Output">
+
+    private void print(int numWays, long[][] wall, long[][] cpu, long[] peak) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println();
+        System.out.println(numWays + " ways (median of " + peak.length + " runs)");
+        System.out.println(String.format("  %-22s %10s %12s %8s", "stage", "wall ms", "utilization", "count"));
+        long total = 0;
+        for (int i = 0; i < STAGES.length; i++) {
+            long wallMedian = median(wall[i]);
+            long cpuMedian = median(cpu[i]);
+            total += wallMedian;
+            System.out.println(String.format("  %-22s %10.1f %11.0f%% %8d", STAGES[i], wallMedian / 1e6,
+                    wallMedian == 0 ? 0 : 100.0 * cpuMedian / wallMedian / cores, _count[i]));
+        }
+        System.out.println(String.format("  %-22s %10.1f", "total", total / 1e6));
+        System.out.println("  peak heap " + median(peak) / (1 << 20) + " MB");
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    // </editor-fold>
+}
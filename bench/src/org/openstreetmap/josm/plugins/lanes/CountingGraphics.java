@@ -0,0 +1,140 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.text.AttributedCharacterIterator;
+import java.util.Map;
+
+/**
+ * A Graphics2D that passes everything on to another one, counting the calls.  Draws are anything that puts pixels on
+ * the image, the rest are state changes (strokes, colors, hints, transforms, clips).
+ */
+public class CountingGraphics extends Graphics2D {
+
+    private final Graphics2D _g;
+    private final long[] _counts; // Calls, draws.  Shared with graphics made by create().
+
+    public CountingGraphics(Graphics2D g) {
+        this(g, new long[2]);
+    }
+
+    private CountingGraphics(Graphics2D g, long[] counts) {
+        _g = g;
+        _counts = counts;
+    }
+
+    public long getCalls() { return _counts[0]; }
+
+    public long getDraws() { return _counts[1]; }
+
+    private Graphics2D call() {
+        _counts[0]++;
+        return _g;
+    }
+
+    private Graphics2D draw() {
+        _counts[0]++;
+        _counts[1]++;
+        return _g;
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Drawing">
+
+    @Override public void draw(Shape s) { draw().draw(s); }
+    @Override public void fill(Shape s) { draw().fill(s); }
+    @Override public void drawLine(int x1, int y1, int x2, int y2) { draw().drawLine(x1, y1, x2, y2); }
+    @Override public void drawRect(int x, int y, int width, int height) { draw().drawRect(x, y, width, height); }
+    @Override public void fillRect(int x, int y, int width, int height) { draw().fillRect(x, y, width, height); }
+    @Override public void clearRect(int x, int y, int width, int height) { draw().clearRect(x, y, width, height); }
+    @Override public void drawRoundRect(int x, int y, int w, int h, int aw, int ah) { draw().drawRoundRect(x, y, w, h, aw, ah); }
+    @Override public void fillRoundRect(int x, int y, int w, int h, int aw, int ah) { draw().fillRoundRect(x, y, w, h, aw, ah); }
+    @Override public void drawOval(int x, int y, int width, int height) { draw().drawOval(x, y, width, height); }
+    @Override public void fillOval(int x, int y, int width, int height) { draw().fillOval(x, y, width, height); }
+    @Override public void drawArc(int x, int y, int w, int h, int start, int arc) { draw().drawArc(x, y, w, h, start, arc); }
+    @Override public void fillArc(int x, int y, int w, int h, int start, int arc) { draw().fillArc(x, y, w, h, start, arc); }
+    @Override public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) { draw().drawPolyline(xPoints, yPoints, nPoints); }
+    @Override public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) { draw().drawPolygon(xPoints, yPoints, nPoints); }
+    @Override public void drawPolygon(Polygon p) { draw().drawPolygon(p); }
+    @Override public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) { draw().fillPolygon(xPoints, yPoints, nPoints); }
+    @Override public void fillPolygon(Polygon p) { draw().fillPolygon(p); }
+    @Override public void drawString(String str, int x, int y) { draw().drawString(str, x, y); }
+    @Override public void drawString(String str, float x, float y) { draw().drawString(str, x, y); }
+    @Override public void drawString(AttributedCharacterIterator it, int x, int y) { draw().drawString(it, x, y); }
+    @Override public void drawString(AttributedCharacterIterator it, float x, float y) { draw().drawString(it, x, y); }
+    @Override public void drawGlyphVector(GlyphVector g, float x, float y) { draw().drawGlyphVector(g, x, y); }
+    @Override public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) { return draw().drawImage(img, xform, obs); }
+    @Override public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) { draw().drawImage(img, op, x, y); }
+    @Override public void drawRenderedImage(RenderedImage img, AffineTransform xform) { draw().drawRenderedImage(img, xform); }
+    @Override public void drawRenderableImage(RenderableImage img, AffineTransform xform) { draw().drawRenderableImage(img, xform); }
+    @Override public boolean drawImage(Image img, int x, int y, ImageObserver observer) { return draw().drawImage(img, x, y, observer); }
+    @Override public boolean drawImage(Image img, int x, int y, int width, int height, ImageObserver observer) {
+        return draw().drawImage(img, x, y, width, height, observer);
+    }
+    @Override public boolean drawImage(Image img, int x, int y, Color bgcolor, ImageObserver observer) {
+        return draw().drawImage(img, x, y, bgcolor, observer);
+    }
+    @Override public boolean drawImage(Image img, int x, int y, int width, int height, Color bgcolor, ImageObserver observer) {
+        return draw().drawImage(img, x, y, width, height, bgcolor, observer);
+    }
+    @Override public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, ImageObserver observer) {
+        return draw().drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, observer);
+    }
+    @Override public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, Color bgcolor, ImageObserver observer) {
+        return draw().drawImage(img, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, bgcolor, observer);
+    }
+    @Override public void copyArea(int x, int y, int width, int height, int dx, int dy) { draw().copyArea(x, y, width, height, dx, dy); }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="State">
+
+    @Override public Graphics create() { return new CountingGraphics((Graphics2D) call().create(), _counts); }
+    @Override public void dispose() { _g.dispose(); }
+    @Override public boolean hit(Rectangle rect, Shape s, boolean onStroke) { return call().hit(rect, s, onStroke); }
+    @Override public GraphicsConfiguration getDeviceConfiguration() { return call().getDeviceConfiguration(); }
+    @Override public void setComposite(Composite comp) { call().setComposite(comp); }
+    @Override public Composite getComposite() { return call().getComposite(); }
+    @Override public void setPaint(Paint paint) { call().setPaint(paint); }
+    @Override public Paint getPaint() { return call().getPaint(); }
+    @Override public void setStroke(Stroke s) { call().setStroke(s); }
+    @Override public Stroke getStroke() { return call().getStroke(); }
+    @Override public void setColor(Color c) { call().setColor(c); }
+    @Override public Color getColor() { return call().getColor(); }
+    @Override public void setBackground(Color color) { call().setBackground(color); }
+    @Override public Color getBackground() { return call().getBackground(); }
+    @Override public void setPaintMode() { call().setPaintMode(); }
+    @Override public void setXORMode(Color c1) { call().setXORMode(c1); }
+    @Override public Font getFont() { return call().getFont(); }
+    @Override public void setFont(Font font) { call().setFont(font); }
+    @Override public FontMetrics getFontMetrics(Font f) { return call().getFontMetrics(f); }
+    @Override public FontRenderContext getFontRenderContext() { return call().getFontRenderContext(); }
+    @Override public void setRenderingHint(RenderingHints.Key hintKey, Object hintValue) { call().setRenderingHint(hintKey, hintValue); }
+    @Override public Object getRenderingHint(RenderingHints.Key hintKey) { return call().getRenderingHint(hintKey); }
+    @Override public void setRenderingHints(Map<?, ?> hints) { call().setRenderingHints(hints); }
+    @Override public void addRenderingHints(Map<?, ?> hints) { call().addRenderingHints(hints); }
+    @Override public RenderingHints getRenderingHints() { return call().getRenderingHints(); }
+    @Override public void translate(int x, int y) { call().translate(x, y); }
+    @Override public void translate(double tx, double ty) { call().translate(tx, ty); }
+    @Override public void rotate(double theta) { call().rotate(theta); }
+    @Override public void rotate(double theta, double x, double y) { call().rotate(theta, x, y); }
+    @Override public void scale(double sx, double sy) { call().scale(sx, sy); }
+    @Override public void shear(double shx, double shy) { call().shear(shx, shy); }
+    @Override public void transform(AffineTransform tx) { call().transform(tx); }
+    @Override public void setTransform(AffineTransform tx) { call().setTransform(tx); }
+    @Override public AffineTransform getTransform() { return call().getTransform(); }
+    @Override public void clip(Shape s) { call().clip(s); }
+    @Override public Rectangle getClipBounds() { return call().getClipBounds(); }
+    @Override public void clipRect(int x, int y, int width, int height) { call().clipRect(x, y, width, height); }
+    @Override public void setClip(int x, int y, int width, int height) { call().setClip(x, y, width, height); }
+    @Override public Shape getClip() { return call().getClip(); }
+    @Override public void setClip(Shape clip) { call().setClip(clip); }
+
+    // </editor-fold>
+}
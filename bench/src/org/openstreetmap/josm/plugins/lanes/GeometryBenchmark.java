@@ -0,0 +1,128 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.Way;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * GeometryBenchmark - throughput of the way geometry methods in Utils that every renderer is built from.
+ *
+ * -> Every method runs on a way with nodes nodes, 25m apart, bending by curvature degrees at each one.  0 is a
+ *    straight road, 3 a gentle curve, 15 a tight ramp.
+ * -> offset is how far from the centre line parallels are taken, like a lane edge (3.5) or a wide road edge (10).
+ * -> Run with "ant bench", which adds the gc profiler so allocation per call (gc.alloc.rate.norm) shows up next
+ *    to the throughput.
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeometryBenchmark {
+
+    // <editor-fold defaultstate="collapsed" desc="Parameters">
+
+    @Param({"2", "10", "100", "1000"})
+    public int nodes;
+
+    @Param({"0", "3", "15"})
+    public double curvature;
+
+    @Param({"3.5", "10"})
+    public double offset;
+
+    private static final double SEGMENT_LENGTH = 25;
+    private static final int BEZIER_POINTS = 4; // Bezier is exponential in its points, renderers use 3 or 4.
+    private static final String[] WIDTHS = {"3.5", "7", "3.5 m", "12'", "10'6\"", "3,5", "none", ""};
+
+    private Way _way;
+    private Way _leftEdge;
+    private Way _crossing;
+    private double _length;
+    private List<LatLon> _controlPoints;
+    private double[] _distances;
+
+    // </editor-fold>
+
+    @Setup
+    public void setup() {
+        BenchmarkSupport.initJosm();
+        LatLon centre = new LatLon(47.6, -122.3);
+        _way = BenchmarkSupport.makeWay(centre, 20, nodes, SEGMENT_LENGTH, curvature);
+        _length = _way.getLength();
+
+        // Two edges meeting at a corner of an intersection, like IntersectionRenderer trims them: the left edge of
+        // a road heading 20 degrees and the right edge of one heading 290, crossing about offset meters from the
+        // centre.  Neither goes exactly north-south, since intersect's bounding box check can miss those.
+        _leftEdge = Utils.getParallel(_way, offset, offset, false, Double.NaN, Double.NaN);
+        Way other = BenchmarkSupport.makeWay(centre, 290, nodes, SEGMENT_LENGTH, -curvature);
+        _crossing = Utils.getParallel(other, -offset, -offset, false, Double.NaN, Double.NaN);
+
+        _controlPoints = new ArrayList<>(BEZIER_POINTS);
+        for (int i = 0; i < BEZIER_POINTS; i++) {
+            _controlPoints.add(_way.getNode(i * (nodes - 1) / (BEZIER_POINTS - 1)).getCoor());
+        }
+        _distances = new double[2];
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Benchmarks">
+
+    @Benchmark
+    public Way getParallel() {
+        return Utils.getParallel(_way, offset, offset, false, Double.NaN, Double.NaN);
+    }
+
+    @Benchmark
+    public Way getParallelTapered() {
+        return Utils.getParallel(_way, offset, -offset, true, 0.3, -0.3);
+    }
+
+    @Benchmark
+    public Way getSubPartMeters() {
+        return Utils.getSubPart(_way, _length * 0.25, _length * 0.75);
+    }
+
+    @Benchmark
+    public Way getSubPartNodes() {
+        return Utils.getSubPart(_way, nodes / 4, nodes - 1 - nodes / 4);
+    }
+
+    @Benchmark
+    public LatLon intersect() {
+        return Utils.intersect(_leftEdge, _crossing, _distances, true, 0, false, false);
+    }
+
+    @Benchmark
+    public void bezier(Blackhole bh) {
+        for (int i = 0; i <= 10; i++) bh.consume(Utils.bezier(i / 10.0, _controlPoints));
+    }
+
+    @Benchmark
+    public double bearingAt() {
+        return Utils.bearingAt(_way, _length / 2);
+    }
+
+    @Benchmark
+    public double nodeIdToDist() {
+        return Utils.nodeIdToDist(_way, nodes - 1);
+    }
+
+    @Benchmark
+    public Way extendWay() {
+        return Utils.extendWay(_way, true, offset);
+    }
+
+    @Benchmark
+    public void parseWidth(Blackhole bh) {
+        for (String width : WIDTHS) bh.consume(Utils.parseWidth(width));
+    }
+
+    // </editor-fold>
+}
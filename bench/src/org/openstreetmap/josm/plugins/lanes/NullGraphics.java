@@ -0,0 +1,154 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.text.AttributedCharacterIterator;
+import java.util.Map;
+
+/**
+ * A Graphics2D that keeps its state (colors, strokes, transform, clip) but draws nothing, so what a paint allocates
+ * can be measured without Java2D's own allocations for rasterizing.  Nothing here allocates apart from create(),
+ * the getters that return copies, and clipping to a shape.
+ */
+public class NullGraphics extends Graphics2D {
+
+    private static final Graphics2D SCRATCH = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+
+    private Color _color = Color.BLACK;
+    private Color _background = Color.BLACK;
+    private Paint _paint = Color.BLACK;
+    private Stroke _stroke = new BasicStroke();
+    private Font _font = SCRATCH.getFont();
+    private Composite _composite = AlphaComposite.SrcOver;
+    private final AffineTransform _transform = new AffineTransform();
+    private Shape _clip;
+    private final RenderingHints _hints = new RenderingHints(null);
+
+    public NullGraphics() {}
+
+    private NullGraphics(NullGraphics g) {
+        _color = g._color;
+        _background = g._background;
+        _paint = g._paint;
+        _stroke = g._stroke;
+        _font = g._font;
+        _composite = g._composite;
+        _transform.setTransform(g._transform);
+        _clip = g._clip;
+        _hints.putAll(g._hints);
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Drawing">
+
+    @Override public void draw(Shape s) {}
+    @Override public void fill(Shape s) {}
+    @Override public void drawLine(int x1, int y1, int x2, int y2) {}
+    @Override public void drawRect(int x, int y, int width, int height) {}
+    @Override public void fillRect(int x, int y, int width, int height) {}
+    @Override public void clearRect(int x, int y, int width, int height) {}
+    @Override public void drawRoundRect(int x, int y, int w, int h, int aw, int ah) {}
+    @Override public void fillRoundRect(int x, int y, int w, int h, int aw, int ah) {}
+    @Override public void drawOval(int x, int y, int width, int height) {}
+    @Override public void fillOval(int x, int y, int width, int height) {}
+    @Override public void drawArc(int x, int y, int w, int h, int start, int arc) {}
+    @Override public void fillArc(int x, int y, int w, int h, int start, int arc) {}
+    @Override public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {}
+    @Override public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {}
+    @Override public void drawPolygon(Polygon p) {}
+    @Override public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {}
+    @Override public void fillPolygon(Polygon p) {}
+    @Override public void drawString(String str, int x, int y) {}
+    @Override public void drawString(String str, float x, float y) {}
+    @Override public void drawString(AttributedCharacterIterator it, int x, int y) {}
+    @Override public void drawString(AttributedCharacterIterator it, float x, float y) {}
+    @Override public void drawGlyphVector(GlyphVector g, float x, float y) {}
+    @Override public boolean drawImage(Image img, AffineTransform xform, ImageObserver obs) { return true; }
+    @Override public void drawImage(BufferedImage img, BufferedImageOp op, int x, int y) {}
+    @Override public void drawRenderedImage(RenderedImage img, AffineTransform xform) {}
+    @Override public void drawRenderableImage(RenderableImage img, AffineTransform xform) {}
+    @Override public boolean drawImage(Image img, int x, int y, ImageObserver observer) { return true; }
+    @Override public boolean drawImage(Image img, int x, int y, int width, int height, ImageObserver observer) { return true; }
+    @Override public boolean drawImage(Image img, int x, int y, Color bgcolor, ImageObserver observer) { return true; }
+    @Override public boolean drawImage(Image img, int x, int y, int width, int height, Color bgcolor, ImageObserver observer) {
+        return true;
+    }
+    @Override public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, ImageObserver observer) {
+        return true;
+    }
+    @Override public boolean drawImage(Image img, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2, Color bgcolor, ImageObserver observer) {
+        return true;
+    }
+    @Override public void copyArea(int x, int y, int width, int height, int dx, int dy) {}
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="State">
+
+    @Override public Graphics create() { return new NullGraphics(this); }
+    @Override public void dispose() {}
+    @Override public boolean hit(Rectangle rect, Shape s, boolean onStroke) { return false; }
+    @Override public GraphicsConfiguration getDeviceConfiguration() { return SCRATCH.getDeviceConfiguration(); }
+    @Override public void setComposite(Composite comp) { _composite = comp; }
+    @Override public Composite getComposite() { return _composite; }
+    @Override public void setPaint(Paint paint) {
+        _paint = paint;
+        if (paint instanceof Color) _color = (Color) paint;
+    }
+    @Override public Paint getPaint() { return _paint; }
+    @Override public void setStroke(Stroke s) { _stroke = s; }
+    @Override public Stroke getStroke() { return _stroke; }
+    @Override public void setColor(Color c) {
+        _color = c;
+        _paint = c;
+    }
+    @Override public Color getColor() { return _color; }
+    @Override public void setBackground(Color color) { _background = color; }
+    @Override public Color getBackground() { return _background; }
+    @Override public void setPaintMode() {}
+    @Override public void setXORMode(Color c1) {}
+    @Override public Font getFont() { return _font; }
+    @Override public void setFont(Font font) { _font = font; }
+    @Override public FontMetrics getFontMetrics(Font f) { return SCRATCH.getFontMetrics(f); }
+    @Override public FontRenderContext getFontRenderContext() { return new FontRenderContext(_transform, false, false); }
+    @Override public void setRenderingHint(RenderingHints.Key hintKey, Object hintValue) { _hints.put(hintKey, hintValue); }
+    @Override public Object getRenderingHint(RenderingHints.Key hintKey) { return _hints.get(hintKey); }
+    @Override public void setRenderingHints(Map<?, ?> hints) {
+        _hints.clear();
+        _hints.putAll(hints);
+    }
+    @Override public void addRenderingHints(Map<?, ?> hints) { _hints.putAll(hints); }
+    @Override public RenderingHints getRenderingHints() { return (RenderingHints) _hints.clone(); }
+    @Override public void translate(int x, int y) { _transform.translate(x, y); }
+    @Override public void translate(double tx, double ty) { _transform.translate(tx, ty); }
+    @Override public void rotate(double theta) { _transform.rotate(theta); }
+    @Override public void rotate(double theta, double x, double y) { _transform.rotate(theta, x, y); }
+    @Override public void scale(double sx, double sy) { _transform.scale(sx, sy); }
+    @Override public void shear(double shx, double shy) { _transform.shear(shx, shy); }
+    @Override public void transform(AffineTransform tx) { _transform.concatenate(tx); }
+    @Override public void setTransform(AffineTransform tx) { _transform.setTransform(tx); }
+    @Override public AffineTransform getTransform() { return new AffineTransform(_transform); }
+    @Override public void clip(Shape s) {
+        if (_clip == null) {
+            _clip = s;
+        } else {
+            Area area = new Area(_clip);
+            area.intersect(new Area(s));
+            _clip = area;
+        }
+    }
+    @Override public Rectangle getClipBounds() { return _clip == null ? null : _clip.getBounds(); }
+    @Override public void clipRect(int x, int y, int width, int height) { clip(new Rectangle(x, y, width, height)); }
+    @Override public void setClip(int x, int y, int width, int height) { _clip = new Rectangle(x, y, width, height); }
+    @Override public Shape getClip() { return _clip; }
+    @Override public void setClip(Shape clip) { _clip = clip; }
+
+    // </editor-fold>
+}
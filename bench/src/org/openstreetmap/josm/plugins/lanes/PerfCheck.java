@@ -0,0 +1,383 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import org.openstreetmap.josm.data.osm.Way;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/*
+ * PerfCheck - runs a fixed set of benchmarks and fails if any got worse than the checked in baseline allows.
+ *
+ * -> Geometry: nanoseconds per call of the main Utils methods, on the 100 node gently curving way from
+ *    GeometryBenchmark.
+ * -> Build: milliseconds per stage (from LaneModeStats) for a generated grid city, median of 3 builds.
+ * -> Render: median milliseconds per frame, and Java2D calls, draws and KB allocated per frame, at three zoom levels
+ *    of RenderBenchmark's scene.  Allocations are measured on frames painted into a NullGraphics, so only what the
+ *    plugin allocates is counted, not Java2D's rasterizing.
+ * -> It's run with escape analysis off.  Otherwise the allocations per frame drop by up to half, at a point that
+ *    depends on when the JIT gets to the paint code, and can't be compared.  Off, they're exact, and times are still
+ *    comparable with a baseline written the same way.
+ * -> Times depend on the machine, so a short fixed workload is timed first and times are scaled by how much faster
+ *    or slower it ran than when the baseline was written.  Counts are compared as they are.
+ * -> The whole set is run a few times and each metric keeps its best value, so one slow run caused by something
+ *    else on the machine doesn't fail the check.
+ * -> Lower is always better.  A metric fails when it's more than its tolerance (a fraction, from the baseline) above
+ *    the baseline, or the threshold (a percentage) if the baseline gives none.  Metrics that got much better are
+ *    pointed out, so the baseline can be tightened.
+ *
+ * Usage: ant perf-check [-Dperf.threshold=25] [-Dperf.runs=2] [-Dperf.update=true]
+ *    perf.update writes the measured values as the new baseline instead of comparing.
+ */
+
+public final class PerfCheck {
+
+    // <editor-fold defaultstate="collapsed" desc="Variables">
+
+    private static final int BUILD_WAYS = 2000;
+    private static final int BUILD_RUNS = 3;
+    private static final int RENDER_WAYS = 2000;
+    private static final int RENDER_FRAMES = 20;
+    private static final double[] RENDER_SCALES = {0.3, 1, 3};
+    private static final long GEOMETRY_BATCH_NANOS = 200_000_000;
+
+    // Tolerances written with a new baseline.  Times are left to the threshold.
+    private static final double COUNT_TOLERANCE = 0;
+    private static final double ALLOCATION_TOLERANCE = 0.02;
+
+    private static volatile Object _sink; // Keeps the JIT from dropping unused results.
+
+    private final Map<String, Metric> _metrics = new LinkedHashMap<>();
+
+    // </editor-fold>
+
+    public static void main(String[] args) throws IOException {
+        File baseline = new File(args.length > 0 ? args[0] : "bench/perf-baseline.json");
+        double threshold = args.length > 1 ? Double.parseDouble(args[1]) / 100 : 0.25;
+        boolean update = args.length > 2 && Boolean.parseBoolean(args[2]);
+        File result = new File(args.length > 3 ? args[3] : "bench/build/perf-result.json");
+        int runs = args.length > 4 ? Integer.parseInt(args[4]) : 2;
+
+        if (!ManagementFactory.getRuntimeMXBean().getInputArguments().contains("-XX:-DoEscapeAnalysis")) {
+            System.out.println("Warning: escape analysis is on, allocations won't match a baseline written by ant.");
+        }
+
+        BenchmarkSupport.initJosm();
+        PerfCheck check = new PerfCheck();
+        double calibration = calibrate();
+        for (int run = 0; run < runs; run++) {
+            check.measureGeometry();
+            check.measureBuild();
+            check.measureRender();
+        }
+        calibration = Math.min(calibration, calibrate()); // Again, in case something else was running at the start.
+
+        result.getParentFile().mkdirs();
+        Files.write(result.toPath(), check.toJson(calibration).getBytes(StandardCharsets.UTF_8));
+        if (update) {
+            Files.write(baseline.toPath(), check.toJson(calibration).getBytes(StandardCharsets.UTF_8));
+            System.out.println("Wrote " + check._metrics.size() + " metrics to " + baseline);
+            System.exit(0);
+        }
+
+        boolean failed = check.compare(readBaseline(baseline), calibration, threshold);
+        System.exit(failed ? 1 : 0); // JOSM leaves non daemon threads behind.
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Measuring">
+
+    private void measureGeometry() {
+        GeometryBenchmark geometry = new GeometryBenchmark();
+        geometry.nodes = 100;
+        geometry.curvature = 3;
+        geometry.offset = 3.5;
+        geometry.setup();
+
+        time("geometry.getParallel", geometry::getParallel);
+        time("geometry.getSubPartMeters", geometry::getSubPartMeters);
+        time("geometry.intersect", geometry::intersect);
+        time("geometry.bearingAt", geometry::bearingAt);
+        time("geometry.extendWay", geometry::extendWay);
+    }
+
+    // Median nanoseconds per call over 5 batches, after 2 batches of warm up.
+    private void time(String name, Supplier<Object> op) {
+        double[] perOp = new double[5];
+        for (int batch = -2; batch < perOp.length; batch++) {
+            long start = System.nanoTime();
+            long end;
+            int calls = 0;
+            do {
+                _sink = op.get();
+                calls++;
+            } while ((end = System.nanoTime()) - start < GEOMETRY_BATCH_NANOS);
+            if (batch >= 0) perOp[batch] = (double) (end - start) / calls;
+        }
+        add(name, "ns/call", median(perOp), true, Double.NaN);
+    }
+
+    private void measureBuild() {
+        List<Way> ways = new ArrayList<>(SyntheticNetworkGenerator.generate(SyntheticNetworkGenerator.Layout.GRID,
+                BUILD_WAYS, true, 1).getWays());
+        LaneMappingMode mode = new LaneMappingMode();
+        List<LaneModeStats.Stage> stages = new ArrayList<>();
+        for (LaneModeStats.Stage stage : LaneModeStats.Stage.values()) if (stage != LaneModeStats.Stage.PAINT) stages.add(stage);
+
+        double[][] millis = new double[stages.size() + 1][BUILD_RUNS];
+        mode.setWays(ways, null); // Warm up.
+        for (int run = 0; run < BUILD_RUNS; run++) {
+            mode.setWays(ways, null);
+            LaneModeStats.Build build = LaneModeStats.get().getLastBuild();
+            for (int i = 0; i < stages.size(); i++) millis[i][run] = build.getStageNanos(stages.get(i)) / 1e6;
+            millis[stages.size()][run] = build.getTotalNanos() / 1e6;
+        }
+
+        for (int i = 0; i < stages.size(); i++) {
+            add("build." + stages.get(i).label.replace(' ', '_'), "ms", median(millis[i]), true, Double.NaN);
+        }
+        add("build.total", "ms", median(millis[stages.size()]), true, Double.NaN);
+    }
+
+    private void measureRender() {
+        RenderBenchmark render = new RenderBenchmark(RENDER_WAYS);
+        for (double scale : RENDER_SCALES) {
+            render.zoom(scale);
+            for (int i = 0; i < 5; i++) render.frame();
+
+            double[] millis = new double[RENDER_FRAMES];
+            for (int i = 0; i < RENDER_FRAMES; i++) millis[i] = render.frame() / 1e6;
+
+            String prefix = "render." + scale + ".";
+            add(prefix + "frame", "ms", median(millis), true, Double.NaN);
+            add(prefix + "calls", "calls/frame", render.getCalls(), false, COUNT_TOLERANCE);
+            add(prefix + "draws", "draws/frame", render.getDraws(), false, COUNT_TOLERANCE);
+
+            // Into a NullGraphics, so what Java2D allocates to rasterize isn't counted (see AllocationBudget).
+            for (int i = 0; i < 5; i++) render.frameWithoutPixels();
+            double[] allocated = new double[RENDER_FRAMES];
+            for (int i = 0; i < RENDER_FRAMES; i++) {
+                render.frameWithoutPixels();
+                allocated[i] = render.getAllocated() / 1024.0;
+            }
+            add(prefix + "allocated", "KB/frame", median(allocated), false, ALLOCATION_TOLERANCE);
+        }
+    }
+
+    // Milliseconds for a fixed mix of maths and sorting, to tell how fast this machine is.  The fastest run is used,
+    //  since anything else on the machine can only slow it down.
+    private static double calibrate() {
+        double[] millis = new double[10];
+        for (int run = -3; run < millis.length; run++) {
+            long start = System.nanoTime();
+            Random random = new Random(1);
+            double[] values = new double[200_000];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Math.atan2(random.nextDouble(), random.nextDouble()) * Math.cos(i) + Math.sqrt(i);
+            }
+            Arrays.sort(values);
+            _sink = values[values.length / 2];
+            if (run >= 0) millis[run] = (System.nanoTime() - start) / 1e6;
+        }
+        return Arrays.stream(millis).min().getAsDouble();
+    }
+
+    // Keeps the best value if the metric was already measured in an earlier run.
+    private void add(String name, String unit, double value, boolean time, double tolerance) {
+        Metric earlier = _metrics.get(name);
+        if (earlier != null && earlier.value <= value) return;
+        _metrics.put(name, new Metric(name, unit, value, time, tolerance));
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Comparing">
+
+    // Prints a line per metric, returns whether any metric regressed or is missing.
+    private boolean compare(Map<?, ?> baseline, double calibration, double threshold) {
+        double baselineCalibration = ((Number) baseline.get("calibrationMillis")).doubleValue();
+        double speed = calibration / baselineCalibration; // Over 1 when this machine is slower.
+        System.out.println(String.format(Locale.ROOT, "Calibration %.1f ms, baseline %.1f ms, times scaled by %.2f",
+                calibration, baselineCalibration, speed));
+        System.out.println(String.format("%-34s %12s %12s %9s %9s  %s", "metric", "baseline", "measured", "change",
+                "allowed", "unit"));
+
+        boolean failed = false;
+        List<String> notes = new ArrayList<>();
+        Map<?, ?> expected = asObject(baseline.get("metrics"), "metrics");
+        for (Metric m : _metrics.values()) {
+            Map<?, ?> b = expected.get(m.name) == null ? null : asObject(expected.get(m.name), m.name);
+            if (b == null) {
+                notes.add(m.name + " isn't in the baseline, run with -Dperf.update=true to add it.");
+                continue;
+            }
+            double base = ((Number) b.get("value")).doubleValue();
+            if (m.time) base *= speed;
+            double tolerance = b.get("tolerance") instanceof Number ? ((Number) b.get("tolerance")).doubleValue() : threshold;
+
+            double change = base == 0 ? (m.value == 0 ? 0 : Double.POSITIVE_INFINITY) : m.value / base - 1;
+            boolean regressed = change > tolerance + 1e-9;
+            failed |= regressed;
+            if (change < -Math.max(tolerance, 0.1)) notes.add(m.name + String.format(Locale.ROOT, " is %.1f%% better than the baseline.", -100 * change));
+
+            System.out.println(String.format(Locale.ROOT, "%-34s %12.2f %12.2f %9s %9s  %s%s", m.name, base, m.value,
+                    percent(change), percent(tolerance), m.unit, regressed ? "  REGRESSED" : ""));
+        }
+        for (Object name : expected.keySet()) {
+            if (!_metrics.containsKey(name)) {
+                notes.add(name + " is in the baseline but wasn't measured.");
+                failed = true;
+            }
+        }
+
+        for (String note : notes) System.out.println(note);
+        System.out.println(failed ? "Performance check FAILED" : "Performance check passed");
+        return failed;
+    }
+
+    private static String percent(double fraction) {
+        if (Double.isInfinite(fraction)) return "new";
+        return String.format(Locale.ROOT, "%+.1f%%", 100 * fraction);
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="JSON">
+
+    private String toJson(double calibration) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"calibrationMillis\": ").append(format(calibration)).append(",\n");
+        sb.append("  \"cores\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+        sb.append("  \"java\": \"").append(System.getProperty("java.version")).append("\",\n");
+        sb.append("  \"metrics\": {\n");
+        int i = 0;
+        for (Metric m : _metrics.values()) {
+            sb.append("    \"").append(m.name).append("\": {\"value\": ").append(format(m.value))
+                    .append(", \"unit\": \"").append(m.unit).append('"');
+            if (!Double.isNaN(m.tolerance)) sb.append(", \"tolerance\": ").append(format(m.tolerance));
+            sb.append('}').append(++i < _metrics.size() ? ",\n" : "\n");
+        }
+        sb.append("  }\n}\n");
+        return sb.toString();
+    }
+
+    private static String format(double d) {
+        return String.format(Locale.ROOT, "%.3f", d);
+    }
+
+    private static Map<?, ?> readBaseline(File file) throws IOException {
+        String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        return asObject(new JsonReader(json).readValue(), file.getName());
+    }
+
+    // A JSON object from JsonReader.  Its keys are always strings, but Map<?, ?> is all that's needed to look them up.
+    private static Map<?, ?> asObject(Object value, String name) {
+        if (!(value instanceof Map)) throw new IllegalArgumentException(name + " isn't a JSON object");
+        return (Map<?, ?>) value;
+    }
+
+    // Just enough JSON for the baseline: objects, arrays, strings without escapes other than \" and \\, numbers,
+    //  booleans and null.
+    private static final class JsonReader {
+        private final String _json;
+        private int _pos;
+
+        JsonReader(String json) {
+            _json = json;
+        }
+
+        Object readValue() {
+            skipSpace();
+            char c = _json.charAt(_pos);
+            if (c == '{') return readObject();
+            if (c == '[') return readArray();
+            if (c == '"') return readString();
+            if (_json.startsWith("true", _pos)) { _pos += 4; return true; }
+            if (_json.startsWith("false", _pos)) { _pos += 5; return false; }
+            if (_json.startsWith("null", _pos)) { _pos += 4; return null; }
+            int start = _pos;
+            while (_pos < _json.length() && "+-0123456789.eE".indexOf(_json.charAt(_pos)) >= 0) _pos++;
+            if (start == _pos) throw new IllegalArgumentException("Unexpected '" + c + "' at " + _pos);
+            return Double.parseDouble(_json.substring(start, _pos));
+        }
+
+        private Map<String, Object> readObject() {
+            Map<String, Object> output = new LinkedHashMap<>();
+            _pos++;
+            skipSpace();
+            if (_json.charAt(_pos) == '}') { _pos++; return output; }
+            while (true) {
+                skipSpace();
+                String key = readString();
+                expect(':');
+                output.put(key, readValue());
+                skipSpace();
+                if (_json.charAt(_pos++) == '}') return output;
+            }
+        }
+
+        private List<Object> readArray() {
+            List<Object> output = new ArrayList<>();
+            _pos++;
+            skipSpace();
+            if (_json.charAt(_pos) == ']') { _pos++; return output; }
+            while (true) {
+                output.add(readValue());
+                skipSpace();
+                if (_json.charAt(_pos++) == ']') return output;
+            }
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            char c;
+            while ((c = _json.charAt(_pos++)) != '"') sb.append(c == '\\' ? _json.charAt(_pos++) : c);
+            return sb.toString();
+        }
+
+        private void expect(char c) {
+            skipSpace();
+            if (_json.charAt(_pos) != c) throw new IllegalArgumentException("Expected '" + c + "' at " + _pos);
+            _pos++;
+        }
+
+        private void skipSpace() {
+            while (_pos < _json.length() && Character.isWhitespace(_json.charAt(_pos))) _pos++;
+        }
+    }
+
+    // </editor-fold>
+
+    private static final class Metric {
+        final String name;
+        final String unit;
+        final double value;
+        final boolean time; // Scaled by the calibration.
+        final double tolerance; // NaN to use the threshold.
+
+        Metric(String name, String unit, double value, boolean time, double tolerance) {
+            this.name = name;
+            this.unit = unit;
+            this.value = value;
+            this.time = time;
+            this.tolerance = tolerance;
+        }
+    }
+}
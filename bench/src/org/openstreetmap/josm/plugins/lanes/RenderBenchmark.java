@@ -0,0 +1,211 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.MapView;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * RenderBenchmark - draws a fixed scene through LaneMappingMode.paint() into an image, without a display.
+ *
+ * -> The scene is a generated grid city, built once.  The view is a real MapView that's never shown, so the
+ *    renderers get the same transform, scale and bounds they would in JOSM.
+ * -> At each zoom level it prints frames per second, Java2D calls and draws per frame (CountingGraphics), and bytes
+ *    allocated per frame by the painting thread.
+ * -> The last frame of each zoom level is saved as a PNG.  Given a folder of earlier PNGs, it counts the pixels
+ *    that changed and fails if any did, so rendering changes can be checked on a machine with no display.
+ *
+ * Usage: ant bench-render [-Dbench.render.ways=2000] [-Dbench.frames=50] [-Dbench.reference=dir]
+ */
+
+public final class RenderBenchmark {
+
+    // <editor-fold defaultstate="collapsed" desc="Variables">
+
+    static final int WIDTH = 1280;
+    static final int HEIGHT = 800;
+    static final double[] SCALES = {0.1, 0.3, 1, 3, 10}; // Projected meters per pixel, like MapView.getScale().
+    private static final int WARMUP_FRAMES = 10;
+    private static final Color BACKGROUND = new Color(40, 40, 40);
+
+    private final LaneMappingMode _mode = new LaneMappingMode();
+    private final MapView _mv;
+    private final EastNorth _center;
+    private final BufferedImage _image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+
+    // Of the last frame.
+    private long _calls;
+    private long _draws;
+    private long _allocated;
+
+    // </editor-fold>
+
+    RenderBenchmark(int numWays) {
+        BenchmarkSupport.initJosm();
+        DataSet ds = SyntheticNetworkGenerator.generate(SyntheticNetworkGenerator.Layout.GRID, numWays, true, 1);
+        List<Way> ways = new ArrayList<>(ds.getWays());
+        ways.sort(Comparator.comparingLong(Way::getUniqueId).reversed()); // In the order they were made.
+
+        _mv = makeView();
+        _center = getCenter(ways);
+        _mv.zoomTo(_center, 1);
+        _mode.setWays(ways, _mv);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int numWays = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        File out = new File(args.length > 2 ? args[2] : "bench/build/render");
+        File reference = args.length > 3 && !args[3].isEmpty() ? new File(args[3]) : null;
+        out.mkdirs();
+
+        RenderBenchmark benchmark = new RenderBenchmark(numWays);
+        System.out.println(String.format("%-8s %10s %10s %10s %10s %12s %10s", "scale", "fps", "ms/frame",
+                "calls", "draws", "KB alloc", "changed"));
+
+        boolean changed = false;
+        for (double scale : SCALES) {
+            benchmark.zoom(scale);
+            for (int i = 0; i < WARMUP_FRAMES; i++) benchmark.frame();
+
+            long[] times = new long[frames];
+            long allocated = 0;
+            for (int i = 0; i < frames; i++) {
+                times[i] = benchmark.frame();
+                allocated += benchmark._allocated;
+            }
+            long total = Arrays.stream(times).sum();
+
+            String name = "scale-" + scale + ".png";
+            ImageIO.write(benchmark._image, "png", new File(out, name));
+            String diff = "";
+            if (reference != null) {
+                int pixels = countChangedPixels(benchmark._image, new File(reference, name));
+                changed |= pixels != 0;
+                diff = pixels < 0 ? "missing" : String.valueOf(pixels);
+            }
+
+            System.out.println(String.format("%-8s %10.1f %10.2f %10d %10d %12.1f %10s", scale, frames * 1e9 / total,
+                    total / 1e6 / frames, benchmark._calls, benchmark._draws, allocated / 1024.0 / frames, diff));
+        }
+        System.exit(changed ? 1 : 0); // JOSM leaves non daemon threads behind.
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Drawing">
+
+    void zoom(double scale) {
+        _mv.zoomTo(_center, scale);
+    }
+
+    /**
+     * Draws one frame of the scene at the current zoom.
+     * @return How long paint() took, in nanoseconds.
+     */
+    long frame() {
+        Graphics2D g = _image.createGraphics();
+        g.setColor(BACKGROUND);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        long time = paint(g);
+        g.dispose();
+        return time;
+    }
+
+    /**
+     * Same as frame(), into a NullGraphics, so what Java2D allocates to rasterize isn't counted.  The image is left
+     * as it was.
+     */
+    long frameWithoutPixels() {
+        return paint(new NullGraphics());
+    }
+
+    private long paint(Graphics2D g) {
+        CountingGraphics counting = new CountingGraphics(g);
+
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        _mode.paint(counting, _mv, null);
+        long time = System.nanoTime() - start;
+        _allocated = getAllocatedBytes() - allocatedBefore;
+
+        _calls = counting.getCalls();
+        _draws = counting.getDraws();
+        return time;
+    }
+
+    long getCalls() { return _calls; }
+
+    long getDraws() { return _draws; }
+
+    long getAllocated() { return _allocated; }
+
+    private static long getAllocatedBytes() {
+        try {
+            return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        } catch (Exception e) {
+            return 0; // Not a HotSpot JVM.
+        }
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Setup">
+
+    // A map view that's never put in a window.
+    private static MapView makeView() {
+        MapView mv = new MapView(MainApplication.getLayerManager(), null) {
+            @Override
+            public Point getLocationOnScreen() {
+                return new Point(0, 0);
+            }
+        };
+        mv.setBounds(0, 0, WIDTH, HEIGHT);
+        GuiHelper.runInEDTAndWait(() -> {}); // Let the view see its new size.
+        return mv;
+    }
+
+    private static EastNorth getCenter(List<Way> ways) {
+        double minEast = Double.MAX_VALUE, minNorth = Double.MAX_VALUE;
+        double maxEast = -Double.MAX_VALUE, maxNorth = -Double.MAX_VALUE;
+        for (Way w : ways) {
+            for (Node n : w.getNodes()) {
+                EastNorth en = n.getEastNorth();
+                minEast = Math.min(minEast, en.east());
+                minNorth = Math.min(minNorth, en.north());
+                maxEast = Math.max(maxEast, en.east());
+                maxNorth = Math.max(maxNorth, en.north());
+            }
+        }
+        return new EastNorth((minEast + maxEast) / 2, (minNorth + maxNorth) / 2);
+    }
+
+    // -1 if there's no reference image or it's a different size.
+    private static int countChangedPixels(BufferedImage image, File reference) throws IOException {
+        if (!reference.isFile()) return -1;
+        BufferedImage old = ImageIO.read(reference);
+        if (old.getWidth() != image.getWidth() || old.getHeight() != image.getHeight()) return -1;
+        int changed = 0;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                if (image.getRGB(x, y) != old.getRGB(x, y)) changed++;
+            }
+        }
+        return changed;
+    }
+
+    // </editor-fold>
+}
@@ -0,0 +1,275 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/*
+ * SyntheticNetworkGenerator - builds made up cities with realistic lane tagging, for benchmarks that need the same
+ *                             input every time and can't download anything.
+ *
+ * -> GRID is a city of 100m blocks.  Every fourth street is an arterial, and every eighth avenue is a dual
+ *    carriageway whose crossings are short in_a_junction=yes ways, so they make multi-node intersections.
+ * -> RADIAL is a roundabout in the middle of rings 150m apart, with spokes that double in number as the rings get
+ *    bigger so blocks stay about the same size.  New spokes start at T intersections on a ring.
+ * -> Roads get a mix of lanes, turn:lanes, change:lanes, width:lanes, placement, lane_markings=no and no lane tags.
+ * -> Right hand cities are built in Seattle and left hand ones in London, so RegionDefaults picks the traffic side.
+ *
+ * The same arguments always give the same nodes, ways and tags, in the same order.  Only JOSM's IDs differ.
+ */
+
+public final class SyntheticNetworkGenerator {
+
+    public enum Layout { GRID, RADIAL }
+
+    private enum Kind { ARTERIAL, COLLECTOR, RESIDENTIAL, CARRIAGEWAY, ROUNDABOUT }
+
+    // <editor-fold defaultstate="collapsed" desc="Variables">
+
+    private static final LatLon RIGHT_HAND_ORIGIN = new LatLon(47.6, -122.3);
+    private static final LatLon LEFT_HAND_ORIGIN = new LatLon(51.5, -0.12);
+
+    private static final double BLOCK = 100; // Meters between grid streets.
+    private static final double MEDIAN = 16; // Meters between the two halves of a dual carriageway.
+    private static final double RING_SPACING = 150;
+    private static final double ROUNDABOUT_RADIUS = 40;
+    private static final int BASE_SPOKES = 8;
+
+    private static final String[] CHANGE = {"yes", "no", "not_left", "not_right"};
+    private static final String[] WIDTHS = {"3", "3.25", "3.5", "3.75"};
+
+    private final Random _random;
+    private final boolean _rightHand;
+    private final LatLon _origin;
+    private final int _maxWays;
+    private final DataSet _ds = new DataSet();
+    private int _numWays = 0;
+
+    // </editor-fold>
+
+    private SyntheticNetworkGenerator(int maxWays, boolean rightHand, long seed) {
+        _random = new Random(seed);
+        _rightHand = rightHand;
+        _origin = rightHand ? RIGHT_HAND_ORIGIN : LEFT_HAND_ORIGIN;
+        _maxWays = maxWays;
+    }
+
+    /**
+     * Builds a city with numWays road ways.
+     * @param rightHand Whether traffic drives on the right.
+     * @param seed Different seeds give different tags and slightly different geometry, never a different layout.
+     */
+    public static DataSet generate(Layout layout, int numWays, boolean rightHand, long seed) {
+        SyntheticNetworkGenerator generator = new SyntheticNetworkGenerator(numWays, rightHand, seed);
+        if (layout == Layout.GRID) {
+            generator.grid();
+        } else {
+            generator.radial();
+        }
+        return generator._ds;
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Layouts">
+
+    private void grid() {
+        int side = (int) Math.ceil(Math.sqrt(_maxWays / 2.0)) + 1;
+
+        // Where each street meets an avenue.  Dual carriageways have one node on each half.
+        Node[][] west = new Node[side][side];
+        Node[][] east = new Node[side][side];
+        for (int row = 0; row < side; row++) {
+            LatLon rowStart = Utils.getLatLonRelative(_origin, Math.PI, row * BLOCK);
+            for (int col = 0; col < side; col++) {
+                LatLon pos = Utils.getLatLonRelative(rowStart, Math.PI / 2, col * BLOCK);
+                if (isDual(col)) {
+                    west[row][col] = new Node(Utils.getLatLonRelative(pos, -Math.PI / 2, MEDIAN / 2));
+                    east[row][col] = new Node(Utils.getLatLonRelative(pos, Math.PI / 2, MEDIAN / 2));
+                } else {
+                    west[row][col] = new Node(pos);
+                    east[row][col] = west[row][col];
+                }
+            }
+        }
+
+        for (int row = 0; row < side; row++) {
+            Kind street = row % 4 == 0 ? Kind.ARTERIAL : row % 2 == 0 ? Kind.COLLECTOR : Kind.RESIDENTIAL;
+            for (int col = 0; col < side; col++) {
+                if (col + 1 < side) add(straight(east[row][col], west[row][col+1]), street, false);
+                if (isDual(col)) add(Arrays.asList(west[row][col], east[row][col]), street, true);
+                if (row + 1 == side) continue;
+
+                if (!isDual(col)) {
+                    add(straight(west[row][col], west[row+1][col]), col % 4 == 0 ? Kind.ARTERIAL : Kind.RESIDENTIAL, false);
+                } else if (_rightHand) {
+                    add(straight(west[row][col], west[row+1][col]), Kind.CARRIAGEWAY, false);
+                    add(straight(east[row+1][col], east[row][col]), Kind.CARRIAGEWAY, false);
+                } else {
+                    add(straight(east[row][col], east[row+1][col]), Kind.CARRIAGEWAY, false);
+                    add(straight(west[row+1][col], west[row][col]), Kind.CARRIAGEWAY, false);
+                }
+            }
+        }
+    }
+
+    private static boolean isDual(int col) {
+        return col % 8 == 6;
+    }
+
+    private void radial() {
+        // Rings are numbered from 1, which is the roundabout.
+        List<Node[]> rings = new ArrayList<>();
+        rings.add(null);
+        for (int ring = 1; _numWays < _maxWays; ring++) {
+            Node[] nodes = new Node[spokes(ring)];
+            for (int s = 0; s < nodes.length; s++) nodes[s] = new Node(ringPoint(ring, 2 * Math.PI * s / nodes.length));
+            rings.add(nodes);
+
+            // The ring itself.  Roundabouts go counterclockwise in right hand countries.
+            for (int s = 0; s < nodes.length; s++) {
+                int next = (s + 1) % nodes.length;
+                List<Node> arc = arc(ring, nodes[s], nodes[next], 2 * Math.PI * s / nodes.length, 2 * Math.PI / nodes.length);
+                if (ring == 1) {
+                    if (_rightHand) Collections.reverse(arc);
+                    add(arc, Kind.ROUNDABOUT, false);
+                } else {
+                    add(arc, ring % 3 == 2 ? Kind.ARTERIAL : Kind.RESIDENTIAL, false);
+                }
+            }
+
+            // Spokes from the ring inside this one.  Spokes that don't line up with one there start at this ring.
+            if (ring == 1) continue;
+            Node[] inner = rings.get(ring - 1);
+            int ratio = nodes.length / inner.length;
+            for (int s = 0; s < nodes.length; s += ratio) {
+                boolean original = s % (nodes.length / BASE_SPOKES) == 0;
+                add(straight(inner[s / ratio], nodes[s]), original ? Kind.ARTERIAL : Kind.COLLECTOR, false);
+            }
+        }
+    }
+
+    private static int spokes(int ring) {
+        return BASE_SPOKES * Integer.highestOneBit(Math.max(1, ring - 1));
+    }
+
+    private LatLon ringPoint(int ring, double bearing) {
+        double radius = ring == 1 ? ROUNDABOUT_RADIUS : ROUNDABOUT_RADIUS + (ring - 1) * RING_SPACING;
+        return Utils.getLatLonRelative(_origin, bearing, radius);
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Geometry">
+
+    // A street between two nodes with a slightly bent middle node, so not every way is perfectly straight.
+    private List<Node> straight(Node from, Node to) {
+        LatLon a = from.getCoor();
+        LatLon b = to.getCoor();
+        LatLon middle = new LatLon((a.lat() + b.lat()) / 2 + (_random.nextDouble() - 0.5) * 0.00004,
+                (a.lon() + b.lon()) / 2 + (_random.nextDouble() - 0.5) * 0.00004);
+        return Arrays.asList(from, new Node(middle), to);
+    }
+
+    // Part of a ring, with a node every 10 degrees or so.
+    private List<Node> arc(int ring, Node from, Node to, double startBearing, double angle) {
+        int segments = Math.max(2, (int) Math.ceil(Math.toDegrees(angle) / 10));
+        List<Node> output = new ArrayList<>(segments + 1);
+        output.add(from);
+        for (int i = 1; i < segments; i++) output.add(new Node(ringPoint(ring, startBearing + angle * i / segments)));
+        output.add(to);
+        return output;
+    }
+
+    private void add(List<Node> nodes, Kind kind, boolean inJunction) {
+        if (_numWays >= _maxWays) return;
+        Way w = new Way();
+        w.setNodes(nodes);
+        tag(w, kind);
+        if (inJunction) w.put("in_a_junction", "yes");
+        BenchmarkSupport.addToDataSet(_ds, w);
+        _numWays++;
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Tags">
+
+    private void tag(Way w, Kind kind) {
+        switch (kind) {
+            case ARTERIAL:
+                w.put("highway", "secondary");
+                tagTwoWay(w, 2 + _random.nextInt(2), _random.nextInt(10) < 3);
+                break;
+            case COLLECTOR:
+                w.put("highway", "tertiary");
+                tagTwoWay(w, 1, _random.nextInt(10) < 4);
+                break;
+            case RESIDENTIAL:
+                w.put("highway", "residential");
+                int markings = _random.nextInt(3);
+                if (markings == 0) w.put("lanes", "2");
+                if (markings == 1) w.put("lane_markings", "no");
+                break;
+            case CARRIAGEWAY:
+                int lanes = 2 + _random.nextInt(3);
+                w.put("highway", "primary");
+                w.put("oneway", "yes");
+                w.put("lanes", String.valueOf(lanes));
+                if (_random.nextInt(10) < 7) w.put("turn:lanes", turnLanes(lanes));
+                if (_random.nextInt(10) < 3) w.put("change:lanes", changeLanes(lanes));
+                if (_random.nextInt(10) < 2) w.put("width:lanes", widthLanes(lanes));
+                if (_random.nextInt(10) < 3) w.put("placement", "middle_of:" + (lanes + 1) / 2);
+                break;
+            case ROUNDABOUT:
+                w.put("highway", "secondary");
+                w.put("junction", "roundabout");
+                w.put("lanes", "2");
+                if (_random.nextBoolean()) w.put("change:lanes", changeLanes(2));
+                break;
+        }
+    }
+
+    private void tagTwoWay(Way w, int lanesEachWay, boolean centreTurnLane) {
+        w.put("lanes", String.valueOf(2 * lanesEachWay + (centreTurnLane ? 1 : 0)));
+        w.put("lanes:forward", String.valueOf(lanesEachWay));
+        w.put("lanes:backward", String.valueOf(lanesEachWay));
+        if (centreTurnLane) {
+            w.put("lanes:both_ways", "1");
+            w.put("turn:lanes:both_ways", "left");
+        }
+        for (String direction : new String[] {":forward", ":backward"}) {
+            if (_random.nextInt(10) < 6) w.put("turn:lanes" + direction, turnLanes(lanesEachWay));
+            if (lanesEachWay > 1 && _random.nextInt(10) < 3) w.put("change:lanes" + direction, changeLanes(lanesEachWay));
+            if (_random.nextInt(10) < 2) w.put("width:lanes" + direction, widthLanes(lanesEachWay));
+        }
+        if (_random.nextInt(10) == 0) w.put("placement:forward", "left_of:1");
+    }
+
+    private String turnLanes(int lanes) {
+        if (lanes == 1) return _random.nextBoolean() ? "left;through;right" : "through;right";
+        StringBuilder sb = new StringBuilder(_random.nextBoolean() ? "left" : "left;through");
+        for (int i = 1; i < lanes - 1; i++) sb.append("|through");
+        sb.append(_random.nextBoolean() ? "|through;right" : "|right");
+        return sb.toString();
+    }
+
+    private String changeLanes(int lanes) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lanes; i++) sb.append(i == 0 ? "" : "|").append(CHANGE[_random.nextInt(CHANGE.length)]);
+        return sb.toString();
+    }
+
+    private String widthLanes(int lanes) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lanes; i++) sb.append(i == 0 ? "" : "|").append(WIDTHS[_random.nextInt(WIDTHS.length)]);
+        return sb.toString();
+    }
+
+    // </editor-fold>
+}
@@ -0,0 +1,280 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.projection.ProjectionRegistry;
+import org.openstreetmap.josm.gui.MapView;
+import org.openstreetmap.josm.gui.MapViewState;
+
+import java.awt.Point;
+import java.util.Arrays;
+
+/**
+ * Projects many coordinates to screen pixels at once.  The view transform is captured once from the
+ * MapViewState (the map view is just a scale and a translation of the projection), and coordinates
+ * are run through it in a plain loop over primitive arrays, which HotSpot can unroll and vectorize.
+ * Results go into per-thread buffers that are reused across frames instead of a Point per node.  Ways drawn every
+ * frame can keep their projected coordinates in a Cache, so their nodes don't have to be projected again either.
+ */
+public class BulkProjector {
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+    private static volatile BulkProjector _last = null;
+
+    private final MapViewState _state;
+    private final double _east0;
+    private final double _north0;
+    private final double _scale;
+    private double _dist100Pixel = Double.NaN;
+    private volatile ScreenBounds _realBounds;
+
+    private BulkProjector(MapViewState state) {
+        _state = state;
+        EastNorth topLeft = state.getForView(0, 0).getEastNorth();
+        _east0 = topLeft.east();
+        _north0 = topLeft.north();
+        _scale = state.getScale();
+    }
+
+    /**
+     * Gets a projector for the current state of the given MapView.  MapViewStates are immutable, so
+     * the projector is shared until the view is panned, zoomed or resized.
+     */
+    public static BulkProjector forView(MapView mv) {
+        MapViewState state = mv.getState();
+        BulkProjector last = _last;
+        if (last == null || last._state != state) {
+            last = new BulkProjector(state);
+            _last = last;
+        }
+        return last;
+    }
+
+    /**
+     * Same as mv.getDist100Pixel() (which measures between two new LatLons every call), worked out once per state.
+     */
+    public static double getDist100Pixel(MapView mv) {
+        BulkProjector projector = forView(mv);
+        if (Double.isNaN(projector._dist100Pixel)) projector._dist100Pixel = mv.getDist100Pixel();
+        return projector._dist100Pixel;
+    }
+
+    /**
+     * Screen pixels of the corners of mv.getRealBounds(), which markings are checked against before they're drawn.
+     * Worked out once per state instead of for every marking.
+     */
+    public static ScreenBounds getRealBounds(MapView mv) {
+        BulkProjector projector = forView(mv);
+        ScreenBounds bounds = projector._realBounds;
+        if (bounds == null) {
+            BBox bBox = mv.getRealBounds().toBBox();
+            projector._realBounds = bounds = new ScreenBounds(mv.getPoint(bBox.getTopLeft()), mv.getPoint(bBox.getBottomRight()));
+        }
+        return bounds;
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Kernels">
+
+    /**
+     * Projects n east/north pairs into screen pixels, the same as the (int) (mv.getPoint(...).getX() + 0.5) it
+     * replaced: MapView.getPoint's arithmetic and Math.round, then adding 0.5 and truncating.  That last step is a
+     * no-op on the screen but moves negative (off-screen) coordinates a pixel right or down, so this isn't the same as
+     * getPoint there.  It's kept so lines crossing the top and left edges are drawn exactly as before.
+     */
+    public void project(double[] east, double[] north, int n, int[] x, int[] y) {
+        final double e0 = _east0, n0 = _north0, scale = _scale;
+        for (int i = 0; i < n; i++) {
+            x[i] = (int) (Math.round((east[i] - e0) / scale) + 0.5);
+            y[i] = (int) (Math.round((n0 - north[i]) / scale) + 0.5);
+        }
+    }
+
+    /**
+     * Projects n east/north pairs into sub-pixel screen coordinates.
+     */
+    public void project(double[] east, double[] north, int n, float[] x, float[] y) {
+        final double e0 = _east0, n0 = _north0, scale = _scale;
+        for (int i = 0; i < n; i++) {
+            x[i] = (float) ((east[i] - e0) / scale);
+            y[i] = (float) ((n0 - north[i]) / scale);
+        }
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Convenience Methods">
+
+    /**
+     * Projects the nodes of a way into this thread's pooled buffers.
+     * @param w The way to project.
+     * @param indices The indices of the nodes to project (e.g. from PolylineSimplifier), or null for all nodes.
+     * @return The pooled buffers, valid until the next call to project on this thread.
+     */
+    public Buffers project(Way w, int[] indices) {
+        Buffers b = BUFFERS.get();
+        int n = indices == null ? w.getNodesCount() : indices.length;
+        b.ensureCapacity(n);
+        for (int i = 0; i < n; i++) {
+            EastNorth en = w.getNode(indices == null ? i : indices[i]).getEastNorth();
+            // Nodes without coordinates end up in the top left corner, same as MapView.getPoint does.
+            b.east[i] = en == null ? _east0 : en.east();
+            b.north[i] = en == null ? _north0 : en.north();
+        }
+        project(b.east, b.north, n, b.x, b.y);
+        b.size = n;
+        return b;
+    }
+
+    public Buffers project(Way w) {
+        return project(w, null);
+    }
+
+    /**
+     * Same as project(w, indices), from coordinates that were already projected.
+     */
+    public Buffers project(Coordinates c, int[] indices) {
+        Buffers b = BUFFERS.get();
+        int n = indices == null ? c.size : indices.length;
+        b.ensureCapacity(n);
+        for (int i = 0; i < n; i++) {
+            int j = indices == null ? i : indices[i];
+            b.east[i] = Double.isNaN(c.east[j]) ? _east0 : c.east[j];
+            b.north[i] = Double.isNaN(c.north[j]) ? _north0 : c.north[j];
+        }
+        project(b.east, b.north, n, b.x, b.y);
+        b.size = n;
+        return b;
+    }
+
+    // For the odd single coordinate that isn't part of a way.
+    public MapViewState.MapViewPoint project(LatLon ll) {
+        return _state.getPointFor(ll);
+    }
+
+    // </editor-fold>
+
+    public static final class ScreenBounds {
+        public final int left, top, right, bottom;
+
+        ScreenBounds(Point topLeft, Point bottomRight) {
+            left = topLeft.x;
+            top = topLeft.y;
+            right = bottomRight.x;
+            bottom = bottomRight.y;
+        }
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Projected Coordinates">
+
+    /**
+     * The east/north coordinates of a way's nodes (NaN for nodes without coordinates), projected once and kept.
+     * Checked against the nodes' coordinates and the current projection whenever it's updated, so it's redone
+     * instead of going stale when the way changes.
+     */
+    public static class Coordinates {
+        double[] lat = new double[0];
+        double[] lon = new double[0];
+        double[] east = new double[0];
+        double[] north = new double[0];
+        int size = -1;
+        private Object _projection;
+
+        // Makes these the coordinates of w, projecting it again only if it changed.
+        public Coordinates update(Way w) {
+            int n = w.getNodesCount();
+            Object projection = ProjectionRegistry.getProjection();
+            if (n == size && projection == _projection && matches(w)) return this;
+
+            if (lat.length < n) {
+                lat = new double[n];
+                lon = new double[n];
+                east = new double[n];
+                north = new double[n];
+            }
+            for (int i = 0; i < n; i++) {
+                Node node = w.getNode(i);
+                EastNorth en = node.getEastNorth();
+                lat[i] = en == null ? Double.NaN : node.lat();
+                lon[i] = en == null ? Double.NaN : node.lon();
+                east[i] = en == null ? Double.NaN : en.east();
+                north[i] = en == null ? Double.NaN : en.north();
+            }
+            size = n;
+            _projection = projection;
+            return this;
+        }
+
+        private boolean matches(Way w) {
+            for (int i = 0; i < size; i++) {
+                Node node = w.getNode(i);
+                if (Double.isNaN(lat[i])) {
+                    if (node.isLatLonKnown()) return false;
+                } else if (!node.isLatLonKnown() || node.lat() != lat[i] || node.lon() != lon[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public int size() { return size; }
+
+        public double east(int i) { return east[i]; }
+
+        public double north(int i) { return north[i]; }
+
+        void estimateFootprint(LaneMemory.Estimate e) {
+            e.object(5, 4);
+            for (int i = 0; i < 4; i++) e.array(lat.length, 8);
+        }
+    }
+
+    /**
+     * Coordinates of the ways an owner draws every frame, under small keys the owner chooses (like the index of
+     * the way in a list).  Only used while painting, on the EDT.
+     */
+    public static class Cache {
+        private Coordinates[] _ways = new Coordinates[0];
+
+        // Projects the given nodes of w (or all of them if indices is null) into this thread's pooled buffers.
+        public Buffers project(MapView mv, int key, Way w, int[] indices) {
+            return forView(mv).project(get(key, w), indices);
+        }
+
+        public Coordinates get(int key, Way w) {
+            if (key >= _ways.length) _ways = Arrays.copyOf(_ways, Math.max(key + 1, _ways.length * 2));
+            if (_ways[key] == null) _ways[key] = new Coordinates();
+            return _ways[key].update(w);
+        }
+
+        void estimateFootprint(LaneMemory.Estimate e) {
+            e.object(1, 0);
+            e.array(_ways.length, LaneMemory.REF);
+            for (Coordinates c : _ways) if (c != null) c.estimateFootprint(e);
+        }
+    }
+
+    // </editor-fold>
+
+    /**
+     * Reusable per-thread arrays.  x/y hold the projected pixels of the last call, with size valid entries.
+     */
+    public static class Buffers {
+        public int[] x = new int[64];
+        public int[] y = new int[64];
+        public int size = 0;
+        double[] east = new double[64];
+        double[] north = new double[64];
+
+        void ensureCapacity(int n) {
+            if (x.length >= n) return;
+            int capacity = Math.max(n, x.length*2);
+            x = new int[capacity];
+            y = new int[capacity];
+            east = new double[capacity];
+            north = new double[capacity];
+        }
+    }
+}
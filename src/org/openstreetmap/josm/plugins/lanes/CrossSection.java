@@ -0,0 +1,363 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The cross-section of a marked road: its road pieces from left to right, with their start/end widths and the
+ * distance from the centre of the left road edge to the centre of each piece, and where the way is placed in it.
+ * Piece widths only depend on the tags, so this is built once per MarkedRoadRenderer and everything else reads it in
+ * O(1).  WayGeometry builds one without road pieces, so the layout and placement rules only live here.
+ *
+ * Also has the widths of roads that aren't drawn lane by lane (UnmarkedRoadRenderer and UntaggedRoadRenderer).
+ */
+final class CrossSection {
+
+    // <editor-fold defaultstate="collapsed" desc="Piece Kinds">
+
+    static final int EDGE = 0;
+    static final int LANE = 1;
+    static final int DIVIDER = 2;
+
+    // </editor-fold>
+
+    // Gives the road piece for a place in the layout, or null if there's none (the renderer's lanes weren't all made).
+    interface Pieces {
+        RoadPiece get(int kind, int direction, int position);
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Variables">
+
+    private final RoadPiece[] _pieces; // Empty when built without pieces.
+    private final List<RoadPiece> _pieceList;
+
+    // Indexed by piece.
+    private final int[] _kind;
+    private final int[] _direction;
+    private final int[] _position;
+
+    // Indexed by piece, [0] is at the start of the way and [1] is at the end.
+    private final double[][] _widths = new double[2][];
+    private final double[][] _centres = new double[2][];
+    private final double[] _totalWidth = new double[2];
+
+    // </editor-fold>
+
+    // Without road pieces, for WayGeometry.
+    CrossSection(LaneProfile profile, boolean rightHand) {
+        this(profile, rightHand, null);
+    }
+
+    CrossSection(LaneProfile profile, boolean rightHand, Pieces pieces) {
+        List<int[]> layout = new ArrayList<>();
+        getLayout(layout, profile, rightHand);
+
+        List<RoadPiece> found = new ArrayList<>();
+        if (pieces != null) {
+            for (int i = 0; i < layout.size(); i++) {
+                int[] place = layout.get(i);
+                RoadPiece piece = pieces.get(place[0], place[1], place[2]);
+                if (piece == null) {
+                    layout.remove(i--);
+                } else {
+                    found.add(piece);
+                }
+            }
+        }
+        _pieces = found.toArray(new RoadPiece[0]);
+        _pieceList = Collections.unmodifiableList(Arrays.asList(_pieces));
+
+        int n = layout.size();
+        _kind = new int[n];
+        _direction = new int[n];
+        _position = new int[n];
+        for (int i = 0; i < n; i++) {
+            _kind[i] = layout.get(i)[0];
+            _direction[i] = layout.get(i)[1];
+            _position[i] = layout.get(i)[2];
+        }
+
+        for (int end = 0; end < 2; end++) {
+            boolean start = end == 0;
+            double[] widths = new double[n];
+            double[] centres = new double[n];
+            double total = -1 * Utils.RENDERING_WIDTH_DIVIDER; // To offset the shoulder width added to each side.
+            for (int i = 0; i < n; i++) {
+                widths[i] = _kind[i] == LANE ? profile.getRenderedLaneWidth(_direction[i], _position[i], start) :
+                        _kind[i] == DIVIDER ? profile.getRenderedDividerWidth(_direction[i], _position[i], start) :
+                        Utils.RENDERING_WIDTH_DIVIDER;
+                centres[i] = i == 0 ? 0 : centres[i-1] + widths[i-1]/2 + widths[i]/2;
+                total += widths[i];
+            }
+            _widths[end] = widths;
+            _centres[end] = centres;
+            _totalWidth[end] = total;
+        }
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Getters">
+
+    int size() { return _kind.length; }
+
+    // Null when built without pieces.
+    RoadPiece get(int i) { return i < _pieces.length ? _pieces[i] : null; }
+
+    // Pieces from left to right, unmodifiable.
+    List<RoadPiece> getPieces() { return _pieceList; }
+
+    // EDGE, LANE or DIVIDER.
+    int getKind(int i) { return _kind[i]; }
+
+    int getDirection(int i) { return _direction[i]; }
+
+    int getPosition(int i) { return _position[i]; }
+
+    double getWidth(int i, boolean start) { return _widths[start ? 0 : 1][i]; }
+
+    // Distance from the centre of the leftmost piece (the left road edge) to the centre of piece i.
+    double getDistanceFromLeft(int i, boolean start) { return _centres[start ? 0 : 1][i]; }
+
+    // Width of the whole road, same as MarkedRoadRenderer.getWidth.
+    double getTotalWidth(boolean start) { return _totalWidth[start ? 0 : 1]; }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Methods for the Layout">
+
+    // {kind, direction, position} of each piece from left to right: the left edge, the lanes on the left side with
+    //  the dividers between them, the centre lane or divider, the lanes on the right side and the right edge.
+    private static void getLayout(List<int[]> layout, LaneProfile profile, boolean rightHand) {
+        int numLanesBackward = profile.getNumLanes(-1);
+        int numLanesBothWays = profile.getNumLanes(0);
+
+        layout.add(new int[] {EDGE, rightHand ? -1 : 1, -1});
+        addLanes(layout, profile, rightHand ? -1 : 1);
+        // Oneway roads have no centre piece.  When the backward lanes aren't known there's only a centre lane.
+        if (numLanesBackward > 0 || (numLanesBackward < 0 && numLanesBothWays > 0)) {
+            layout.add(new int[] {numLanesBothWays > 0 ? LANE : DIVIDER, 0, 0});
+        }
+        addLanes(layout, profile, rightHand ? 1 : -1);
+        layout.add(new int[] {EDGE, rightHand ? 1 : -1, -1});
+    }
+
+    // Lanes in the direction and the dividers between them, from left to right.
+    private static void addLanes(List<int[]> layout, LaneProfile profile, int direction) {
+        int numLanes = profile.getNumLanes(direction);
+        for (int j = 0; j < numLanes; j++) {
+            int i = direction > 0 ? j : numLanes - 1 - j;
+            layout.add(new int[] {LANE, direction, i});
+            if (j != numLanes - 1) layout.add(new int[] {DIVIDER, direction, direction > 0 ? i : i - 1});
+        }
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Methods for Placement">
+
+    /**
+     * Distance from the centre of the left road edge to the way, from the placement tags.  Centred if there are
+     * none or they can't be parsed.
+     * @param oneway Same as Utils.isOneway.
+     */
+    double getOffsetToLeft(Map<String, String> tags, boolean oneway, boolean start) {
+        return getPlacement(getPlacementTag(tags, oneway, start), getPlacementTag(tags, oneway, !start), start, false);
+    }
+
+    /**
+     * How far to the left the end of the alignment is from the end of the way, when the placement moves from one
+     * lane to another.  Worked out as if every other lane had the default width, so it doesn't change with the
+     * width tags.  The offsets to the left at the end are then taken from the alignment, not the way.
+     */
+    double getAlignmentShift(Map<String, String> tags, boolean oneway) {
+        String start = getPlacementTag(tags, oneway, true);
+        String end = getPlacementTag(tags, oneway, false);
+        return getPlacement(end, start, false, true) - getPlacement(start, end, true, true);
+    }
+
+    // Placement value with the direction of the lane it refers to as a last character ('f', 'b' or 'm').
+    private static String getPlacementTag(Map<String, String> tags, boolean oneway, boolean start) {
+        String end = start ? ":start" : ":end";
+        if (tags.containsKey("placement" + end) && oneway) return tags.get("placement" + end) + "f";
+        if (tags.containsKey("placement:forward" + end)) return tags.get("placement:forward" + end) + "f";
+        if (tags.containsKey("placement:backward" + end)) return tags.get("placement:backward" + end) + "b";
+        if (tags.containsKey("placement:both_ways" + end)) return tags.get("placement:both_ways" + end) + "m";
+        if (tags.containsKey("placement") && oneway) return tags.get("placement") + "f";
+        if (tags.containsKey("placement:forward")) return tags.get("placement:forward") + "f";
+        if (tags.containsKey("placement:backward")) return tags.get("placement:backward") + "b";
+        if (tags.containsKey("placement:both_ways")) return tags.get("placement:both_ways") + "m";
+        return null;
+    }
+
+    private double getPlacement(String placement, String placementOther, boolean start, boolean ignoreWidthTags) {
+        double centred = getTotalWidth(start) / 2.0;
+        try {
+            int direction = placement.charAt(placement.length()-1) == 'f' ? 1 : placement.charAt(placement.length()-1) == 'b' ? -1 : 0;
+            placement = placement.substring(0, placement.length()-1);
+            int lane = Integer.parseInt(placement.split(":")[1]);
+            // Neither end is used if the other one can't be parsed.
+            if (placementOther != null) Integer.parseInt(placementOther.substring(0, placementOther.length()-1).split(":")[1]);
+
+            double offsetSoFar = 0;
+            boolean valid = false;
+
+            // For when placement is outside of the range of this road segment:
+            int minForward = -1;
+            int maxForward = -1;
+            int minBackward = -1;
+            int maxBackward = -1;
+
+            double minForwardOffset = Double.NaN;
+            double maxForwardOffset = Double.NaN;
+            double minBackwardOffset = Double.NaN;
+            double maxBackwardOffset = Double.NaN;
+
+            for (int i = 1; i < size(); i++) {
+                boolean correctLane = _position[i]+1 == lane && _direction[i] == direction && (direction == 0 || _kind[i] == LANE);
+
+                offsetSoFar += (ignoreWidthTags && !correctLane) ? getDefaultWidth(i-1)/2 : getWidth(i-1, start)/2;
+                offsetSoFar += (ignoreWidthTags && !correctLane) ? getDefaultWidth(i)/2 : getWidth(i, start)/2;
+
+                if (_kind[i] == LANE && _direction[i] == 1) {
+                    if (minForward == -1 || _position[minForward] > _position[i]) {
+                        minForward = i;
+                        minForwardOffset = offsetSoFar;
+                    }
+                    if (maxForward == -1 || _position[maxForward] < _position[i]) {
+                        maxForward = i;
+                        maxForwardOffset = offsetSoFar;
+                    }
+                }
+                if (_kind[i] == LANE && _direction[i] == -1) {
+                    if (minBackward == -1 || _position[minBackward] > _position[i]) {
+                        minBackward = i;
+                        minBackwardOffset = offsetSoFar;
+                    }
+                    if (maxBackward == -1 || _position[maxBackward] < _position[i]) {
+                        maxBackward = i;
+                        maxBackwardOffset = offsetSoFar;
+                    }
+                }
+
+                if (correctLane) {
+                    double halfWidth = getHalfWidth(i, start, ignoreWidthTags);
+                    if ((direction == 1 && placement.startsWith("left_of")) ||
+                            (direction == -1 && placement.startsWith("right_of"))) {
+                        offsetSoFar -= halfWidth;
+                    }
+                    if ((direction == 1 && placement.startsWith("right_of")) ||
+                            (direction == -1 && placement.startsWith("left_of"))) {
+                        offsetSoFar += halfWidth;
+                    }
+                    valid = true;
+                    break;
+                }
+            }
+
+            if (!valid && direction == 1) {
+                if (minForward == -1) return centred;
+                if (_position[minForward]+1 > lane) {
+                    int numLanesAway = _position[minForward] + 1 - lane;
+                    offsetSoFar = minForwardOffset - numLanesAway * Utils.WIDTH_LANES;
+
+                    if (placement.startsWith("left_of")) offsetSoFar -= getHalfWidth(minForward, start, ignoreWidthTags);
+                    if (placement.startsWith("right_of")) offsetSoFar += getHalfWidth(minForward, start, ignoreWidthTags);
+                }
+                if (_position[maxForward]+1 < lane) {
+                    int numLanesAway = _position[maxForward] + 1 - lane;
+                    offsetSoFar = maxForwardOffset - numLanesAway * Utils.WIDTH_LANES;
+
+                    if (placement.startsWith("left_of")) offsetSoFar -= getHalfWidth(maxForward, start, ignoreWidthTags);
+                    if (placement.startsWith("right_of")) offsetSoFar += getHalfWidth(maxForward, start, ignoreWidthTags);
+                }
+                valid = true;
+            }
+
+            if (!valid && direction == -1) {
+                if (minBackward == -1) return centred;
+                if (_position[minBackward]+1 > lane) {
+                    int numLanesAway = _position[minBackward] + 1 - lane;
+                    offsetSoFar = minBackwardOffset + numLanesAway * Utils.WIDTH_LANES;
+
+                    if (placement.startsWith("left_of")) offsetSoFar += getHalfWidth(minBackward, start, ignoreWidthTags);
+                    if (placement.startsWith("right_of")) offsetSoFar -= getHalfWidth(minBackward, start, ignoreWidthTags);
+                }
+                if (_position[maxBackward]+1 < lane) {
+                    int numLanesAway = _position[maxBackward] + 1 - lane;
+                    offsetSoFar = maxBackwardOffset + numLanesAway * Utils.WIDTH_LANES;
+
+                    if (placement.startsWith("left_of")) offsetSoFar -= getHalfWidth(maxBackward, start, ignoreWidthTags);
+                    if (placement.startsWith("right_of")) offsetSoFar += getHalfWidth(maxBackward, start, ignoreWidthTags);
+                }
+                valid = true;
+            }
+
+            return valid ? offsetSoFar : centred;
+        } catch (Exception e) {
+            return centred;
+        }
+    }
+
+    // Width of a lane or divider as rendered when the width tags are ignored.
+    private double getDefaultWidth(int i) {
+        return _kind[i] == LANE ? Utils.WIDTH_LANES - Utils.RENDERING_WIDTH_DIVIDER : Utils.RENDERING_WIDTH_DIVIDER;
+    }
+
+    // From the centre of a lane to the centre of the divider next to it.
+    private double getHalfWidth(int i, boolean start, boolean ignoreWidthTags) {
+        return Utils.RENDERING_WIDTH_DIVIDER / 2 + (ignoreWidthTags ? (Utils.WIDTH_LANES - Utils.RENDERING_WIDTH_DIVIDER)/2 :
+                getWidth(i, start) / 2);
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Widths of Roads Not Drawn Lane by Lane">
+
+    // Width of an unmarked road, from the width tags or the number of lanes.  Widths are parsed with LaneTagTokenizer
+    //  rather than Utils.parseWidth, so WayGeometry can use this without loading Utils and its icons.
+    static double getUnmarkedWidth(Map<String, String> tags, boolean oneway, boolean start) {
+        double defaultWidth = (oneway ? 1 : 2) * Utils.WIDTH_LANES;
+        try {
+            double width;
+            if (tags.containsKey("width")) {
+                width = LaneTagTokenizer.width(tags.get("width"));
+            } else if (tags.containsKey("width:start") && start) {
+                width = LaneTagTokenizer.width(tags.get("width:start"));
+            } else if (tags.containsKey("width:end") && !start) {
+                width = LaneTagTokenizer.width(tags.get("width:end"));
+            } else if (tags.containsKey("lanes:forward") && tags.containsKey("lanes:backward")) {
+                width = Utils.WIDTH_LANES * (Double.parseDouble(tags.get("lanes:forward")) + Double.parseDouble(tags.get("lanes:backward")));
+            } else if (tags.containsKey("lanes")) {
+                width = Utils.WIDTH_LANES * Double.parseDouble(tags.get("lanes"));
+            } else {
+                width = defaultWidth;
+            }
+            if (Double.isNaN(width)) width = defaultWidth; // Width that can't be parsed.
+            return width + Utils.RENDERING_WIDTH_DIVIDER;
+        } catch (Exception e) {
+            return defaultWidth + Utils.RENDERING_WIDTH_DIVIDER;
+        }
+    }
+
+    // Width of a road without lane tags, one lane each way.
+    static double getUntaggedWidth(boolean oneway) {
+        return Utils.WIDTH_LANES * (oneway ? 1 : 2) + Utils.RENDERING_WIDTH_DIVIDER;
+    }
+
+    // </editor-fold>
+
+    void estimateFootprint(LaneMemory.Estimate e) {
+        e.object(8, 0);
+        e.array(_pieces.length, LaneMemory.REF);
+        e.object(1, 0); // The unmodifiable list.
+        e.object(1, 0); // And the Arrays.asList it wraps.
+        for (int[] values : new int[][] {_kind, _direction, _position}) e.array(values.length, 4);
+        for (double[][] perEnd : new double[][][] {_widths, _centres}) {
+            e.array(2, LaneMemory.REF);
+            for (double[] values : perEnd) e.array(values.length, 8);
+        }
+        e.array(2, 8);
+    }
+}
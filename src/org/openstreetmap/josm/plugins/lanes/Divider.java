@@ -28,51 +28,7 @@ public class Divider extends RoadPiece {
     @Override
     public double getWidth(boolean start) {
         // Returns width of rendered component in meters, not width of actual lane divider.
-        double output = 0;
-        String laneSymbol = "\\|"; // This is what is used between divider widths to mark a lane.
-        try {
-            String value = "0";
-            if (_direction == 0) {
-                if (_way.hasTag("width:centre_divider:start") && start) {
-                    value = _way.getInterestingTags().get("width:centre_divider:start");
-                } else if (_way.hasTag("width:centre_divider:end") && !start) {
-                    value = _way.getInterestingTags().get("width:centre_divider:end");
-                } else if (_way.hasTag("width:centre_divider")) {
-                    value = _way.getInterestingTags().get("width:centre_divider");
-                } else {
-                    value = "0";
-                }
-                output = Utils.parseWidth(value);
-            }
-            if (_direction == 1) {
-                if (_way.hasTag("width:dividers:forward:start") && start) {
-                    value = _way.getInterestingTags().get("width:dividers:forward:start").split(laneSymbol)[_position];
-                } else if (_way.hasTag("width:dividers:forward:end") && !start) {
-                    value = _way.getInterestingTags().get("width:dividers:forward:end").split(laneSymbol)[_position];
-                } else if (_way.hasTag("width:dividers:forward")) {
-                    value = _way.getInterestingTags().get("width:dividers:forward").split(laneSymbol)[_position];
-                } else if (_way.hasTag("width:dividers:start") && _way.isOneway() == 1 && start) {
-                    value = _way.getInterestingTags().get("width:dividers:start").split(laneSymbol)[_position];
-                } else if (_way.hasTag("width:dividers:end") && _way.isOneway() == 1 && !start) {
-                    value = _way.getInterestingTags().get("width:dividers:end").split(laneSymbol)[_position];
-                } else if (_way.hasTag("width:dividers") && _way.isOneway() == 1) {
-                    value = _way.getInterestingTags().get("width:dividers").split(laneSymbol)[_position];
-                }
-                output = Utils.parseWidth(value);
-            }
-            if (_direction == -1) {
-                if (_way.hasTag("width:dividers:backward:start") && start) {
-                    value = _way.getInterestingTags().get("width:dividers:backward:start").split(laneSymbol)[_position];
-                } else if (_way.hasTag("width:dividers:backward:end") && !start) {
-                    value = _way.getInterestingTags().get("width:dividers:backward:end").split(laneSymbol)[_position];
-                } else if (_way.hasTag("width:dividers:backward")) {
-                    value = _way.getInterestingTags().get("width:dividers:backward").split(laneSymbol)[_position];
-                }
-                output = Utils.parseWidth(value);
-            }
-        } catch (Exception ignored) {}
-        if (Double.isNaN(output)) output = 0;
-        return output + Utils.RENDERING_WIDTH_DIVIDER;
+        return _parent._profile.getRenderedDividerWidth(_direction, _position, start);
     }
 
     @Override
@@ -210,7 +166,7 @@ public class Divider extends RoadPiece {
     private void getDividerType() {
         // Define cd and rh to make the logic statements more readable:
         boolean cd = _direction == 0;
-        boolean rh = Utils.isRightHand(_way);
+        boolean rh = _parent.getRegion().isRightHand();
 
         // Get change values of the right side and left side lanes:
         boolean changeFromLeft = extractChange((Lane) _left, !cd || !rh);
@@ -233,7 +189,7 @@ public class Divider extends RoadPiece {
     private void setDividerType(Utils.DividerType type) {
         // Define cd and rh to make the logic statements more readable:
         boolean cd = _direction == 0;
-        boolean rh = Utils.isRightHand(_way);
+        boolean rh = _parent.getRegion().isRightHand();
 
         // Convert DividerType to change from left/right:
         boolean changeFromLeft = type == Utils.DividerType.DASHED ||
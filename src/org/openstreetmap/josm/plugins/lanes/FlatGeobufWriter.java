@@ -0,0 +1,511 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/*
+ * FlatGeobufWriter - writes features to a FlatGeobuf file (version 3) with a packed Hilbert R-tree, for
+ * LaneGeometryExporter.
+ *
+ * -> FlatGeobuf puts the header and the spatial index before the features, and the index can't be built until every
+ *    feature is known.  So features are encoded as they come in (from any thread) and appended to a spool file next
+ *    to the output, and only their bounding boxes and places in the spool are kept in memory.  finish() sorts them
+ *    along a Hilbert curve, writes the header and the R-tree, and copies the features in from the spool in that order.
+ * -> Coordinates are WGS 84 longitudes and latitudes.  Features can have different geometry types, so each one says
+ *    which it is and the header has Unknown.
+ * -> The FlatBuffers encoding is hand-written, like the protobuf in VectorTileGenerator, since FlatGeobuf only needs
+ *    tables, strings and vectors.  Field ids and types are from header.fbs and feature.fbs of the FlatGeobuf spec,
+ *    and the R-tree is laid out the same way as its packedrtree.cpp.
+ */
+
+final class FlatGeobufWriter implements Closeable {
+
+    // <editor-fold defaultstate="collapsed" desc="Constants">
+
+    // GeometryType
+    static final int POINT = 1, LINESTRING = 2, POLYGON = 3;
+
+    // ColumnType
+    static final int BOOL = 2, INT = 5, LONG = 7, DOUBLE = 10, STRING = 11;
+
+    private static final byte[] MAGIC = {0x66, 0x67, 0x62, 0x03, 0x66, 0x67, 0x62, 0x00}; // "fgb", version 3.
+    private static final int NODE_SIZE = 16; // Children per R-tree node, FlatGeobuf's default.
+    private static final int NODE_BYTES = 40; // minX, minY, maxX, maxY and offset.
+    private static final int HILBERT_MAX = (1 << 16) - 1;
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Variables">
+
+    private final File _file;
+    private final File _spoolFile;
+    private final OutputStream _spool;
+    private final String _name;
+    private final String[] _columns;
+    private final int[] _columnTypes;
+    private final Map<String, Integer> _columnIndex = new HashMap<>();
+
+    // Per feature, in the order they were added.  Guarded by this.
+    private double[] _minX = new double[1024], _minY = new double[1024], _maxX = new double[1024], _maxY = new double[1024];
+    private long[] _spoolOffset = new long[1024];
+    private int[] _length = new int[1024];
+    private int _count = 0;
+    private long _spoolSize = 0;
+
+    // </editor-fold>
+
+    /**
+     * @param columns Names of every property features can have.
+     * @param columnTypes ColumnType of each of them (BOOL, INT, LONG, DOUBLE or STRING).
+     */
+    FlatGeobufWriter(File file, String name, String[] columns, int[] columnTypes) throws IOException {
+        _file = file;
+        _spoolFile = new File(file.getPath() + ".tmp");
+        _name = name;
+        _columns = columns;
+        _columnTypes = columnTypes;
+        for (int i = 0; i < columns.length; i++) _columnIndex.put(columns[i], i);
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) parent.mkdirs();
+        _spool = new BufferedOutputStream(new FileOutputStream(_spoolFile), 1 << 16);
+    }
+
+    /**
+     * Adds a feature.  Can be called from several threads at once, the encoding is done in the caller's thread.
+     * @param type POINT, LINESTRING or POLYGON (a single closed ring).
+     * @param properties Values of some of the columns, in any order.
+     */
+    void add(int type, double[] lat, double[] lon, int n, Map<String, Object> properties) throws IOException {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        double[] xy = new double[2*n];
+        for (int i = 0; i < n; i++) {
+            xy[2*i] = lon[i];
+            xy[2*i + 1] = lat[i];
+            minX = Math.min(minX, lon[i]);
+            minY = Math.min(minY, lat[i]);
+            maxX = Math.max(maxX, lon[i]);
+            maxY = Math.max(maxY, lat[i]);
+        }
+
+        Table geometry = new Table().addDoubles(1, xy).addByte(6, type);
+        Table feature = new Table().addTable(0, geometry);
+        if (!properties.isEmpty()) feature.addBytes(1, encodeProperties(properties));
+        byte[] bytes = new FlatBufferWriter().finish(feature);
+
+        synchronized (this) {
+            if (_count == _length.length) grow();
+            _minX[_count] = minX;
+            _minY[_count] = minY;
+            _maxX[_count] = maxX;
+            _maxY[_count] = maxY;
+            _spoolOffset[_count] = _spoolSize;
+            _length[_count] = bytes.length;
+            _count++;
+            _spool.write(bytes);
+            _spoolSize += bytes.length;
+        }
+    }
+
+    /**
+     * Writes the file: the header, the R-tree and the features.  Nothing can be added afterwards.
+     */
+    synchronized void finish() throws IOException {
+        _spool.close();
+        int n = _count;
+
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, _minX[i]);
+            minY = Math.min(minY, _minY[i]);
+            maxX = Math.max(maxX, _maxX[i]);
+            maxY = Math.max(maxY, _maxY[i]);
+        }
+
+        // Features along the Hilbert curve of their centres, same as FlatGeobuf (which goes from the high end).
+        int[] hilbert = new int[n];
+        double width = maxX - minX, height = maxY - minY;
+        for (int i = 0; i < n; i++) {
+            int x = width == 0 ? 0 : (int) Math.floor(HILBERT_MAX * ((_minX[i] + _maxX[i]) / 2 - minX) / width);
+            int y = height == 0 ? 0 : (int) Math.floor(HILBERT_MAX * ((_minY[i] + _maxY[i]) / 2 - minY) / height);
+            hilbert[i] = hilbert(x, y);
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> hilbert[a] != hilbert[b] ? Integer.compareUnsigned(hilbert[b], hilbert[a]) :
+                Long.compare(_spoolOffset[a], _spoolOffset[b]));
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(_file), 1 << 16);
+             RandomAccessFile spool = new RandomAccessFile(_spoolFile, "r")) {
+            out.write(MAGIC);
+            out.write(getHeader(n, new double[] {minX, minY, maxX, maxY}));
+            if (n > 0) writeIndex(out, order);
+
+            byte[] buffer = new byte[1 << 12];
+            for (int i : order) {
+                if (_length[i] > buffer.length) buffer = new byte[Math.max(_length[i], buffer.length * 2)];
+                spool.seek(_spoolOffset[i]);
+                spool.readFully(buffer, 0, _length[i]);
+                out.write(buffer, 0, _length[i]);
+            }
+        }
+        _spoolFile.delete();
+    }
+
+    // Drops the spool file, for when the export failed before finish().
+    @Override
+    public void close() throws IOException {
+        _spool.close();
+        _spoolFile.delete();
+    }
+
+    private void grow() {
+        int capacity = _length.length * 2;
+        _minX = Arrays.copyOf(_minX, capacity);
+        _minY = Arrays.copyOf(_minY, capacity);
+        _maxX = Arrays.copyOf(_maxX, capacity);
+        _maxY = Arrays.copyOf(_maxY, capacity);
+        _spoolOffset = Arrays.copyOf(_spoolOffset, capacity);
+        _length = Arrays.copyOf(_length, capacity);
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Header and Properties">
+
+    private byte[] getHeader(int n, double[] envelope) {
+        List<Table> columns = new ArrayList<>();
+        for (int i = 0; i < _columns.length; i++) columns.add(new Table().addString(0, _columns[i]).addByte(1, _columnTypes[i]));
+        Table crs = new Table().addString(0, "EPSG").addInt(1, 4326);
+
+        Table header = new Table().addString(0, _name);
+        if (n > 0) header.addDoubles(1, envelope);
+        header.addTables(7, columns).addLong(8, n).addShort(9, n > 0 ? NODE_SIZE : 0).addTable(10, crs);
+        return new FlatBufferWriter().finish(header);
+    }
+
+    // Each property is the column's index as a ushort, then the value: little endian numbers, a byte for booleans,
+    //  and a uint length before the UTF-8 bytes of strings.
+    private byte[] encodeProperties(Map<String, Object> properties) {
+        FlatBufferWriter out = new FlatBufferWriter();
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            Integer column = _columnIndex.get(property.getKey());
+            if (column == null) throw new IllegalArgumentException("No column for " + property.getKey());
+            Object value = property.getValue();
+            out.putShort(column);
+            switch (_columnTypes[column]) {
+                case BOOL: out.putByte((Boolean) value ? 1 : 0); break;
+                case INT: out.putInt(((Number) value).intValue()); break;
+                case LONG: out.putLong(((Number) value).longValue()); break;
+                case DOUBLE: out.putLong(Double.doubleToLongBits(((Number) value).doubleValue())); break;
+                default:
+                    byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+                    out.putInt(bytes.length);
+                    out.putBytes(bytes);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="R-Tree">
+
+    // Packed R-tree with the features (in the given order) as leaves.  Nodes are stored root first, level by level,
+    //  so the leaves come last.  A leaf's offset is where its feature starts after the index, and any other node's
+    //  offset is the index of its first child.
+    private void writeIndex(OutputStream out, Integer[] order) throws IOException {
+        int n = order.length;
+        List<Integer> levelSizes = new ArrayList<>();
+        levelSizes.add(n);
+        int numNodes = n;
+        int size = n;
+        do {
+            size = (size + NODE_SIZE - 1) / NODE_SIZE;
+            levelSizes.add(size);
+            numNodes += size;
+        } while (size != 1);
+        int[] levelStart = new int[levelSizes.size()];
+        int end = numNodes;
+        for (int i = 0; i < levelSizes.size(); i++) {
+            end -= levelSizes.get(i);
+            levelStart[i] = end;
+        }
+
+        double[] minX = new double[numNodes], minY = new double[numNodes], maxX = new double[numNodes], maxY = new double[numNodes];
+        long[] offset = new long[numNodes];
+        long featureOffset = 0;
+        for (int i = 0; i < n; i++) {
+            int node = levelStart[0] + i, feature = order[i];
+            minX[node] = _minX[feature];
+            minY[node] = _minY[feature];
+            maxX[node] = _maxX[feature];
+            maxY[node] = _maxY[feature];
+            offset[node] = featureOffset;
+            featureOffset += _length[feature];
+        }
+        for (int level = 0; level < levelStart.length - 1; level++) {
+            int pos = levelStart[level], levelEnd = pos + levelSizes.get(level);
+            int parent = levelStart[level + 1];
+            while (pos < levelEnd) {
+                minX[parent] = minY[parent] = Double.MAX_VALUE;
+                maxX[parent] = maxY[parent] = -Double.MAX_VALUE;
+                offset[parent] = pos;
+                for (int j = 0; j < NODE_SIZE && pos < levelEnd; j++, pos++) {
+                    minX[parent] = Math.min(minX[parent], minX[pos]);
+                    minY[parent] = Math.min(minY[parent], minY[pos]);
+                    maxX[parent] = Math.max(maxX[parent], maxX[pos]);
+                    maxY[parent] = Math.max(maxY[parent], maxY[pos]);
+                }
+                parent++;
+            }
+        }
+
+        FlatBufferWriter node = new FlatBufferWriter();
+        for (int i = 0; i < numNodes; i++) {
+            node.clear();
+            node.putLong(Double.doubleToLongBits(minX[i]));
+            node.putLong(Double.doubleToLongBits(minY[i]));
+            node.putLong(Double.doubleToLongBits(maxX[i]));
+            node.putLong(Double.doubleToLongBits(maxY[i]));
+            node.putLong(offset[i]);
+            node.writeTo(out);
+        }
+    }
+
+    // Position of (x, y) along a Hilbert curve over 16 bit coordinates.  Same as hilbert() in FlatGeobuf's
+    //  packedrtree.cpp, which is from https://github.com/rawrunprotected/hilbert_curves.
+    static int hilbert(int x, int y) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int A = a | (b >>> 1);
+        int B = (a >>> 1) ^ a;
+        int C = ((c >>> 1) ^ (b & (d >>> 1))) ^ c;
+        int D = ((a & (c >>> 1)) ^ (d >>> 1)) ^ d;
+
+        a = A; b = B; c = C; d = D;
+        A = (a & (a >>> 2)) ^ (b & (b >>> 2));
+        B = (a & (b >>> 2)) ^ (b & ((a ^ b) >>> 2));
+        C ^= (a & (c >>> 2)) ^ (b & (d >>> 2));
+        D ^= (b & (c >>> 2)) ^ ((a ^ b) & (d >>> 2));
+
+        a = A; b = B; c = C; d = D;
+        A = (a & (a >>> 4)) ^ (b & (b >>> 4));
+        B = (a & (b >>> 4)) ^ (b & ((a ^ b) >>> 4));
+        C ^= (a & (c >>> 4)) ^ (b & (d >>> 4));
+        D ^= (b & (c >>> 4)) ^ ((a ^ b) & (d >>> 4));
+
+        a = A; b = B; c = C; d = D;
+        C ^= (a & (c >>> 8)) ^ (b & (d >>> 8));
+        D ^= (b & (c >>> 8)) ^ ((a ^ b) & (d >>> 8));
+
+        a = C ^ (C >>> 1);
+        b = D ^ (D >>> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+        return (interleave(i1) << 1) | interleave(i0);
+    }
+
+    // Spreads the low 16 bits out to the even bits.
+    private static int interleave(int i) {
+        i = (i | (i << 8)) & 0x00FF00FF;
+        i = (i | (i << 4)) & 0x0F0F0F0F;
+        i = (i | (i << 2)) & 0x33333333;
+        return (i | (i << 1)) & 0x55555555;
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="FlatBuffers">
+
+    // A table to be written, its fields by id in the schema.  Scalars are stored inline, everything else is referred to.
+    private static final class Table {
+        private final List<Field> _fields = new ArrayList<>();
+
+        Table addByte(int id, int value) { return add(id, 1, value, null); }
+
+        Table addShort(int id, int value) { return add(id, 2, value, null); }
+
+        Table addInt(int id, int value) { return add(id, 4, value, null); }
+
+        Table addLong(int id, long value) { return add(id, 8, value, null); }
+
+        Table addString(int id, String value) { return add(id, 4, 0, value); }
+
+        Table addDoubles(int id, double[] values) { return add(id, 4, 0, values); }
+
+        Table addBytes(int id, byte[] values) { return add(id, 4, 0, values); }
+
+        Table addTable(int id, Table value) { return add(id, 4, 0, value); }
+
+        Table addTables(int id, List<Table> values) { return add(id, 4, 0, values.toArray(new Table[0])); }
+
+        private Table add(int id, int size, long value, Object reference) {
+            _fields.add(new Field(id, size, value, reference));
+            return this;
+        }
+    }
+
+    private static final class Field {
+        final int id;
+        final int size; // Inline size, 4 for references.
+        final long value;
+        final Object reference; // String, double[], byte[], Table or Table[], null for scalars.
+
+        Field(int id, int size, long value, Object reference) {
+            this.id = id;
+            this.size = size;
+            this.value = value;
+            this.reference = reference;
+        }
+    }
+
+    // Just enough of FlatBuffers for FlatGeobuf.  Buffers are written front to back: each table has its vtable just
+    //  before it and what it refers to after it, so every uoffset points forwards as it has to.  Alignment is from the
+    //  start of the size prefix, like a size-prefixed buffer from the FlatBuffers library.
+    private static final class FlatBufferWriter {
+        private byte[] _buffer = new byte[256];
+        private int _size = 0;
+
+        // Writes the root table as a size-prefixed buffer.
+        byte[] finish(Table root) {
+            putInt(0); // Size, after the prefix.
+            putInt(0); // Offset to the root table.
+            int table = writeTable(root);
+            setInt(4, table - 4);
+            setInt(0, _size - 4);
+            return toByteArray();
+        }
+
+        private int writeTable(Table table) {
+            // Biggest fields first after the offset to the vtable, so only 8 byte fields can need padding.
+            List<Field> fields = new ArrayList<>(table._fields);
+            fields.sort((a, b) -> Integer.compare(b.size, a.size));
+            int slots = 0, inlineSize = 4, alignment = 4;
+            int[] offsets = new int[fields.size()];
+            for (int i = 0; i < fields.size(); i++) {
+                Field field = fields.get(i);
+                slots = Math.max(slots, field.id + 1);
+                inlineSize = align(inlineSize, field.size);
+                offsets[i] = inlineSize;
+                inlineSize += field.size;
+                alignment = Math.max(alignment, field.size);
+            }
+
+            pad(2);
+            int vtable = _size;
+            int[] slotOffsets = new int[slots];
+            for (int i = 0; i < fields.size(); i++) slotOffsets[fields.get(i).id] = offsets[i];
+            putShort(4 + 2*slots);
+            putShort(inlineSize);
+            for (int slotOffset : slotOffsets) putShort(slotOffset);
+
+            pad(alignment);
+            int start = _size;
+            ensure(inlineSize);
+            Arrays.fill(_buffer, start, start + inlineSize, (byte) 0);
+            _size = start + inlineSize;
+            setInt(start, start - vtable); // soffset, the vtable is at start minus this.
+            for (int i = 0; i < fields.size(); i++) {
+                Field field = fields.get(i);
+                if (field.reference == null) {
+                    for (int j = 0; j < field.size; j++) _buffer[start + offsets[i] + j] = (byte) (field.value >>> (8*j));
+                }
+            }
+            for (int i = 0; i < fields.size(); i++) {
+                Field field = fields.get(i);
+                if (field.reference == null) continue;
+                int at = start + offsets[i];
+                setInt(at, writeReference(field.reference) - at);
+            }
+            return start;
+        }
+
+        private int writeReference(Object reference) {
+            if (reference instanceof Table) return writeTable((Table) reference);
+
+            if (reference instanceof double[]) {
+                double[] values = (double[]) reference;
+                pad(4);
+                if ((_size + 4) % 8 != 0) putInt(0); // The doubles themselves are 8 byte aligned.
+                int start = _size;
+                putInt(values.length);
+                for (double value : values) putLong(Double.doubleToLongBits(value));
+                return start;
+            }
+
+            pad(4);
+            int start = _size;
+            if (reference instanceof String || reference instanceof byte[]) {
+                byte[] bytes = reference instanceof String ? ((String) reference).getBytes(StandardCharsets.UTF_8) : (byte[]) reference;
+                putInt(bytes.length);
+                putBytes(bytes);
+                if (reference instanceof String) putByte(0);
+            } else {
+                Table[] tables = (Table[]) reference;
+                putInt(tables.length);
+                int first = _size;
+                for (int i = 0; i < tables.length; i++) putInt(0);
+                for (int i = 0; i < tables.length; i++) {
+                    int at = first + 4*i;
+                    setInt(at, writeTable(tables[i]) - at);
+                }
+            }
+            return start;
+        }
+
+        private static int align(int position, int alignment) {
+            return (position + alignment - 1) / alignment * alignment;
+        }
+
+        private void pad(int alignment) {
+            while (_size % alignment != 0) putByte(0);
+        }
+
+        void putByte(int value) {
+            ensure(1);
+            _buffer[_size++] = (byte) value;
+        }
+
+        void putShort(int value) {
+            putByte(value);
+            putByte(value >>> 8);
+        }
+
+        void putInt(int value) {
+            ensure(4);
+            setInt(_size, value);
+            _size += 4;
+        }
+
+        void putLong(long value) {
+            putInt((int) value);
+            putInt((int) (value >>> 32));
+        }
+
+        void putBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, _buffer, _size, bytes.length);
+            _size += bytes.length;
+        }
+
+        private void setInt(int position, int value) {
+            for (int i = 0; i < 4; i++) _buffer[position + i] = (byte) (value >>> (8*i));
+        }
+
+        void clear() { _size = 0; }
+
+        void writeTo(OutputStream out) throws IOException { out.write(_buffer, 0, _size); }
+
+        byte[] toByteArray() { return Arrays.copyOf(_buffer, _size); }
+
+        private void ensure(int extra) {
+            if (_size + extra > _buffer.length) _buffer = Arrays.copyOf(_buffer, Math.max(_buffer.length * 2, _size + extra));
+        }
+    }
+
+    // </editor-fold>
+}
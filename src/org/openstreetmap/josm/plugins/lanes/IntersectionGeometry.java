@@ -0,0 +1,132 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A node where 3 or more roads meet (see RoadNodeCounts.isIntersection), with the roads going out of it.  The
+ * headless counterpart of NodeIntersectionRenderer, built by OsmStreamReader once every road at the node is read.
+ */
+public final class IntersectionGeometry {
+
+    /**
+     * One road going out of the intersection.  Left and right are as seen looking out of the intersection along it.
+     */
+    public static final class Arm {
+        private final long _wayId;
+        private final int _node; // Index of the intersection node in the way.
+        private final boolean _forward; // Whether the arm goes in the direction of the way.
+        private final double _bearing;
+        private final double _leftWidth;
+        private final double _rightWidth;
+
+        Arm(long wayId, int node, boolean forward, double bearing, double leftWidth, double rightWidth) {
+            _wayId = wayId;
+            _node = node;
+            _forward = forward;
+            _bearing = bearing;
+            _leftWidth = leftWidth;
+            _rightWidth = rightWidth;
+        }
+
+        // Arms of a way at one of its nodes, with the widths of the road at that node.
+        static List<Arm> of(WayGeometry way, int node) {
+            List<Arm> output = new ArrayList<>(2);
+            double fraction = way.getLength() > 0 ? way.getDistanceIntoWay(node) / way.getLength() : 0;
+            double left = way.getSideWidth(fraction, true);
+            double right = way.getSideWidth(fraction, false);
+            if (node != way.getNodesCount() - 1) {
+                output.add(new Arm(way.getId(), node, true, way.getBearing(node, true), left, right));
+            }
+            if (node != 0) {
+                output.add(new Arm(way.getId(), node, false, way.getBearing(node, false), right, left));
+            }
+            return output;
+        }
+
+        public long getWayId() { return _wayId; }
+
+        public int getNode() { return _node; }
+
+        public boolean isForward() { return _forward; }
+
+        // Radians clockwise from north, NaN if the way has no length on this side of the node.
+        public double getBearing() { return _bearing; }
+
+        public double getLeftWidth() { return _leftWidth; }
+
+        public double getRightWidth() { return _rightWidth; }
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Variables">
+
+    private final long _nodeId;
+    private final double _lat;
+    private final double _lon;
+    private final List<Arm> _arms; // Clockwise from north.
+    private final boolean _complete;
+
+    // </editor-fold>
+
+    IntersectionGeometry(long nodeId, double lat, double lon, List<Arm> arms, boolean complete) {
+        _nodeId = nodeId;
+        _lat = lat;
+        _lon = lon;
+        List<Arm> sorted = new ArrayList<>(arms.size());
+        for (Arm arm : arms) if (!Double.isNaN(arm._bearing)) sorted.add(arm);
+        sorted.sort(Comparator.comparingDouble(Arm::getBearing));
+        _arms = Collections.unmodifiableList(sorted);
+        _complete = complete;
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Getters">
+
+    public long getNodeId() { return _nodeId; }
+
+    public double getLat() { return _lat; }
+
+    public double getLon() { return _lon; }
+
+    // Roads going out of the node, clockwise from north.
+    public List<Arm> getArms() { return _arms; }
+
+    // Same as IntersectionRenderer._isValid, which needs 3 or more roads going out.
+    public boolean isValid() { return _arms.size() >= 3; }
+
+    // False if some of the roads at the node weren't read (e.g. their nodes were missing from the file).
+    public boolean isComplete() { return _complete; }
+
+    // </editor-fold>
+
+    /**
+     * A simple outline of the intersection: the corners of each road where it meets the intersection, clockwise.
+     * Every road is cut back by the widest road at the node, so the corners clear each other.
+     * @return {latitudes, longitudes} as a closed ring, or null if the intersection isn't valid.
+     */
+    public double[][] getOutline() {
+        if (!isValid()) return null;
+
+        double setback = 0;
+        for (Arm arm : _arms) setback = Math.max(setback, Math.max(arm._leftWidth, arm._rightWidth));
+
+        double metersPerDegreeLon = 111319.5 * Math.cos(Math.toRadians(_lat));
+        int n = _arms.size();
+        double[][] output = new double[2][2*n + 1];
+        for (int i = 0; i < n; i++) {
+            Arm arm = _arms.get(i);
+            double x = Math.sin(arm._bearing) * setback;
+            double y = Math.cos(arm._bearing) * setback;
+
+            // Left is a quarter turn anticlockwise of the bearing, right is a quarter turn clockwise.
+            output[0][2*i] = _lat + (y + Math.cos(arm._bearing - Math.PI/2) * arm._leftWidth) / 111319.5;
+            output[1][2*i] = _lon + (x + Math.sin(arm._bearing - Math.PI/2) * arm._leftWidth) / metersPerDegreeLon;
+            output[0][2*i + 1] = _lat + (y + Math.cos(arm._bearing + Math.PI/2) * arm._rightWidth) / 111319.5;
+            output[1][2*i + 1] = _lon + (x + Math.sin(arm._bearing + Math.PI/2) * arm._rightWidth) / metersPerDegreeLon;
+        }
+        output[0][2*n] = output[0][0];
+        output[1][2*n] = output[1][0];
+        return output;
+    }
+}
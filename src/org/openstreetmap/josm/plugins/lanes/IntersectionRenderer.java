@@ -1,8 +1,10 @@
 package org.openstreetmap.josm.plugins.lanes;
 
+import org.openstreetmap.josm.data.coor.EastNorth;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.projection.ProjectionRegistry;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.MapView;
 import org.openstreetmap.josm.gui.util.GuiHelper;
@@ -10,7 +12,9 @@ import org.openstreetmap.josm.gui.util.GuiHelper;
 import javax.swing.*;
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 public abstract class IntersectionRenderer {
     protected MapView _mv;
@@ -36,6 +40,13 @@ public abstract class IntersectionRenderer {
     protected List<Double> _rightBearings;
     protected List<Double> _leftBearings;
     protected List<Way> _roadMarkings;
+    protected final PolylineSimplifier.Cache _simplified = new PolylineSimplifier.Cache();
+    // Projected coordinates of the outline and road markings, and the marking stroke for the last zoom drawn at.
+    //  Only used while painting, on the EDT.
+    private final BulkProjector.Coordinates _projectedOutline = new BulkProjector.Coordinates();
+    private final BulkProjector.Cache _projectedMarkings = new BulkProjector.Cache();
+    private Stroke _markingStroke;
+    private double _markingStrokeDist100Pixel = Double.NaN;
     protected List<Node> _ordering;
     protected List<Node> _vertextOrdering;
 
@@ -43,6 +54,12 @@ public abstract class IntersectionRenderer {
 
     protected boolean _isValid = true;
 
+    private volatile long _footprint = -1; // Estimated bytes held, worked out once per layout, see getFootprint().
+    private volatile EastNorth _posEastNorth; // getPos() projected, see getEastNorth().
+    private volatile Object _posProjection;
+
+    private static final Stroke DEBUG_STROKE = new BasicStroke(10);
+
     protected IntersectionRenderer(MapView mv, LaneMappingMode m) {
         _mv = mv;
         _m = m;
@@ -52,6 +69,17 @@ public abstract class IntersectionRenderer {
     abstract List<WayVector> waysClockwiseOrder();
 
     protected void createIntersectionLayout() {
+        LaneEvents.IntersectionLayout event = LaneEvents.intersectionLayout();
+        try {
+            layOutIntersection();
+        } finally {
+            _footprint = -1;
+            _posEastNorth = null;
+            if (event != null) event.end(this);
+        }
+    }
+
+    private void layOutIntersection() {
         _wayVectors = waysClockwiseOrder();
         _perimeter = getPerimeter();
         _intersects = new ArrayList<>();
@@ -59,6 +87,7 @@ public abstract class IntersectionRenderer {
         _oneSideDistances = new ArrayList<>();
         _setBacks = new ArrayList<>();
         _roadMarkings = new ArrayList<>();
+        _simplified.clear();
         _backbones = new ArrayList<>();
         _leftBackbones = new ArrayList<>();
         _rightBackbones = new ArrayList<>();
@@ -355,39 +384,28 @@ public abstract class IntersectionRenderer {
     public void render(Graphics2D g) {
         try {
             // Fill in asphalt.
-            int[] xPoints = new int[_outline.getNodesCount()];
-            int[] yPoints = new int[_outline.getNodesCount()];
-            for (int i = 0; i < _outline.getNodesCount(); i++) {
-                xPoints[i] = (int) (_mv.getPoint(_outline.getNode(i).getCoor()).getX() + 0.5);
-                yPoints[i] = (int) (_mv.getPoint(_outline.getNode(i).getCoor()).getY() + 0.5);
-            }
+            BulkProjector projector = BulkProjector.forView(_mv);
+            BulkProjector.Buffers points = projector.project(_projectedOutline.update(_outline), null);
             g.setColor(Utils.DEFAULT_ASPHALT_COLOR);
-            g.fillPolygon(xPoints, yPoints, xPoints.length);
+            g.fillPolygon(points.x, points.y, points.size);
 
             // Draw road lines:
-            double pixelsPerMeter = 100 / _mv.getDist100Pixel();
-            for (Way w : _roadMarkings) {
+            for (int m = 0; m < _roadMarkings.size(); m++) {
+                Way w = _roadMarkings.get(m);
                 if (w == null) continue;
-                // To reduce jitter, ensure no more than one vertex per 10 pixels or so. TODO use better simplification
-                int everyNth = Math.max((int) (w.getNodesCount() / (Math.max(w.getLength() * pixelsPerMeter / 7, 10)) + 1.5), 1);
-                xPoints = new int[w.getNodesCount()];
-                yPoints = new int[w.getNodesCount()];
-                int num = 0;
+                // To reduce jitter and vertex count, only draw the vertices that are visible at this zoom.
+                points = projector.project(_projectedMarkings.get(m, w), _simplified.get(m, w, _mv));
                 int topLefts = 0;
-                for (int i = 0; i < w.getNodesCount(); i++) {
-                    if (i % everyNth != 0 && i != w.getNodesCount() - 1) continue;
-                    xPoints[num] = (int) (_mv.getPoint(w.getNode(i).getCoor()).getX() + 0.5);
-                    yPoints[num] = (int) (_mv.getPoint(w.getNode(i).getCoor()).getY() + 0.5);
-                    if (xPoints[num] == 0 && yPoints[num] == 0) topLefts++;
-                    num++;
+                for (int i = 0; i < points.size; i++) {
+                    if (points.x[i] == 0 && points.y[i] == 0) topLefts++;
                 }
                 g.setColor(Utils.DEFAULT_UNTAGGED_ROADEDGE_COLOR);
-                g.setStroke(GuiHelper.getCustomizedStroke((12.5 / _mv.getDist100Pixel() + 1) + ""));
+                g.setStroke(getMarkingStroke());
                 if (topLefts < 2)
-                    g.drawPolyline(xPoints, yPoints, num); // Render road line unless it would shoot to the top left point of the screen.
+                    g.drawPolyline(points.x, points.y, points.size); // Render road line unless it would shoot to the top left point of the screen.
             }
 
-            g.setStroke(new BasicStroke(10));
+            g.setStroke(DEBUG_STROKE);
             g.setColor(Color.GREEN);
 
 //        // DRAW PERIMETER
@@ -405,12 +423,11 @@ public abstract class IntersectionRenderer {
 //            g.drawPolyline(xPoints2, yPoints2, xPoints2.length);
 //        }
 
-        g.setStroke(new BasicStroke(10));
+        g.setStroke(DEBUG_STROKE);
         g.setColor(Color.RED);
         for (int i = 0; i < _bruh.size(); i++) {
-            int x = (int) (_mv.getPoint(_bruh.get(i)).getX() + 0.5);
-            int y = (int) (_mv.getPoint(_bruh.get(i)).getY() + 0.5);
-            g.drawLine(x, y, x, y);
+            Point p = _mv.getPoint(_bruh.get(i));
+            g.drawLine(p.x, p.y, p.x, p.y);
         }
 
 //            if (_ordering != null) {
@@ -430,11 +447,20 @@ public abstract class IntersectionRenderer {
 //            }
 
             // THESE TWO LINES ARE FOR REMOVING THE WHITE BOX AROUND THE SCREEN... DON'T DELETE THESE
-            g.setColor(new Color(0, 0, 0, 0));
-            g.setStroke(GuiHelper.getCustomizedStroke("0"));
+            g.setColor(Utils.TRANSPARENT);
+            g.setStroke(Utils.RESET_STROKE);
         } catch (Exception ignored) {}
     }
 
+    private Stroke getMarkingStroke() {
+        double dist100Pixel = BulkProjector.getDist100Pixel(_mv);
+        if (_markingStroke == null || dist100Pixel != _markingStrokeDist100Pixel) {
+            _markingStroke = GuiHelper.getCustomizedStroke((12.5 / dist100Pixel + 1) + "");
+            _markingStrokeDist100Pixel = dist100Pixel;
+        }
+        return _markingStroke;
+    }
+
     public void updateAlignment() {
         // One of the child way's tags was just changed.  Update shape:
         try {
@@ -470,6 +496,34 @@ public abstract class IntersectionRenderer {
 
     abstract LatLon getPos();
 
+    // getPos() projected, for LaneMappingMode to check whether the intersection is on screen without a new
+    //  EastNorth every frame.  Kept until the intersection is laid out again or the projection changes.
+    EastNorth getEastNorth() {
+        EastNorth en = _posEastNorth;
+        Object projection = ProjectionRegistry.getProjection();
+        if (en == null || _posProjection != projection) {
+            en = new Node(getPos()).getEastNorth();
+            _posProjection = projection;
+            _posEastNorth = en;
+        }
+        return en;
+    }
+
+    // Unique IDs of the ways of the roads going out, in clockwise order without repeats.  Empty before the
+    //  intersection is laid out.
+    Set<Long> getArmWayIds() {
+        Set<Long> ids = new LinkedHashSet<>();
+        List<WayVector> wayVectors = _wayVectors;
+        if (wayVectors != null) for (WayVector wv : wayVectors) ids.add(wv.getParent().getUniqueId());
+        return ids;
+    }
+
+    // Number of roads going out, 0 before the intersection is laid out.
+    int getNumArms() {
+        List<WayVector> wayVectors = _wayVectors;
+        return wayVectors == null ? 0 : wayVectors.size();
+    }
+
     public Way glue(Way a, Way b, double extension) {
         // Glue first half of a to second half of b.  Split into halves at intersect.
         double[] distances = new double[2];
@@ -510,6 +564,57 @@ public abstract class IntersectionRenderer {
         return output;
     }
 
+    // Estimated bytes this intersection holds, see LaneMemory.  None of it can be evicted, since laying out an
+    //  intersection again also changes the rendering gaps of its roads.  Only changes with the layout, so it's kept.
+    long getFootprint() {
+        long footprint = _footprint;
+        if (footprint < 0) {
+            LaneMemory.Estimate e = new LaneMemory.Estimate();
+            estimateFootprint(e);
+            footprint = e.getTotal();
+            _footprint = footprint;
+        }
+        return footprint;
+    }
+
+    void estimateFootprint(LaneMemory.Estimate e) {
+        e.in(LaneModeStats.Footprint.INTERSECTIONS);
+        e.object(27, 2);
+        e.way(_outline);
+        e.way(_lowResOutline);
+        e.latLons(_intersects);
+        e.ways(_edges);
+        e.boxed(_oneSideDistances);
+        e.ways(_setBacks);
+        if (_perimeter != null) {
+            e.list(_perimeter);
+            for (List<IntersectionGraphSegment> side : _perimeter) {
+                e.list(side);
+                for (IntersectionGraphSegment segment : side) {
+                    e.object(1, 0);
+                    e.list(segment.wayVectors());
+                }
+            }
+        }
+        e.list(_wayVectors);
+        if (_wayVectors != null) for (int i = 0; i < _wayVectors.size(); i++) e.object(1, 8);
+        e.ways(_backbones);
+        e.ways(_rightBackbones);
+        e.ways(_leftBackbones);
+        e.ways(_crossSections);
+        e.list(_toBeTrimmed);
+        e.latLons(_rightPoints);
+        e.latLons(_leftPoints);
+        e.boxed(_rightBearings);
+        e.boxed(_leftBearings);
+        e.ways(_roadMarkings);
+        _simplified.estimateFootprint(e);
+        _projectedOutline.estimateFootprint(e);
+        _projectedMarkings.estimateFootprint(e);
+        e.list(_ordering);
+        e.list(_vertextOrdering);
+        e.latLons(_bruh);
+    }
 }
 
 
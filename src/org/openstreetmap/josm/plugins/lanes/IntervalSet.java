@@ -0,0 +1,80 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An immutable, sorted set of disjoint intervals over primitive arrays.  Used by RoadRenderer for the
+ * parts of a road that are rendered (i.e. not covered by an intersection).  Changes produce a new set
+ * with a new version, so readers can hold on to a set without any locking.
+ */
+public final class IntervalSet {
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final double[] _starts;
+    private final double[] _ends;
+    private final long _version;
+
+    private IntervalSet(double[] starts, double[] ends) {
+        _starts = starts;
+        _ends = ends;
+        _version = VERSIONS.incrementAndGet();
+    }
+
+    public static IntervalSet of(double start, double end) {
+        return new IntervalSet(new double[] {start}, new double[] {end});
+    }
+
+    public int size() { return _starts.length; }
+
+    public double getStart(int i) { return _starts[i]; }
+
+    public double getEnd(int i) { return _ends[i]; }
+
+    // Unique for every set, so it can be used to check whether cached data is still current.
+    public long getVersion() { return _version; }
+
+    /**
+     * Removes [from, to] from every interval, splitting intervals that contain it.
+     * @return The resulting set, or this set if nothing changed.
+     */
+    public IntervalSet subtract(double from, double to) {
+        double min = Math.min(from, to);
+        double max = Math.max(from, to);
+
+        double[] starts = new double[_starts.length + 1];
+        double[] ends = new double[_starts.length + 1];
+        int n = 0;
+        boolean changed = false;
+        for (int i = 0; i < _starts.length; i++) {
+            double start = _starts[i];
+            double end = _ends[i];
+            if (max <= start || min >= end) { // Doesn't overlap, keep as is.
+                starts[n] = start;
+                ends[n++] = end;
+                continue;
+            }
+            changed = true;
+            if (min > start) { // Part before the gap.
+                starts[n] = start;
+                ends[n++] = min;
+            }
+            if (max < end) { // Part after the gap.
+                starts[n] = max;
+                ends[n++] = end;
+            }
+        }
+        if (!changed) return this;
+        return new IntervalSet(Arrays.copyOf(starts, n), Arrays.copyOf(ends, n));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder output = new StringBuilder("v" + _version + " {");
+        for (int i = 0; i < _starts.length; i++) {
+            output.append(i == 0 ? "" : ", ").append('[').append(_starts[i]).append(", ").append(_ends[i]).append(']');
+        }
+        return output.append('}').toString();
+    }
+}
@@ -1,14 +1,11 @@
 package org.openstreetmap.josm.plugins.lanes;
 
 import org.openstreetmap.josm.data.coor.LatLon;
-import org.openstreetmap.josm.data.osm.BBox;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.gui.MapView;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.util.*;
-import java.util.List;
 
 /*
  * Lane - stores information about a single lane in a MarkedRoadRenderer.
@@ -30,32 +27,7 @@ public class Lane extends RoadPiece {
 
     @Override
     public double getWidth(boolean start) {
-        String widthTag = getWidthTag(start);
-        double width = -1;
-        double lanes = 1;
-
-        if (widthTag != null && widthTag.equals("")) widthTag = null;
-
-        if (widthTag != null && widthTag.endsWith(" total")) {
-            widthTag = widthTag.substring(0, widthTag.length() - 6);
-            lanes = _parent._forwardLanes.size() + _parent._backwardLanes.size();
-        }
-
-        try {
-            width = Utils.parseWidth(widthTag);
-        } catch (Exception e) {
-            widthTag = null;
-        }
-
-        if (widthTag == null) {
-            if (_direction == 0) {
-                return Utils.WIDTH_LANES + Utils.RENDERING_WIDTH_DIVIDER;
-            } else {
-                return Utils.WIDTH_LANES - Utils.RENDERING_WIDTH_DIVIDER;
-            }
-        }
-
-        return width / lanes + (_direction == 0 ? 1 : -1) * Utils.RENDERING_WIDTH_DIVIDER;
+        return _parent._profile.getRenderedLaneWidth(_direction, _position, start);
     }
 
     @Override
@@ -80,35 +52,8 @@ public class Lane extends RoadPiece {
 
 
     public String getChange() {
-        String output = "";
-
-        // Try extracting the change value from tags.  If the tag format is unreadable, return position based change instead.
-        try {
-            if (_direction == 1) {
-                if (_way.hasTag("change:lanes:forward")) {
-                    output = splitPos(_way.get("change:lanes:forward"), _position);
-                }
-                if (_way.hasTag("change:lanes") && Utils.isOneway(_way)) {
-                    output = splitPos(_way.get("change:lanes"), _position);
-                }
-                if (_way.hasTag("change:forward")) {
-                    output = _way.get("change:forward");
-                }
-                if (_way.hasTag("change")) {
-                    output = _way.get("change");
-                }
-            } else if (_direction == -1) {
-                if (_way.hasTag("change:lanes:backward")) {
-                    output = splitPos(_way.get("change:lanes:backward"), _position);
-                }
-                if (_way.hasTag("change:backward")) {
-                    output = _way.get("change:backward");
-                }
-                if (_way.hasTag("change")) {
-                    output = _way.get("change");
-                }
-            }
-        } catch (Exception ignored) {}
+        // Change value from tags.  If the tag format is unreadable, the position based change is used instead.
+        String output = _parent._profile.getChange(_direction, _position);
 
         // If the local change value has been overriden, fallback on that instead.
         if (change != null) output = change;
@@ -134,131 +79,27 @@ public class Lane extends RoadPiece {
     }
 
     public String getTurn() {
-        try {
-            if (_direction == 1) {
-                if (_way.hasTag("turn:lanes:forward")) {
-                    return splitPos(_way.get("turn:lanes:forward"), _position);
-                }
-                if (_way.hasTag("turn:lanes") && Utils.isOneway(_way)) {
-                    return splitPos(_way.get("turn:lanes"), _position);
-                }
-                if (_way.hasTag("turn:forward")) {
-                    return _way.get("turn:forward");
-                }
-                if (_way.hasTag("turn")) {
-                    return _way.get("turn");
-                }
-            } else if (_direction == -1) {
-                if (_way.hasTag("turn:lanes:backward")) {
-                    return splitPos(_way.get("turn:lanes:backward"), _position);
-                }
-                if (_way.hasTag("turn:backward")) {
-                    return _way.get("turn:backward");
-                }
-                if (_way.hasTag("turn")) {
-                    return _way.get("turn");
-                }
-            } else if (_direction == 0) {
-                if (_way.hasTag("turn:lanes:both_ways")) {
-                    return splitPos(_way.get("turn:lanes:both_ways"), 0);
-                }
-                if (_way.hasTag("turn:both_ways")) {
-                    return _way.get("turn:both_ways");
-                }
-                if (_way.hasTag("turn")) {
-                    return _way.get("turn");
-                }
-            }
-        } catch (Exception ignored) {}
-        return null;
+        return _parent._profile.getTurn(_direction, _position);
     }
 
-    public String getWidthTag(boolean start) {
-        String output = "";
-        if (_direction == 1) {
-            if (start && _way.hasTag("width:lanes:forward:start")) {
-                output = splitPos(_way.get("width:lanes:forward:start"), _position);
-            }
-            if (output.equals("") && !start && _way.hasTag("width:lanes:forward:end")) {
-                output = splitPos(_way.get("width:lanes:forward:end"), _position);
-            }
-            if (output.equals("") && _way.hasTag("width:lanes:forward")) {
-                output = splitPos(_way.get("width:lanes:forward"), _position);
-            }
-
-            if (output.equals("") && start && _way.hasTag("width:lanes:start") && Utils.isOneway(_way)) {
-                output = splitPos(_way.get("width:lanes:start"), _position);
-            }
-            if (output.equals("") && !start && _way.hasTag("width:lanes:end") && Utils.isOneway(_way)) {
-                output = splitPos(_way.get("width:lanes:end"), _position);
-            }
-            if (output.equals("") && _way.hasTag("width:lanes") && Utils.isOneway(_way)) {
-                output = splitPos(_way.get("width:lanes"), _position);
-            }
-        } else if (_direction == -1) {
-            if (start && _way.hasTag("width:lanes:backward:start")) {
-                output = splitPos(_way.get("width:lanes:backward:start"), _position);
-            }
-            if (output.equals("") && !start && _way.hasTag("width:lanes:backward:end")) {
-                output = splitPos(_way.get("width:lanes:backward:end"), _position);
-            }
-            if (output.equals("") && _way.hasTag("width:lanes:backward")) {
-                output = splitPos(_way.get("width:lanes:backward"), _position);
-            }
-        } else if (_direction == 0) {
-            if (start && _way.hasTag("width:lanes:both_ways:start")) {
-                output = splitPos(_way.get("width:lanes:both_ways:start"), _position);
-            }
-            if (output.equals("") && !start && _way.hasTag("width:lanes:both_ways:end")) {
-                output = splitPos(_way.get("width:lanes:both_ways:end"), _position);
-            }
-            if (output.equals("") && _way.hasTag("width:lanes:both_ways")) {
-                output = splitPos(_way.get("width:lanes:both_ways"), _position);
-            }
-        }
-
-        if (output.equals("")) {
-            if (start && _way.hasTag("width:start")) {
-                output = _way.get("width:start") + " total";
-            } else if (_way.hasTag("width:end")) {
-                output = _way.get("width:end") + " total";
-            } else if (_way.hasTag("width")) {
-                output = _way.get("width") + " total";
-            }
-        }
-
-        return output.equals("") ? null : output;
-    }
-
-    private String splitPos(String str, int pos) {
-        StringBuilder output = new StringBuilder();
-        int bars = 0;
-        for (char c : str.toCharArray()) {
-            if (c == '|') {
-                bars++;
-            } else if (bars == pos) {
-                output.append(c);
-            } else if (bars > pos) {
-                break;
-            }
-        }
-        return output.toString();
+    public int getTurnMask() {
+        return _parent._profile.getTurnMask(_direction, _position);
     }
 
     private void renderTurnMarkings(Graphics2D g) {
         if (_mv.getScale() > 0.5) return; // Don't render turn lane markings when the map is too zoomed out
 
         try {
-            String turn = getTurn();
+            int turn = getTurnMask();
 
-            if (turn == null) return;
+            if (turn == 0) return;
 
-            for (int h = 0; h < _parent.getAlignments().size(); h++) {
+            RoadRenderer.AlignmentParts parts = _parent.getAlignmentParts();
+            for (int h = 0; h < parts.size(); h++) {
                 // This runs for each sub part of a road (each segment)
-                Way parentAlignment = _parent.getAlignments().get(h);
                 double alignmentLen = _parent.getAlignment().getLength();
-                double swt = Math.max(_parent.startPoints.get(h), 0)/_parent.getAlignment().getLength();
-                double ewt = Math.min(_parent.endPoints.get(h), alignmentLen) / alignmentLen;
+                double swt = Math.max(parts.start(h), 0)/alignmentLen;
+                double ewt = Math.min(parts.end(h), alignmentLen) / alignmentLen;
                 double offsetStart = swt*_offsetEnd + (1-swt)*_offsetStart;
                 double offsetEnd = ewt*_offsetEnd + (1-ewt)*_offsetStart;
                 double widthStart = swt*getWidth(false) + (1-swt)*getWidth(true);
@@ -266,9 +107,9 @@ public class Lane extends RoadPiece {
 
                 int numDrawn = 0;
                 double distSoFar = 0;
-                Way lanePos = Utils.getParallel(parentAlignment, offsetStart, offsetEnd, false,
+                Way lanePos = parts.getParallel(h, offsetStart, offsetEnd,
                         h==0 ? _parent.otherStartAngle : Double.NaN,
-                        h==_parent.getAlignments().size()-1 ? _parent.otherEndAngle : Double.NaN);
+                        h==parts.size()-1 ? _parent.otherEndAngle : Double.NaN);
                 for (int i = 0; i < lanePos.getNodesCount() - 1; i++) {
                     double distThisTime = lanePos.getNode(i).getCoor().greatCircleDistance(lanePos.getNode(i + 1).getCoor());
                     double angle = lanePos.getNode(i).getCoor().bearing(lanePos.getNode(i + 1).getCoor());
@@ -311,33 +152,32 @@ public class Lane extends RoadPiece {
         } catch (Exception ignored) {} // Just don't render the turn markings if they can't be rendered.
     }
 
-    private void drawTurnMarkingsAt(String turn, Graphics2D g, int x, int y, double width, double rotationRadians) {
+    private void drawTurnMarkingsAt(int turn, Graphics2D g, int x, int y, double width, double rotationRadians) {
         // Ensure that this road marking is within 30 ft of the map before rendering.
-        BBox bBox = _mv.getRealBounds().toBBox();
-        int outside = (int) (width/_mv.getDist100Pixel());
-        if ((x < _mv.getPoint(bBox.getTopLeft()).x - outside) || (x > _mv.getPoint(bBox.getBottomRight()).x + outside) ||
-                (y < _mv.getPoint(bBox.getTopLeft()).y - outside) || (y > _mv.getPoint(bBox.getBottomRight()).y + outside)) return;
+        BulkProjector.ScreenBounds bounds = BulkProjector.getRealBounds(_mv);
+        double dist100Pixel = BulkProjector.getDist100Pixel(_mv);
+        int outside = (int) (width/dist100Pixel);
+        if ((x < bounds.left - outside) || (x > bounds.right + outside) ||
+                (y < bounds.top - outside) || (y > bounds.bottom + outside)) return;
 
-        int offset = (int) (width * 50 / _mv.getDist100Pixel());
+        int offset = (int) (width * 50 / dist100Pixel);
         x -= offset;
         y -= offset;
 
-        List<String> turns = new ArrayList<>();
-        Collections.addAll(turns, turn.split(";"));
         boolean lr = _mv.getScale() > 0.2;
-        if (turns.contains("left")) drawImageAt(g, lr ? Utils.lr_left : Utils.left, x, y, width, rotationRadians);
-        if (turns.contains("right")) drawImageAt(g, lr ? Utils.lr_right : Utils.right, x, y, width, rotationRadians);
-        if (turns.contains("slight_left")) drawImageAt(g, lr ? Utils.lr_slightLeft : Utils.slightLeft, x, y, width, rotationRadians);
-        if (turns.contains("slight_right")) drawImageAt(g, lr ? Utils.lr_slightRight : Utils.slightRight, x, y, width, rotationRadians);
-        if (turns.contains("through")) drawImageAt(g, lr ? Utils.lr_through : Utils.through, x, y, width, rotationRadians);
-        if (turns.contains("merge_to_left")) drawImageAt(g, lr ? Utils.lr_mergeLeft : Utils.mergeLeft, x, y, width, rotationRadians);
-        if (turns.contains("merge_to_right")) drawImageAt(g, lr ? Utils.lr_mergeRight : Utils.mergeRight, x, y, width, rotationRadians);
-        if (turns.contains("reverse")) drawImageAt(g, Utils.isRightHand(_way) ? (lr ? Utils.lr_uTurnLeft : Utils.uTurnLeft) :
+        if ((turn & LaneProfile.TURN_LEFT) != 0) drawImageAt(g, lr ? Utils.lr_left : Utils.left, x, y, width, rotationRadians);
+        if ((turn & LaneProfile.TURN_RIGHT) != 0) drawImageAt(g, lr ? Utils.lr_right : Utils.right, x, y, width, rotationRadians);
+        if ((turn & LaneProfile.TURN_SLIGHT_LEFT) != 0) drawImageAt(g, lr ? Utils.lr_slightLeft : Utils.slightLeft, x, y, width, rotationRadians);
+        if ((turn & LaneProfile.TURN_SLIGHT_RIGHT) != 0) drawImageAt(g, lr ? Utils.lr_slightRight : Utils.slightRight, x, y, width, rotationRadians);
+        if ((turn & LaneProfile.TURN_THROUGH) != 0) drawImageAt(g, lr ? Utils.lr_through : Utils.through, x, y, width, rotationRadians);
+        if ((turn & LaneProfile.TURN_MERGE_TO_LEFT) != 0) drawImageAt(g, lr ? Utils.lr_mergeLeft : Utils.mergeLeft, x, y, width, rotationRadians);
+        if ((turn & LaneProfile.TURN_MERGE_TO_RIGHT) != 0) drawImageAt(g, lr ? Utils.lr_mergeRight : Utils.mergeRight, x, y, width, rotationRadians);
+        if ((turn & LaneProfile.TURN_REVERSE) != 0) drawImageAt(g, _parent.getRegion().isRightHand() ? (lr ? Utils.lr_uTurnLeft : Utils.uTurnLeft) :
                 (lr ? Utils.lr_uTurnRight : Utils.uTurnRight), x, y, width, rotationRadians);
     }
 
     private void drawImageAt(Graphics2D g, Image image, int x, int y, double width, double rotationRadians) {
-        int size = (int) (width * 100 / _mv.getDist100Pixel()) + 1;
+        int size = (int) (width * 100 / BulkProjector.getDist100Pixel(_mv)) + 1;
         g.rotate(rotationRadians, x+size/2, y+size/2);
         g.drawImage(image, x, y, size, size, null); //rotate(toBufferedImage(image), rotationRadians)
         g.rotate(-rotationRadians, x+size/2, y+size/2);
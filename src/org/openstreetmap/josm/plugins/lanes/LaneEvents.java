@@ -0,0 +1,272 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/*
+ * LaneEvents - Java Flight Recorder events for the lane mode's builds and paints.
+ *
+ * -> Each event is timed from when it's started to end(), and says which ways or nodes it was about, so a slow build
+ *    or frame in a recording can be traced back to the roads and junctions behind it.
+ * -> They're under JOSM / Lanes.  To record, start JOSM with -XX:StartFlightRecording=filename=lanes.jfr and open
+ *    the file in JDK Mission Control.  Per road and per junction events are only kept if they took over 1 ms, unless
+ *    the recording's settings say otherwise.
+ * -> Older Java 8 runtimes don't have JFR, so the starting methods return null there (and when nothing is being
+ *    recorded), and the event classes are never loaded.
+ */
+
+final class LaneEvents {
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    private LaneEvents() {}
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Starting Events">
+
+    static RoadRenderers roadRenderers() {
+        if (!AVAILABLE) return null;
+        RoadRenderers event = new RoadRenderers();
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    static RoadAlignment roadAlignment() {
+        if (!AVAILABLE) return null;
+        RoadAlignment event = new RoadAlignment();
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    static Intersections intersections() {
+        if (!AVAILABLE) return null;
+        Intersections event = new Intersections();
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    // Takes the node IDs now, since laying out the group empties it.
+    static MultiIntersection multiIntersection(List<NodeIntersectionRenderer> group) {
+        if (!AVAILABLE) return null;
+        MultiIntersection event = new MultiIntersection();
+        if (!event.isEnabled()) return null;
+        List<Long> nodeIds = new ArrayList<>();
+        for (NodeIntersectionRenderer n : group) nodeIds.add(n.getNode().getUniqueId());
+        event.nodeIds = join(nodeIds);
+        event.nodes = nodeIds.size();
+        event.begin();
+        return event;
+    }
+
+    static IntersectionLayout intersectionLayout() {
+        if (!AVAILABLE) return null;
+        IntersectionLayout event = new IntersectionLayout();
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    static Paint paint() {
+        if (!AVAILABLE) return null;
+        Paint event = new Paint();
+        if (!event.isEnabled()) return null;
+        event.begin();
+        return event;
+    }
+
+    // JFR has no array fields, so lists of IDs are comma separated.
+    private static String join(Collection<Long> ids) {
+        StringBuilder sb = new StringBuilder();
+        for (long id : ids) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(id);
+        }
+        return sb.toString();
+    }
+
+    private static String getNodeIds(IntersectionRenderer intersection) {
+        if (intersection instanceof NodeIntersectionRenderer) {
+            return String.valueOf(((NodeIntersectionRenderer) intersection).getNode().getUniqueId());
+        } else if (intersection instanceof MultiIntersectionRenderer) {
+            return join(((MultiIntersectionRenderer) intersection).getNodeIntersections());
+        }
+        return "";
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Build Events">
+
+    @Name("org.openstreetmap.josm.plugins.lanes.RoadRenderers")
+    @Label("Build Road Renderers")
+    @Category({"JOSM", "Lanes"})
+    @Description("Building and aligning the road renderers for every way")
+    @StackTrace(false)
+    static final class RoadRenderers extends Event {
+        @Label("Ways") int ways;
+        @Label("Roads Built") int roads;
+        @Label("Roads Failed") int failed;
+
+        void end(int ways, LaneModeStats.Build build) {
+            end();
+            if (!shouldCommit()) return;
+            this.ways = ways;
+            roads = build.getRoadsBuilt();
+            failed = build.getRoadsFailed();
+            commit();
+        }
+    }
+
+    @Name("org.openstreetmap.josm.plugins.lanes.RoadAlignment")
+    @Label("Road Alignment")
+    @Category({"JOSM", "Lanes"})
+    @Description("Matching one road's end angles to the roads it meets")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class RoadAlignment extends Event {
+        @Label("Way ID") long wayId;
+        @Label("Nodes") int nodes;
+
+        void end(RoadRenderer road) {
+            end();
+            if (!shouldCommit()) return;
+            wayId = road.getWay().getUniqueId();
+            nodes = road.getWay().getNodesCount();
+            commit();
+        }
+    }
+
+    @Name("org.openstreetmap.josm.plugins.lanes.Intersections")
+    @Label("Build Intersections")
+    @Category({"JOSM", "Lanes"})
+    @Description("Finding, merging and laying out every intersection")
+    @StackTrace(false)
+    static final class Intersections extends Event {
+        @Label("Node Intersections") int nodeIntersections;
+        @Label("Node Intersections Merged") int merged;
+        @Label("Intersections Built") int intersections;
+        @Label("Intersections Failed") int failed;
+
+        void end(LaneModeStats.Build build) {
+            end();
+            if (!shouldCommit()) return;
+            nodeIntersections = build.getNodeIntersections();
+            merged = build.getIntersectionsMerged();
+            intersections = build.getIntersectionsBuilt();
+            failed = build.getIntersectionsFailed();
+            commit();
+        }
+    }
+
+    @Name("org.openstreetmap.josm.plugins.lanes.MultiIntersection")
+    @Label("Multi Intersection")
+    @Category({"JOSM", "Lanes"})
+    @Description("Laying out one group of overlapping node intersections, which can split into several intersections")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class MultiIntersection extends Event {
+        @Label("Node IDs") String nodeIds;
+        @Label("Nodes") int nodes;
+        @Label("Intersections Built") int intersections;
+
+        void end(int intersections) {
+            end();
+            if (!shouldCommit()) return;
+            this.intersections = intersections;
+            commit();
+        }
+    }
+
+    @Name("org.openstreetmap.josm.plugins.lanes.IntersectionLayout")
+    @Label("Intersection Layout")
+    @Category({"JOSM", "Lanes"})
+    @Description("Working out the outline and markings of one intersection")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class IntersectionLayout extends Event {
+        @Label("Kind") String kind;
+        @Label("Node IDs") String nodeIds;
+        @Label("Way IDs") String wayIds;
+        @Label("Roads Going Out") int arms;
+        @Label("Valid") boolean valid;
+
+        void end(IntersectionRenderer intersection) {
+            end();
+            if (!shouldCommit()) return;
+            kind = intersection.getClass().getSimpleName();
+            nodeIds = getNodeIds(intersection);
+            wayIds = join(intersection.getArmWayIds());
+            arms = intersection.getNumArms();
+            valid = intersection._isValid;
+            commit();
+        }
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Paint Events">
+
+    @Name("org.openstreetmap.josm.plugins.lanes.Paint")
+    @Label("Lane Mode Paint")
+    @Category({"JOSM", "Lanes"})
+    @Description("One paint of the lane mode, including the build if the renderers had to be rebuilt first")
+    @StackTrace(false)
+    static final class Paint extends Event {
+        @Label("Scale") @Description("Meters per pixel") double scale;
+        @Label("Rebuilt") boolean rebuilt;
+        @Label("Roads Drawn") int roads;
+        @Label("Intersections Drawn") int intersections;
+        @Label("Failures") int failures;
+        @Label("Slowest Road Way ID") long slowestWayId;
+        @Label("Slowest Road Time") @Timespan(Timespan.NANOSECONDS) long slowestWayTime;
+        @Label("Slowest Intersection Node IDs") String slowestIntersection;
+        @Label("Slowest Intersection Time") @Timespan(Timespan.NANOSECONDS) long slowestIntersectionTime;
+
+        // Called after drawing each renderer, to find the slowest.
+        void road(RoadRenderer road, long nanos) {
+            if (nanos <= slowestWayTime) return;
+            slowestWayTime = nanos;
+            slowestWayId = road.getWay().getUniqueId();
+        }
+
+        void intersection(IntersectionRenderer intersection, long nanos) {
+            if (nanos <= slowestIntersectionTime) return;
+            slowestIntersectionTime = nanos;
+            slowestIntersection = getNodeIds(intersection);
+        }
+
+        void end(double scale, boolean rebuilt, int roads, int intersections, int failures) {
+            end();
+            if (!shouldCommit()) return;
+            this.scale = scale;
+            this.rebuilt = rebuilt;
+            this.roads = roads;
+            this.intersections = intersections;
+            this.failures = failures;
+            commit();
+        }
+    }
+
+    // </editor-fold>
+}
@@ -0,0 +1,353 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * LaneGeometryExporter - writes the lane geometry of a whole .osm file as GeoJSON and FlatGeobuf, for QA and
+ * visualization tools.
+ *
+ * -> Roads and intersections come from OsmStreamReader, so the geometry matches what LaneMappingMode draws: lane
+ *    outlines, divider and road edge lines, turn arrow positions and intersection outlines.
+ * -> Features are split into web mercator tiles and written as GeoJSON text sequences (RFC 8142), one file per tile
+ *    at [output]/[zoom]/[x]/[y].geojsons.  Each feature goes in the tile the centre of its bounding box is in.  Each
+ *    tile is only buffered until it has a few KB, then appended to its file, so whole cities can be exported in
+ *    little memory.  Tiles are filled in parallel by the reader's threads.
+ * -> [output]/index.json lists every tile with its feature count and the bounding box of its features, which can
+ *    reach past the tile for features that cross into other tiles.
+ * -> [output]/lanes.fgb has every feature in one FlatGeobuf file with a packed Hilbert R-tree, the spatial index
+ *    for readers that want features by area (see FlatGeobufWriter).
+ *
+ * Usage: java -cp josm.jar:Lanes.jar org.openstreetmap.josm.plugins.lanes.LaneGeometryExporter input.osm.bz2 output [zoom] [threads]
+ */
+
+public final class LaneGeometryExporter implements OsmStreamReader.Listener {
+
+    // <editor-fold defaultstate="collapsed" desc="Variables">
+
+    public static final int DEFAULT_ZOOM = 14;
+    private static final int FLUSH_SIZE = 1 << 15; // Characters buffered per tile before writing them out.
+    private static final char RECORD_SEPARATOR = 0x1e; // Starts every record of a GeoJSON text sequence.
+
+    // Every property a feature can have, with its FlatGeobuf column type.
+    private static final String[] COLUMNS = {"kind", "way", "direction", "position", "width_start", "width_end",
+            "lane_type", "turn", "bearing", "node", "arms", "valid", "complete"};
+    private static final int[] COLUMN_TYPES = {FlatGeobufWriter.STRING, FlatGeobufWriter.LONG, FlatGeobufWriter.INT,
+            FlatGeobufWriter.INT, FlatGeobufWriter.DOUBLE, FlatGeobufWriter.DOUBLE, FlatGeobufWriter.STRING,
+            FlatGeobufWriter.STRING, FlatGeobufWriter.LONG, FlatGeobufWriter.LONG, FlatGeobufWriter.INT,
+            FlatGeobufWriter.BOOL, FlatGeobufWriter.BOOL};
+
+    private final File _output;
+    private final int _zoom;
+    private final Map<Long, Tile> _tiles = new ConcurrentHashMap<>();
+    private final LongAdder _features = new LongAdder();
+    private volatile FlatGeobufWriter _flatGeobuf;
+    private volatile IOException _error = null; // First write that failed, the reader's threads can't throw it.
+
+    private static final class Tile {
+        private final int _x;
+        private final int _y;
+        private final File _file;
+        private final StringBuilder _buffer = new StringBuilder();
+        private boolean _written = false; // Whether the file has been started.
+        private long _count = 0;
+        private double _minLat = 90, _minLon = 180, _maxLat = -90, _maxLon = -180;
+
+        private Tile(File output, int zoom, int x, int y) {
+            _x = x;
+            _y = y;
+            _file = new File(output, zoom + File.separator + x + File.separator + y + ".geojsons");
+        }
+    }
+
+    // </editor-fold>
+
+    public LaneGeometryExporter(File output, int zoom) {
+        _output = output;
+        _zoom = zoom;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: LaneGeometryExporter <input.osm[.gz|.bz2]> <output directory> [zoom] [threads]");
+            System.exit(2);
+        }
+        int zoom = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ZOOM;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        long time = System.nanoTime();
+        LaneGeometryExporter exporter = new LaneGeometryExporter(new File(args[1]), zoom);
+        OsmStreamReader reader = new OsmStreamReader(new File(args[0]), threads);
+        exporter.export(reader);
+        System.err.println(reader.getStats());
+        System.err.println(exporter._features.sum() + " features in " + exporter._tiles.size() + " tiles in " +
+                (System.nanoTime() - time) / 1000000 + " ms");
+    }
+
+    /**
+     * Reads everything from the reader, and writes the tiles, the index and the FlatGeobuf file.
+     */
+    public void export(OsmStreamReader reader) throws IOException, XMLStreamException {
+        try (FlatGeobufWriter flatGeobuf = new FlatGeobufWriter(new File(_output, "lanes.fgb"), "lanes", COLUMNS, COLUMN_TYPES)) {
+            _flatGeobuf = flatGeobuf;
+            reader.read(this);
+            if (_error != null) throw _error;
+            for (Tile tile : _tiles.values()) {
+                synchronized (tile) {
+                    flush(tile);
+                }
+            }
+            writeIndex();
+            flatGeobuf.finish();
+        }
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Features">
+
+    @Override
+    public void way(WayGeometry way) {
+        int n = way.getNodesCount();
+        double[] lat = new double[n], lon = new double[n];
+
+        for (int i = 0; i < way.getPieceCount(); i++) {
+            int kind = way.getKind(i);
+            if (kind == WayGeometry.LANE) {
+                double[][] outline = way.getOutline(i);
+                if (outline == null) continue;
+                add(FlatGeobufWriter.POLYGON, outline[0], outline[1], outline[0].length, getPieceProperties(way, i, "lane"));
+
+                double[][] anchors = way.getTurnAnchors(i);
+                for (int j = 0; j < anchors[0].length; j++) {
+                    Map<String, Object> properties = getPieceProperties(way, i, "turn_marking");
+                    properties.put("bearing", Math.round(Math.toDegrees(anchors[2][j])));
+                    add(FlatGeobufWriter.POINT, new double[] {anchors[0][j]}, new double[] {anchors[1][j]}, 1, properties);
+                }
+            } else if (way.getLine(i, 0, lat, lon)) {
+                add(FlatGeobufWriter.LINESTRING, lat, lon, n,
+                        getPieceProperties(way, i, kind == WayGeometry.DIVIDER ? "divider" : "road_edge"));
+            }
+        }
+    }
+
+    @Override
+    public void intersection(IntersectionGeometry intersection) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("kind", "intersection");
+        properties.put("node", intersection.getNodeId());
+        properties.put("arms", intersection.getArms().size());
+        properties.put("valid", intersection.isValid());
+        properties.put("complete", intersection.isComplete());
+
+        double[][] outline = intersection.getOutline();
+        if (outline != null) {
+            add(FlatGeobufWriter.POLYGON, outline[0], outline[1], outline[0].length, properties);
+        } else { // Not enough roads to outline it, still worth showing for QA.
+            add(FlatGeobufWriter.POINT, new double[] {intersection.getLat()}, new double[] {intersection.getLon()}, 1, properties);
+        }
+    }
+
+    // Properties of a road piece.  Features can add more (like the bearing of a turn marking) before they're written.
+    private static Map<String, Object> getPieceProperties(WayGeometry way, int piece, String kind) {
+        int direction = way.getDirection(piece);
+        int position = way.getPosition(piece);
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("kind", kind);
+        properties.put("way", way.getId());
+        properties.put("direction", direction);
+        properties.put("position", position);
+        properties.put("width_start", round(way.getWidth(piece, true)));
+        properties.put("width_end", round(way.getWidth(piece, false)));
+        if (way.getKind(piece) == WayGeometry.LANE) {
+            LaneProfile profile = way.getProfile();
+            properties.put("lane_type", profile.getLaneType(direction, position).toString());
+            String turn = profile.getTurn(direction, position);
+            if (turn != null) properties.put("turn", turn);
+        }
+        return properties;
+    }
+
+    // Writes a feature to the GeoJSON tile the centre of its bounding box is in, and to the FlatGeobuf file.
+    private void add(int type, double[] lat, double[] lon, int n, Map<String, Object> properties) {
+        StringBuilder feature = new StringBuilder();
+        double[] bounds = {90, 180, -90, -180};
+        feature.append(RECORD_SEPARATOR).append("{\"type\":\"Feature\",\"geometry\":{\"type\":\"");
+        if (type == FlatGeobufWriter.POINT) {
+            feature.append("Point\",\"coordinates\":");
+            appendCoordinate(feature, lat[0], lon[0], bounds);
+        } else if (type == FlatGeobufWriter.LINESTRING) {
+            feature.append("LineString\",\"coordinates\":");
+            appendLine(feature, lat, lon, n, bounds);
+        } else {
+            feature.append("Polygon\",\"coordinates\":");
+            appendRing(feature, lat, lon, n, bounds);
+        }
+        appendProperties(feature, properties);
+        add(getTile((bounds[0] + bounds[2]) / 2, (bounds[1] + bounds[3]) / 2), feature, bounds);
+
+        try {
+            _flatGeobuf.add(type, lat, lon, n, properties);
+        } catch (IOException e) {
+            if (_error == null) _error = e;
+        }
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Writing GeoJSON">
+
+    // Ends the geometry and writes the properties, which ends the feature.
+    private static void appendProperties(StringBuilder out, Map<String, Object> properties) {
+        out.append("},\"properties\":{");
+        boolean first = true;
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            if (!first) out.append(',');
+            first = false;
+            appendString(out, property.getKey());
+            out.append(':');
+            Object value = property.getValue();
+            if (value instanceof String) {
+                appendString(out, (String) value);
+            } else {
+                out.append(value);
+            }
+        }
+        out.append("}}\n");
+    }
+
+    private static void appendRing(StringBuilder out, double[] lat, double[] lon, int n, double[] bounds) {
+        out.append('[');
+        appendLine(out, lat, lon, n, bounds);
+        out.append(']');
+    }
+
+    private static void appendLine(StringBuilder out, double[] lat, double[] lon, int n, double[] bounds) {
+        out.append('[');
+        for (int i = 0; i < n; i++) {
+            if (i != 0) out.append(',');
+            appendCoordinate(out, lat[i], lon[i], bounds);
+        }
+        out.append(']');
+    }
+
+    // [lon,lat] to 7 decimal places (about a centimeter), without going through String.format.
+    private static void appendCoordinate(StringBuilder out, double lat, double lon, double[] bounds) {
+        bounds[0] = Math.min(bounds[0], lat);
+        bounds[1] = Math.min(bounds[1], lon);
+        bounds[2] = Math.max(bounds[2], lat);
+        bounds[3] = Math.max(bounds[3], lon);
+        out.append('[');
+        appendFixed(out, lon);
+        out.append(',');
+        appendFixed(out, lat);
+        out.append(']');
+    }
+
+    private static void appendFixed(StringBuilder out, double value) {
+        long fixed = Math.round(value * 1e7);
+        if (fixed < 0) {
+            out.append('-');
+            fixed = -fixed;
+        }
+        out.append(fixed / 10000000).append('.');
+        String decimals = Long.toString(fixed % 10000000);
+        for (int i = decimals.length(); i < 7; i++) out.append('0');
+        out.append(decimals);
+    }
+
+    private static double round(double meters) {
+        return Math.round(meters * 100) / 100.0;
+    }
+
+    private static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Tiles">
+
+    private Tile getTile(double lat, double lon) {
+        int tiles = 1 << _zoom;
+        double sinLat = Math.sin(Math.toRadians(Math.max(-85.05, Math.min(85.05, lat))));
+        int x = (int) Math.max(0, Math.min(tiles - 1, Math.floor((lon + 180) / 360 * tiles)));
+        int y = (int) Math.max(0, Math.min(tiles - 1, Math.floor((0.5 - Math.log((1 + sinLat) / (1 - sinLat)) / (4 * Math.PI)) * tiles)));
+        return _tiles.computeIfAbsent(((long) x << 32) | y, k -> new Tile(_output, _zoom, x, y));
+    }
+
+    private void add(Tile tile, CharSequence feature, double[] bounds) {
+        _features.increment();
+        synchronized (tile) {
+            tile._buffer.append(feature);
+            tile._count++;
+            tile._minLat = Math.min(tile._minLat, bounds[0]);
+            tile._minLon = Math.min(tile._minLon, bounds[1]);
+            tile._maxLat = Math.max(tile._maxLat, bounds[2]);
+            tile._maxLon = Math.max(tile._maxLon, bounds[3]);
+            try {
+                if (tile._buffer.length() >= FLUSH_SIZE) flush(tile);
+            } catch (IOException e) {
+                if (_error == null) _error = e;
+                tile._buffer.setLength(0);
+            }
+        }
+    }
+
+    // Appends what's buffered to the tile's file.  Callers hold the tile's lock.
+    private static void flush(Tile tile) throws IOException {
+        if (tile._buffer.length() == 0) return;
+        if (!tile._written) tile._file.getParentFile().mkdirs();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(tile._file, tile._written), StandardCharsets.UTF_8)) {
+            out.append(tile._buffer);
+        }
+        tile._written = true;
+        tile._buffer.setLength(0);
+        tile._buffer.trimToSize();
+    }
+
+    private void writeIndex() throws IOException {
+        List<Tile> tiles = new ArrayList<>(_tiles.values());
+        tiles.sort((a, b) -> a._x != b._x ? Integer.compare(a._x, b._x) : Integer.compare(a._y, b._y));
+
+        StringBuilder index = new StringBuilder("{\"zoom\":").append(_zoom).append(",\"tiles\":[\n");
+        for (int i = 0; i < tiles.size(); i++) {
+            Tile tile = tiles.get(i);
+            index.append("{\"x\":").append(tile._x).append(",\"y\":").append(tile._y)
+                    .append(",\"file\":\"").append(_zoom).append('/').append(tile._x).append('/').append(tile._y).append(".geojsons\"")
+                    .append(",\"features\":").append(tile._count).append(",\"bbox\":[");
+            appendFixed(index, tile._minLon);
+            index.append(',');
+            appendFixed(index, tile._minLat);
+            index.append(',');
+            appendFixed(index, tile._maxLon);
+            index.append(',');
+            appendFixed(index, tile._maxLat);
+            index.append("]}").append(i == tiles.size() - 1 ? "\n" : ",\n");
+        }
+        index.append("]}\n");
+
+        _output.mkdirs();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(new File(_output, "index.json")), StandardCharsets.UTF_8)) {
+            out.append(index);
+        }
+    }
+
+    // </editor-fold>
+}
@@ -0,0 +1,87 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.MapFrame;
+import org.openstreetmap.josm.spi.preferences.Config;
+
+import java.awt.*;
+
+/*
+ * LaneHud - optional heads-up display of how LaneMappingMode's paints are doing, drawn in the top left of the map.
+ *
+ * -> p50, p95 and p99 of the last 200 paint times, how many renderers the last paint drew, how often the geometry
+ *    caches were hit during it, and whether it had to rebuild the renderers or drew the ones it had.  Enough for
+ *    someone to report actual numbers when a region is slow.
+ * -> Off by default.  Turned on from the Lane Statistics panel and remembered in the "lanes.hud" preference, which is
+ *    only read once, so while it's off it costs LaneMappingMode one boolean check per paint.
+ * -> Drawn after the paint is recorded, so the time spent drawing it isn't in the times it shows.
+ */
+
+final class LaneHud {
+
+    // <editor-fold defaultstate="collapsed" desc="Variables">
+
+    static final String PREFERENCE = "lanes.hud";
+
+    private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final Color BACKGROUND = new Color(0, 0, 0, 170);
+    private static final Color TEXT = Color.WHITE;
+    private static final Color REBUILT = new Color(255, 160, 40);
+    private static final int MARGIN = 10;
+    private static final int PADDING = 6;
+
+    private static volatile Boolean _enabled;
+
+    // </editor-fold>
+
+    private LaneHud() {}
+
+    static boolean isEnabled() {
+        Boolean enabled = _enabled;
+        if (enabled == null) _enabled = enabled = Config.getPref().getBoolean(PREFERENCE, false);
+        return enabled;
+    }
+
+    static void setEnabled(boolean enabled) {
+        _enabled = enabled;
+        Config.getPref().putBoolean(PREFERENCE, enabled);
+        MapFrame map = MainApplication.getMap();
+        if (map != null) map.mapView.repaint();
+    }
+
+    // Draws the HUD for the paint LaneModeStats recorded last.
+    static void paint(Graphics2D g, LaneModeStats stats) {
+        long[] recent = stats.getRecentPaintNanos();
+        String[] lines = {
+                String.format("paint  p50 %5.1f  p95 %5.1f  p99 %5.1f ms  (%d frames)",
+                        LaneModeStats.percentileMillis(recent, 50), LaneModeStats.percentileMillis(recent, 95),
+                        LaneModeStats.percentileMillis(recent, 99), recent.length),
+                String.format("drawn  %d roads, %d intersections", stats.getLastPaintRoads(),
+                        stats.getLastPaintIntersections()),
+                "cache  " + percent(stats.getLastPaintHitRate()) + " hits",
+                stats.getLastPaintRebuilt() ? "frame  rebuilt" : "frame  from cache"
+        };
+
+        Graphics2D hud = (Graphics2D) g.create();
+        try {
+            hud.setFont(FONT);
+            FontMetrics metrics = hud.getFontMetrics();
+            int width = 0;
+            for (String line : lines) width = Math.max(width, metrics.stringWidth(line));
+            int lineHeight = metrics.getHeight();
+
+            hud.setColor(BACKGROUND);
+            hud.fillRect(MARGIN, MARGIN, width + 2 * PADDING, lines.length * lineHeight + 2 * PADDING);
+            for (int i = 0; i < lines.length; i++) {
+                hud.setColor(i == lines.length - 1 && stats.getLastPaintRebuilt() ? REBUILT : TEXT);
+                hud.drawString(lines[i], MARGIN + PADDING, MARGIN + PADDING + i * lineHeight + metrics.getAscent());
+            }
+        } finally {
+            hud.dispose();
+        }
+    }
+
+    private static String percent(double rate) {
+        return Double.isNaN(rate) ? "-" : String.format("%.1f%%", 100 * rate);
+    }
+}
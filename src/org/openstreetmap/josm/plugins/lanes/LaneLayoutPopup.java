@@ -6,7 +6,6 @@ import org.openstreetmap.josm.data.osm.DataSourceChangeEvent;
 import org.openstreetmap.josm.data.osm.DataSourceListener;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.gui.MainApplication;
-import org.openstreetmap.josm.tools.Territories;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -87,9 +86,8 @@ public class LaneLayoutPopup extends JPanel implements ActionListener {
         presetPanel.getVerticalScrollBar().setUnitIncrement(16);
         presetPanel.setViewportView(buffer);
 
-        List<Preset> presets = Utils.getPresets(Utils.isRightHand(_rr.getWay()),
-                Territories.isIso3166Code("US", _rr.getWay().getNode(0).getCoor()) ||
-                        Territories.isIso3166Code("CA", _rr.getWay().getNode(0).getCoor()), Utils.isOneway(_rr.getWay()));
+        List<Preset> presets = Utils.getPresets(_rr.getRegion().isRightHand(),
+                _rr.getRegion().isCenterTurnLaneKnown(), Utils.isOneway(_rr.getWay()));
         inner.setLayout(new GridLayout((presets.size()+1)/2, 2, m, m));
         inner.setPreferredSize(new Dimension(3*m + 2*75, m  +  (75+m) * ((presets.size()+1)/2)));
         for (Preset preset : presets) {
@@ -155,9 +153,8 @@ public class LaneLayoutPopup extends JPanel implements ActionListener {
     private JComponent getMarkedLayoutPanel() {
         JPanel output = new JPanel();
         output.setLayout(new BorderLayout());
-        // Add checkbox for center lane at bottom if in USA or Canada (from list)
-        // TODO use yml file instead of this easy solution
-        if (Territories.isIso3166Code("US", _rr.getWay().getNode(0).getCoor()) || Territories.isIso3166Code("CA", _rr.getWay().getNode(0).getCoor())) {
+        // Add checkbox for center lane at bottom if center lanes are known there (from isCenterTurnLaneKnown.yml)
+        if (_rr.getRegion().isCenterTurnLaneKnown()) {
             output.add(getBothWaysCheckbox(), BorderLayout.AFTER_LAST_LINE);
         }
         // Add marked version of dynamic layout thingy
@@ -262,7 +259,7 @@ class RoadPanel extends JPanel {
         int width = 55;
         int height = 40;
         if (_rr instanceof MarkedRoadRenderer) {
-            boolean rh = Utils.isRightHand(_rr.getWay());
+            boolean rh = _rr.getRegion().isRightHand();
             if (Utils.isOneway(_rr.getWay())) {
                 drawLaneChange((Graphics2D) g, rh ? right : left, width, height, 1, ((MarkedRoadRenderer) _rr)._forwardLanes.size(), _p);
             } else {
@@ -18,6 +18,7 @@ import org.openstreetmap.josm.command.SequenceCommand;
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.ProjectionBounds;
 import org.openstreetmap.josm.data.UndoRedoHandler;
+import org.openstreetmap.josm.data.coor.EastNorth;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.*;
 import org.openstreetmap.josm.gui.MainApplication;
@@ -53,6 +54,8 @@ public class LaneMappingMode extends MapMode implements MouseListener, MouseMoti
     public Map<Long, RoadRenderer> wayIdToRSR = new HashMap<>();
     public Map<Long, IntersectionRenderer> nodeIdToISR = new HashMap<>();
     private int mapChangeTolerance = 0; // Other objects can increase this by X to make it ignore the next X times the dataset changes.
+    private final LaneModeStats _stats = LaneModeStats.get();
+    private final LaneMemory _memory = new LaneMemory();
 
     public LaneMappingMode() {
         super(tr("Lane Editing"), "laneconnectivity.png", tr("Activate lane editing mode"),
@@ -71,12 +74,16 @@ public class LaneMappingMode extends MapMode implements MouseListener, MouseMoti
     public void paint(Graphics2D g, MapView mv, Bounds bbox) {
         if (mv == null || mv.getScale() > 16) return; // Don't render when the map is too zoomed out
 
+        long start = System.nanoTime();
+        _stats.startPaint();
+        LaneEvents.Paint event = LaneEvents.paint();
+        long frame = _memory.startFrame();
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         double cushion = 200;
         _mv = mv;
 
         // Get map data for rendering:
-        ensureRoadSegmentsNotNull();
+        boolean rebuilt = ensureRoadSegmentsNotNull();
 
         // Get bounds where rendering should happen
         ProjectionBounds bounds = mv.getProjectionBounds();
@@ -86,22 +93,43 @@ public class LaneMappingMode extends MapMode implements MouseListener, MouseMoti
                 bounds.maxNorth + cushion);
 
         // Render intersections
+        int drawnIntersections = 0;
+        int failures = 0;
         for (IntersectionRenderer i : intersections) {
             if (intersectionShouldBeRendered(bounds, i)) {
+                drawnIntersections++;
+                long renderStart = event == null ? 0 : System.nanoTime();
                 try {
                     i.render(g);
-                } catch (Exception ignored) {}
+                } catch (Exception e) {
+                    failures++;
+                    _stats.exception(LaneModeStats.Stage.PAINT, e);
+                }
+                if (event != null) event.intersection(i, System.nanoTime() - renderStart);
             }
         }
 
         // Render each road
+        int drawnRoads = 0;
         for (RoadRenderer r : roads) {
-            if (wayShouldBeRendered(bounds, r.getWay())) {
+            if (wayShouldBeRendered(bounds, r)) {
+                drawnRoads++;
+                r.lastPainted = frame;
+                long renderStart = event == null ? 0 : System.nanoTime();
                 try {
                     r.render(g);
-                } catch (Exception ignored) {}
+                } catch (Exception e) {
+                    failures++;
+                    _stats.exception(LaneModeStats.Stage.PAINT, e);
+                }
+                if (event != null) event.road(r, System.nanoTime() - renderStart);
             }
         }
+
+        _stats.endPaint(start, rebuilt, drawnRoads, drawnIntersections, failures);
+        if (event != null) event.end(mv.getScale(), rebuilt, drawnRoads, drawnIntersections, failures);
+        _memory.endFrame(roads, intersections, rebuilt); // Estimates memory every so often, evicting if over the cap.
+        if (LaneHud.isEnabled()) LaneHud.paint(g, _stats);
     }
 
     @Override
@@ -174,9 +202,12 @@ public class LaneMappingMode extends MapMode implements MouseListener, MouseMoti
      * @param w The way to be rendered.
      * @return True if way has node inside of the bounds, false otherwise.
      */
-    private boolean wayShouldBeRendered(ProjectionBounds bounds, Way w) {
-        for (int i = 0; i < w.getNodesCount(); i++) {
-            if (bounds.contains(w.getNode(i).getEastNorth())) {
+    // Both of these are asked of every renderer every frame, so they go by coordinates the renderers already
+    //  projected instead of making an EastNorth per node.
+    private boolean wayShouldBeRendered(ProjectionBounds bounds, RoadRenderer r) {
+        BulkProjector.Coordinates c = r.getWayCoordinates();
+        for (int i = 0; i < c.size(); i++) {
+            if (contains(bounds, 0, c.east(i), c.north(i))) {
                 return true;
             }
         }
@@ -184,13 +215,14 @@ public class LaneMappingMode extends MapMode implements MouseListener, MouseMoti
     }
 
     private boolean intersectionShouldBeRendered(ProjectionBounds bounds, IntersectionRenderer i) {
-        double minEast = bounds.minEast - 100;
-        double maxEast = bounds.maxEast + 100;
-        double minNorth = bounds.minNorth - 100;
-        double maxNorth = bounds.maxNorth + 100;
+        EastNorth en = i.getEastNorth();
+        return contains(bounds, 100, en.east(), en.north());
+    }
 
-        ProjectionBounds bigger = new ProjectionBounds(minEast, minNorth, maxEast, maxNorth);
-        return bigger.contains(new Node(i.getPos()).getEastNorth());
+    // Same as ProjectionBounds.contains, with the bounds grown by margin on each side.
+    private static boolean contains(ProjectionBounds bounds, double margin, double east, double north) {
+        return east >= bounds.minEast - margin && east <= bounds.maxEast + margin
+                && north >= bounds.minNorth - margin && north <= bounds.maxNorth + margin;
     }
 
     // </editor-fold>
@@ -199,12 +231,25 @@ public class LaneMappingMode extends MapMode implements MouseListener, MouseMoti
 
     /**
      * Builds the RoadRenderers / IntersectionRenderers if they are currently null.
+     * @return Whether they had to be built.
      */
-    private void ensureRoadSegmentsNotNull() {
+    private boolean ensureRoadSegmentsNotNull() {
         if (roads == null || intersections == null) {
             roads = getAllRoadRenderers(new ArrayList<>(MainApplication.getLayerManager().getEditDataSet().getWays()), _mv);
             intersections = getAllIntersections(_mv);
+            return true;
         }
+        return false;
+    }
+
+    /**
+     * Builds the renderers for these ways instead of the ones in the edit layer.  For drawing without a data layer,
+     * e.g. in the benchmarks.
+     */
+    void setWays(List<Way> ways, MapView mv) {
+        _mv = mv;
+        roads = getAllRoadRenderers(ways, mv);
+        intersections = getAllIntersections(mv);
     }
 
     /**
@@ -214,42 +259,74 @@ public class LaneMappingMode extends MapMode implements MouseListener, MouseMoti
      * @return The list of created RoadRenderers.
      */
     private List<RoadRenderer> getAllRoadRenderers(List<Way> ways, MapView mv) {
+        LaneEvents.RoadRenderers event = LaneEvents.roadRenderers();
+        List<RoadRenderer> output = buildRoadRenderers(ways, mv);
+        alignRoadRenderers(output);
+        if (event != null) event.end(ways.size(), _stats.current());
+        return output;
+    }
+
+    // Generate each RoadRenderer.  Each one goes in the slot of its way, so they're always drawn in the same order.
+    List<RoadRenderer> buildRoadRenderers(List<Way> ways, MapView mv) {
+        long start = System.nanoTime();
+        _stats.startBuild(ways.size());
         _ways = ways;
         wayIdToRSR = new Hashtable<>();
-        List<RoadRenderer> output = new Vector<>();
+        RoadRenderer[] built = new RoadRenderer[ways.size()];
+        AtomicInteger failed = new AtomicInteger();
 
-        // Generate each RoadRenderer.
         ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(10);
-        for (Way w : ways) {
+        for (int i = 0; i < ways.size(); i++) {
+            Way w = ways.get(i);
+            int slot = i;
             Runnable r = () -> {
                 try {
                     RoadRenderer rr = RoadRenderer.buildRoadRenderer(w, mv, this);
                     if (rr == null) return;
                     wayIdToRSR.put(w.getUniqueId(), rr);
-                    output.add(rr);
-                } catch (Exception ignored) {}
+                    built[slot] = rr;
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    _stats.exception(LaneModeStats.Stage.BUILD_ROADS, e);
+                }
             };
             executor.execute(r);
         }
-        executor.shutdown();
-        try { executor.awaitTermination(30, TimeUnit.SECONDS); } catch (InterruptedException ignored) {}
+        awaitStage(executor, 30, LaneModeStats.Stage.BUILD_ROADS);
+
+        List<RoadRenderer> output = new ArrayList<>(built.length);
+        int invalid = 0;
+        for (RoadRenderer rr : built) {
+            if (rr == null) continue;
+            output.add(rr);
+            if (rr instanceof UntaggedRoadRenderer && !((UntaggedRoadRenderer) rr)._valid) invalid++;
+        }
 
-        // Give each RoadRenderer a chance to look at roads at endpoints and adjust endpoint angles.
-        executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(10);
-        for (RoadRenderer rr : output) {
+        LaneModeStats.Build build = _stats.current();
+        build.roadsBuilt = output.size();
+        build.roadsFailed = failed.get();
+        build.roadsInvalid = invalid;
+        _stats.endStage(LaneModeStats.Stage.BUILD_ROADS, start);
+        return output;
+    }
+
+    // Give each RoadRenderer a chance to look at roads at endpoints and adjust endpoint angles.
+    void alignRoadRenderers(List<RoadRenderer> roads) {
+        long start = System.nanoTime();
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(10);
+        for (RoadRenderer rr : roads) {
             Runnable r = () -> {
                 try {
                     rr.updateAlignment(); // updates alignment based on nearby ways.
-                } catch (Exception ignored) {}
+                } catch (Exception e) {
+                    _stats.exception(LaneModeStats.Stage.ALIGN_ROADS, e);
+                }
             };
             executor.execute(r);
         }
 
-        executor.shutdown();
-        try { executor.awaitTermination(30, TimeUnit.SECONDS); } catch (InterruptedException ignored) {}
-
-
-        return output;
+        awaitStage(executor, 30, LaneModeStats.Stage.ALIGN_ROADS);
+        _stats.endStage(LaneModeStats.Stage.ALIGN_ROADS, start);
     }
 
     /**
@@ -258,42 +335,59 @@ public class LaneMappingMode extends MapMode implements MouseListener, MouseMoti
      * @return The created list of IntersectionRenderers.
      */
     private List<IntersectionRenderer> getAllIntersections(MapView mv) {
+        if (roads == null) throw new RuntimeException("RoadRenderers not initialized before calling getAllIntersections().");
+        LaneEvents.Intersections event = LaneEvents.intersections();
+        List<NodeIntersectionRenderer> nodeIntersections = findNodeIntersections(roads, mv);
+        List<IntersectionRenderer> output = buildMultiIntersections(groupNodeIntersections(nodeIntersections));
+        if (event != null) event.end(_stats.getLastBuild());
+        return output;
+    }
 
-        // Get all node-only intersections.
+    // Get node-only intersections, in the order their nodes are first found on the roads.
+    List<NodeIntersectionRenderer> findNodeIntersections(List<RoadRenderer> roads, MapView mv) {
+        long start = System.nanoTime();
         nodeIdToISR = new Hashtable<>();
         Set<Long> handled = new HashSet();
-        List<NodeIntersectionRenderer> intersections = new Vector<>();
-        if (roads == null) throw new RuntimeException("RoadRenderers not initialized before calling getAllIntersections().");
-
-
-        // Get node-only intersections.
-        ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(10);
+        List<Node> nodes = new ArrayList<>();
         for (RoadRenderer r : roads) {
             for (Node n : r.getWay().getNodes()) {
-                if (!handled.contains(n.getUniqueId())) {
-                    handled.add(n.getUniqueId());
-                    executor.execute(() -> {
-                        Utils.WayConnectionType type = Utils.calculateNodeIntersectionType(n, this);
-                        if (type != null && type != Utils.WayConnectionType.INCOMPLETE && type != Utils.WayConnectionType.CONTINUATION) System.out.println("Node " + n.getId() + " is " + type);
-                        if (type == Utils.WayConnectionType.INTERSECTION) {
-//                        try {
-                            NodeIntersectionRenderer newest = new NodeIntersectionRenderer(n, mv, this);
-                            intersections.add(newest);
-                            nodeIdToISR.put(n.getUniqueId(), newest);
-//                        } catch (Exception ignored) {}
-                        }
-                    });
-                }
+                if (handled.add(n.getUniqueId())) nodes.add(n);
             }
         }
 
-        executor.shutdown();
-        try { executor.awaitTermination(60, TimeUnit.SECONDS); } catch (InterruptedException ignored) {}
+        NodeIntersectionRenderer[] found = new NodeIntersectionRenderer[nodes.size()];
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(10);
+        for (int i = 0; i < nodes.size(); i++) {
+            Node n = nodes.get(i);
+            int slot = i;
+            executor.execute(() -> {
+                try {
+                    Utils.WayConnectionType type = Utils.calculateNodeIntersectionType(n, this);
+                    if (type == Utils.WayConnectionType.INTERSECTION) {
+                        NodeIntersectionRenderer newest = new NodeIntersectionRenderer(n, mv, this);
+                        found[slot] = newest;
+                        nodeIdToISR.put(n.getUniqueId(), newest);
+                    }
+                } catch (Exception e) {
+                    _stats.exception(LaneModeStats.Stage.NODE_INTERSECTIONS, e); // The pool would have swallowed it.
+                }
+            });
+        }
 
-        intersections.sort(Comparator.comparingDouble(o -> o.getPos().lat()));
+        awaitStage(executor, 60, LaneModeStats.Stage.NODE_INTERSECTIONS);
 
+        List<NodeIntersectionRenderer> intersections = new ArrayList<>();
+        for (NodeIntersectionRenderer n : found) if (n != null) intersections.add(n);
+        _stats.current().nodeIntersections = intersections.size();
+        _stats.endStage(LaneModeStats.Stage.NODE_INTERSECTIONS, start);
+        return intersections;
+    }
+
+    // Merge overlapping node-only intersections.  Returns the groups that make up each multi intersection.
+    List<List<NodeIntersectionRenderer>> groupNodeIntersections(List<NodeIntersectionRenderer> intersections) {
+        long start = System.nanoTime();
+        intersections.sort(Comparator.comparingDouble(o -> o.getPos().lat()));
 
-        // Merge overlapping node-only intersections.
         int[] groups = new int[intersections.size()];
         int max = 0;
         int[] thisGroup = new int[10]; // Max num of existing separate intersections this node intersection can be merged with. Max real world is usually like 3.
@@ -334,28 +428,65 @@ public class LaneMappingMode extends MapMode implements MouseListener, MouseMoti
             multiNodeCollections[groups[i]].add(intersections.get(i));
         }
 
-        List<IntersectionRenderer> out = new Vector<>();
-        executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(10);
-        for (List<NodeIntersectionRenderer> group : multiNodeCollections) {
-            if (group != null) {
-                executor.execute(() -> {
-                    try {
-                        new MultiIntersectionRenderer(group, out);
-                    } catch (Exception ignored) {}
-                });
-            }
+        List<List<NodeIntersectionRenderer>> output = new ArrayList<>();
+        for (List<NodeIntersectionRenderer> group : multiNodeCollections) if (group != null) output.add(group);
+        _stats.current().groups = output.size();
+        _stats.endStage(LaneModeStats.Stage.GROUP_INTERSECTIONS, start);
+        return output;
+    }
+
+    // Lay out each group as one MultiIntersectionRenderer.
+    List<IntersectionRenderer> buildMultiIntersections(List<List<NodeIntersectionRenderer>> groups) {
+        long start = System.nanoTime();
+        AtomicInteger failed = new AtomicInteger();
+        List<List<IntersectionRenderer>> built = new ArrayList<>(groups.size()); // A group can split into several intersections.
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(10);
+        for (int i = 0; i < groups.size(); i++) {
+            List<NodeIntersectionRenderer> group = groups.get(i);
+            List<IntersectionRenderer> groupOut = new Vector<>();
+            built.add(groupOut);
+            executor.execute(() -> {
+                LaneEvents.MultiIntersection event = LaneEvents.multiIntersection(group);
+                try {
+                    new MultiIntersectionRenderer(group, groupOut);
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    _stats.exception(LaneModeStats.Stage.MULTI_INTERSECTIONS, e);
+                }
+                if (event != null) event.end(groupOut.size());
+            });
         }
 
-        executor.shutdown();
-        try { executor.awaitTermination(30, TimeUnit.SECONDS); } catch (InterruptedException ignored) {}
+        awaitStage(executor, 30, LaneModeStats.Stage.MULTI_INTERSECTIONS);
+
+        List<IntersectionRenderer> out = new ArrayList<>();
+        for (List<IntersectionRenderer> groupOut : built) out.addAll(groupOut);
 
         nodeIdToISR = new HashMap<>();
 
-        for (IntersectionRenderer m : out) for (long l : ((MultiIntersectionRenderer) m).getNodeIntersections()) nodeIdToISR.put(l, m);
+        int invalid = 0;
+        for (IntersectionRenderer m : out) {
+            for (long l : ((MultiIntersectionRenderer) m).getNodeIntersections()) nodeIdToISR.put(l, m);
+            if (!m._isValid) invalid++;
+        }
 
+        LaneModeStats.Build build = _stats.current();
+        build.intersectionsBuilt = out.size();
+        build.intersectionsFailed = failed.get();
+        build.intersectionsInvalid = invalid;
+        _stats.endStage(LaneModeStats.Stage.MULTI_INTERSECTIONS, start);
+        _stats.endBuild();
         return out;
     }
 
+    // Waits for a stage's thread pool to finish, noting it if the stage ran out of time.
+    private void awaitStage(ThreadPoolExecutor executor, int seconds, LaneModeStats.Stage stage) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(seconds, TimeUnit.SECONDS)) _stats.timedOut(stage);
+        } catch (InterruptedException ignored) {}
+    }
+
     private boolean sameIntersection(NodeIntersectionRenderer a, NodeIntersectionRenderer b) {
         if (a.getPos().greatCircleDistance(b.getPos()) > 100) return false;
         if (a.getPos().greatCircleDistance(b.getPos()) < 15) return true;
@@ -0,0 +1,247 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.spi.preferences.Config;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * LaneMemory - estimates how much heap LaneMappingMode's renderers hold, and keeps it under a cap.
+ *
+ * -> Sizes are worked out from what each renderer holds (shallow sizes on a 64 bit JVM with compressed pointers),
+ *    not measured, so they're close rather than exact.  Ways and nodes in the data set aren't counted, only the
+ *    temporary ones the renderers made.  A way held twice by a renderer is counted once, but nodes aren't tracked
+ *    (there are millions), so the few a renderer shares between its own ways are counted twice.
+ * -> Road renderers cache their alignment sliced into parts, the edges of those parts and the asphalt outline.  That's
+ *    the only part that can be thrown away, since it's built again the next time the road is drawn.  When the total is
+ *    over the cap (the "lanes.memory.cap" preference, in MB), the roads that have gone longest without being drawn
+ *    lose their cached geometry first, until the total is back under 90% of the cap.  If that can't get it under
+ *    90% (the roads on screen and the intersections are too big on their own), nothing is evicted.
+ * -> It's done right after a build and then at most every 2 seconds while painting.  Renderers keep their estimate
+ *    until they're laid out again (or a road's rendering gaps change), so after the first time only the roads' cached
+ *    geometry is walked.  The totals go to LaneModeStats, per generation.
+ */
+
+final class LaneMemory {
+
+    // <editor-fold defaultstate="collapsed" desc="Variables">
+
+    static final String CAP_PREFERENCE = "lanes.memory.cap";
+    static final int DEFAULT_CAP_MB = 256;
+    private static final long ACCOUNT_INTERVAL_NANOS = 2_000_000_000L;
+    private static final double EVICT_TO = 0.9;
+
+    // Shallow sizes in bytes.  NODE and WAY include the fields JOSM's primitives inherit, but not the nodes array.
+    static final int HEADER = 12;
+    static final int REF = 4;
+    static final int NODE = 96;
+    static final int WAY = 80;
+    static final int LAT_LON = 32;
+    static final int BOXED = 16;          // Integer, Long or Double.
+    static final int ARRAY_LIST = 24;
+    static final int MAP_ENTRY = 32;      // HashMap and ConcurrentHashMap nodes.
+    static final int MAP = 64;
+
+    private final LaneModeStats _stats = LaneModeStats.get();
+    private long _frame = 0;
+    private long _lastAccounted = 0;
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Painting">
+
+    // Called at the start of each paint, gives the number to mark drawn renderers with.
+    long startFrame() {
+        return ++_frame;
+    }
+
+    // Called at the end of each paint, on the EDT.
+    void endFrame(List<RoadRenderer> roads, List<IntersectionRenderer> intersections, boolean rebuilt) {
+        long now = System.nanoTime();
+        if (!rebuilt && now - _lastAccounted < ACCOUNT_INTERVAL_NANOS) return;
+        _lastAccounted = now;
+        account(roads, intersections, getCapBytes());
+    }
+
+    static long getCapBytes() {
+        return Math.max(Config.getPref().getInt(CAP_PREFERENCE, DEFAULT_CAP_MB), 1) * 1024L * 1024L;
+    }
+
+    static void setCapMegabytes(int megabytes) {
+        Config.getPref().putInt(CAP_PREFERENCE, megabytes);
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Accounting and Eviction">
+
+    // Estimates every renderer, then evicts cached geometry if the total is over cap.
+    void account(List<RoadRenderer> roads, List<IntersectionRenderer> intersections, long cap) {
+        long start = System.nanoTime();
+        Estimate e = new Estimate();
+        long[] cached = new long[roads.size()];
+        for (int i = 0; i < roads.size(); i++) {
+            RoadRenderer r = roads.get(i);
+            e.nextRenderer();
+            try {
+                e.add(r.getFootprint());
+                long before = e.get(LaneModeStats.Footprint.CACHED_GEOMETRY);
+                r.estimateCachedFootprint(e);
+                cached[i] = e.get(LaneModeStats.Footprint.CACHED_GEOMETRY) - before;
+            } catch (Exception ignored) {} // Changed while being estimated, it'll be counted next time.
+        }
+        e.in(LaneModeStats.Footprint.INTERSECTIONS);
+        for (IntersectionRenderer i : intersections) {
+            try {
+                e.add(i.getFootprint());
+            } catch (Exception ignored) {}
+        }
+
+        long[] bytes = e.getBytes();
+        int evicted = 0;
+        long evictedBytes = 0;
+        long total = e.getTotal();
+        if (total > cap) {
+            // Only roads that weren't drawn this frame can lose their geometry.  If throwing all of it away still
+            //  leaves the total over the target (intersections and the rest can't be evicted), don't throw any away,
+            //  it'd be built again on the next paint for nothing.
+            long target = (long) (cap * EVICT_TO);
+            long evictable = 0;
+            for (int i = 0; i < cached.length; i++) if (roads.get(i).lastPainted != _frame) evictable += cached[i];
+            if (total - evictable <= target) {
+                Integer[] order = new Integer[roads.size()];
+                for (int i = 0; i < order.length; i++) order[i] = i;
+                Arrays.sort(order, (a, b) -> Long.compare(roads.get(a).lastPainted, roads.get(b).lastPainted));
+                for (int i : order) {
+                    if (total - evictedBytes <= target) break;
+                    RoadRenderer r = roads.get(i);
+                    if (cached[i] == 0 || r.lastPainted == _frame) continue; // Still on screen.
+                    r.invalidateGeometry();
+                    evicted++;
+                    evictedBytes += cached[i];
+                }
+                bytes[LaneModeStats.Footprint.CACHED_GEOMETRY.ordinal()] -= evictedBytes;
+            }
+        }
+        _stats.footprint(bytes, cap, evicted, evictedBytes, System.nanoTime() - start);
+    }
+
+    // </editor-fold>
+
+    /**
+     * Running totals for one accounting, by footprint.  Renderers add what they hold, after setting which footprint
+     * it counts towards with in().
+     */
+    static final class Estimate {
+        private final long[] _bytes = new long[LaneModeStats.Footprint.values().length];
+        private final Set<Object> _seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        private int _footprint = 0;
+
+        // Ways are only counted once per renderer.
+        void nextRenderer() {
+            _seen.clear();
+        }
+
+        void in(LaneModeStats.Footprint footprint) {
+            _footprint = footprint.ordinal();
+        }
+
+        long get(LaneModeStats.Footprint footprint) { return _bytes[footprint.ordinal()]; }
+
+        long[] getBytes() { return _bytes.clone(); }
+
+        long getTotal() {
+            long total = 0;
+            for (long b : _bytes) total += b;
+            return total;
+        }
+
+        // <editor-fold defaultstate="collapsed" desc="Adding">
+
+        void add(long bytes) {
+            _bytes[_footprint] += bytes;
+        }
+
+        // Totals from an earlier estimate, indexed by footprint.
+        void add(long[] bytes) {
+            for (int i = 0; i < bytes.length; i++) _bytes[i] += bytes[i];
+        }
+
+        // An object with the given number of reference fields and bytes of primitive fields.
+        void object(int refs, int primitiveBytes) {
+            add(align(HEADER + refs * REF + primitiveBytes));
+        }
+
+        void array(int length, int elementBytes) {
+            add(align(HEADER + 4 + (long) length * elementBytes));
+        }
+
+        void way(Way w) {
+            if (w == null || w.getDataSet() != null || !_seen.add(w)) return;
+            add(WAY);
+            array(w.getNodesCount(), REF);
+            for (Node n : w.getNodes()) {
+                if (n.getDataSet() == null) add(NODE);
+            }
+        }
+
+        // Ways whose nodes are already counted, like asphalt outlines, which are made of the edges' nodes.
+        void outlines(Collection<Way> ways) {
+            if (ways == null) return;
+            list(ways);
+            for (Way w : ways) {
+                if (w == null || w.getDataSet() != null || !_seen.add(w)) continue;
+                add(WAY);
+                array(w.getNodesCount(), REF);
+            }
+        }
+
+        void ways(Collection<Way> ways) {
+            if (ways == null) return;
+            list(ways);
+            for (Way w : ways) way(w);
+        }
+
+        // The list itself, not what's in it.
+        void list(Collection<?> c) {
+            if (c == null) return;
+            add(ARRAY_LIST);
+            array(c.size(), REF);
+        }
+
+        void latLons(Collection<LatLon> c) {
+            if (c == null) return;
+            list(c);
+            add((long) c.size() * LAT_LON);
+        }
+
+        // Lists of Double, Long or Integer.
+        void boxed(Collection<? extends Number> c) {
+            if (c == null) return;
+            list(c);
+            add((long) c.size() * BOXED);
+        }
+
+        // A hash map with boxed keys, not counting the values.
+        void map(Map<?, ?> m) {
+            if (m == null) return;
+            add(MAP);
+            array(Integer.highestOneBit(Math.max(m.size() * 4 / 3, 1)) * 2, REF);
+            add((long) m.size() * (MAP_ENTRY + BOXED));
+        }
+
+        private static long align(long bytes) {
+            return (bytes + 7) & ~7;
+        }
+
+        // </editor-fold>
+    }
+}
@@ -0,0 +1,492 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * LaneModeStats - timings and counters for LaneMappingMode's builds and paints.
+ *
+ * -> Each build of all the renderers is a generation.  For the last few it keeps how long each stage took, how many
+ *    road renderers were built, skipped, failed or came out invalid, and how many node intersections were merged.
+ * -> For the last paint it keeps how long it took, how many renderers were drawn or threw, whether the renderers had
+ *    to be rebuilt first, and how often the geometry caches were hit during it.  The times of the last 200 paints
+ *    are kept too, for percentiles (shown by LaneHud).
+ * -> Exceptions the stages catch are counted by stage and type, so renderers that fail no longer fail silently.
+ * -> How much heap the renderers hold, as last estimated by LaneMemory, and how much cached geometry it evicted.
+ * -> Shown in LaneStatsDialog, and registered as an MXBean so it can be watched from jconsole or VisualVM.
+ */
+
+public final class LaneModeStats implements LaneModeStatsMXBean {
+
+    // <editor-fold defaultstate="collapsed" desc="Stages and Caches">
+
+    public enum Stage {
+        BUILD_ROADS("build roads"),
+        ALIGN_ROADS("align roads"),
+        NODE_INTERSECTIONS("node intersections"),
+        GROUP_INTERSECTIONS("group intersections"),
+        MULTI_INTERSECTIONS("multi intersections"),
+        PAINT("paint");
+
+        public final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    public enum Cache {
+        SIMPLIFIED_NODES("simplified nodes"),  // PolylineSimplifier.Cache
+        ALIGNMENT_PARTS("alignment parts"),    // RoadRenderer.getAlignmentParts()
+        EDGES("edges"),                        // RoadRenderer.getLeftEdge() / getRightEdge()
+        REGIONS("region defaults");            // RegionDefaults grid cells, border cells count as misses
+
+        public final String label;
+
+        Cache(String label) {
+            this.label = label;
+        }
+    }
+
+    public enum Footprint {
+        ROADS("road renderers"),            // Including their alignments and outlines.
+        ROAD_PIECES("road pieces"),         // Lanes, dividers and road edges.
+        CACHED_GEOMETRY("cached geometry"), // Alignment parts, edges and asphalt, the only part LaneMemory evicts.
+        INTERSECTIONS("intersections");
+
+        public final String label;
+
+        Footprint(String label) {
+            this.label = label;
+        }
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Variables">
+
+    public static final String OBJECT_NAME = "org.openstreetmap.josm.plugins.lanes:type=LaneModeStats";
+    private static final int BUILDS_KEPT = 20;
+    static final int RECENT_PAINTS = 200;
+    private static final LaneModeStats INSTANCE = new LaneModeStats();
+
+    // Builds.  Only the thread running the build touches _current, the finished ones are shared.
+    private int _generation = 0;
+    private Build _current;
+    private final List<Build> _builds = new ArrayList<>(); // Oldest first.
+
+    // Caches, counted from any thread.
+    private final LongAdder[] _hits = newAdders(Cache.values().length);
+    private final LongAdder[] _misses = newAdders(Cache.values().length);
+
+    // Keyed by "stage: exception class".
+    private final Map<String, LongAdder> _exceptions = new ConcurrentHashMap<>();
+
+    // Paints, only written on the EDT.  The cache counts are how much each cache was used during the last paint.
+    private final long[] _paintStartHits = new long[Cache.values().length];
+    private final long[] _paintStartMisses = new long[Cache.values().length];
+    private final long[] _paintHits = new long[Cache.values().length];
+    private final long[] _paintMisses = new long[Cache.values().length];
+    private volatile long _paintCount;
+    private volatile long _paintNanos;
+    private volatile long _lastPaintNanos;
+    private volatile int _lastPaintRoads;
+    private volatile int _lastPaintIntersections;
+    private volatile int _lastPaintFailures;
+    private volatile boolean _lastPaintRebuilt;
+    private final long[] _recentPaintNanos = new long[RECENT_PAINTS]; // Ring buffer, synchronized on itself.
+    private int _recentPaintNext;
+    private int _recentPaintSize;
+
+    // Memory, only written on the EDT.  The footprint is also kept per generation, in Build.
+    private volatile long[] _footprint = new long[Footprint.values().length];
+    private volatile long _capBytes;
+    private volatile long _evictions;
+    private volatile long _evictedBytes;
+    private volatile long _lastAccountNanos;
+
+    // </editor-fold>
+
+    private LaneModeStats() {}
+
+    public static LaneModeStats get() { return INSTANCE; }
+
+    /**
+     * Makes the stats visible to JMX clients.  Does nothing if they already are, e.g. when the plugin is reloaded.
+     */
+    public static void register() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, name);
+            }
+        } catch (Exception ignored) {} // No JMX, the debug panel still works.
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Recording">
+
+    // Starts a new generation, called at the start of the first stage.
+    void startBuild(int numWays) {
+        _current = new Build(++_generation, numWays);
+    }
+
+    // Records how long a stage took, given its System.nanoTime() start.
+    void endStage(Stage stage, long start) {
+        current()._stageNanos[stage.ordinal()] = System.nanoTime() - start;
+    }
+
+    Build current() {
+        if (_current == null) startBuild(0); // Stage run on its own, outside of a full build.
+        return _current;
+    }
+
+    // Called after the last stage, makes the generation visible to the panel and JMX.
+    void endBuild() {
+        Build build = current();
+        _current = null;
+        synchronized (_builds) {
+            _builds.add(build);
+            if (_builds.size() > BUILDS_KEPT) _builds.remove(0);
+        }
+    }
+
+    void exception(Stage stage, Exception e) {
+        count(stage.label + ": " + e.getClass().getSimpleName());
+    }
+
+    // A stage gave up waiting on its thread pool, so some renderers are missing.
+    void timedOut(Stage stage) {
+        count(stage.label + ": timed out");
+    }
+
+    private void count(String key) {
+        _exceptions.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    static void cache(Cache cache, boolean hit) {
+        (hit ? INSTANCE._hits : INSTANCE._misses)[cache.ordinal()].increment();
+    }
+
+    void startPaint() {
+        for (int i = 0; i < _hits.length; i++) {
+            _paintStartHits[i] = _hits[i].sum();
+            _paintStartMisses[i] = _misses[i].sum();
+        }
+    }
+
+    void endPaint(long start, boolean rebuilt, int roads, int intersections, int failures) {
+        long nanos = System.nanoTime() - start;
+        for (int i = 0; i < _hits.length; i++) {
+            _paintHits[i] = _hits[i].sum() - _paintStartHits[i];
+            _paintMisses[i] = _misses[i].sum() - _paintStartMisses[i];
+        }
+        _lastPaintNanos = nanos;
+        _lastPaintRebuilt = rebuilt;
+        _lastPaintRoads = roads;
+        _lastPaintIntersections = intersections;
+        _lastPaintFailures = failures;
+        _paintNanos += nanos;
+        _paintCount++;
+        synchronized (_recentPaintNanos) {
+            _recentPaintNanos[_recentPaintNext] = nanos;
+            _recentPaintNext = (_recentPaintNext + 1) % RECENT_PAINTS;
+            _recentPaintSize = Math.min(_recentPaintSize + 1, RECENT_PAINTS);
+        }
+    }
+
+    // Called by LaneMemory after estimating the renderers, with the footprint left after evicting.
+    void footprint(long[] bytes, long cap, int evicted, long evictedBytes, long nanos) {
+        _footprint = bytes.clone();
+        _capBytes = cap;
+        _evictions += evicted;
+        _evictedBytes += evictedBytes;
+        _lastAccountNanos = nanos;
+        Build last = getLastBuild();
+        if (last != null) last._footprint = bytes.clone();
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Getters">
+
+    // Finished generations, oldest first.
+    public List<Build> getBuilds() {
+        synchronized (_builds) {
+            return new ArrayList<>(_builds);
+        }
+    }
+
+    public Build getLastBuild() {
+        synchronized (_builds) {
+            return _builds.isEmpty() ? null : _builds.get(_builds.size() - 1);
+        }
+    }
+
+    public long getHits(Cache cache) { return _hits[cache.ordinal()].sum(); }
+
+    public long getMisses(Cache cache) { return _misses[cache.ordinal()].sum(); }
+
+    // During the last paint.
+    public long getPaintHits(Cache cache) { return _paintHits[cache.ordinal()]; }
+
+    public long getPaintMisses(Cache cache) { return _paintMisses[cache.ordinal()]; }
+
+    public boolean getLastPaintRebuilt() { return _lastPaintRebuilt; }
+
+    // Hit rate of all the caches together during the last paint, NaN if none were used.
+    public double getLastPaintHitRate() {
+        long hits = 0, misses = 0;
+        for (int i = 0; i < _paintHits.length; i++) {
+            hits += _paintHits[i];
+            misses += _paintMisses[i];
+        }
+        return hitRate(hits, misses);
+    }
+
+    // Times of the last RECENT_PAINTS paints (fewer until there have been that many), fastest first.
+    public long[] getRecentPaintNanos() {
+        long[] output;
+        synchronized (_recentPaintNanos) {
+            output = Arrays.copyOf(_recentPaintNanos, _recentPaintSize);
+        }
+        Arrays.sort(output);
+        return output;
+    }
+
+    // Nearest rank percentile (0 to 100) of times sorted fastest first, in milliseconds.  NaN if there are none.
+    public static double percentileMillis(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) return Double.NaN;
+        int rank = (int) Math.ceil(percentile / 100 * sortedNanos.length);
+        return sortedNanos[Math.max(Math.min(rank, sortedNanos.length), 1) - 1] / 1e6;
+    }
+
+    // As last estimated, in bytes.
+    public long getFootprint(Footprint footprint) { return _footprint[footprint.ordinal()]; }
+
+    public long getCapBytes() { return _capBytes; }
+
+    // Bytes of cached geometry evicted so far.
+    public long getEvictedBytes() { return _evictedBytes; }
+
+    public double getLastAccountMillis() { return _lastAccountNanos / 1e6; }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="MXBean">
+
+    @Override
+    public int getGeneration() {
+        Build last = getLastBuild();
+        return last == null ? 0 : last.getGeneration();
+    }
+
+    @Override
+    public double getLastBuildMillis() {
+        Build last = getLastBuild();
+        return last == null ? 0 : last.getTotalNanos() / 1e6;
+    }
+
+    @Override
+    public Map<String, Double> getLastBuildStageMillis() {
+        Map<String, Double> output = new LinkedHashMap<>();
+        Build last = getLastBuild();
+        if (last == null) return output;
+        for (Stage stage : Stage.values()) {
+            if (stage != Stage.PAINT) output.put(stage.label, last.getStageNanos(stage) / 1e6);
+        }
+        return output;
+    }
+
+    @Override
+    public Map<String, Integer> getLastBuildCounts() {
+        Map<String, Integer> output = new LinkedHashMap<>();
+        Build last = getLastBuild();
+        if (last == null) return output;
+        output.put("ways", last.getWays());
+        output.put("roads built", last.getRoadsBuilt());
+        output.put("roads skipped", last.getRoadsSkipped());
+        output.put("roads failed", last.getRoadsFailed());
+        output.put("roads invalid", last.getRoadsInvalid());
+        output.put("node intersections", last.getNodeIntersections());
+        output.put("node intersections merged", last.getIntersectionsMerged());
+        output.put("intersections built", last.getIntersectionsBuilt());
+        output.put("intersections failed", last.getIntersectionsFailed());
+        output.put("intersections invalid", last.getIntersectionsInvalid());
+        return output;
+    }
+
+    @Override
+    public long getPaintCount() { return _paintCount; }
+
+    @Override
+    public double getLastPaintMillis() { return _lastPaintNanos / 1e6; }
+
+    @Override
+    public double getAveragePaintMillis() {
+        long count = _paintCount;
+        return count == 0 ? 0 : _paintNanos / 1e6 / count;
+    }
+
+    @Override
+    public Map<String, Double> getRecentPaintPercentileMillis() {
+        Map<String, Double> output = new LinkedHashMap<>();
+        long[] recent = getRecentPaintNanos();
+        output.put("p50", percentileMillis(recent, 50));
+        output.put("p95", percentileMillis(recent, 95));
+        output.put("p99", percentileMillis(recent, 99));
+        return output;
+    }
+
+    @Override
+    public int getLastPaintRoads() { return _lastPaintRoads; }
+
+    @Override
+    public int getLastPaintIntersections() { return _lastPaintIntersections; }
+
+    @Override
+    public int getLastPaintFailures() { return _lastPaintFailures; }
+
+    @Override
+    public Map<String, Double> getCacheHitRates() {
+        Map<String, Double> output = new LinkedHashMap<>();
+        for (Cache cache : Cache.values()) output.put(cache.label, hitRate(getHits(cache), getMisses(cache)));
+        return output;
+    }
+
+    @Override
+    public Map<String, Double> getLastPaintCacheHitRates() {
+        Map<String, Double> output = new LinkedHashMap<>();
+        for (Cache cache : Cache.values()) output.put(cache.label, hitRate(getPaintHits(cache), getPaintMisses(cache)));
+        return output;
+    }
+
+    @Override
+    public Map<String, Long> getFootprintBytes() {
+        Map<String, Long> output = new LinkedHashMap<>();
+        long total = 0;
+        for (Footprint footprint : Footprint.values()) {
+            output.put(footprint.label, getFootprint(footprint));
+            total += getFootprint(footprint);
+        }
+        output.put("total", total);
+        return output;
+    }
+
+    @Override
+    public int getMemoryCapMegabytes() { return (int) (LaneMemory.getCapBytes() / 1024 / 1024); }
+
+    @Override
+    public void setMemoryCapMegabytes(int megabytes) { LaneMemory.setCapMegabytes(megabytes); }
+
+    @Override
+    public long getEvictions() { return _evictions; }
+
+    @Override
+    public Map<String, Long> getExceptions() {
+        Map<String, Long> output = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : _exceptions.entrySet()) output.put(e.getKey(), e.getValue().sum());
+        return output;
+    }
+
+    @Override
+    public void reset() {
+        synchronized (_builds) {
+            _builds.clear();
+        }
+        for (LongAdder a : _hits) a.reset();
+        for (LongAdder a : _misses) a.reset();
+        _exceptions.clear();
+        _paintCount = 0;
+        _paintNanos = 0;
+        synchronized (_recentPaintNanos) {
+            _recentPaintNext = 0;
+            _recentPaintSize = 0;
+        }
+        _evictions = 0;
+        _evictedBytes = 0;
+    }
+
+    // NaN when the cache wasn't used.
+    public static double hitRate(long hits, long misses) {
+        return hits + misses == 0 ? Double.NaN : (double) hits / (hits + misses);
+    }
+
+    private static LongAdder[] newAdders(int n) {
+        LongAdder[] output = new LongAdder[n];
+        for (int i = 0; i < n; i++) output[i] = new LongAdder();
+        return output;
+    }
+
+    // </editor-fold>
+
+    /**
+     * One generation of renderers.  Filled in by the thread running the build, read only once it's finished.
+     */
+    public static final class Build {
+        private final int _generation;
+        private final long _startedAt = System.currentTimeMillis();
+        private final int _ways;
+        private final long[] _stageNanos = new long[Stage.values().length];
+        private volatile long[] _footprint = new long[Footprint.values().length];
+        int roadsBuilt, roadsFailed, roadsInvalid;
+        int nodeIntersections, groups, intersectionsBuilt, intersectionsFailed, intersectionsInvalid;
+
+        private Build(int generation, int ways) {
+            _generation = generation;
+            _ways = ways;
+        }
+
+        public int getGeneration() { return _generation; }
+
+        // Wall clock time the build started, in milliseconds.
+        public long getStartedAt() { return _startedAt; }
+
+        public long getStageNanos(Stage stage) { return _stageNanos[stage.ordinal()]; }
+
+        public long getTotalNanos() {
+            long total = 0;
+            for (long nanos : _stageNanos) total += nanos;
+            return total;
+        }
+
+        public int getWays() { return _ways; }
+
+        public int getRoadsBuilt() { return roadsBuilt; }
+
+        // Ways that aren't roads, so don't get a renderer.
+        public int getRoadsSkipped() { return Math.max(_ways - roadsBuilt - roadsFailed, 0); }
+
+        public int getRoadsFailed() { return roadsFailed; }
+
+        // Drawn as untagged roads with an exclamation point, since the lane tags couldn't be laid out.
+        public int getRoadsInvalid() { return roadsInvalid; }
+
+        public int getNodeIntersections() { return nodeIntersections; }
+
+        // Node intersections that overlapped another and were drawn as part of it.
+        public int getIntersectionsMerged() { return nodeIntersections - groups; }
+
+        public int getIntersectionsBuilt() { return intersectionsBuilt; }
+
+        public int getIntersectionsFailed() { return intersectionsFailed; }
+
+        public int getIntersectionsInvalid() { return intersectionsInvalid; }
+
+        // As last estimated while this was the newest generation, in bytes.
+        public long getFootprint(Footprint footprint) { return _footprint[footprint.ordinal()]; }
+
+        public long getTotalFootprint() {
+            long total = 0;
+            for (long bytes : _footprint) total += bytes;
+            return total;
+        }
+    }
+}
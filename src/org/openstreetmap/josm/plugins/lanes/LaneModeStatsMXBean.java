@@ -0,0 +1,70 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import java.util.Map;
+
+/**
+ * What LaneModeStats shows over JMX, under {@value LaneModeStats#OBJECT_NAME}.  Times are in milliseconds, hit rates
+ * go from 0 to 1 (NaN if the cache wasn't used), memory is in bytes unless it says otherwise.
+ */
+public interface LaneModeStatsMXBean {
+
+    // <editor-fold defaultstate="collapsed" desc="Last Build">
+
+    int getGeneration();
+
+    double getLastBuildMillis();
+
+    Map<String, Double> getLastBuildStageMillis();
+
+    // Ways, roads built / skipped / failed / invalid, node intersections found / merged, intersections built / failed / invalid.
+    Map<String, Integer> getLastBuildCounts();
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Paints">
+
+    long getPaintCount();
+
+    double getLastPaintMillis();
+
+    double getAveragePaintMillis();
+
+    // Of the last 200 paints, keyed "p50", "p95" and "p99".
+    Map<String, Double> getRecentPaintPercentileMillis();
+
+    int getLastPaintRoads();
+
+    int getLastPaintIntersections();
+
+    int getLastPaintFailures();
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Memory">
+
+    // Estimated heap held by the renderers, by kind and in total, see LaneMemory.
+    Map<String, Long> getFootprintBytes();
+
+    // Past this, cached geometry of roads not drawn lately is evicted.  Stored in the "lanes.memory.cap" preference.
+    int getMemoryCapMegabytes();
+
+    void setMemoryCapMegabytes(int megabytes);
+
+    // Road renderers whose cached geometry was evicted.
+    long getEvictions();
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Caches and Exceptions">
+
+    Map<String, Double> getCacheHitRates();
+
+    Map<String, Double> getLastPaintCacheHitRates();
+
+    // Exceptions caught by LaneMappingMode, keyed by "stage: exception class".
+    Map<String, Long> getExceptions();
+
+    void reset();
+
+    // </editor-fold>
+}
@@ -0,0 +1,500 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import org.openstreetmap.josm.data.osm.OsmUtils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Everything the renderer needs from the lane tags of a way, parsed once into primitive arrays.  Immutable, and
+ * only depends on the tags (not on the location or the map view), so it can be shared and used off the EDT.
+ * Ways with the same lane tagging share one profile through get(), which also holds the rendered width of each
+ * lane and divider so that the road pieces of those ways don't re-derive them.
+ *
+ * Directions are the same as RoadPiece._direction: 1 is forward, -1 is backward, 0 is both ways.
+ */
+public final class LaneProfile {
+
+    public static final double DEFAULT_LANE_WIDTH = Utils.WIDTH_LANES;
+
+    // Interned profiles, keyed on the normalized lane tags.  Cleared when it gets this big, which only happens
+    //  with very large data sets, since most roads share a handful of taggings.
+    private static final int MAX_INTERNED = 10000;
+    private static final Map<String, LaneProfile> INTERNED = new ConcurrentHashMap<>();
+
+    // <editor-fold defaultstate="collapsed" desc="Problems">
+
+    public static final int PROBLEM_BACKWARD_ONEWAY = 1; // oneway=-1.
+    public static final int PROBLEM_BAD_LANE_COUNT = 1 << 1; // lanes, lanes:forward etc. aren't whole numbers.
+    public static final int PROBLEM_LANE_LIST_MISMATCH = 1 << 2; // :lanes tags in one direction have different lengths.
+    public static final int PROBLEM_LANE_TOTAL_MISMATCH = 1 << 3; // lanes doesn't add up with lanes:forward etc.
+
+    // Problems that make the profile invalid, the rest are only reported.
+    public static final int INVALID = PROBLEM_BACKWARD_ONEWAY | PROBLEM_BAD_LANE_COUNT | PROBLEM_LANE_LIST_MISMATCH;
+
+    public static String getProblemName(int problem) {
+        switch (problem) {
+            case PROBLEM_BACKWARD_ONEWAY: return "backward_oneway";
+            case PROBLEM_BAD_LANE_COUNT: return "bad_lane_count";
+            case PROBLEM_LANE_LIST_MISMATCH: return "lane_list_mismatch";
+            case PROBLEM_LANE_TOTAL_MISMATCH: return "lane_total_mismatch";
+            default: return "unknown";
+        }
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Turn Bits">
+
+    // Same order as the turn values known to LaneTagTokenizer.turnMask().
+    public static final int TURN_NONE = 1;
+    public static final int TURN_LEFT = 1 << 1;
+    public static final int TURN_SLIGHT_LEFT = 1 << 2;
+    public static final int TURN_SHARP_LEFT = 1 << 3;
+    public static final int TURN_THROUGH = 1 << 4;
+    public static final int TURN_RIGHT = 1 << 5;
+    public static final int TURN_SLIGHT_RIGHT = 1 << 6;
+    public static final int TURN_SHARP_RIGHT = 1 << 7;
+    public static final int TURN_REVERSE = 1 << 8;
+    public static final int TURN_MERGE_TO_LEFT = 1 << 9;
+    public static final int TURN_MERGE_TO_RIGHT = 1 << 10;
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Variables">
+
+    private int _problems = 0; // PROBLEM_ bits.
+    private int _tagError = LaneTagTokenizer.OK; // First error found in the lane values.
+    private final boolean _oneway; // Same as Utils.isOneway, includes roundabouts.
+    private final int _onewayTag; // Same as Way.isOneway.
+
+    private final int[] _numLanes = new int[3];
+
+    // Indexed by [direction index][position].
+    private final String[][] _turn = new String[3][];
+    private final int[][] _turnMask = new int[3][];
+    private final String[][] _change = new String[3][];
+    private final double[][] _laneWidthStart = new double[3][];
+    private final double[][] _laneWidthEnd = new double[3][];
+    private final Utils.LaneType[][] _laneType = new Utils.LaneType[3][];
+    private final double[][] _dividerWidthStart = new double[3][];
+    private final double[][] _dividerWidthEnd = new double[3][];
+
+    // Cross-section template: widths (in meters) of the rendered lanes and dividers, as used by Lane and Divider.
+    private final double[][] _renderedLaneWidthStart = new double[3][];
+    private final double[][] _renderedLaneWidthEnd = new double[3][];
+    private final double[][] _renderedDividerWidthStart = new double[3][];
+    private final double[][] _renderedDividerWidthEnd = new double[3][];
+
+    // </editor-fold>
+
+    private LaneProfile(Map<String, String> tags) {
+        LaneTagTokenizer tokenizer = new LaneTagTokenizer(); // Only needed while parsing.
+        _onewayTag = parseOneway(tags.get("oneway"));
+        _oneway = _onewayTag == 1 || "roundabout".equals(tags.get("junction")) || "circular".equals(tags.get("junction"));
+
+        if (_onewayTag == -1) _problems |= PROBLEM_BACKWARD_ONEWAY; // Supporting this would be suicidal.
+
+        try {
+            getLaneCounts(tags);
+        } catch (NumberFormatException e) {
+            _problems |= PROBLEM_BAD_LANE_COUNT;
+            for (int i = 0; i < 3; i++) _numLanes[i] = 0;
+        }
+
+        for (int direction = -1; direction <= 1; direction++) {
+            int i = index(direction);
+            int n = Math.max(_numLanes[i], 1);
+            _turn[i] = new String[n];
+            _turnMask[i] = new int[n];
+            _change[i] = new String[n];
+            _laneWidthStart[i] = new double[n];
+            _laneWidthEnd[i] = new double[n];
+            _laneType[i] = new Utils.LaneType[n];
+            _dividerWidthStart[i] = new double[n];
+            _dividerWidthEnd[i] = new double[n];
+
+            int lanesForTotal = Math.max(_numLanes[index(1)], 0) + Math.max(_numLanes[index(-1)], 0);
+            for (int position = 0; position < n; position++) {
+                _turn[i][position] = getTurn(tags, direction, position);
+                _turnMask[i][position] = parseTurnMask(tokenizer, _turn[i][position]);
+                _change[i][position] = getChange(tags, direction, position);
+                _laneWidthStart[i][position] = getLaneWidth(tokenizer, tags, direction, position, true, lanesForTotal);
+                _laneWidthEnd[i][position] = getLaneWidth(tokenizer, tags, direction, position, false, lanesForTotal);
+                _laneType[i][position] = getLaneType(tags, direction, position);
+                _dividerWidthStart[i][position] = getDividerWidth(tokenizer, tags, direction, position, true);
+                _dividerWidthEnd[i][position] = getDividerWidth(tokenizer, tags, direction, position, false);
+            }
+
+            _renderedLaneWidthStart[i] = getRenderedLaneWidths(_laneWidthStart[i], direction);
+            _renderedLaneWidthEnd[i] = getRenderedLaneWidths(_laneWidthEnd[i], direction);
+            _renderedDividerWidthStart[i] = getRenderedDividerWidths(_dividerWidthStart[i]);
+            _renderedDividerWidthEnd[i] = getRenderedDividerWidths(_dividerWidthEnd[i]);
+        }
+    }
+
+    /**
+     * Gets the profile for the lane tags of a way, shared with every other way that has the same lane tags.
+     * @param tags The interesting tags of the way (see OsmPrimitive.getInterestingTags()).
+     */
+    public static LaneProfile get(Map<String, String> tags) {
+        Map<String, String> laneTags = new TreeMap<>();
+        StringBuilder key = new StringBuilder();
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            if (isLaneTag(tag.getKey())) laneTags.put(tag.getKey(), tag.getValue());
+        }
+        for (Map.Entry<String, String> tag : laneTags.entrySet()) {
+            key.append(tag.getKey()).append('=').append(tag.getValue()).append('\n');
+        }
+
+        if (INTERNED.size() > MAX_INTERNED) INTERNED.clear();
+        return INTERNED.computeIfAbsent(key.toString(), k -> new LaneProfile(laneTags));
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Getters">
+
+    // False if the lane tags contradict each other, in which case the road can't be drawn lane by lane.
+    public boolean isValid() { return (_problems & INVALID) == 0; }
+
+    // PROBLEM_ bits for everything found wrong with the lane tags, including problems that don't make it invalid.
+    public int getProblems() { return _problems; }
+
+    public boolean isOneway() { return _oneway; }
+
+    public int getOnewayTag() { return _onewayTag; }
+
+    // LaneTagTokenizer error code of the first malformed width or turn value, or OK.  The profile is still usable.
+    public int getTagError() { return _tagError; }
+
+    // Number of lanes in the direction, which is -1 if there's no way to tell.
+    public int getNumLanes(int direction) { return _numLanes[index(direction)]; }
+
+    // Turn value of the lane (e.g. "left;through"), or null if there's no turn tagging that applies.
+    public String getTurn(int direction, int position) { return get(_turn, direction, position); }
+
+    // The turn value as a combination of the TURN_ bits.
+    public int getTurnMask(int direction, int position) {
+        int[] values = _turnMask[index(direction)];
+        return position >= 0 && position < values.length ? values[position] : 0;
+    }
+
+    // Change value from the tags, which may be empty or invalid.  Lane falls back on position based values.
+    public String getChange(int direction, int position) {
+        String output = get(_change, direction, position);
+        return output == null ? "" : output;
+    }
+
+    // Width of the lane in meters, or NaN if it isn't tagged.
+    public double getLaneWidth(int direction, int position, boolean start) {
+        return get(start ? _laneWidthStart : _laneWidthEnd, direction, position);
+    }
+
+    public Utils.LaneType getLaneType(int direction, int position) {
+        Utils.LaneType output = get(_laneType, direction, position);
+        return output == null ? Utils.LaneType.DRIVING : output;
+    }
+
+    // Width in meters of the divider to the right of the given lane, or of the centre divider for direction 0.
+    public double getDividerWidth(int direction, int position, boolean start) {
+        double output = get(start ? _dividerWidthStart : _dividerWidthEnd, direction, position);
+        return Double.isNaN(output) ? 0 : output;
+    }
+
+    // Width of the lane as rendered, which is the tagged width (or default width) minus the dividers.
+    public double getRenderedLaneWidth(int direction, int position, boolean start) {
+        double[] values = (start ? _renderedLaneWidthStart : _renderedLaneWidthEnd)[index(direction)];
+        return values[position >= 0 && position < values.length ? position : 0];
+    }
+
+    // Width of the divider as rendered, which includes the painted line.
+    public double getRenderedDividerWidth(int direction, int position, boolean start) {
+        double[] values = (start ? _renderedDividerWidthStart : _renderedDividerWidthEnd)[index(direction)];
+        return position >= 0 && position < values.length ? values[position] : Utils.RENDERING_WIDTH_DIVIDER;
+    }
+
+    private static <T> T get(T[][] values, int direction, int position) {
+        T[] inDirection = values[index(direction)];
+        return position >= 0 && position < inDirection.length ? inDirection[position] : null;
+    }
+
+    private static double get(double[][] values, int direction, int position) {
+        double[] inDirection = values[index(direction)];
+        return position >= 0 && position < inDirection.length ? inDirection[position] : Double.NaN;
+    }
+
+    private static int index(int direction) {
+        return direction == 1 ? 0 : direction == -1 ? 1 : 2;
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Methods for the Cross-Section Template">
+
+    private static double[] getRenderedLaneWidths(double[] widths, int direction) {
+        double[] output = new double[widths.length];
+        double divider = (direction == 0 ? 1 : -1) * Utils.RENDERING_WIDTH_DIVIDER;
+        for (int i = 0; i < widths.length; i++) {
+            output[i] = (Double.isNaN(widths[i]) ? Utils.WIDTH_LANES : widths[i]) + divider;
+        }
+        return output;
+    }
+
+    private static double[] getRenderedDividerWidths(double[] widths) {
+        double[] output = new double[widths.length];
+        for (int i = 0; i < widths.length; i++) {
+            output[i] = (Double.isNaN(widths[i]) ? 0 : widths[i]) + Utils.RENDERING_WIDTH_DIVIDER;
+        }
+        return output;
+    }
+
+    // Whether the tag can change the profile, only these are part of the key for shared profiles.
+    private static boolean isLaneTag(String key) {
+        if (key.contains("note")) return false;
+        return key.equals("oneway") || key.equals("junction") || key.equals("lanes") || key.startsWith("lanes:") ||
+                key.contains(":lanes") || key.equals("turn") || key.startsWith("turn:") || key.equals("change") ||
+                key.startsWith("change:") || key.equals("width") || key.startsWith("width:");
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Methods for Parsing Lane Counts">
+
+    private void getLaneCounts(Map<String, String> tags) {
+        int numLanesForward = getLanesInDirectionFromSuffix(tags, 1);
+        int numLanesBackward = getLanesInDirectionFromSuffix(tags, -1);
+        int numLanesBothWays = getLanesInDirectionFromSuffix(tags, 0);
+
+        if (tags.containsKey("lanes:forward") && numLanesForward == -1) {
+            numLanesForward = Integer.parseInt(tags.get("lanes:forward"));
+        }
+        if (tags.containsKey("lanes") && _oneway && numLanesForward == -1) {
+            numLanesForward = Integer.parseInt(tags.get("lanes"));
+        }
+        if (tags.containsKey("lanes:backward") && numLanesBackward == -1) {
+            numLanesBackward = Integer.parseInt(tags.get("lanes:backward"));
+        }
+        if (tags.containsKey("lanes:both_ways") && numLanesBothWays == -1) {
+            numLanesBothWays = Integer.parseInt(tags.get("lanes:both_ways"));
+        }
+
+        if (numLanesBothWays == -1) numLanesBothWays = 0; // Assume no centre lane.
+
+        // Distribute remaining lanes to unspecified directions (lanes=5 & lanes:forward=3 -> assume lanes:backward=2)
+        if (!(numLanesBackward == 0 && numLanesForward == 0 && numLanesBothWays != 0) && tags.containsKey("lanes") && !_oneway) {
+            int lanes = Integer.parseInt(tags.get("lanes")) - numLanesBothWays;
+            if (numLanesForward == -1 && numLanesBackward == -1) {
+                numLanesForward = lanes-lanes/2;
+                numLanesBackward = lanes/2;
+            } else if (numLanesForward == -1) {
+                numLanesForward = lanes - numLanesBackward;
+            } else if (numLanesBackward == -1) {
+                numLanesBackward = lanes - numLanesForward;
+            }
+        }
+
+        if (numLanesBothWays == 1 && numLanesBackward == 0 && numLanesForward == 0) {
+            numLanesForward = 1;
+            numLanesBothWays = 0;
+        } else if (tags.containsKey("lanes")) {
+            // The lanes get drawn anyway, but mappers should know when the numbers don't add up.
+            int counted = _oneway ? numLanesForward : numLanesForward + numLanesBackward + numLanesBothWays;
+            if (numLanesForward < 0 || (!_oneway && numLanesBackward < 0) || !String.valueOf(counted).equals(tags.get("lanes"))) {
+                _problems |= PROBLEM_LANE_TOTAL_MISMATCH;
+            }
+        }
+
+        _numLanes[index(1)] = numLanesForward;
+        _numLanes[index(-1)] = numLanesBackward;
+        _numLanes[index(0)] = numLanesBothWays;
+    }
+
+    // Number of lanes in the direction according to :lanes suffixed tags, or -1 if there are none.
+    private int getLanesInDirectionFromSuffix(Map<String, String> tags, int direction) {
+        int numLanes = -1;
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            String key = tag.getKey();
+            if (!key.contains("note") && (direction == 1 ? ((key.endsWith(":lanes") && _oneway) || key.endsWith(":lanes:forward")) :
+                    direction == 0 ? key.endsWith(":lanes:both_ways") : key.endsWith(":lanes:backward"))) {
+
+                // This runs if the tag being analyzed is a lane tag applying to this direction.
+                int len = LaneTagTokenizer.count(tag.getValue());
+                if (numLanes == -1) numLanes = len;
+                if (numLanes != len) _problems |= PROBLEM_LANE_LIST_MISMATCH;
+            }
+        }
+        return numLanes;
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Methods for Parsing Lane Values">
+
+    private String getTurn(Map<String, String> tags, int direction, int position) {
+        if (direction == 1) {
+            if (tags.containsKey("turn:lanes:forward")) return LaneTagTokenizer.lane(tags.get("turn:lanes:forward"), position);
+            if (tags.containsKey("turn:lanes") && _oneway) return LaneTagTokenizer.lane(tags.get("turn:lanes"), position);
+            if (tags.containsKey("turn:forward")) return tags.get("turn:forward");
+        } else if (direction == -1) {
+            if (tags.containsKey("turn:lanes:backward")) return LaneTagTokenizer.lane(tags.get("turn:lanes:backward"), position);
+            if (tags.containsKey("turn:backward")) return tags.get("turn:backward");
+        } else {
+            if (tags.containsKey("turn:lanes:both_ways")) return LaneTagTokenizer.lane(tags.get("turn:lanes:both_ways"), 0);
+            if (tags.containsKey("turn:both_ways")) return tags.get("turn:both_ways");
+        }
+        return tags.get("turn");
+    }
+
+    private int parseTurnMask(LaneTagTokenizer tokenizer, String turn) {
+        if (turn == null) return 0;
+        int output = tokenizer.turnMask(turn, 0, turn.length());
+        noteError(tokenizer);
+        return output;
+    }
+
+    private void noteError(LaneTagTokenizer tokenizer) {
+        int error = tokenizer.getError();
+        if (_tagError == LaneTagTokenizer.OK && error != LaneTagTokenizer.OK && error != LaneTagTokenizer.EMPTY) {
+            _tagError = error;
+        }
+    }
+
+    private String getChange(Map<String, String> tags, int direction, int position) {
+        // Later tags take precedence over earlier ones.
+        String output = "";
+        if (direction == 1) {
+            if (tags.containsKey("change:lanes:forward")) output = LaneTagTokenizer.lane(tags.get("change:lanes:forward"), position);
+            if (tags.containsKey("change:lanes") && _oneway) output = LaneTagTokenizer.lane(tags.get("change:lanes"), position);
+            if (tags.containsKey("change:forward")) output = tags.get("change:forward");
+            if (tags.containsKey("change")) output = tags.get("change");
+        } else if (direction == -1) {
+            if (tags.containsKey("change:lanes:backward")) output = LaneTagTokenizer.lane(tags.get("change:lanes:backward"), position);
+            if (tags.containsKey("change:backward")) output = tags.get("change:backward");
+            if (tags.containsKey("change")) output = tags.get("change");
+        }
+        return output;
+    }
+
+    private double getLaneWidth(LaneTagTokenizer tokenizer, Map<String, String> tags, int direction, int position, boolean start,
+                                int lanesForTotal) {
+        String widthTag = getWidthTag(tags, direction, position, start);
+        if (widthTag == null) return Double.NaN;
+
+        double lanes = 1;
+        int end = widthTag.length();
+        if (widthTag.endsWith(" total")) {
+            end -= 6;
+            lanes = lanesForTotal;
+        }
+        double output = tokenizer.width(widthTag, 0, end) / lanes;
+        noteError(tokenizer);
+        return output;
+    }
+
+    private String getWidthTag(Map<String, String> tags, int direction, int position, boolean start) {
+        String output = "";
+        String suffix = direction == 1 ? ":forward" : direction == -1 ? ":backward" : ":both_ways";
+        if (start && tags.containsKey("width:lanes" + suffix + ":start")) {
+            output = LaneTagTokenizer.lane(tags.get("width:lanes" + suffix + ":start"), position);
+        }
+        if (output.equals("") && !start && tags.containsKey("width:lanes" + suffix + ":end")) {
+            output = LaneTagTokenizer.lane(tags.get("width:lanes" + suffix + ":end"), position);
+        }
+        if (output.equals("") && tags.containsKey("width:lanes" + suffix)) {
+            output = LaneTagTokenizer.lane(tags.get("width:lanes" + suffix), position);
+        }
+
+        if (direction == 1 && _oneway) {
+            if (output.equals("") && start && tags.containsKey("width:lanes:start")) {
+                output = LaneTagTokenizer.lane(tags.get("width:lanes:start"), position);
+            }
+            if (output.equals("") && !start && tags.containsKey("width:lanes:end")) {
+                output = LaneTagTokenizer.lane(tags.get("width:lanes:end"), position);
+            }
+            if (output.equals("") && tags.containsKey("width:lanes")) {
+                output = LaneTagTokenizer.lane(tags.get("width:lanes"), position);
+            }
+        }
+
+        if (output.equals("")) {
+            if (start && tags.containsKey("width:start")) {
+                output = tags.get("width:start") + " total";
+            } else if (tags.containsKey("width:end")) {
+                output = tags.get("width:end") + " total";
+            } else if (tags.containsKey("width")) {
+                output = tags.get("width") + " total";
+            }
+        }
+
+        return output.equals("") ? null : output;
+    }
+
+    private Utils.LaneType getLaneType(Map<String, String> tags, int direction, int position) {
+        String suffix = direction == 1 ? (_oneway ? "" : ":forward") : direction == -1 ? ":backward" : ":both_ways";
+        if (isDesignated(tags, "bicycle:lanes" + suffix, position)) return Utils.LaneType.BICYCLE;
+        if (isDesignated(tags, "bus:lanes" + suffix, position) || isDesignated(tags, "psv:lanes" + suffix, position)) {
+            return Utils.LaneType.BUS;
+        }
+        if (isDesignated(tags, "hov:lanes" + suffix, position)) return Utils.LaneType.HOV;
+        return Utils.LaneType.DRIVING;
+    }
+
+    private static boolean isDesignated(Map<String, String> tags, String key, int position) {
+        String value = tags.get(key);
+        return value != null && LaneTagTokenizer.lane(value, position).equals("designated");
+    }
+
+    private double getDividerWidth(LaneTagTokenizer tokenizer, Map<String, String> tags, int direction, int position,
+                                   boolean start) {
+        String value = "0";
+        if (direction == 0) {
+            if (tags.containsKey("width:centre_divider:start") && start) {
+                value = tags.get("width:centre_divider:start");
+            } else if (tags.containsKey("width:centre_divider:end") && !start) {
+                value = tags.get("width:centre_divider:end");
+            } else if (tags.containsKey("width:centre_divider")) {
+                value = tags.get("width:centre_divider");
+            }
+        } else {
+            String suffix = direction == 1 ? ":forward" : ":backward";
+            boolean onewayTag = direction == 1 && _onewayTag == 1;
+            if (tags.containsKey("width:dividers" + suffix + ":start") && start) {
+                value = LaneTagTokenizer.lane(tags.get("width:dividers" + suffix + ":start"), position);
+            } else if (tags.containsKey("width:dividers" + suffix + ":end") && !start) {
+                value = LaneTagTokenizer.lane(tags.get("width:dividers" + suffix + ":end"), position);
+            } else if (tags.containsKey("width:dividers" + suffix)) {
+                value = LaneTagTokenizer.lane(tags.get("width:dividers" + suffix), position);
+            } else if (tags.containsKey("width:dividers:start") && onewayTag && start) {
+                value = LaneTagTokenizer.lane(tags.get("width:dividers:start"), position);
+            } else if (tags.containsKey("width:dividers:end") && onewayTag && !start) {
+                value = LaneTagTokenizer.lane(tags.get("width:dividers:end"), position);
+            } else if (tags.containsKey("width:dividers") && onewayTag) {
+                value = LaneTagTokenizer.lane(tags.get("width:dividers"), position);
+            }
+        }
+        double output = tokenizer.width(value, 0, value.length());
+        noteError(tokenizer);
+        return output;
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Value Parsing">
+
+    private static int parseOneway(String value) {
+        if (value == null) return 0;
+        if (value.equals("-1")) return -1;
+        Boolean oneway = OsmUtils.getOsmBoolean(value);
+        return oneway != null && oneway ? 1 : 0;
+    }
+
+    /**
+     * Parses a width value (e.g. "3.5", "3.5 m", "12'", "2 lanes") into meters.
+     * @return The width in meters, 0 if value is empty, or NaN if it can't be parsed.
+     */
+    public static double parseWidth(String value) {
+        return LaneTagTokenizer.width(value);
+    }
+
+    // </editor-fold>
+}
@@ -0,0 +1,147 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import org.openstreetmap.josm.gui.dialogs.ToggleDialog;
+import org.openstreetmap.josm.tools.Shortcut;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * LaneStatsDialog - debug panel showing what LaneModeStats has recorded.
+ *
+ * -> The last build (per stage timings and counts), the last paint, cache hit rates, estimated memory, the earlier
+ *    generations, and the exceptions caught so far.
+ * -> The spinner at the top sets the memory cap LaneMemory evicts cached geometry at, the check box turns LaneHud's
+ *    paint times on the map on and off.
+ * -> Hidden until opened from the Windows menu, and only refreshes (once a second) while it's open.
+ */
+
+public class LaneStatsDialog extends ToggleDialog {
+
+    private static final int REFRESH_MILLIS = 1000;
+
+    private final JTextArea _text = new JTextArea();
+    private final JSpinner _cap = new JSpinner(new SpinnerNumberModel(LaneMemory.DEFAULT_CAP_MB, 16, 1 << 16, 16));
+    private final JCheckBox _hud = new JCheckBox(tr("Show paint times on the map"));
+    private final Timer _timer = new Timer(REFRESH_MILLIS, e -> refresh());
+
+    public LaneStatsDialog() {
+        super(tr("Lane Statistics"), "lanestats", tr("Timings and counters of the lane editing mode"),
+                Shortcut.registerShortcut("subwindow:lanestats", tr("Toggle: {0}", tr("Lane Statistics")),
+                KeyEvent.CHAR_UNDEFINED, Shortcut.NONE), 250, false);
+        _text.setEditable(false);
+        _text.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        _cap.addChangeListener(e -> LaneMemory.setCapMegabytes((Integer) _cap.getValue()));
+        _hud.addActionListener(e -> LaneHud.setEnabled(_hud.isSelected()));
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        controls.add(new JLabel(tr("Memory cap (MB):")));
+        controls.add(_cap);
+        controls.add(_hud);
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(controls, BorderLayout.NORTH);
+        panel.add(_text, BorderLayout.CENTER);
+        createLayout(panel, true, null);
+    }
+
+    @Override
+    public void showNotify() {
+        _cap.setValue((int) (LaneMemory.getCapBytes() / 1024 / 1024));
+        _hud.setSelected(LaneHud.isEnabled());
+        refresh();
+        _timer.start();
+    }
+
+    @Override
+    public void hideNotify() {
+        _timer.stop();
+    }
+
+    private void refresh() {
+        int caret = _text.getCaretPosition();
+        _text.setText(getText(LaneModeStats.get()));
+        _text.setCaretPosition(Math.min(caret, _text.getDocument().getLength()));
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Text">
+
+    static String getText(LaneModeStats stats) {
+        StringBuilder sb = new StringBuilder();
+        List<LaneModeStats.Build> builds = stats.getBuilds();
+        LaneModeStats.Build last = builds.isEmpty() ? null : builds.get(builds.size() - 1);
+
+        if (last == null) {
+            sb.append("No build yet.\n");
+        } else {
+            sb.append(String.format("Generation %d, %d ways, built at %s\n", last.getGeneration(), last.getWays(),
+                    new SimpleDateFormat("HH:mm:ss").format(new Date(last.getStartedAt()))));
+            for (LaneModeStats.Stage stage : LaneModeStats.Stage.values()) {
+                if (stage == LaneModeStats.Stage.PAINT) continue;
+                sb.append(String.format("  %-22s %9.1f ms\n", stage.label, last.getStageNanos(stage) / 1e6));
+            }
+            sb.append(String.format("  %-22s %9.1f ms\n", "total", last.getTotalNanos() / 1e6));
+            sb.append(String.format("  roads: %d built, %d skipped, %d failed, %d invalid\n", last.getRoadsBuilt(),
+                    last.getRoadsSkipped(), last.getRoadsFailed(), last.getRoadsInvalid()));
+            sb.append(String.format("  node intersections: %d found, %d merged\n", last.getNodeIntersections(),
+                    last.getIntersectionsMerged()));
+            sb.append(String.format("  intersections: %d built, %d failed, %d invalid\n", last.getIntersectionsBuilt(),
+                    last.getIntersectionsFailed(), last.getIntersectionsInvalid()));
+        }
+
+        sb.append(String.format("\nLast paint %.1f ms%s, average %.1f ms over %d paints\n", stats.getLastPaintMillis(),
+                stats.getLastPaintRebuilt() ? " (rebuilt first)" : "", stats.getAveragePaintMillis(), stats.getPaintCount()));
+        sb.append(String.format("  drew %d roads and %d intersections, %d failed\n", stats.getLastPaintRoads(),
+                stats.getLastPaintIntersections(), stats.getLastPaintFailures()));
+        long[] recent = stats.getRecentPaintNanos();
+        sb.append(String.format("  last %d paints: p50 %.1f ms, p95 %.1f ms, p99 %.1f ms\n", recent.length,
+                LaneModeStats.percentileMillis(recent, 50), LaneModeStats.percentileMillis(recent, 95),
+                LaneModeStats.percentileMillis(recent, 99)));
+
+        sb.append(String.format("\n  %-22s %10s %10s\n", "cache hit rate", "last paint", "overall"));
+        for (LaneModeStats.Cache cache : LaneModeStats.Cache.values()) {
+            sb.append(String.format("  %-22s %10s %10s\n", cache.label,
+                    percent(LaneModeStats.hitRate(stats.getPaintHits(cache), stats.getPaintMisses(cache))),
+                    percent(LaneModeStats.hitRate(stats.getHits(cache), stats.getMisses(cache)))));
+        }
+
+        long total = 0;
+        for (LaneModeStats.Footprint footprint : LaneModeStats.Footprint.values()) total += stats.getFootprint(footprint);
+        sb.append(String.format("\nMemory %.1f of %.0f MB, estimated in %.1f ms\n", total / 1048576.0,
+                stats.getCapBytes() / 1048576.0, stats.getLastAccountMillis()));
+        for (LaneModeStats.Footprint footprint : LaneModeStats.Footprint.values()) {
+            sb.append(String.format("  %-22s %9.1f MB\n", footprint.label, stats.getFootprint(footprint) / 1048576.0));
+        }
+        sb.append(String.format("  evicted %d roads' geometry, %.1f MB\n", stats.getEvictions(),
+                stats.getEvictedBytes() / 1048576.0));
+
+        if (builds.size() > 1) {
+            sb.append(String.format("\n  %-10s %8s %10s %8s %8s %8s\n", "generation", "ways", "total ms", "failed", "invalid", "MB"));
+            for (int i = builds.size() - 1; i >= 0; i--) {
+                LaneModeStats.Build b = builds.get(i);
+                sb.append(String.format("  %-10d %8d %10.1f %8d %8d %8.1f\n", b.getGeneration(), b.getWays(),
+                        b.getTotalNanos() / 1e6, b.getRoadsFailed() + b.getIntersectionsFailed(),
+                        b.getRoadsInvalid() + b.getIntersectionsInvalid(), b.getTotalFootprint() / 1048576.0));
+            }
+        }
+
+        Map<String, Long> exceptions = stats.getExceptions();
+        sb.append(exceptions.isEmpty() ? "\nNo exceptions caught.\n" : "\nExceptions caught:\n");
+        for (Map.Entry<String, Long> e : exceptions.entrySet()) {
+            sb.append(String.format("  %-50s %8d\n", e.getKey(), e.getValue()));
+        }
+        return sb.toString();
+    }
+
+    private static String percent(double rate) {
+        return Double.isNaN(rate) ? "-" : String.format("%.1f%%", 100 * rate);
+    }
+
+    // </editor-fold>
+}
@@ -0,0 +1,230 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+/**
+ * Parses lane tag values in place: |-separated lane lists, ;-separated turn lists and widths with units.  Works on
+ * index ranges of the tag value, so nothing is allocated except the value of a lane when it's asked for as a String.
+ * Malformed input doesn't throw, the result is NaN / 0 and getError() says what was wrong with the last value.
+ */
+public final class LaneTagTokenizer {
+
+    // <editor-fold defaultstate="collapsed" desc="Error Codes">
+
+    public static final int OK = 0;
+    public static final int EMPTY = 1; // Nothing there (e.g. "3||3" at position 1).
+    public static final int BAD_NUMBER = 2; // Not a number (e.g. "wide").
+    public static final int BAD_UNIT = 3; // Number with an unknown unit (e.g. "3 yd").
+    public static final int BAD_TURN = 4; // Unknown turn value (e.g. "lfet").
+
+    public static String getErrorName(int error) {
+        switch (error) {
+            case OK: return "ok";
+            case EMPTY: return "empty";
+            case BAD_NUMBER: return "bad_number";
+            case BAD_UNIT: return "bad_unit";
+            case BAD_TURN: return "bad_turn";
+            default: return "unknown";
+        }
+    }
+
+    // </editor-fold>
+
+    private static final String[] TURN_VALUES = {"none", "left", "slight_left", "sharp_left", "through", "right",
+            "slight_right", "sharp_right", "reverse", "merge_to_left", "merge_to_right"};
+
+    private static final double METERS_PER_FOOT = 1 / 3.28084;
+
+    private static final double[] POWERS_OF_TEN = {1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15};
+
+    private int _error = OK;
+
+    // Error code of the last value parsed by this tokenizer.
+    public int getError() { return _error; }
+
+    // <editor-fold defaultstate="collapsed" desc="Lane Lists">
+
+    // Number of lanes in a |-separated value.
+    public static int count(String value) {
+        int output = 1;
+        for (int i = 0; i < value.length(); i++) if (value.charAt(i) == '|') output++;
+        return output;
+    }
+
+    // Index where the lane at position starts, or -1 if the value doesn't have that many lanes.
+    public static int start(String value, int position) {
+        if (position < 0) return -1;
+        int i = 0;
+        for (int bars = 0; bars < position; i++) {
+            if (i >= value.length()) return -1;
+            if (value.charAt(i) == '|') bars++;
+        }
+        return i;
+    }
+
+    // Index just after the lane that starts at start.
+    public static int end(String value, int start) {
+        int i = start;
+        while (i < value.length() && value.charAt(i) != '|') i++;
+        return i;
+    }
+
+    // Value of the lane at position, or "" if there aren't that many lanes.
+    public static String lane(String value, int position) {
+        int start = start(value, position);
+        if (start == -1) return "";
+        return value.substring(start, end(value, start));
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Turn Lists">
+
+    /**
+     * Turn value between start and end (e.g. "left;through") as bits, bit i being set for TURN_VALUES[i].  Unknown
+     * values are left out and set the error to BAD_TURN.
+     */
+    public int turnMask(String value, int start, int end) {
+        _error = OK;
+        int output = 0;
+        int tokenStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i < end && value.charAt(i) != ';') continue;
+
+            int from = trimStart(value, tokenStart, i);
+            int to = trimEnd(value, from, i);
+            if (from < to) {
+                int bit = turnBit(value, from, to);
+                if (bit == 0) {
+                    _error = BAD_TURN;
+                } else {
+                    output |= bit;
+                }
+            }
+            tokenStart = i+1;
+        }
+        return output;
+    }
+
+    private static int turnBit(String value, int from, int to) {
+        for (int j = 0; j < TURN_VALUES.length; j++) {
+            String turn = TURN_VALUES[j];
+            if (turn.length() == to - from && value.regionMatches(from, turn, 0, turn.length())) return 1 << j;
+        }
+        return 0;
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Widths">
+
+    /**
+     * Width between start and end (e.g. "3.5", "3.5 m", "12'", "11'6\"", "2 lanes") in meters.
+     * @return The width, 0 if there's nothing there (error EMPTY), or NaN if it can't be read.
+     */
+    public double width(String value, int start, int end) {
+        _error = OK;
+        return width(value, start, end, this);
+    }
+
+    // Width of a whole tag value, 0 if it's empty or NaN if it can't be read.
+    public static double width(String value) {
+        if (value == null) return 0;
+        return width(value, 0, value.length(), null);
+    }
+
+    private static double width(String value, int start, int end, LaneTagTokenizer errors) {
+        start = trimStart(value, start, end);
+        end = trimEnd(value, start, end);
+        if (start == end) {
+            if (errors != null) errors._error = EMPTY;
+            return 0;
+        }
+
+        int numberEnd = numberEnd(value, start, end);
+        double number = number(value, start, numberEnd);
+        if (Double.isNaN(number)) {
+            if (errors != null) errors._error = BAD_NUMBER;
+            return Double.NaN;
+        }
+
+        int unit = trimStart(value, numberEnd, end);
+        int unitLength = end - unit;
+        if (unitLength == 0) return number;
+        if (is(value, unit, end, "m")) return number;
+        if (is(value, unit, end, "km")) return 1000 * number;
+        if (is(value, unit, end, "mi")) return 1609.344 * number;
+        if (is(value, unit, end, "lane") || is(value, unit, end, "lanes")) return LaneProfile.DEFAULT_LANE_WIDTH * number;
+        if (is(value, unit, end, "\"")) return METERS_PER_FOOT / 12 * number;
+        if (value.charAt(unit) == '\'') {
+            // Feet, optionally followed by inches (11'6").
+            int inchStart = trimStart(value, unit+1, end);
+            if (inchStart == end) return METERS_PER_FOOT * number;
+            int inchEnd = numberEnd(value, inchStart, end);
+            double inches = number(value, inchStart, inchEnd);
+            if (!Double.isNaN(inches) && inchEnd == end-1 && value.charAt(inchEnd) == '"') {
+                return METERS_PER_FOOT * (number + inches / 12);
+            }
+        }
+        if (errors != null) errors._error = BAD_UNIT;
+        return Double.NaN;
+    }
+
+    private static boolean is(String value, int start, int end, String unit) {
+        return end - start == unit.length() && value.regionMatches(start, unit, 0, unit.length());
+    }
+
+    private static int numberEnd(String value, int start, int end) {
+        int i = start;
+        if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) i++;
+        while (i < end && ((value.charAt(i) >= '0' && value.charAt(i) <= '9') || value.charAt(i) == '.')) i++;
+        return i;
+    }
+
+    // Decimal number between start and end, or NaN.
+    private static double number(String value, int start, int end) {
+        int numberStart = start;
+        boolean negative = false;
+        if (start < end && (value.charAt(start) == '-' || value.charAt(start) == '+')) {
+            negative = value.charAt(start) == '-';
+            start++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c == '.') {
+                if (decimals != -1) return Double.NaN;
+                decimals = 0;
+                continue;
+            }
+            if (digits >= 15) {
+                // Too long to be exact, let Java deal with it (this doesn't happen with real widths).
+                try {
+                    return Double.parseDouble(value.substring(numberStart, end));
+                } catch (NumberFormatException e) { return Double.NaN; }
+            }
+            mantissa = mantissa * 10 + (c - '0');
+            digits++;
+            if (decimals != -1) decimals++;
+        }
+        if (digits == 0) return Double.NaN;
+
+        double output = mantissa;
+        if (decimals > 0) output /= POWERS_OF_TEN[decimals];
+        return negative ? -output : output;
+    }
+
+    // </editor-fold>
+
+    private static int trimStart(String value, int start, int end) {
+        while (start < end && value.charAt(start) == ' ') start++;
+        return start;
+    }
+
+    private static int trimEnd(String value, int start, int end) {
+        while (end > start && value.charAt(end-1) == ' ') end--;
+        return end;
+    }
+}
@@ -0,0 +1,214 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import org.openstreetmap.josm.io.Compression;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * LaneTagValidator - checks the lane tagging of a whole .osm file from the command line, without the JOSM UI.
+ *
+ * -> Uses the same rules as the renderers: RoadTags decides which ways are roads and which are drawn lane by lane,
+ *    LaneProfile finds what would make a MarkedRoadRenderer invalid, and node intersections are found the same way
+ *    as Utils.calculateNodeIntersectionType.
+ * -> The file is streamed (.osm, .osm.gz or .osm.bz2) with OsmStreamReader.scan, ways are checked in parallel and problems are written to the
+ *    report as they're found.  Only a few bytes per road node are kept, for finding intersections at the end.
+ *
+ * Usage: java -cp josm.jar:Lanes.jar org.openstreetmap.josm.plugins.lanes.LaneTagValidator input.osm.bz2 report.tsv [threads]
+ *
+ * Each line of the report is: type, id, severity, problem and details, separated by tabs.
+ */
+
+public final class LaneTagValidator {
+
+    // <editor-fold defaultstate="collapsed" desc="Variables">
+
+    private static final int BATCH_SIZE = 512; // Ways per task.
+
+    private final Writer _report;
+    private final ThreadPoolExecutor _executor;
+    private final RoadNodeCounts _nodes = new RoadNodeCounts();
+
+    private final LongAdder _ways = new LongAdder();
+    private final LongAdder _roads = new LongAdder();
+    private final LongAdder _checked = new LongAdder();
+    private final LongAdder _errors = new LongAdder();
+    private final LongAdder _warnings = new LongAdder();
+    private long _intersections;
+    private long _isolated;
+    private volatile IOException _error = null; // First write that failed, the workers can't throw it.
+
+    // </editor-fold>
+
+    public LaneTagValidator(Writer report, int threads) {
+        _report = report;
+        _executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: LaneTagValidator <input.osm[.gz|.bz2]> <report.tsv> [threads]");
+            System.exit(2);
+        }
+        File input = new File(args[0]);
+        if (input.getName().endsWith(".pbf")) {
+            System.err.println("PBF isn't supported, convert to .osm first (e.g. osmium cat in.osm.pbf -o out.osm.bz2).");
+            System.exit(2);
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        long time = System.nanoTime();
+        try (InputStream in = Compression.getUncompressedFileInputStream(input);
+             Writer report = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[1]), StandardCharsets.UTF_8))) {
+            LaneTagValidator validator = new LaneTagValidator(report, threads);
+            validator.run(in);
+            System.err.println(validator.getSummary() + " in " + (System.nanoTime() - time) / 1000000 + " ms");
+        }
+    }
+
+    /**
+     * Reads the whole file, checks every road and every intersection, and writes the problems to the report.
+     * The report isn't closed.
+     */
+    public void run(InputStream osm) throws IOException, XMLStreamException {
+        List<Long> batchIds = new ArrayList<>();
+        List<Map<String, String>> batchTags = new ArrayList<>();
+        try {
+            OsmStreamReader.scan(osm, false, new OsmStreamReader.Handler() {
+                @Override
+                public void node(long id, double lat, double lon) {}
+
+                @Override
+                public void way(long id, Map<String, String> tags, long[] refs, int numRefs) {
+                    _ways.increment();
+                    boolean area = RoadTags.hasAreaTags(tags);
+                    boolean laneTags = RoadTags.hasLaneTags(tags, area);
+                    if (!laneTags && !RoadTags.hasRoadTags(tags, area)) return;
+
+                    _roads.increment();
+                    _nodes.addWay(refs, numRefs, "roundabout".equals(tags.get("junction")));
+
+                    if (laneTags && !RoadTags.isUnmarked(tags)) {
+                        batchIds.add(id);
+                        batchTags.add(tags);
+                        if (batchIds.size() == BATCH_SIZE) {
+                            submit(new ArrayList<>(batchIds), new ArrayList<>(batchTags));
+                            batchIds.clear();
+                            batchTags.clear();
+                        }
+                    }
+                }
+            });
+            submit(batchIds, batchTags);
+        } finally {
+            _executor.shutdown();
+            try {
+                _executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (_error != null) throw _error;
+        checkIntersections();
+        if (_error != null) throw _error;
+        _report.flush();
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Checks">
+
+    private void submit(List<Long> ids, List<Map<String, String>> tags) {
+        if (ids.isEmpty()) return;
+        _executor.execute(() -> {
+            StringBuilder lines = new StringBuilder();
+            for (int i = 0; i < ids.size(); i++) checkWay(ids.get(i), tags.get(i), lines);
+            write(lines);
+        });
+    }
+
+    // Same checks that decide MarkedRoadRenderer._isValid, plus problems that only get reported.
+    private void checkWay(long id, Map<String, String> tags, StringBuilder lines) {
+        _checked.increment();
+        LaneProfile profile = LaneProfile.get(tags);
+
+        int problems = profile.getProblems();
+        for (int bit = 1; bit != 0 && bit <= problems; bit <<= 1) {
+            if ((problems & bit) == 0) continue;
+            boolean error = (bit & LaneProfile.INVALID) != 0;
+            if (error) _errors.increment(); else _warnings.increment();
+            line(lines, "way", id, error ? "error" : "warning", LaneProfile.getProblemName(bit), getLaneCounts(tags));
+        }
+
+        if (profile.getTagError() != LaneTagTokenizer.OK) {
+            _warnings.increment();
+            line(lines, "way", id, "warning", "unreadable_value", LaneTagTokenizer.getErrorName(profile.getTagError()));
+        }
+    }
+
+    private static String getLaneCounts(Map<String, String> tags) {
+        StringBuilder output = new StringBuilder();
+        for (String key : new String[] {"oneway", "lanes", "lanes:forward", "lanes:backward", "lanes:both_ways"}) {
+            if (!tags.containsKey(key)) continue;
+            if (output.length() != 0) output.append(' ');
+            output.append(key).append('=').append(tags.get(key));
+        }
+        return output.toString();
+    }
+
+    // Intersections are nodes with 3 or more road ends that aren't on a roundabout.  The IntersectionRenderer
+    //  for one is invalid if it has fewer than 3 ways going out of it.
+    private void checkIntersections() {
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < _nodes.capacity(); i++) {
+            long id = _nodes.keyAt(i);
+            if (id == Long.MIN_VALUE) continue;
+            int packed = _nodes.valueAt(i);
+            if (!RoadNodeCounts.isIntersection(packed)) continue;
+
+            _intersections++;
+            if (RoadNodeCounts.getVectors(packed) < 3) {
+                _isolated++;
+                line(lines, "node", id, "error", "isolated_intersection", "");
+            }
+            if (lines.length() > 1 << 16) {
+                write(lines);
+                lines.setLength(0);
+            }
+        }
+        write(lines);
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Report">
+
+    private static void line(StringBuilder lines, String type, long id, String severity, String problem, String details) {
+        lines.append(type).append('\t').append(id).append('\t').append(severity).append('\t')
+                .append(problem).append('\t').append(details).append('\n');
+    }
+
+    private void write(CharSequence lines) {
+        if (lines.length() == 0) return;
+        synchronized (_report) {
+            if (_error != null) return; // The report is incomplete anyway, run() throws the error.
+            try {
+                _report.append(lines);
+            } catch (IOException e) {
+                _error = e;
+            }
+        }
+    }
+
+    public String getSummary() {
+        return _ways.sum() + " ways, " + _roads.sum() + " roads, " + _checked.sum() + " with lane tags checked, " +
+                _errors.sum() + " errors, " + _warnings.sum() + " warnings, " + _intersections + " intersections (" +
+                _isolated + " isolated)";
+    }
+
+    // </editor-fold>
+}
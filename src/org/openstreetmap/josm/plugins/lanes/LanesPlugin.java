@@ -9,18 +9,21 @@ import org.openstreetmap.josm.plugins.PluginInformation;
 /*
  * LanesPlugin class - entry point to program.
  * -> Creates an instance of a LaneMappingMode when JOSM boots up.
+ * -> Adds the lane statistics debug panel, and makes the same statistics available over JMX.
  */
 
 public class LanesPlugin extends Plugin {
 
     public LanesPlugin(PluginInformation info) {
         super(info);
+        LaneModeStats.register();
     }
 
     @Override
     public void mapFrameInitialized(MapFrame oldFrame, MapFrame newFrame) {
         if (oldFrame == null && newFrame != null) {
             MainApplication.getMap().addMapMode(new IconToggleButton(new LaneMappingMode()));
+            MainApplication.getMap().addToggleDialog(new LaneStatsDialog());
         }
     }
 }
@@ -0,0 +1,84 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from long (usually OSM IDs) to int, without boxing.  For batch tools that have to
+ * keep something about millions of nodes.  Not thread safe.
+ */
+final class LongIntMap {
+
+    private static final long EMPTY = Long.MIN_VALUE; // Not a valid OSM ID.
+
+    private long[] _keys;
+    private int[] _values;
+    private int _size;
+    private final int _missing;
+
+    // missing is returned by get() for keys that aren't in the map.
+    LongIntMap(int expectedSize, int missing) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        _keys = new long[capacity];
+        _values = new int[capacity];
+        Arrays.fill(_keys, EMPTY);
+        _missing = missing;
+    }
+
+    int size() { return _size; }
+
+    int get(long key) {
+        int i = find(_keys, key);
+        return _keys[i] == EMPTY ? _missing : _values[i];
+    }
+
+    boolean containsKey(long key) {
+        return _keys[find(_keys, key)] != EMPTY;
+    }
+
+    void put(long key, int value) {
+        if (key == EMPTY) throw new IllegalArgumentException("Key " + key + " is reserved.");
+        int i = find(_keys, key);
+        if (_keys[i] == EMPTY) {
+            _keys[i] = key;
+            _size++;
+        }
+        _values[i] = value;
+        if (_size * 4 > _keys.length * 3) grow();
+    }
+
+    // Key at slot i, or Long.MIN_VALUE if the slot is free.  For going through every entry with capacity().
+    long keyAt(int i) { return _keys[i]; }
+
+    int valueAt(int i) { return _values[i]; }
+
+    int capacity() { return _keys.length; }
+
+    // Approximate heap use in bytes.
+    long estimateBytes() { return 12L * _keys.length + 32; }
+
+    private static int find(long[] keys, long key) {
+        int mask = keys.length - 1;
+        int i = mix(key) & mask;
+        while (keys[i] != EMPTY && keys[i] != key) i = (i + 1) & mask;
+        return i;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private void grow() {
+        long[] oldKeys = _keys;
+        int[] oldValues = _values;
+        _keys = new long[oldKeys.length * 2];
+        _values = new int[oldKeys.length * 2];
+        Arrays.fill(_keys, EMPTY);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == EMPTY) continue;
+            int i = find(_keys, oldKeys[j]);
+            _keys[i] = oldKeys[j];
+            _values[i] = oldValues[j];
+        }
+    }
+}
@@ -10,7 +10,6 @@ import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.MapFrame;
 import org.openstreetmap.josm.gui.MapView;
-import org.openstreetmap.josm.gui.util.GuiHelper;
 
 import javax.swing.*;
 import java.awt.*;
@@ -38,14 +37,19 @@ public class MarkedRoadRenderer extends RoadRenderer {
     private RoadPiece _bothWaysLane;
     private RoadPiece _leftRoadEdge;
     private RoadPiece _rightRoadEdge;
+    private volatile CrossSection _crossSection; // Pieces from left to right with their widths, see getCrossSection().
+    private volatile List<RoadPiece> _renderingOrder; // Unmodifiable, see getRenderingOrder().
 
     protected boolean _isValid = true; // Display red error line if tags are wrong.
 
+    protected final LaneProfile _profile; // Parsed lane tags (shared between ways), Lane and Divider read from this.
+
     // </editor-fold>
 
     protected MarkedRoadRenderer(Way w, MapView mv, LaneMappingMode parent) {
         super(w, mv, parent);
 
+        _profile = LaneProfile.get(w.getInterestingTags());
         try { createRoadLayout(); } catch (Exception e) { _isValid = false; _alignment = w; }
     }
 
@@ -57,12 +61,7 @@ public class MarkedRoadRenderer extends RoadRenderer {
     public void render(Graphics2D g) {
         if (!_isValid) {
             // Get the centre line of the road to be rendered.
-            int[] pointXs = new int[_way.getNodesCount()];
-            int[] pointYs = new int[_way.getNodesCount()];
-            for (int i = 0; i < _way.getNodesCount(); i++) {
-                pointXs[i] = _mv.getPoint(_way.getNode(i).getCoor()).x;
-                pointYs[i] = _mv.getPoint(_way.getNode(i).getCoor()).y;
-            }
+            BulkProjector.Buffers points = BulkProjector.forView(_mv).project(_way);
 
             // Set the color and width to the "invalid" defaults.
             g.setColor(Utils.DEFAULT_INVALID_COLOR);
@@ -71,18 +70,18 @@ public class MarkedRoadRenderer extends RoadRenderer {
                     BasicStroke.CAP_BUTT, BasicStroke.JOIN_ROUND));
 
             // Draw the way
-            g.drawPolyline(pointXs, pointYs, pointXs.length);
+            g.drawPolyline(points.x, points.y, points.size);
 
             // Get rid of that white rectangle that was appearing around the screen at high zoom levels:
-            g.setColor(new Color(0, 0, 0, 0));
-            g.setStroke(GuiHelper.getCustomizedStroke("0"));
+            g.setColor(Utils.TRANSPARENT);
+            g.setStroke(Utils.RESET_STROKE);
             return;
         }
         try {
             renderAsphalt(g, Utils.DEFAULT_ASPHALT_COLOR);
-            List<RoadPiece> roadPieces = getRoadPieces(true);
-            for (RoadPiece roadPiece : roadPieces) {
-                roadPiece.render(g);
+            List<RoadPiece> roadPieces = getRenderingOrder();
+            for (int i = 0; i < roadPieces.size(); i++) {
+                roadPieces.get(i).render(g);
             }
         } catch (Exception ignored) {} // Don't render roads that can't be rendered (due to crazy alignments or lanes that go from 0 to 1000 m wide in 10 m).
     }
@@ -91,8 +90,9 @@ public class MarkedRoadRenderer extends RoadRenderer {
     void renderPopup(Graphics2D g, Point center, double bearing, double distOut, double pixelsPerMeter) {
         renderAsphaltPopup(g, Utils.POPUP_ASPHALT_COLOR, center, bearing, distOut, pixelsPerMeter);
 
-        for (RoadPiece p : getRoadPieces(true)) {
-            p.renderPopup(g, center, bearing, distOut, pixelsPerMeter);
+        List<RoadPiece> roadPieces = getRenderingOrder();
+        for (int i = 0; i < roadPieces.size(); i++) {
+            roadPieces.get(i).renderPopup(g, center, bearing, distOut, pixelsPerMeter);
         }
     }
 
@@ -103,6 +103,8 @@ public class MarkedRoadRenderer extends RoadRenderer {
     private void createRoadLayout() {
         // Generate the road-layout / cross-section of _w.
         getLanesFromWay();
+        _crossSection = new CrossSection(_profile, getRegion().isRightHand(), this::getPiece);
+        _renderingOrder = freeze(buildRenderingOrder());
 
         // Get placement information.
         getPlacementInformation();
@@ -113,51 +115,14 @@ public class MarkedRoadRenderer extends RoadRenderer {
 
 
     private void getLanesFromWay() {
-        Map<String, String> tags = _way.getInterestingTags();
-
-        if (_way.isOneway() == -1) { // Supporting this would be suicidal.
-            _isValid = false;
-        }
-
-        int numLanesForward  = getLanesInDirectionFromSuffix(1);
-        int numLanesBackward = getLanesInDirectionFromSuffix(-1);
-        int numLanesBothWays = getLanesInDirectionFromSuffix(0);
-
-        if (tags.containsKey("lanes:forward") && numLanesForward == -1) {
-            numLanesForward = Integer.parseInt(tags.get("lanes:forward"));
-        }
-        if (tags.containsKey("lanes") && Utils.isOneway(_way) && numLanesForward == -1) {
-            numLanesForward = Integer.parseInt(tags.get("lanes"));
-        }
-        if (tags.containsKey("lanes:backward") && numLanesBackward == -1) {
-            numLanesBackward = Integer.parseInt(tags.get("lanes:backward"));
-        }
-        if (tags.containsKey("lanes:both_ways") && numLanesBothWays == -1) {
-            numLanesBothWays = Integer.parseInt(tags.get("lanes:both_ways"));
-        }
+        if (!_profile.isValid()) _isValid = false;
 
-        if (numLanesBothWays == -1) numLanesBothWays = 0; // Assume no centre lane.
-
-        // Distribute remaining lanes to unspecified directions (lanes=5 & lanes:forward=3 -> assume lanes:backward=2)
-        if (!(numLanesBackward == 0 && numLanesForward == 0 && numLanesBothWays != 0) && tags.containsKey("lanes") && !Utils.isOneway(_way)) {
-            int lanes = Integer.parseInt(tags.get("lanes")) - numLanesBothWays;
-            if (numLanesForward == -1 && numLanesBackward == -1) {
-                numLanesForward = lanes-lanes/2;
-                numLanesBackward = lanes/2;
-            } else if (numLanesForward == -1) {
-                numLanesForward = lanes - numLanesBackward;
-            } else if (numLanesBackward == -1) {
-                numLanesBackward = lanes - numLanesForward;
-            }
-        }
-
-        if (numLanesBothWays == 1 && numLanesBackward == 0 && numLanesForward == 0) {
-            numLanesForward = 1;
-            numLanesBothWays = 0;
-        }
+        int numLanesForward  = _profile.getNumLanes(1);
+        int numLanesBackward = _profile.getNumLanes(-1);
+        int numLanesBothWays = _profile.getNumLanes(0);
 
-        _leftRoadEdge = new RoadEdge(Utils.isRightHand(_way) ? -1 : 1, -1, _mv, this);
-        _rightRoadEdge = new RoadEdge(Utils.isRightHand(_way) ? 1 : -1, -1, _mv, this);
+        _leftRoadEdge = new RoadEdge(getRegion().isRightHand() ? -1 : 1, -1, _mv, this);
+        _rightRoadEdge = new RoadEdge(getRegion().isRightHand() ? 1 : -1, -1, _mv, this);
 
         for (int i = 0; i < numLanesForward; i++) {
             _forwardLanes.add(new Lane(1, i, _mv, this));
@@ -192,7 +157,7 @@ public class MarkedRoadRenderer extends RoadRenderer {
             }
         }
         if (_backwardLanes.size() != 0) {
-            if (Utils.isRightHand(_way)) {
+            if (getRegion().isRightHand()) {
                 _backwardLanes.get(0).setLeftPiece(_bothWaysLane);
                 _bothWaysLane.setLeftPiece(_backwardLanes.get(0));
                 _forwardLanes.get(0).setLeftPiece(_bothWaysLane);
@@ -206,238 +171,37 @@ public class MarkedRoadRenderer extends RoadRenderer {
         }
     }
 
-    private int getLanesInDirectionFromSuffix(int direction) {
-        Map<String, String> tags = _way.getInterestingTags();
-        int numLanes = -1;
-        for (String key : tags.keySet()) {
-            if (!key.contains("note") && (direction == 1 ? ((key.endsWith(":lanes") && Utils.isOneway(_way)) || key.endsWith(":lanes:forward")) :
-                    direction == 0 ? key.endsWith(":lanes:both_ways") : key.endsWith(":lanes:backward"))) {
-
-                // This runs if the tag being analyzed is a lane tag applying to this direction.
-                int len = ("a" + tags.get(key) + "a").split("\\|").length;
-                if (numLanes == -1) numLanes = len;
-                if (numLanes != len) {
-                    _isValid = false;
-                }
-            }
-        }
-        return numLanes;
-    }
-
-
     private void getPlacementInformation() {
-        _offsetToLeftStart = getPlacementAt(true, false);
-        _offsetToLeftEnd = getPlacementAt(false, false);
+        CrossSection cs = getCrossSection();
+        Map<String, String> tags = _way.getKeys();
+        _offsetToLeftStart = cs.getOffsetToLeft(tags, isOneway(), true);
+        _offsetToLeftEnd = cs.getOffsetToLeft(tags, isOneway(), false);
         if (Double.isNaN(_offsetToLeftEnd)) {
             JOptionPane.showMessageDialog(MainApplication.getMainFrame(), "End is NaN");
         }
-        double placementDiff = getPlacementAt(false, true) - getPlacementAt(true, true);
+        double placementDiff = cs.getAlignmentShift(tags, isOneway());
         _alignment = Utils.getParallel(_way, 0, placementDiff, true, otherStartAngle, otherEndAngle);
         _offsetToLeftEnd -= placementDiff;
     }
 
-    private double getPlacementAt(boolean start, boolean ignoreWidthTags) {
-        try {
-            // Get string representation of placement.
-            String placement = getPlacementTag(start);
-            int direction = placement.charAt(placement.length()-1) == 'f' ? 1 : placement.charAt(placement.length()-1) == 'b' ? -1 : 0;
-            placement = placement.substring(0, placement.length()-1);
-
-            String placementOther = getPlacementTag(!start);
-            int directionOther = -2;
-            if (placementOther != null) {
-                directionOther = placementOther.charAt(placementOther.length()-1) == 'f' ? 1 :
-                        placementOther.charAt(placementOther.length()-1) == 'b' ? -1 : 0;
-                placementOther = placementOther.substring(0, placementOther.length()-1);
-            }
-
-
-
-            // Get offset
-            List<RoadPiece> pieces = getRoadPieces(false);
-            int lane = Integer.parseInt(placement.split(":")[1]);
-            int laneOther = Integer.MIN_VALUE;
-            if (placementOther != null) Integer.parseInt(placementOther.split(":")[1]);
-            double offsetSoFar = 0;
-            boolean valid = false;
-
-            // For when placement is outside of the range of this road segment:
-            RoadPiece minForward = null;
-            RoadPiece maxForward = null;
-            RoadPiece minBackward = null;
-            RoadPiece maxBackward = null;
-
-            double minForwardOffset = Double.NaN;
-            double maxForwardOffset = Double.NaN;
-            double minBackwardOffset = Double.NaN;
-            double maxBackwardOffset = Double.NaN;
-
-            for (int i = 1; i < pieces.size(); i++) {
-                RoadPiece p = pieces.get(i);
-
-                boolean correctLane = p._position+1 == lane && p._direction == direction && (p._direction == 0 || p instanceof Lane);
-                boolean correctLaneOther = false;
-                if (placementOther != null) correctLaneOther = p._position+1 == laneOther && p._direction == directionOther && (p._direction == 0 || p instanceof Lane);
-
-                offsetSoFar += (ignoreWidthTags && !correctLane && !correctLaneOther) ? (pieces.get(i-1) instanceof Lane ? (Utils.
-                        WIDTH_LANES-Utils.RENDERING_WIDTH_DIVIDER) :
-                        Utils.RENDERING_WIDTH_DIVIDER)/2 : (pieces.get(i-1).getWidth(start) / 2);
-                offsetSoFar += (ignoreWidthTags && !correctLane && !correctLaneOther) ? (p instanceof Lane ? (Utils.
-                        WIDTH_LANES-Utils.RENDERING_WIDTH_DIVIDER) :
-                        Utils.RENDERING_WIDTH_DIVIDER)/2 : (p.getWidth(start) / 2);
-
-                if (p._direction == 1 && p instanceof Lane && (minForward == null || minForward._position > p._position)) {
-                    minForward = p;
-                    minForwardOffset = offsetSoFar;
-                }
-                if (p._direction == 1 && p instanceof Lane && (maxForward == null || maxForward._position < p._position)) {
-                    maxForward = p;
-                    maxForwardOffset = offsetSoFar;
-                }
-                if (p._direction == -1 && p instanceof Lane  && (minBackward == null || minBackward._position > p._position)) {
-                    minBackward = p;
-                    minBackwardOffset = offsetSoFar;
-                }
-                if (p._direction == -1 && p instanceof Lane  && (maxBackward == null || maxBackward._position < p._position)) {
-                    maxBackward = p;
-                    maxBackwardOffset = offsetSoFar;
-                }
-
-                if (p._position+1 == lane && p._direction == direction && (p._direction == 0 || p instanceof Lane)) {
-                    if ((direction == 1 && placement.startsWith("left_of")) ||
-                            (direction == -1 && placement.startsWith("right_of"))) {
-                        offsetSoFar -= Utils.RENDERING_WIDTH_DIVIDER / 2 + (ignoreWidthTags ? (Utils.
-                                WIDTH_LANES-Utils.RENDERING_WIDTH_DIVIDER)/2 : (p.getWidth(start) / 2));
-                    }
-                    if ((direction == 1 && placement.startsWith("right_of")) ||
-                            (direction == -1 && placement.startsWith("left_of"))) {
-                        offsetSoFar += Utils.RENDERING_WIDTH_DIVIDER / 2 + (ignoreWidthTags ? (Utils.
-                                WIDTH_LANES-Utils.RENDERING_WIDTH_DIVIDER)/2 : (p.getWidth(start) / 2));
-                    }
-                    valid = true;
-                    break;
-                }
-            }
-
-            if (!valid && direction == 1) {
-                if (minForward._position+1 > lane) {
-                    int numLanesAway = minForward._position + 1 - lane;
-                    offsetSoFar = minForwardOffset - numLanesAway * Utils.WIDTH_LANES;
-
-                    if (placement.startsWith("left_of")) {
-                        offsetSoFar -= Utils.RENDERING_WIDTH_DIVIDER / 2 + (ignoreWidthTags ? (Utils.
-                                WIDTH_LANES-Utils.RENDERING_WIDTH_DIVIDER)/2 : minForward.getWidth(start) / 2);
-                    }
-                    if (placement.startsWith("right_of")) {
-                        offsetSoFar += Utils.RENDERING_WIDTH_DIVIDER / 2 + (ignoreWidthTags ? (Utils.
-                                WIDTH_LANES-Utils.RENDERING_WIDTH_DIVIDER)/2 : minForward.getWidth(start) / 2);
-                    }
-                }
-                if (maxForward._position+1 < lane) {
-                    int numLanesAway = maxForward._position + 1 - lane;
-                    offsetSoFar = maxForwardOffset - numLanesAway * Utils.WIDTH_LANES;
-
-                    if (placement.startsWith("left_of")) {
-                        offsetSoFar -= Utils.RENDERING_WIDTH_DIVIDER / 2 + (ignoreWidthTags ? (Utils.
-                                WIDTH_LANES-Utils.RENDERING_WIDTH_DIVIDER)/2 : maxForward.getWidth(start) / 2);
-                    }
-                    if (placement.startsWith("right_of")) {
-                        offsetSoFar += Utils.RENDERING_WIDTH_DIVIDER / 2 + (ignoreWidthTags ? (Utils.
-                                WIDTH_LANES-Utils.RENDERING_WIDTH_DIVIDER)/2 : maxForward.getWidth(start) / 2);
-                    }
-                }
-                valid = true;
-            }
-
-            if (!valid && direction == -1) {
-                if (minBackward._position+1 > lane) {
-                    int numLanesAway = minBackward._position + 1 - lane;
-                    offsetSoFar = minBackwardOffset + numLanesAway * Utils.WIDTH_LANES;
-
-                    if (placement.startsWith("left_of")) {
-                        offsetSoFar += Utils.RENDERING_WIDTH_DIVIDER / 2 + (ignoreWidthTags ? (Utils.
-                                WIDTH_LANES-Utils.RENDERING_WIDTH_DIVIDER)/2 : minBackward.getWidth(start) / 2);
-                    }
-                    if (placement.startsWith("right_of")) {
-                        offsetSoFar -= Utils.RENDERING_WIDTH_DIVIDER / 2 + (ignoreWidthTags ? (Utils.
-                                WIDTH_LANES-Utils.RENDERING_WIDTH_DIVIDER)/2 : minBackward.getWidth(start) / 2);
-                    }
-                }
-                if (maxBackward._position+1 < lane) {
-                    int numLanesAway = maxBackward._position + 1 - lane;
-                    offsetSoFar = maxBackwardOffset + numLanesAway * Utils.WIDTH_LANES;
-
-                    if (placement.startsWith("left_of")) {
-                        offsetSoFar -= Utils.RENDERING_WIDTH_DIVIDER / 2 + (ignoreWidthTags ?
-                                (Utils.WIDTH_LANES-Utils.RENDERING_WIDTH_DIVIDER)/2 : maxBackward.getWidth(start) / 2);
-                    }
-                    if (placement.startsWith("right_of")) {
-                        offsetSoFar += Utils.RENDERING_WIDTH_DIVIDER / 2 + (ignoreWidthTags ?
-                                (Utils.WIDTH_LANES-Utils.RENDERING_WIDTH_DIVIDER)/2 : maxBackward.getWidth(start) / 2);
-                    }
-                }
-                valid = true;
-            }
-
-            if (!valid) return getWidth(start) / 2.0;
-
-            return offsetSoFar;
-        } catch (Exception e) {
-            return getWidth(start) / 2.0;
-        }
-    }
-
-    private String getPlacementTag(boolean start) {
-        String output = null;
-        if (start && _way.hasTag("placement:start") && Utils.isOneway(_way)) {
-            output = _way.get("placement:start") + "f";
-        } else if (!start && _way.hasTag("placement:end") && Utils.isOneway(_way)) {
-            output = _way.get("placement:end") + "f";
-        } else if (start && _way.hasTag("placement:forward:start")) {
-            output = _way.get("placement:forward:start") + "f";
-        } else if (!start && _way.hasTag("placement:forward:end")) {
-            output = _way.get("placement:forward:end") + "f";
-        } else if (start && _way.hasTag("placement:backward:start")) {
-            output = _way.get("placement:backward:start") + "b";
-        } else if (!start && _way.hasTag("placement:backward:end")) {
-            output = _way.get("placement:backward:end") + "b";
-        } else if (start && _way.hasTag("placement:both_ways:start")) {
-            output = _way.get("placement:both_ways:start") + "m";
-        } else if (!start && _way.hasTag("placement:both_ways:end")) {
-            output = _way.get("placement:both_ways:end") + "m";
-        } else if (_way.hasTag("placement") && Utils.isOneway(_way)) {
-            output = _way.get("placement") + "f";
-        } else if (_way.hasTag("placement:forward")) {
-            output = _way.get("placement:forward") + "f";
-        } else if (_way.hasTag("placement:backward")) {
-            output = _way.get("placement:backward") + "b";
-        } else if (_way.hasTag("placement:both_ways")) {
-            output = _way.get("placement:both_ways") + "m";
-        }
-        return output;
-    }
-
-
     private void getOffsets() {
-        List<RoadPiece> roadPieces = getRoadPieces(false);
-        double offsetSoFarStart = _offsetToLeftStart;
-        double offsetSoFarEnd = _offsetToLeftEnd;
-        for (int i = 0; i < roadPieces.size(); i++) {
-            roadPieces.get(i).setOffset(offsetSoFarStart, offsetSoFarEnd);
-            offsetSoFarStart -= roadPieces.get(i).getWidth(true)/2 +
-                    (i != roadPieces.size()-1 ? roadPieces.get(i+1).getWidth(true)/2 : 0);
-            offsetSoFarEnd -= roadPieces.get(i).getWidth(false)/2 +
-                    (i != roadPieces.size()-1 ? roadPieces.get(i+1).getWidth(false)/2 : 0);
+        CrossSection cs = getCrossSection();
+        for (int i = 0; i < cs.size(); i++) {
+            cs.get(i).setOffset(_offsetToLeftStart - cs.getDistanceFromLeft(i, true),
+                    _offsetToLeftEnd - cs.getDistanceFromLeft(i, false));
         }
     }
 
     @Override
     public double getWidth(boolean start) {
-        double output = -1 * Utils.RENDERING_WIDTH_DIVIDER; // To offset the shoulder width added to each side.
-        for (RoadPiece piece : getRoadPieces(false)) {
-            output += piece.getWidth(start);
-        }
-        return output;
+        return getCrossSection().getTotalWidth(start);
+    }
+
+    // Built when the lanes are created, or on first use if that failed part way through.
+    CrossSection getCrossSection() {
+        CrossSection cs = _crossSection;
+        if (cs == null) _crossSection = cs = new CrossSection(_profile, getRegion().isRightHand(), this::getPiece);
+        return cs;
     }
 
     @Override
@@ -448,33 +212,45 @@ public class MarkedRoadRenderer extends RoadRenderer {
                 : (left ? otle : getWidth(false)-Utils.RENDERING_WIDTH_DIVIDER-otle);
     }
 
+    // Both orders are built once with the lanes and never change, so the lists are shared and unmodifiable.
     public List<RoadPiece> getRoadPieces(boolean renderingOrder) {
-        List<RoadPiece> output = new ArrayList<>();
+        return renderingOrder ? getRenderingOrder() : getCrossSection().getPieces();
+    }
 
-        if (renderingOrder) {
-            output.addAll(getLanesAndDividers(_forwardLanes, _forwardDividers, 1));
-            output.addAll(getLanesAndDividers(_backwardLanes, _backwardDividers, -1));
-            if (_backwardLanes.size() != 0 || (_bothWaysLane instanceof Lane)) {
-                output.add(_bothWaysLane);
-            }
-            output.add(_leftRoadEdge);
-            output.add(_rightRoadEdge);
-        } else {
-            output.add(_leftRoadEdge);
-            if (Utils.isRightHand(_way)) {
-                output.addAll(getLanesAndDividers(_backwardLanes, _backwardDividers, -1));
-                if (_backwardLanes.size() != 0 || _bothWaysLane instanceof Lane) output.add(_bothWaysLane);
-                output.addAll(getLanesAndDividers(_forwardLanes, _forwardDividers, 1));
-            } else {
-                output.addAll(getLanesAndDividers(_forwardLanes, _forwardDividers, 1));
-                if (_backwardLanes.size() != 0 || _bothWaysLane instanceof Lane) output.add(_bothWaysLane);
-                output.addAll(getLanesAndDividers(_backwardLanes, _backwardDividers, -1));
-            }
-            output.add(_rightRoadEdge);
+    private List<RoadPiece> getRenderingOrder() {
+        List<RoadPiece> output = _renderingOrder;
+        if (output == null) {
+            output = freeze(buildRenderingOrder());
+            _renderingOrder = output;
+        }
+        return output;
+    }
+
+    private static List<RoadPiece> freeze(List<RoadPiece> pieces) {
+        return Collections.unmodifiableList(Arrays.asList(pieces.toArray(new RoadPiece[0])));
+    }
+
+    private List<RoadPiece> buildRenderingOrder() {
+        List<RoadPiece> output = new ArrayList<>();
+        output.addAll(getLanesAndDividers(_forwardLanes, _forwardDividers, 1));
+        output.addAll(getLanesAndDividers(_backwardLanes, _backwardDividers, -1));
+        if (_backwardLanes.size() != 0 || (_bothWaysLane instanceof Lane)) {
+            output.add(_bothWaysLane);
         }
+        output.add(_leftRoadEdge);
+        output.add(_rightRoadEdge);
         return output;
     }
 
+    // The piece at a place in CrossSection's layout, null if it wasn't made (the lane tags are invalid).
+    private RoadPiece getPiece(int kind, int direction, int position) {
+        if (kind == CrossSection.EDGE) return direction == (getRegion().isRightHand() ? -1 : 1) ? _leftRoadEdge : _rightRoadEdge;
+        if (direction == 0) return _bothWaysLane;
+        List<RoadPiece> pieces = kind == CrossSection.LANE ? (direction == 1 ? _forwardLanes : _backwardLanes) :
+                (direction == 1 ? _forwardDividers : _backwardDividers);
+        return position < pieces.size() ? pieces.get(position) : null;
+    }
+
     private List<RoadPiece> getLanesAndDividers(List<RoadPiece> lanes, List<RoadPiece> dividers, int direction) {
         List<RoadPiece> output = new ArrayList<>();
         if (direction > 0) {
@@ -505,30 +281,31 @@ public class MarkedRoadRenderer extends RoadRenderer {
         } else {
             _alignment = getWay();
         }
+        invalidateGeometry();
     }
 
     @Override
-    public Way getLeftEdge(Way alignmentPart, int segment) {
+    Way computeLeftEdge(Way alignmentPart, double start, double end) {
         double offsetStart = _leftRoadEdge._offsetStart + (_leftRoadEdge.getWidth(true) / 2.0);
         double offsetEnd = _leftRoadEdge._offsetEnd + (_leftRoadEdge.getWidth(false) / 2.0);
-        return getEdgeFromOffset(alignmentPart, segment, offsetStart, offsetEnd);
+        return getEdgeFromOffset(alignmentPart, start, end, offsetStart, offsetEnd);
     }
 
     @Override
-    public Way getRightEdge(Way alignmentPart, int segment) {
+    Way computeRightEdge(Way alignmentPart, double start, double end) {
         double offsetStart = _rightRoadEdge._offsetStart - (_rightRoadEdge.getWidth(true) / 2.0);
         double offsetEnd = _rightRoadEdge._offsetEnd - (_rightRoadEdge.getWidth(false) / 2.0);
-        return getEdgeFromOffset(alignmentPart, segment, offsetStart, offsetEnd);
+        return getEdgeFromOffset(alignmentPart, start, end, offsetStart, offsetEnd);
     }
 
-    private Way getEdgeFromOffset(Way alignmentPart, int segment, double offsetStart, double offsetEnd) {
-        double swt = startPoints.size() == 0 ? 0 : (Math.max(startPoints.get(segment), 0)/getAlignment().getLength());
+    private Way getEdgeFromOffset(Way alignmentPart, double start, double end, double offsetStart, double offsetEnd) {
+        double swt = Math.max(start, 0)/getAlignment().getLength();
         double startOffset = swt*offsetEnd + (1-swt)*offsetStart;
-        double ewt = endPoints.size() == 0 ? getAlignment().getLength() + 100 : (Math.min(endPoints.get(segment), getAlignment().getLength())/getAlignment().getLength());
+        double ewt = Math.min(end, getAlignment().getLength())/getAlignment().getLength();
         double endOffset = ewt*offsetEnd + (1-ewt)*offsetStart;
         return Utils.getParallel(alignmentPart != null ? alignmentPart : _alignment, startOffset, endOffset, false,
-                (startPoints.get(segment) < 0.1 || alignmentPart == null) ? otherStartAngle : Double.NaN,
-                (endPoints.get(segment) > getAlignment().getLength()-0.1 || alignmentPart == null) ? otherEndAngle : Double.NaN);
+                (start < 0.1 || alignmentPart == null) ? otherStartAngle : Double.NaN,
+                (end > getAlignment().getLength()-0.1 || alignmentPart == null) ? otherEndAngle : Double.NaN);
     }
 
     // </editor-fold>
@@ -635,9 +412,34 @@ public class MarkedRoadRenderer extends RoadRenderer {
     }
 
     private RoadPiece getSubPieceInside(MouseEvent e) {
-        for (RoadPiece r : getRoadPieces(false)) if (Utils.mouseEventIsInside(e, r.getAsphaltOutlines(), _mv)) return r;
+        CrossSection cs = getCrossSection();
+        for (int i = 0; i < cs.size(); i++) if (Utils.mouseEventIsInside(e, cs.get(i).getAsphaltOutlines(), _mv)) return cs.get(i);
         return null;
     }
 
     // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Methods for Estimating Memory">
+
+    @Override
+    void estimateFootprint(LaneMemory.Estimate e) {
+        super.estimateFootprint(e);
+        e.object(11, 8 + 8 + 1);
+        e.way(_outline);
+        e.way(_alignment);
+        CrossSection cs = _crossSection;
+        if (cs != null) cs.estimateFootprint(e);
+        e.list(_renderingOrder);
+
+        e.in(LaneModeStats.Footprint.ROAD_PIECES);
+        for (List<RoadPiece> pieces : Arrays.asList(_forwardLanes, _forwardDividers, _backwardLanes, _backwardDividers)) {
+            e.list(pieces);
+            for (RoadPiece piece : pieces) piece.estimateFootprint(e);
+        }
+        for (RoadPiece piece : new RoadPiece[] {_bothWaysLane, _leftRoadEdge, _rightRoadEdge}) {
+            if (piece != null) piece.estimateFootprint(e);
+        }
+    }
+
+    // </editor-fold>
 }
@@ -195,4 +195,16 @@ public class MultiIntersectionRenderer extends IntersectionRenderer {
     }
 
     public List<Long> getNodeIntersections() { return _nodeIds; }
+
+    // Including the node intersections it was made from, which it keeps.
+    @Override
+    void estimateFootprint(LaneMemory.Estimate e) {
+        super.estimateFootprint(e);
+        e.object(5, 0); // _wayVectors is the same list as the superclass's.
+        e.list(_internalGraph);
+        e.boxed(_nodeIds);
+        if (_pos != null) e.object(0, 16);
+        e.list(_space);
+        for (NodeIntersectionRenderer n : _space) n.estimateFootprint(e);
+    }
 }
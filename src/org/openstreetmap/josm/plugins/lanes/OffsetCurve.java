@@ -0,0 +1,242 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+/**
+ * Computes curves parallel to a polyline, used by Utils.getParallel.  Works in a local plane (meters east/north
+ * of the first point) and never throws: corners get a limited miter, zero-length segments borrow the direction
+ * of their neighbours, and loops that form on the inside of tight bends are collapsed to a single point.
+ * The output always has the same number of points as the input, since callers index edges by node.
+ */
+public class OffsetCurve {
+
+    // Longest a corner's offset can get, as a multiple of the offset.  1 / sin(15 degrees) is about 3.9.
+    public static final double MITER_LIMIT = 4;
+
+    // How many segments ahead to look for the offset curve crossing itself.
+    private static final int LOOP_WINDOW = 8;
+
+    private static final double METERS_PER_DEGREE_LAT = 111319.5;
+    private static final double MIN_SEGMENT_LENGTH = 1e-6;
+
+    /**
+     * Offsets the polyline given by the first n points of lat/lon.
+     * @param offsetStart Offset (in meters, positive is to the left) at the first point.
+     * @param offsetEnd Offset at the last point, the offset is interpolated by distance in between.
+     * @param useAngleOffset Whether to tilt the offset direction to account for offsetStart != offsetEnd.
+     * @param angStart Bearing of the way connected at the start (for a matching end cap), or NaN.
+     * @param angEnd Bearing of the way connected at the end, or NaN.
+     * @return False if there's no way to offset the line (fewer than 2 distinct points), in which case out is untouched.
+     */
+    public static boolean offset(double[] lat, double[] lon, int n, double offsetStart, double offsetEnd,
+                                 boolean useAngleOffset, double angStart, double angEnd, double[] outLat, double[] outLon) {
+        if (n < 2) return false;
+
+        // Project into a local plane.
+        double lat0 = lat[0];
+        double lon0 = lon[0];
+        double metersPerDegreeLon = METERS_PER_DEGREE_LAT * Math.cos(Math.toRadians(lat0));
+        if (!(metersPerDegreeLon > 1e-9)) return false;
+
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = (lon[i] - lon0) * metersPerDegreeLon;
+            y[i] = (lat[i] - lat0) * METERS_PER_DEGREE_LAT;
+            if (!Double.isFinite(x[i]) || !Double.isFinite(y[i])) return false;
+        }
+
+        // Segment directions, with zero-length segments borrowing from the previous (or next) real segment.
+        double[] ux = new double[n-1];
+        double[] uy = new double[n-1];
+        double[] distanceIntoWay = new double[n];
+        int firstValid = -1;
+        for (int i = 0; i < n-1; i++) {
+            double dx = x[i+1] - x[i];
+            double dy = y[i+1] - y[i];
+            double len = Math.sqrt(dx*dx + dy*dy);
+            distanceIntoWay[i+1] = distanceIntoWay[i] + len;
+            if (len > MIN_SEGMENT_LENGTH) {
+                ux[i] = dx / len;
+                uy[i] = dy / len;
+                if (firstValid == -1) firstValid = i;
+            } else {
+                ux[i] = Double.NaN;
+            }
+        }
+        if (firstValid == -1) return false;
+        for (int i = 0; i < n-1; i++) {
+            if (!Double.isNaN(ux[i])) continue;
+            int from = i == 0 ? firstValid : i-1; // Earlier segments have already been filled in.
+            ux[i] = ux[from];
+            uy[i] = uy[from];
+        }
+        double distanceOfWay = distanceIntoWay[n-1];
+
+        // Tilt of the offset direction when the offset changes along the way.
+        double angleOffset = 0;
+        if (useAngleOffset) angleOffset = -Math.asin(clamp((offsetEnd - offsetStart) / distanceOfWay, -1, 1));
+        double cosOffset = Math.cos(angleOffset);
+        double sinOffset = Math.sin(angleOffset);
+
+        double[] ox = new double[n];
+        double[] oy = new double[n];
+
+        // First point: perpendicular to the first segment, or halfway to the perpendicular of the connected way.
+        endCap(x[0], y[0], ux[0], uy[0], offsetStart, angStart, true, 0, ox, oy, 0);
+
+        // Interior points: along the miter, limited so that sharp corners don't shoot off.
+        for (int i = 1; i < n-1; i++) {
+            double nxPrev = -uy[i-1], nyPrev = ux[i-1];
+            double nxNext = -uy[i], nyNext = ux[i];
+            double mx = nxPrev + nxNext;
+            double my = nyPrev + nyNext;
+            double mLen = Math.sqrt(mx*mx + my*my);
+
+            double scale;
+            if (mLen < 1e-9) { // The way turns right back on itself.
+                mx = nxPrev;
+                my = nyPrev;
+                scale = 1;
+            } else {
+                mx /= mLen;
+                my /= mLen;
+                double cos = mx*nxPrev + my*nyPrev;
+                scale = cos > 1 / MITER_LIMIT ? 1 / cos : MITER_LIMIT;
+            }
+
+            double amountThrough = distanceIntoWay[i] / distanceOfWay;
+            double offsetAtNode = offsetStart * (1 - amountThrough) + offsetEnd * amountThrough;
+
+            // Rotate clockwise by angleOffset, the same way a bearing is increased.
+            double rx = mx*cosOffset + my*sinOffset;
+            double ry = -mx*sinOffset + my*cosOffset;
+            ox[i] = x[i] + rx * offsetAtNode * scale;
+            oy[i] = y[i] + ry * offsetAtNode * scale;
+        }
+
+        // Last point.
+        endCap(x[n-1], y[n-1], ux[n-2], uy[n-2], offsetEnd, angEnd, false, angleOffset, ox, oy, n-1);
+
+        removeLoops(x, y, ox, oy, n);
+
+        // Back to lat/lon.  Anything that went wrong numerically falls back to the original point.
+        for (int i = 0; i < n; i++) {
+            if (Double.isFinite(ox[i]) && Double.isFinite(oy[i])) {
+                outLat[i] = lat0 + oy[i] / METERS_PER_DEGREE_LAT;
+                outLon[i] = lon0 + ox[i] / metersPerDegreeLon;
+            } else {
+                outLat[i] = lat[i];
+                outLon[i] = lon[i];
+            }
+        }
+        return true;
+    }
+
+    private static void endCap(double px, double py, double ux, double uy, double offset, double otherAngle, boolean start,
+                               double angleOffset, double[] ox, double[] oy, int i) {
+        // Perpendicular (to the left) of the segment, as a bearing.
+        double bearing = Math.atan2(ux, uy);
+        double angleWithoutOtherWay = mod2Pi(bearing - Math.PI / 2.0) + angleOffset;
+        double angleToUse = angleWithoutOtherWay;
+        double multiplierToUse = 1.0;
+
+        if (!Double.isNaN(otherAngle)) {
+            double angleOfOtherWay = mod2Pi(otherAngle + (start ? Math.PI / 2 : -Math.PI / 2));
+            if (angleDifference(angleOfOtherWay, angleWithoutOtherWay) < 1.8) {
+                angleToUse = averageAngle(angleWithoutOtherWay, angleOfOtherWay);
+                multiplierToUse = Math.min(1 / Math.max(Math.cos(angleToUse - angleWithoutOtherWay), 1e-9), MITER_LIMIT);
+            }
+        }
+
+        ox[i] = px + Math.sin(angleToUse) * offset * multiplierToUse;
+        oy[i] = py + Math.cos(angleToUse) * offset * multiplierToUse;
+    }
+
+    // Collapses loops, i.e. where the offset curve crosses itself on the inside of a bend, to the crossing point.
+    private static void removeLoops(double[] x, double[] y, double[] ox, double[] oy, int n) {
+        // Offset segments running backwards compared to the original way are the start of a loop.  Collapse each
+        //  run of them to the point where the segments on either side meet.
+        int i = 0;
+        while (i < n-1) {
+            if (!isReversed(x, y, ox, oy, i)) {
+                i++;
+                continue;
+            }
+            int a = i;
+            int b = i+1;
+            while (b < n-1 && isReversed(x, y, ox, oy, b)) b++;
+
+            double px = (ox[a] + ox[b]) / 2;
+            double py = (oy[a] + oy[b]) / 2;
+            if (a > 0 && b < n-1) {
+                double[] hit = lineIntersection(ox[a-1], oy[a-1], ox[a], oy[a], ox[b], oy[b], ox[b+1], oy[b+1]);
+                double limit = MITER_LIMIT * Math.max(Math.hypot(ox[a] - x[a], oy[a] - y[a]), Math.hypot(ox[b] - x[b], oy[b] - y[b]));
+                if (hit != null && Math.hypot(hit[0] - px, hit[1] - py) <= limit) {
+                    px = hit[0];
+                    py = hit[1];
+                }
+            }
+            for (int j = a; j <= b; j++) {
+                ox[j] = px;
+                oy[j] = py;
+            }
+            i = b;
+        }
+
+        // Any remaining (short) loops: segments that cross a segment a few places ahead.
+        for (i = 0; i < n-1; i++) {
+            for (int j = i+2; j < Math.min(n-1, i+2+LOOP_WINDOW); j++) {
+                double[] hit = segmentIntersection(ox[i], oy[i], ox[i+1], oy[i+1], ox[j], oy[j], ox[j+1], oy[j+1]);
+                if (hit == null) continue;
+                for (int k = i+1; k <= j; k++) {
+                    ox[k] = hit[0];
+                    oy[k] = hit[1];
+                }
+                i = j-1;
+                break;
+            }
+        }
+    }
+
+    private static boolean isReversed(double[] x, double[] y, double[] ox, double[] oy, int i) {
+        double dot = (x[i+1] - x[i]) * (ox[i+1] - ox[i]) + (y[i+1] - y[i]) * (oy[i+1] - oy[i]);
+        return dot < 0;
+    }
+
+    private static double[] lineIntersection(double x1, double y1, double x2, double y2, double x3, double y3, double x4, double y4) {
+        double denominator = (x1 - x2) * (y3 - y4) - (y1 - y2) * (x3 - x4);
+        if (Math.abs(denominator) < 1e-12) return null;
+        double t = ((x1 - x3) * (y3 - y4) - (y1 - y3) * (x3 - x4)) / denominator;
+        return new double[] {x1 + t * (x2 - x1), y1 + t * (y2 - y1)};
+    }
+
+    private static double[] segmentIntersection(double x1, double y1, double x2, double y2, double x3, double y3, double x4, double y4) {
+        double denominator = (x1 - x2) * (y3 - y4) - (y1 - y2) * (x3 - x4);
+        if (Math.abs(denominator) < 1e-12) return null;
+        double t = ((x1 - x3) * (y3 - y4) - (y1 - y3) * (x3 - x4)) / denominator;
+        double u = ((x1 - x3) * (y1 - y2) - (y1 - y3) * (x1 - x2)) / denominator;
+        if (t <= 0 || t >= 1 || u <= 0 || u >= 1) return null;
+        return new double[] {x1 + t * (x2 - x1), y1 + t * (y2 - y1)};
+    }
+
+    private static double averageAngle(double a, double b) {
+        a = mod2Pi(a);
+        b = mod2Pi(b);
+        double angleBetween = (a + b) / 2;
+        if (Math.abs(a - b) > Math.PI) angleBetween = mod2Pi(angleBetween + Math.PI);
+        return angleBetween;
+    }
+
+    private static double angleDifference(double a, double b) {
+        double diff = mod2Pi(a - b);
+        return Math.min(diff, 2 * Math.PI - diff);
+    }
+
+    private static double mod2Pi(double angle) {
+        double output = angle % (2 * Math.PI);
+        return output < 0 ? output + 2 * Math.PI : output;
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Double.isNaN(value) ? 0 : Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,322 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.io.Compression;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * OsmStreamReader - builds the lane geometry of every road in an .osm file without loading it into a DataSet.
+ *
+ * -> The file is read twice.  The first pass only looks at ways, to find the road nodes and count the roads at
+ *    each of them (RoadNodeCounts).  The second pass keeps the coordinates of road nodes only (as fixed point ints,
+ *    like the OSM API), and hands batches of roads to worker threads that build their WayGeometry.
+ * -> Intersections are put together as their roads are built: a node's arms are kept only until the last road
+ *    going through it has been built, then it's handed out and forgotten.  Roads in an extract are mostly sorted by
+ *    ID, which is close to sorted by area, so few intersections are open at any time no matter how big the file is.
+ * -> Files have to be sorted (nodes, then ways), which is how planet extracts and JOSM save them.
+ *
+ * Memory is about 30 bytes per road node plus the open intersections, see getStats().
+ */
+
+public final class OsmStreamReader {
+
+    // Gets what's been built.  Called from worker threads, possibly at the same time, in no particular order.
+    public interface Listener {
+        void way(WayGeometry way);
+        void intersection(IntersectionGeometry intersection);
+    }
+
+    // Gets the primitives of a file in order.  tags is a new map for each way, refs is reused.
+    interface Handler {
+        void node(long id, double lat, double lon);
+        void way(long id, Map<String, String> tags, long[] refs, int numRefs);
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Variables">
+
+    private static final int BATCH_SIZE = 256; // Ways per task.
+    private static final double FIXED_POINT = 1e7; // Same precision as the OSM database.
+
+    private final File _file;
+    private final int _threads;
+    private RegionDefaults _region = null; // Null to look up the region of each way.
+
+    // Road node IDs -> index into the coordinate arrays.
+    private final RoadNodeCounts _counts = new RoadNodeCounts();
+    private final LongIntMap _nodeIndex = new LongIntMap(1 << 16, -1);
+    private int[] _nodeLat = new int[1 << 16];
+    private int[] _nodeLon = new int[1 << 16];
+
+    // Intersections that are still missing some of their roads, by node ID.
+    private final Map<Long, OpenIntersection> _open = new HashMap<>();
+    private int _maxOpen = 0;
+
+    private final LongAdder _roads = new LongAdder();
+    private final LongAdder _incomplete = new LongAdder();
+    private final LongAdder _failed = new LongAdder();
+    private final LongAdder _intersections = new LongAdder();
+
+    private static final class OpenIntersection {
+        private final double _lat;
+        private final double _lon;
+        private final List<IntersectionGeometry.Arm> _arms = new ArrayList<>(4);
+
+        private OpenIntersection(double lat, double lon) {
+            _lat = lat;
+            _lon = lon;
+        }
+    }
+
+    // A road read in the second pass, waiting in a batch to be built.
+    private static final class PendingWay {
+        private final long _id;
+        private final Map<String, String> _tags;
+        private final long[] _refs;
+        private final double[] _lat;
+        private final double[] _lon;
+
+        private PendingWay(long id, Map<String, String> tags, long[] refs, double[] lat, double[] lon) {
+            _id = id;
+            _tags = tags;
+            _refs = refs;
+            _lat = lat;
+            _lon = lon;
+        }
+    }
+
+    // </editor-fold>
+
+    public OsmStreamReader(File file, int threads) {
+        _file = file;
+        _threads = Math.max(threads, 1);
+    }
+
+    // Uses the same traffic side and defaults for every way, e.g. when the territories aren't loaded.
+    public void setRegion(RegionDefaults region) { _region = region; }
+
+    /**
+     * Reads the file, giving every road and intersection to the listener.  Returns once all of them are built.
+     */
+    public void read(Listener listener) throws IOException, XMLStreamException {
+        // First pass: which nodes are on roads, and how many roads meet there.
+        try (InputStream in = Compression.getUncompressedFileInputStream(_file)) {
+            scan(in, false, new Handler() {
+                @Override
+                public void node(long id, double lat, double lon) {}
+
+                @Override
+                public void way(long id, Map<String, String> tags, long[] refs, int numRefs) {
+                    if (isRoad(tags)) _counts.addWay(refs, numRefs, "roundabout".equals(tags.get("junction")));
+                }
+            });
+        }
+
+        // Second pass: build the roads.
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(_threads, _threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(_threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+        try (InputStream in = Compression.getUncompressedFileInputStream(_file)) {
+            List<PendingWay> batch = new ArrayList<>(BATCH_SIZE);
+            scan(in, true, new Handler() {
+                @Override
+                public void node(long id, double lat, double lon) {
+                    if (_counts.contains(id)) addNode(id, lat, lon);
+                }
+
+                @Override
+                public void way(long id, Map<String, String> tags, long[] refs, int numRefs) {
+                    if (!isRoad(tags)) return;
+                    double[] lat = new double[numRefs];
+                    double[] lon = new double[numRefs];
+                    for (int i = 0; i < numRefs; i++) {
+                        int index = _nodeIndex.get(refs[i]);
+                        if (index == -1) {
+                            _incomplete.increment();
+                            return;
+                        }
+                        lat[i] = _nodeLat[index] / FIXED_POINT;
+                        lon[i] = _nodeLon[index] / FIXED_POINT;
+                    }
+                    batch.add(new PendingWay(id, tags, Arrays.copyOf(refs, numRefs), lat, lon));
+                    if (batch.size() == BATCH_SIZE) {
+                        submit(executor, new ArrayList<>(batch), listener);
+                        batch.clear();
+                    }
+                }
+            });
+            submit(executor, batch, listener);
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Whatever is left is missing roads that couldn't be built.
+        List<IntersectionGeometry> incomplete = new ArrayList<>();
+        synchronized (_open) {
+            for (Map.Entry<Long, OpenIntersection> entry : _open.entrySet()) {
+                OpenIntersection open = entry.getValue();
+                incomplete.add(new IntersectionGeometry(entry.getKey(), open._lat, open._lon, open._arms, false));
+            }
+            _open.clear();
+        }
+        for (IntersectionGeometry intersection : incomplete) {
+            _intersections.increment();
+            listener.intersection(intersection);
+        }
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Building">
+
+    private void submit(ThreadPoolExecutor executor, List<PendingWay> batch, Listener listener) {
+        if (batch.isEmpty()) return;
+        executor.execute(() -> {
+            for (PendingWay way : batch) {
+                try {
+                    build(way._id, way._tags, way._refs, way._lat, way._lon, listener);
+                } catch (Exception e) {
+                    _failed.increment(); // Don't let one crazy way stop the whole file.
+                }
+            }
+        });
+    }
+
+    private void build(long id, Map<String, String> tags, long[] refs, double[] lat, double[] lon, Listener listener) {
+        WayGeometry way = WayGeometry.build(id, tags, lat, lon, getRegion(lat[0], lon[0]));
+        _roads.increment();
+        listener.way(way);
+
+        for (int i = 0; i < refs.length; i++) {
+            if (!_counts.isIntersection(refs[i])) continue;
+            IntersectionGeometry done = addArms(refs[i], lat[i], lon[i], IntersectionGeometry.Arm.of(way, i));
+            if (done != null) {
+                _intersections.increment();
+                listener.intersection(done);
+            }
+        }
+    }
+
+    // Returns the intersection if these were its last arms.
+    private IntersectionGeometry addArms(long node, double lat, double lon, List<IntersectionGeometry.Arm> arms) {
+        synchronized (_open) {
+            OpenIntersection open = _open.get(node);
+            if (open == null) {
+                open = new OpenIntersection(lat, lon);
+                _open.put(node, open);
+                _maxOpen = Math.max(_maxOpen, _open.size());
+            }
+            open._arms.addAll(arms);
+            if (open._arms.size() < RoadNodeCounts.getVectors(_counts.get(node))) return null;
+            _open.remove(node);
+            return new IntersectionGeometry(node, open._lat, open._lon, open._arms, true);
+        }
+    }
+
+    private RegionDefaults getRegion(double lat, double lon) {
+        if (_region != null) return _region;
+        try {
+            return RegionDefaults.at(new LatLon(lat, lon));
+        } catch (Exception e) {
+            return RegionDefaults.at(null); // Territories aren't loaded, use the defaults.
+        }
+    }
+
+    private void addNode(long id, double lat, double lon) {
+        int index = _nodeIndex.size();
+        if (index == _nodeLat.length) {
+            _nodeLat = Arrays.copyOf(_nodeLat, index * 2);
+            _nodeLon = Arrays.copyOf(_nodeLon, index * 2);
+        }
+        _nodeLat[index] = (int) Math.round(lat * FIXED_POINT);
+        _nodeLon[index] = (int) Math.round(lon * FIXED_POINT);
+        _nodeIndex.put(id, index);
+    }
+
+    private static boolean isRoad(Map<String, String> tags) {
+        boolean area = RoadTags.hasAreaTags(tags);
+        return RoadTags.hasRoadTags(tags, area) || RoadTags.hasLaneTags(tags, area);
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Reading the File">
+
+    /**
+     * Streams the nodes and ways of an .osm file to the handler, skipping deleted (visible="false") ones.
+     * Stops at the first relation, since sorted files have nothing but relations after that.
+     * @param nodes Whether to read node coordinates at all.
+     */
+    static void scan(InputStream osm, boolean nodes, Handler handler) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        XMLStreamReader reader = factory.createXMLStreamReader(osm);
+
+        long wayId = 0;
+        boolean inWay = false;
+        Map<String, String> tags = null;
+        long[] refs = new long[256];
+        int numRefs = 0;
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (inWay && name.equals("nd")) {
+                        if (numRefs == refs.length) refs = Arrays.copyOf(refs, refs.length * 2);
+                        refs[numRefs++] = Long.parseLong(reader.getAttributeValue(null, "ref"));
+                    } else if (inWay && name.equals("tag")) {
+                        tags.put(reader.getAttributeValue(null, "k"), reader.getAttributeValue(null, "v"));
+                    } else if (name.equals("node")) {
+                        if (!nodes || "false".equals(reader.getAttributeValue(null, "visible"))) continue;
+                        String lat = reader.getAttributeValue(null, "lat");
+                        String lon = reader.getAttributeValue(null, "lon");
+                        if (lat == null || lon == null) continue;
+                        handler.node(Long.parseLong(reader.getAttributeValue(null, "id")), Double.parseDouble(lat), Double.parseDouble(lon));
+                    } else if (name.equals("way")) {
+                        inWay = !"false".equals(reader.getAttributeValue(null, "visible"));
+                        wayId = Long.parseLong(reader.getAttributeValue(null, "id"));
+                        tags = new HashMap<>();
+                        numRefs = 0;
+                    } else if (name.equals("relation")) {
+                        break;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && inWay && reader.getLocalName().equals("way")) {
+                    inWay = false;
+                    if (numRefs != 0) handler.way(wayId, tags, refs, numRefs);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Stats">
+
+    public long getRoadCount() { return _roads.sum(); }
+
+    public long getIntersectionCount() { return _intersections.sum(); }
+
+    public String getStats() {
+        return _roads.sum() + " roads (" + _incomplete.sum() + " with missing nodes, " + _failed.sum() + " failed), " +
+                _intersections.sum() + " intersections (at most " + _maxOpen + " open at once), " + _nodeIndex.size() +
+                " road nodes in " + (_counts.estimateBytes() + _nodeIndex.estimateBytes() + 8L * _nodeLat.length) / (1 << 20) + " MB";
+    }
+
+    // </editor-fold>
+}
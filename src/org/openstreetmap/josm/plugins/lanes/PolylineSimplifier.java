@@ -0,0 +1,152 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.MapView;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Douglas-Peucker simplification of polylines, run on projected coordinates so that the
+ * tolerance can be given in screen pixels.  Since the map view is just a scale + translation
+ * of the projection, the result only depends on the zoom level and can be cached per scale.
+ */
+public class PolylineSimplifier {
+
+    // Maximum distance (in pixels) that a dropped vertex can be from the simplified line.
+    public static final double TOLERANCE_PIXELS = 1.0;
+
+    /**
+     * Simplifies a way for drawing on the given MapView.
+     * @param w The way to simplify.
+     * @param mv The MapView the way will be drawn on, used for the current scale.
+     * @return The indices of the nodes of w to keep, in order.  Always includes the first and last node.
+     */
+    public static int[] simplify(Way w, MapView mv) {
+        return simplify(w, TOLERANCE_PIXELS * mv.getScale());
+    }
+
+    /**
+     * Simplifies a way using a tolerance in projected (east/north) units.
+     * @param w The way to simplify.
+     * @param tolerance The maximum perpendicular distance of a removed node from the simplified line.
+     * @return The indices of the nodes of w to keep, in order.
+     */
+    public static int[] simplify(Way w, double tolerance) {
+        int n = w.getNodesCount();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            EastNorth en = w.getNode(i).getEastNorth();
+            if (en == null) return allIndices(n);
+            x[i] = en.east();
+            y[i] = en.north();
+        }
+        return simplify(x, y, n, tolerance);
+    }
+
+    /**
+     * Simplifies the polyline made of the first n points of x/y.
+     * @return The indices of the points to keep, in order.
+     */
+    public static int[] simplify(double[] x, double[] y, int n, double tolerance) {
+        if (n <= 2 || !(tolerance > 0)) return allIndices(n);
+
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n-1] = true;
+        int numKept = 2;
+
+        // Iterative version of the usual recursion, so long ways can't overflow the stack.
+        int[] stack = new int[2*n];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n-1;
+        double tolSq = tolerance*tolerance;
+
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            if (last - first < 2) continue;
+
+            double dx = x[last] - x[first];
+            double dy = y[last] - y[first];
+            double lenSq = dx*dx + dy*dy;
+
+            int furthest = -1;
+            double maxDistSq = tolSq;
+            for (int i = first + 1; i < last; i++) {
+                double distSq = distToSegmentSq(x[i], y[i], x[first], y[first], dx, dy, lenSq);
+                if (distSq > maxDistSq) {
+                    maxDistSq = distSq;
+                    furthest = i;
+                }
+            }
+
+            if (furthest != -1) {
+                keep[furthest] = true;
+                numKept++;
+                stack[top++] = first;
+                stack[top++] = furthest;
+                stack[top++] = furthest;
+                stack[top++] = last;
+            }
+        }
+
+        int[] output = new int[numKept];
+        int j = 0;
+        for (int i = 0; i < n; i++) if (keep[i]) output[j++] = i;
+        return output;
+    }
+
+    private static double distToSegmentSq(double px, double py, double ax, double ay, double dx, double dy, double lenSq) {
+        double t = lenSq == 0 ? 0 : ((px - ax)*dx + (py - ay)*dy) / lenSq;
+        t = Math.max(0, Math.min(1, t));
+        double ex = px - (ax + t*dx);
+        double ey = py - (ay + t*dy);
+        return ex*ex + ey*ey;
+    }
+
+    private static int[] allIndices(int n) {
+        int[] output = new int[Math.max(n, 0)];
+        for (int i = 0; i < output.length; i++) output[i] = i;
+        return output;
+    }
+
+    /**
+     * Caches simplified indices of a set of polylines for the current zoom level.  Entries are thrown
+     * away when the scale changes, or when the owner calls clear() because the geometry changed.
+     */
+    public static class Cache {
+        private final Map<Integer, int[]> _indices = new HashMap<>();
+        private double _scale = Double.NaN;
+
+        public int[] get(int key, Way w, MapView mv) {
+            double scale = mv.getScale();
+            if (scale != _scale) {
+                _indices.clear();
+                _scale = scale;
+            }
+
+            int[] output = _indices.get(key);
+            boolean hit = output != null && (output.length == 0 || output[output.length-1] == w.getNodesCount()-1);
+            LaneModeStats.cache(LaneModeStats.Cache.SIMPLIFIED_NODES, hit);
+            if (!hit) {
+                output = simplify(w, TOLERANCE_PIXELS * scale);
+                _indices.put(key, output);
+            }
+            return output;
+        }
+
+        public void clear() {
+            _indices.clear();
+        }
+
+        void estimateFootprint(LaneMemory.Estimate e) {
+            e.object(1, 8);
+            e.map(_indices);
+            for (int[] indices : _indices.values()) e.array(indices.length, 4);
+        }
+    }
+}
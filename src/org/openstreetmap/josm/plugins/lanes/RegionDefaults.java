@@ -0,0 +1,201 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.tools.RightAndLefthandTraffic;
+import org.openstreetmap.josm.tools.Territories;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Traffic side and country specific rendering defaults (from resources/renderinginfo) for a location.
+ *
+ * Looking these up means going through the territory boundaries, so results are cached on a coarse grid shared
+ * by all ways.  A grid cell is only cached if its corners and centre all agree, cells on a border are looked up
+ * at the exact location every time instead.  RoadRenderer keeps the result for its way.
+ */
+public final class RegionDefaults {
+
+    // <editor-fold defaultstate="collapsed" desc="Tables">
+
+    public static final Map<String, String> DEFAULT_LANE_WIDTH = loadTable("defaultLaneWidth");
+    public static final Map<String, String> IS_CENTER_YELLOW = loadTable("isCenterYellow");
+    public static final Map<String, String> SHOULDER_LINE_COLOR = loadTable("shoulderLineColor");
+    public static final Map<String, String> IS_CENTER_TURN_LANE_KNOWN = loadTable("isCenterTurnLaneKnown");
+
+    // Every country with an entry in one of the tables, the rest use the defaults.
+    private static final List<String> COUNTRIES = getCountries();
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Grid Cache">
+
+    private static final double CELL_SIZE = 0.1; // Degrees, about 11 km north to south.
+    private static final int MAX_CELLS = 20000;
+    private static final Map<Long, RegionDefaults> CELLS = new ConcurrentHashMap<>();
+    private static final RegionDefaults BORDER = new RegionDefaults(true, "default"); // Marks cells on a border.
+
+    // There are only a few hundred possible results, so share them.
+    private static final Map<String, RegionDefaults> INSTANCES = new ConcurrentHashMap<>();
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Variables">
+
+    private final boolean _rightHand;
+    private final String _country;
+    private final double _defaultLaneWidth;
+    private final boolean _centerYellow;
+    private final String _shoulderLineColor;
+    private final boolean _centerTurnLaneKnown;
+
+    // </editor-fold>
+
+    private RegionDefaults(boolean rightHand, String country) {
+        _rightHand = rightHand;
+        _country = country;
+        double width = LaneTagTokenizer.width(lookup(DEFAULT_LANE_WIDTH, country));
+        _defaultLaneWidth = width > 0 ? width : LaneProfile.DEFAULT_LANE_WIDTH;
+        _centerYellow = "yellow".equals(lookup(IS_CENTER_YELLOW, country));
+        _shoulderLineColor = lookup(SHOULDER_LINE_COLOR, country) == null ? "white" : lookup(SHOULDER_LINE_COLOR, country);
+        _centerTurnLaneKnown = "true".equals(lookup(IS_CENTER_TURN_LANE_KNOWN, country));
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Getters">
+
+    public boolean isRightHand() { return _rightHand; }
+
+    // ISO 3166 code of the country if it has its own entry in the tables, otherwise "default".
+    public String getCountry() { return _country; }
+
+    public double getDefaultLaneWidth() { return _defaultLaneWidth; }
+
+    public boolean isCenterYellow() { return _centerYellow; }
+
+    // Value from shoulderLineColor.yml, e.g. "white", "yellow" or "short white dashes".
+    public String getShoulderLineColor() { return _shoulderLineColor; }
+
+    // Whether centre turn lanes (lanes:both_ways=1) are common enough to offer them in the editor.
+    public boolean isCenterTurnLaneKnown() { return _centerTurnLaneKnown; }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Lookup">
+
+    // Defaults at the start of the way.
+    public static RegionDefaults of(Way w) {
+        return at(w.getNode(0).getCoor());
+    }
+
+    public static RegionDefaults at(LatLon ll) {
+        if (ll == null || !ll.isValid()) return get(true, "default");
+
+        long cellLat = (long) Math.floor(ll.lat() / CELL_SIZE);
+        long cellLon = (long) Math.floor(ll.lon() / CELL_SIZE);
+        Long key = (cellLat << 32) ^ (cellLon & 0xffffffffL);
+
+        RegionDefaults cached = CELLS.get(key);
+        LaneModeStats.cache(LaneModeStats.Cache.REGIONS, cached != null && cached != BORDER);
+        if (cached == null) {
+            if (CELLS.size() > MAX_CELLS) CELLS.clear();
+            cached = lookupCell(cellLat, cellLon);
+            CELLS.put(key, cached);
+        }
+        return cached == BORDER ? lookupAt(ll) : cached;
+    }
+
+    private static RegionDefaults lookupCell(long cellLat, long cellLon) {
+        double south = cellLat * CELL_SIZE;
+        double west = cellLon * CELL_SIZE;
+        RegionDefaults centre = lookupAt(new LatLon(south + CELL_SIZE / 2, west + CELL_SIZE / 2));
+        for (int i = 0; i < 4; i++) {
+            LatLon corner = new LatLon(south + (i / 2) * CELL_SIZE, west + (i % 2) * CELL_SIZE);
+            if (!corner.isValid()) continue;
+            if (RightAndLefthandTraffic.isRightHandTraffic(corner) != centre._rightHand) return BORDER;
+            if (centre._country.equals("default") ? !getCountry(corner).equals("default") :
+                    !Territories.isIso3166Code(centre._country, corner)) return BORDER;
+        }
+        return centre;
+    }
+
+    private static RegionDefaults lookupAt(LatLon ll) {
+        return get(RightAndLefthandTraffic.isRightHandTraffic(ll), getCountry(ll));
+    }
+
+    private static String getCountry(LatLon ll) {
+        for (String country : COUNTRIES) {
+            if (Territories.isIso3166Code(country, ll)) return country;
+        }
+        return "default";
+    }
+
+    private static RegionDefaults get(boolean rightHand, String country) {
+        return INSTANCES.computeIfAbsent((rightHand ? "r" : "l") + country, k -> new RegionDefaults(rightHand, country));
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Reading the Tables">
+
+    private static String lookup(Map<String, String> table, String country) {
+        return table.containsKey(country) ? table.get(country) : table.get("default");
+    }
+
+    /**
+     * Reads resources/renderinginfo/[name].yml, from the plugin jar or (when running from the source tree) from the
+     * working directory.  Only supports the flat "key: value # comment" files used there.
+     */
+    static Map<String, String> loadTable(String name) {
+        String path = "resources/renderinginfo/" + name + ".yml";
+        try (InputStream in = open(path)) {
+            return in == null ? Collections.emptyMap() : parseYML(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            return Collections.emptyMap();
+        }
+    }
+
+    private static InputStream open(String path) throws IOException {
+        InputStream in = RegionDefaults.class.getResourceAsStream("/" + path);
+        if (in != null) return in;
+        File f = new File(path);
+        return f.isFile() ? new FileInputStream(f) : null;
+    }
+
+    static Map<String, String> parseYML(BufferedReader reader) throws IOException {
+        Map<String, String> output = new HashMap<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            int comment = line.indexOf('#');
+            if (comment != -1) line = line.substring(0, comment);
+            int colon = line.indexOf(':');
+            if (colon == -1) continue;
+
+            String key = unquote(line.substring(0, colon).trim());
+            String value = unquote(line.substring(colon + 1).trim());
+            if (!key.isEmpty()) output.put(key, value);
+        }
+        return Collections.unmodifiableMap(output);
+    }
+
+    // YML needs some keys quoted, like 'NO' (which would otherwise be false).
+    private static String unquote(String s) {
+        if (s.length() >= 2 && (s.charAt(0) == '\'' || s.charAt(0) == '"') && s.charAt(s.length()-1) == s.charAt(0)) {
+            return s.substring(1, s.length()-1);
+        }
+        return s;
+    }
+
+    private static List<String> getCountries() {
+        Set<String> output = new TreeSet<>();
+        for (Map<String, String> table : Arrays.asList(DEFAULT_LANE_WIDTH, IS_CENTER_YELLOW, SHOULDER_LINE_COLOR, IS_CENTER_TURN_LANE_KNOWN)) {
+            output.addAll(table.keySet());
+        }
+        output.remove("default");
+        return new ArrayList<>(output);
+    }
+
+    // </editor-fold>
+}
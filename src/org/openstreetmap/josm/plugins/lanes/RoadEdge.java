@@ -17,14 +17,8 @@ public class RoadEdge extends RoadPiece {
 
     @Override
     void render(Graphics2D g) {
-        String country = "US";
-        String centerColor = Utils.isCenterYellow.containsKey(country) ?
-                Utils.isCenterYellow.get(country) : Utils.isCenterYellow.get("default");
-        String roadEdge = Utils.shoulderLineColor.containsKey(country) ?
-                Utils.shoulderLineColor.get(country) : Utils.shoulderLineColor.get("default");
-
         Utils.renderRoadLine(g, _mv, _parent, 0, 0, _offsetStart, _offsetEnd, Utils.DividerType.SOLID,
-                (Utils.isOneway(_way) && _direction == -1) ? Color.YELLOW : Color.WHITE);
+                (_parent.isOneway() && _direction == -1) ? Color.YELLOW : Color.WHITE);
     }
 
     @Override
@@ -36,6 +30,6 @@ public class RoadEdge extends RoadPiece {
         Point lineEnd = Utils.goInDirection(Utils.goInDirection(center, bearing, distOut), bearing-Math.PI/2, pixelsPerMeter*offsetEnd);
 
         Utils.renderRoadLinePopup(g, lineStart, lineEnd, bearing, getWidth(true), getWidth(false),
-                pixelsPerMeter, Utils.DividerType.SOLID, (Utils.isOneway(_way) && _direction == -1) ? Color.YELLOW : Color.WHITE);
+                pixelsPerMeter, Utils.DividerType.SOLID, (_parent.isOneway() && _direction == -1) ? Color.YELLOW : Color.WHITE);
     }
 }
\ No newline at end of file
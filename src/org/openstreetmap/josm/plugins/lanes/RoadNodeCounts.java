@@ -0,0 +1,61 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+/**
+ * How many road ways meet at each node, for finding intersections without a DataSet.  Counts the same way as
+ * Utils.numRoadsFromNode (ends of roads, capped at 3) and Utils.getWaysFromNode (ways going out of the node),
+ * packed into an int per node.  Not thread safe while ways are being added, fine to read from many threads after.
+ */
+final class RoadNodeCounts {
+
+    private static final int ENDS_MASK = 3; // Bits 0-1, capped at 3.
+    private static final int VECTORS_SHIFT = 2;
+    private static final int VECTORS_MASK = 0xfff; // Bits 2-13, capped at 4095.
+    private static final int ROUNDABOUT = 1 << 14; // One of the ways is a roundabout.
+
+    private final LongIntMap _nodes = new LongIntMap(1 << 16, 0);
+
+    void addWay(long[] refs, int numRefs, boolean roundabout) {
+        for (int i = 0; i < numRefs; i++) {
+            int packed = _nodes.get(refs[i]);
+            int ends = Math.min(getEnds(packed) + ((i == 0 || i == numRefs - 1) ? 1 : 2), 3);
+            int vectors = Math.min(getVectors(packed) + (numRefs < 2 ? 0 : (i != 0 ? 1 : 0) + (i != numRefs - 1 ? 1 : 0)),
+                    VECTORS_MASK);
+            _nodes.put(refs[i], ends | (vectors << VECTORS_SHIFT) | (packed & ROUNDABOUT) | (roundabout ? ROUNDABOUT : 0));
+        }
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Lookup">
+
+    int size() { return _nodes.size(); }
+
+    boolean contains(long node) { return _nodes.containsKey(node); }
+
+    // Packed counts of the node, 0 if no road goes through it.
+    int get(long node) { return _nodes.get(node); }
+
+    // Same as Utils.calculateNodeIntersectionType() == INTERSECTION.
+    boolean isIntersection(long node) { return isIntersection(_nodes.get(node)); }
+
+    // For going through every node, see LongIntMap.keyAt.
+    int capacity() { return _nodes.capacity(); }
+
+    long keyAt(int i) { return _nodes.keyAt(i); }
+
+    int valueAt(int i) { return _nodes.valueAt(i); }
+
+    long estimateBytes() { return _nodes.estimateBytes(); }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Unpacking">
+
+    static int getEnds(int packed) { return packed & ENDS_MASK; }
+
+    static int getVectors(int packed) { return (packed >> VECTORS_SHIFT) & VECTORS_MASK; }
+
+    static boolean isRoundabout(int packed) { return (packed & ROUNDABOUT) != 0; }
+
+    static boolean isIntersection(int packed) { return getEnds(packed) >= 3 && !isRoundabout(packed); }
+
+    // </editor-fold>
+}
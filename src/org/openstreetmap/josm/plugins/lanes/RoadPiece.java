@@ -64,9 +64,10 @@ abstract class RoadPiece {
 
     protected List<Polygon> getAsphaltOutlines() {
         List<Polygon> output = new ArrayList<>();
-        for (int i = 0; i < _parent.startPoints.size(); i++) {
-            double swt = (Math.max(_parent.startPoints.get(i), 0)/_parent.getAlignment().getLength());
-            double ewt = (Math.min(_parent.endPoints.get(i), _parent.getAlignment().getLength())/_parent.getAlignment().getLength());
+        RoadRenderer.AlignmentParts parts = _parent.getAlignmentParts();
+        for (int i = 0; i < parts.size(); i++) {
+            double swt = (Math.max(parts.start(i), 0)/_parent.getAlignment().getLength());
+            double ewt = (Math.min(parts.end(i), _parent.getAlignment().getLength())/_parent.getAlignment().getLength());
 
             double widthStart = swt*getWidth(false) + (1-swt)*getWidth(true);
             double widthEnd = ewt*getWidth(false) + (1-ewt)*getWidth(true);
@@ -74,7 +75,7 @@ abstract class RoadPiece {
             double startOffset = swt*_offsetEnd + (1-swt)*_offsetStart;
             double endOffset = ewt*_offsetEnd + (1-ewt)*_offsetStart;
 
-            Way subpart = Utils.getSubPart(_parent.getAlignment(), _parent.startPoints.get(i), _parent.endPoints.get(i));
+            Way subpart = parts.get(i);
             Way left = Utils.getParallel(subpart, startOffset + (widthStart / 2.0), endOffset + (widthEnd / 2.0),
                     false, _parent.otherStartAngle, _parent.otherEndAngle);
             Way right = Utils.getParallel(subpart, startOffset - (widthStart / 2.0), endOffset - (widthEnd / 2.0),
@@ -93,6 +94,11 @@ abstract class RoadPiece {
         return output;
     }
 
+    // The piece itself, its outlines are worked out while rendering and not kept.
+    void estimateFootprint(LaneMemory.Estimate e) {
+        e.object(5, 4 + 4 + 8 + 8 + 1);
+    }
+
     // <editor-fold desc="Mouse Listeners">
 
     public void mouseClicked(MouseEvent e) {
@@ -4,30 +4,42 @@ import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.MapView;
-import org.openstreetmap.josm.gui.util.GuiHelper;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseEvent;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 public abstract class RoadRenderer {
 
     // <editor-fold defaultstate="collapsed" desc="Variables">
 
-    List<Double> startPoints; // Measured in meters from start.
-    List<Double> endPoints; // Anything greater than or equal to way length means end.
+    // Parts of the alignment (in meters from start) that are rendered, i.e. not covered by an intersection.
+    //  Ends greater than or equal to the alignment length mean the end.  Replaced copy-on-write by addRenderingGap.
+    private final AtomicReference<IntervalSet> _intervals = new AtomicReference<>();
+    private volatile AlignmentParts _parts;
+    private volatile AlignmentEdges _alignmentEdges; // Edges of the whole alignment, kept when only the gaps change.
 
     protected final Way _way;
     protected final MapView _mv;
     protected final LaneMappingMode _parent;
 
-    protected List<Way> _asphalt;
+    protected volatile List<Way> _asphalt;
+    private volatile BulkProjector.Cache _projectedAsphalt; // Only used while painting, on the EDT.
+    private final BulkProjector.Coordinates _wayCoordinates = new BulkProjector.Coordinates(); // Same.
+
+    private volatile RegionDefaults _region;
+    private volatile Boolean _oneway;
 
     public double otherStartAngle = Double.NaN;
     public double otherEndAngle = Double.NaN;
 
+    long lastPainted; // Number of the last frame this was drawn in, for LaneMemory to evict the least recently seen.
+    private volatile long[] _footprint; // Estimated bytes held apart from cached geometry, by footprint.  See getFootprint().
 
     // </editor-fold>
 
@@ -47,6 +59,23 @@ public abstract class RoadRenderer {
     // For getting the OSM way that the RoadRenderer is modeled after.
     public Way getWay() { return _way; }
 
+    // The way's nodes projected, for LaneMappingMode to check whether the road is on screen every frame.
+    BulkProjector.Coordinates getWayCoordinates() { return _wayCoordinates.update(_way); }
+
+    // Traffic side and country defaults where the way is, only looked up once per renderer.
+    public RegionDefaults getRegion() {
+        RegionDefaults region = _region;
+        if (region == null) _region = region = RegionDefaults.of(_way);
+        return region;
+    }
+
+    // Same as Utils.isOneway(getWay()), only looked up once per renderer since it's asked while painting.
+    public boolean isOneway() {
+        Boolean oneway = _oneway;
+        if (oneway == null) _oneway = oneway = Utils.isOneway(_way);
+        return oneway;
+    }
+
     // For getting a different version of _way that's parallel to the lanes.
     // Only different from _way when the way has different placement at start/end.
     abstract Way getAlignment();
@@ -58,65 +87,106 @@ public abstract class RoadRenderer {
         return getWidth(start)/2;
     }
 
-    public synchronized void addRenderingGap(int from, int to) { addRenderingGap(Utils.nodeIdToDist(getAlignment(), from), Utils.nodeIdToDist(getAlignment(), to)); }
-    public synchronized void addRenderingGap(double from, double to) {
+    public void addRenderingGap(int from, int to) { addRenderingGap(Utils.nodeIdToDist(getAlignment(), from), Utils.nodeIdToDist(getAlignment(), to)); }
+    public void addRenderingGap(double from, double to) {
         double min = Math.max(Math.min(from, to), 0);
         double max = Math.min(Math.max(from, to), getAlignment().getLength());
-        for (int i = 0; i < startPoints.size(); i++) {
-            double start = startPoints.get(i);
-            double end = endPoints.get(i);
-            if (max < end && min > start && max > start && min < end) { // completely inside
-                // Add new end at min, new start at max
-                endPoints.add(i, min);
-                startPoints.add(i+1, max);
-                return; // To avoid problems.
-            } else if (max < end && min <= start && max > start) { // inside start half
-                // Move start to max
-                startPoints.set(i, max);
-                return;
-            } else if (max >= end && min > start && min < end) { // inside end half
-                // Move end to min
-                endPoints.set(i, min);
-            } else if (max >= end && min <= start) { // Outside, containing this range.
-                // Remove this range.
-                endPoints.remove(i);
-                startPoints.remove(i);
-                i--;
-            }
-        }
-        _asphalt = null;
+
+        // Layout threads add gaps concurrently, so retry until the gap is applied to the latest set.
+        IntervalSet current;
+        IntervalSet updated;
+        do {
+            current = _intervals.get();
+            updated = current.subtract(min, max);
+        } while (current != updated && !_intervals.compareAndSet(current, updated));
+
+        if (current != updated) invalidateParts();
     }
 
     public void resetRenderingGaps() {
-        startPoints = new ArrayList<>();
-        startPoints.add(0.0);
-        endPoints = new ArrayList<>();
-        endPoints.add(_way.getLength() + 100);
+        _intervals.set(IntervalSet.of(0, _way.getLength() + 100));
+        invalidateParts();
+    }
+
+    public IntervalSet getRenderingIntervals() {
+        return _intervals.get();
+    }
+
+    // Throws away anything cached from the alignment, called whenever the alignment or its end angles change.
+    protected void invalidateGeometry() {
+        _alignmentEdges = null;
+        invalidateParts();
+    }
+
+    // Throws away what depends on the rendering gaps, called whenever they change.
+    private void invalidateParts() {
+        _parts = null;
         _asphalt = null;
+        _projectedAsphalt = null;
+        _footprint = null;
     }
 
-    // For getting alignment split up by road segment.
-    public List<Way> getAlignments() {
-        // Returns sub parts of alignment.
-        List<Way> output = new ArrayList<>();
-        for (int i = 0; i < startPoints.size(); i++) {
-            double start = Math.max(startPoints.get(i), 0);
-            double end = Math.min(endPoints.get(i), getAlignment().getLength());
-            if (end-start < 0.01) continue;
-            Way alignmentPart = Utils.getSubPart(getAlignment(), start, end);
-
-            if (alignmentPart != null && alignmentPart.getLength() > 0.01) {
-                output.add(alignmentPart);
-            }
+    // For getting alignment split up by road segment.  The parts are sliced once per version of the
+    //  rendering intervals, so rendering never has to wait on (or redo the work of) the layout threads.
+    public AlignmentParts getAlignmentParts() {
+        AlignmentParts parts = _parts;
+        IntervalSet intervals = _intervals.get();
+        Way alignment = getAlignment();
+        boolean hit = parts != null && parts.intervals == intervals && parts.alignment == alignment;
+        LaneModeStats.cache(LaneModeStats.Cache.ALIGNMENT_PARTS, hit);
+        if (!hit) {
+            parts = new AlignmentParts(intervals, alignment);
+            _parts = parts;
         }
-        return output;
+        return parts;
+    }
+
+    public List<Way> getAlignments() {
+        return getAlignmentParts().parts;
     }
 
     // Get edge methods.  Return edge of rendering, aka like 0.3 meters more than actual edge.
-    public Way getLeftEdge() { return getLeftEdge(null, 0); }
-    public Way getRightEdge() { return getRightEdge(null, 0); }
-    abstract Way getLeftEdge(Way waySegment, int segment);
-    abstract Way getRightEdge(Way waySegment, int segment);
+    // Edges are memoized (the whole alignment's with the alignment, parts' with the parts), so every consumer shares
+    //  one computed result.
+    public Way getLeftEdge() { return getAlignmentEdge(true); }
+    public Way getRightEdge() { return getAlignmentEdge(false); }
+    Way getLeftEdge(AlignmentParts parts, int segment) { return getEdge(parts, true, segment); }
+    Way getRightEdge(AlignmentParts parts, int segment) { return getEdge(parts, false, segment); }
+
+    private Way getEdge(AlignmentParts parts, boolean left, int segment) {
+        Map<Integer, Way> edges = left ? parts.leftEdges : parts.rightEdges;
+        Way edge = edges.get(segment);
+        LaneModeStats.cache(LaneModeStats.Cache.EDGES, edge != null);
+        if (edge != null) return edge;
+
+        Way waySegment = parts.get(segment);
+        edge = left ? computeLeftEdge(waySegment, parts.start(segment), parts.end(segment)) :
+                computeRightEdge(waySegment, parts.start(segment), parts.end(segment));
+        if (edge == null) return null;
+
+        Way existing = edges.putIfAbsent(segment, edge);
+        return existing != null ? existing : edge;
+    }
+
+    // Edges of the whole alignment don't depend on the rendering gaps, so they're kept until the alignment changes.
+    private Way getAlignmentEdge(boolean left) {
+        Way alignment = getAlignment();
+        AlignmentEdges edges = _alignmentEdges;
+        if (edges == null || edges.alignment != alignment) _alignmentEdges = edges = new AlignmentEdges(alignment);
+        AtomicReference<Way> cached = left ? edges.left : edges.right;
+        Way edge = cached.get();
+        LaneModeStats.cache(LaneModeStats.Cache.EDGES, edge != null);
+        if (edge != null) return edge;
+
+        edge = left ? computeLeftEdge(null, 0, Double.POSITIVE_INFINITY) : computeRightEdge(null, 0, Double.POSITIVE_INFINITY);
+        if (edge == null) return null;
+        return cached.compareAndSet(null, edge) ? edge : cached.get();
+    }
+
+    // Compute the edges of the given alignment part, which covers start to end (in meters) of the alignment.
+    //  waySegment is null for the edge of the whole alignment.
+    abstract Way computeLeftEdge(Way waySegment, double start, double end);
+    abstract Way computeRightEdge(Way waySegment, double start, double end);
 
     // Static constructor used by LaneMappingMode to create
     //  RoadRenderers without having to worry about which kind is created.
@@ -125,7 +195,7 @@ public abstract class RoadRenderer {
         if (w.getNodesCount() == 0 || !w.isVisible()) return null;
         if (!w.isDrawable()) return null;
 
-        if (w.hasTag("lane_markings", "no") || w.hasTag("lanes", "1.5")) {
+        if (RoadTags.isUnmarked(w.getKeys())) {
             return new UnmarkedRoadRenderer(w, mv, parent);
         } else if (wayHasLaneTags(w)) {
             MarkedRoadRenderer mrr = new MarkedRoadRenderer(w, mv, parent);
@@ -142,8 +212,11 @@ public abstract class RoadRenderer {
     // <editor-fold defaultstate=collapsed desc="Methods for Angles and Alignments">
 
     public void updateAlignment() {
+        LaneEvents.RoadAlignment event = LaneEvents.roadAlignment();
         getOtherAngle(true);
         getOtherAngle(false);
+        invalidateGeometry();
+        if (event != null) event.end(this);
     }
 
     public double getOtherAngle(boolean start) {
@@ -225,10 +298,17 @@ public abstract class RoadRenderer {
 
     protected void renderAsphalt(Graphics2D g, Color color) {
         g.setColor(color);
-        for (Polygon p : getAsphaltOutlinePixels()) g.fillPolygon(p);
+        List<Way> asphalt = _asphalt;
+        if (asphalt == null) _asphalt = asphalt = getAsphaltOutlineCoords();
+        BulkProjector.Cache projected = _projectedAsphalt;
+        if (projected == null) _projectedAsphalt = projected = new BulkProjector.Cache();
+        for (int i = 0; i < asphalt.size(); i++) {
+            BulkProjector.Buffers points = projected.project(_mv, i, asphalt.get(i), null);
+            g.fillPolygon(points.x, points.y, points.size);
+        }
 
-        g.setColor(new Color(0, 0, 0, 0));
-        g.setStroke(GuiHelper.getCustomizedStroke("0"));
+        g.setColor(Utils.TRANSPARENT);
+        g.setStroke(Utils.RESET_STROKE);
     }
 
     protected void renderAsphaltPopup(Graphics2D g, Color color, Point center, double bearing, double distOut, double pixelsPerMeter) {
@@ -243,13 +323,13 @@ public abstract class RoadRenderer {
         g.fillPolygon(new int[] {startLeft.x, startRight.x, endRight.x, endLeft.x, startLeft.x},
                       new int[] {startLeft.y, startRight.y, endRight.y, endLeft.y, startLeft.y}, 5);
 
-        g.setColor(new Color(0, 0, 0, 0));
-        g.setStroke(GuiHelper.getCustomizedStroke("0"));
+        g.setColor(Utils.TRANSPARENT);
+        g.setStroke(Utils.RESET_STROKE);
     }
 
     protected void renderRoadEdgesPopup(Graphics2D g, Point center, double bearing, double distOut, double pixelsPerMeter, boolean tagged) {
-        Color left = Utils.isRightHand(getWay()) && Utils.isOneway(getWay()) && tagged ? Utils.DEFAULT_CENTRE_DIVIDER_COLOR : Utils.DEFAULT_DIVIDER_COLOR;
-        Color right = !Utils.isRightHand(getWay()) && Utils.isOneway(getWay()) && tagged ? Utils.DEFAULT_CENTRE_DIVIDER_COLOR : Utils.DEFAULT_DIVIDER_COLOR;
+        Color left = getRegion().isRightHand() && isOneway() && tagged ? Utils.DEFAULT_CENTRE_DIVIDER_COLOR : Utils.DEFAULT_DIVIDER_COLOR;
+        Color right = !getRegion().isRightHand() && isOneway() && tagged ? Utils.DEFAULT_CENTRE_DIVIDER_COLOR : Utils.DEFAULT_DIVIDER_COLOR;
 
         Point start = Utils.goInDirection(center, bearing+Math.PI, distOut);
         Point startLeft = Utils.goInDirection(start, bearing-Math.PI/2, pixelsPerMeter*(getWidth(true))/2 + 1);
@@ -263,21 +343,20 @@ public abstract class RoadRenderer {
     }
 
     public List<Polygon> getAsphaltOutlinePixels() {
-        if (_asphalt == null) _asphalt = getAsphaltOutlineCoords();
+        List<Way> asphalt = _asphalt;
+        if (asphalt == null) _asphalt = asphalt = getAsphaltOutlineCoords();
 
         List<Polygon> output = new ArrayList<>();
-        for (Way asphalt : _asphalt) output.add(Utils.wayToPolygon(asphalt, _mv));
+        for (Way outline : asphalt) output.add(Utils.wayToPolygon(outline, _mv));
         return output;
     }
 
     public List<Way> getAsphaltOutlineCoords() {
         List<Way> output = new ArrayList<>();
-        List<Way> alignments = getAlignments();
-        for (int i = 0; i < alignments.size(); i++) {
-            Way alignmentPart = alignments.get(i);
-
-            Way left = getLeftEdge(alignmentPart, i);
-            Way right = getRightEdge(alignmentPart, i);
+        AlignmentParts parts = getAlignmentParts();
+        for (int i = 0; i < parts.size(); i++) {
+            Way left = getLeftEdge(parts, i);
+            Way right = getRightEdge(parts, i);
 
             List<Node> points = new ArrayList<>();
 
@@ -325,28 +404,202 @@ public abstract class RoadRenderer {
 
     // </editor-fold>
 
+    // <editor-fold defaultstate="collapsed" desc="Methods for Estimating Memory">
+
+    // Estimated bytes this renderer holds apart from cached geometry, indexed by footprint.  See LaneMemory.
+    //  Kept until the alignment or rendering gaps change.
+    long[] getFootprint() {
+        long[] footprint = _footprint;
+        if (footprint == null) {
+            LaneMemory.Estimate e = new LaneMemory.Estimate();
+            estimateFootprint(e);
+            footprint = e.getBytes();
+            _footprint = footprint;
+        }
+        return footprint;
+    }
+
+    void estimateFootprint(LaneMemory.Estimate e) {
+        e.in(LaneModeStats.Footprint.ROADS);
+        e.object(12, 8 + 8 + 8);
+        _wayCoordinates.estimateFootprint(e);
+        IntervalSet intervals = _intervals.get();
+        if (intervals != null) {
+            e.object(2, 8);
+            e.array(intervals.size(), 8);
+            e.array(intervals.size(), 8);
+        }
+    }
+
+    // Adds the cached alignment parts, edges and asphalt, which invalidateGeometry() throws away.
+    void estimateCachedFootprint(LaneMemory.Estimate e) {
+        e.in(LaneModeStats.Footprint.CACHED_GEOMETRY);
+        AlignmentEdges edges = _alignmentEdges;
+        if (edges != null) {
+            e.object(3, 0);
+            e.object(1, 0);
+            e.object(1, 0);
+            e.way(edges.left.get());
+            e.way(edges.right.get());
+        }
+        AlignmentParts parts = _parts;
+        if (parts != null) parts.estimateFootprint(e);
+        e.outlines(_asphalt);
+        BulkProjector.Cache projected = _projectedAsphalt;
+        if (projected != null) projected.estimateFootprint(e);
+    }
+
+    // </editor-fold>
+
+    // The edges of one alignment, see getAlignmentEdge().
+    private static final class AlignmentEdges {
+        final Way alignment;
+        final AtomicReference<Way> left = new AtomicReference<>();
+        final AtomicReference<Way> right = new AtomicReference<>();
+
+        AlignmentEdges(Way alignment) {
+            this.alignment = alignment;
+        }
+    }
+
+    /**
+     * The rendered parts of an alignment, sliced for one version of the rendering intervals.  Immutable apart
+     * from the caches, which are safe to fill from any thread.
+     */
+    static class AlignmentParts {
+        final IntervalSet intervals;
+        final Way alignment;
+        final List<Way> parts = new ArrayList<>();
+
+        // Bounds (in meters along the alignment) of the interval each part was sliced from.
+        private final double[] _starts;
+        private final double[] _ends;
+
+        // Edges keyed by part index.
+        final Map<Integer, Way> leftEdges = new ConcurrentHashMap<>();
+        final Map<Integer, Way> rightEdges = new ConcurrentHashMap<>();
+
+        private static final int MAX_PARALLELS = 64;
+
+        // Only used while painting, on the EDT.
+        private final PolylineSimplifier.Cache _simplified = new PolylineSimplifier.Cache();
+        private final List<Parallel> _parallels = new ArrayList<>();
+        private final BulkProjector.Cache _projected = new BulkProjector.Cache();
+
+        AlignmentParts(IntervalSet intervals, Way alignment) {
+            this.intervals = intervals;
+            this.alignment = alignment;
+            _starts = new double[intervals.size()];
+            _ends = new double[intervals.size()];
+            if (alignment == null) return;
+
+            double length = alignment.getLength();
+            for (int i = 0; i < intervals.size(); i++) {
+                double start = Math.max(intervals.getStart(i), 0);
+                double end = Math.min(intervals.getEnd(i), length);
+                if (end-start < 0.01) continue;
+                Way alignmentPart = Utils.getSubPart(alignment, start, end);
+
+                if (alignmentPart != null && alignmentPart.getLength() > 0.01) {
+                    _starts[parts.size()] = intervals.getStart(i);
+                    _ends[parts.size()] = intervals.getEnd(i);
+                    parts.add(alignmentPart);
+                }
+            }
+        }
+
+        int size() { return parts.size(); }
+
+        Way get(int i) { return parts.get(i); }
+
+        double start(int i) { return _starts[i]; }
+
+        double end(int i) { return _ends[i]; }
+
+        // Indices of the nodes of part i worth drawing at the current zoom.
+        //  Any line parallel to that part has the same number of nodes, so the indices apply to it too.
+        int[] getSimplifiedIndices(int i, MapView mv) {
+            return _simplified.get(i, parts.get(i), mv);
+        }
+
+        /**
+         * The line parallel to part i at the given offsets, from Utils.getParallel.  Kept with the parts, since every
+         * lane and divider asks for the same ones each frame.  Only used while painting, on the EDT.
+         */
+        Way getParallel(int i, double startOffset, double endOffset, double otherStartAngle, double otherEndAngle) {
+            return _parallels.get(getParallelKey(i, startOffset, endOffset, otherStartAngle, otherEndAngle)).way;
+        }
+
+        // Projects getParallel(...) into the pooled buffers, simplified for the current zoom.
+        BulkProjector.Buffers projectParallel(int i, double startOffset, double endOffset,
+                                              double otherStartAngle, double otherEndAngle, MapView mv) {
+            int key = getParallelKey(i, startOffset, endOffset, otherStartAngle, otherEndAngle);
+            Way parallel = _parallels.get(key).way;
+
+            int[] indices = getSimplifiedIndices(i, mv);
+            if (indices.length == 0 || indices[indices.length-1] != parallel.getNodesCount()-1) {
+                indices = PolylineSimplifier.simplify(parallel, mv);
+            }
+            return _projected.project(mv, key, parallel, indices);
+        }
+
+        private int getParallelKey(int i, double startOffset, double endOffset, double otherStartAngle, double otherEndAngle) {
+            for (int key = 0; key < _parallels.size(); key++) {
+                if (_parallels.get(key).matches(i, startOffset, endOffset, otherStartAngle, otherEndAngle)) return key;
+            }
+            if (_parallels.size() == MAX_PARALLELS) _parallels.clear(); // Offsets keep changing, start over.
+            _parallels.add(new Parallel(i, startOffset, endOffset, otherStartAngle, otherEndAngle,
+                    Utils.getParallel(parts.get(i), startOffset, endOffset, false, otherStartAngle, otherEndAngle)));
+            return _parallels.size() - 1;
+        }
+
+        void estimateFootprint(LaneMemory.Estimate e) {
+            e.object(10, 0);
+            e.ways(parts);
+            e.array(_starts.length, 8);
+            e.array(_ends.length, 8);
+            e.map(leftEdges);
+            for (Way edge : leftEdges.values()) e.way(edge);
+            e.map(rightEdges);
+            for (Way edge : rightEdges.values()) e.way(edge);
+            _simplified.estimateFootprint(e);
+            e.list(_parallels);
+            for (Parallel p : _parallels) {
+                e.object(1, 8 * 4 + 4);
+                e.way(p.way);
+            }
+            _projected.estimateFootprint(e);
+        }
+    }
+
+    // A line parallel to one of the parts, with what it was made from.
+    private static class Parallel {
+        final int part;
+        final double startOffset, endOffset, otherStartAngle, otherEndAngle;
+        final Way way;
+
+        Parallel(int part, double startOffset, double endOffset, double otherStartAngle, double otherEndAngle, Way way) {
+            this.part = part;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.otherStartAngle = otherStartAngle;
+            this.otherEndAngle = otherEndAngle;
+            this.way = way;
+        }
+
+        boolean matches(int part, double startOffset, double endOffset, double otherStartAngle, double otherEndAngle) {
+            return this.part == part && Double.compare(this.startOffset, startOffset) == 0
+                    && Double.compare(this.endOffset, endOffset) == 0
+                    && Double.compare(this.otherStartAngle, otherStartAngle) == 0
+                    && Double.compare(this.otherEndAngle, otherEndAngle) == 0;
+        }
+    }
+
     private static boolean wayHasLaneTags(Way way) {
-        return (!way.hasAreaTags() &&
-                (way.hasTag("lanes") || way.hasTag("lanes:forward") || way.hasTag("lanes:backward") ||
-                way.hasTag("turn:lanes") || way.hasTag("turn:lanes:forward") || way.hasTag("turnlanes:backward") ||
-                way.hasTag("change:lanes") || way.hasTag("change:lanes:forward") || way.hasTag("change:lanes:backward") ||
-                way.hasTag("bicycle:lanes") || way.hasTag("bicycle:lanes:forward") || way.hasTag("bicycle:lanes:backward") ||
-                way.hasTag("width:lanes") || way.hasTag("width:lanes:forward") || way.hasTag("width:lanes:backward") ||
-                way.hasTag("access:lanes") || way.hasTag("access:lanes:forward") || way.hasTag("access:lanes:backward") ||
-                way.hasTag("psv:lanes") || way.hasTag("psv:lanes:forward") || way.hasTag("psv:lanes:backward") ||
-                way.hasTag("surface:lanes") || way.hasTag("surface:lanes:forward") || way.hasTag("surface:lanes:backward") ||
-                way.hasTag("bus:lanes") || way.hasTag("bus:lanes:forward") || way.hasTag("bus:lanes:backward")) ||
-                way.hasTag("lane_markings", "no"));
+        return RoadTags.hasLaneTags(way.getKeys(), way.hasAreaTags());
     }
 
     private static boolean wayHasRoadTags(Way way) {
-        return (!way.hasAreaTags() &&
-                (way.hasTag("highway", "motorway") || way.hasTag("highway", "motorway_link") ||
-                        way.hasTag("highway", "trunk") || way.hasTag("highway", "trunk_link") ||
-                        way.hasTag("highway", "primary") || way.hasTag("highway", "primary_link") ||
-                        way.hasTag("highway", "secondary") || way.hasTag("highway", "secondary_link") ||
-                        way.hasTag("highway", "tertiary") || way.hasTag("highway", "tertiary_link") ||
-                        way.hasTag("highway", "residential") || way.hasTag("highway", "unclassified") ||
-                        way.hasTag("highway", "bus_guideway") || way.hasTag("highway", "living_street")));
+        return RoadTags.hasRoadTags(way.getKeys(), way.hasAreaTags());
     }
 }
@@ -0,0 +1,67 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import java.util.Map;
+
+/**
+ * Decides from its tags how a way is rendered.  Works on plain tag maps so the same rules can be used without a
+ * DataSet, see LaneTagValidator.
+ */
+public final class RoadTags {
+
+    // Keys that mark a way as having lane tags.
+    private static final String[] LANE_KEYS = getLaneKeys("lanes", "turn", "change", "bicycle", "width", "access",
+            "psv", "surface", "bus");
+
+    private static final String[] ROAD_HIGHWAYS = {"motorway", "motorway_link", "trunk", "trunk_link", "primary",
+            "primary_link", "secondary", "secondary_link", "tertiary", "tertiary_link", "residential", "unclassified",
+            "bus_guideway", "living_street"};
+
+    private static final String[] AREA_KEYS = {"building", "landuse", "amenity", "shop", "building:part", "boundary",
+            "historic", "place", "area:highway"};
+
+    private RoadTags() {}
+
+    // Whether the way has any :lanes tagging (or lane_markings=no), in which case it's rendered lane by lane.
+    public static boolean hasLaneTags(Map<String, String> tags, boolean area) {
+        if ("no".equals(tags.get("lane_markings"))) return true;
+        if (area) return false;
+        for (String key : LANE_KEYS) if (tags.containsKey(key)) return true;
+        return false;
+    }
+
+    // Whether the way is a road that gets rendered even without lane tags.
+    public static boolean hasRoadTags(Map<String, String> tags, boolean area) {
+        if (area) return false;
+        String highway = tags.get("highway");
+        if (highway == null) return false;
+        for (String value : ROAD_HIGHWAYS) if (value.equals(highway)) return true;
+        return false;
+    }
+
+    private static String[] getLaneKeys(String... prefixes) {
+        String[] output = new String[prefixes.length * 3];
+        for (int i = 0; i < prefixes.length; i++) {
+            String key = prefixes[i].equals("lanes") ? "lanes" : prefixes[i] + ":lanes";
+            output[3*i] = key;
+            output[3*i+1] = key + ":forward";
+            output[3*i+2] = key + ":backward";
+        }
+        return output;
+    }
+
+    // Same as OsmPrimitive.hasAreaTags(), for when there's no primitive.
+    public static boolean hasAreaTags(Map<String, String> tags) {
+        for (String key : AREA_KEYS) if (tags.containsKey(key)) return true;
+        String area = tags.get("area");
+        if ("yes".equals(area) || "true".equals(area) || "1".equals(area)) return true;
+        String highway = tags.get("highway");
+        if ("rest_area".equals(highway) || "services".equals(highway) || "platform".equals(highway)) return true;
+        return "riverbank".equals(tags.get("waterway")) || "platform".equals(tags.get("railway")) ||
+                "aerodrome".equals(tags.get("aeroway"));
+    }
+
+    // Whether the way is drawn as a road without lane markings (UnmarkedRoadRenderer).
+    public static boolean isUnmarked(Map<String, String> tags) {
+        return "no".equals(tags.get("lane_markings")) || "1.5".equals(tags.get("lanes"));
+    }
+}
@@ -8,11 +8,19 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseEvent;
 import java.util.List;
+import java.util.Map;
 
 public class UnmarkedRoadRenderer extends RoadRenderer {
 
+    // Only depend on the tags, which don't change for the life of the renderer.
+    private final double _widthStart;
+    private final double _widthEnd;
+
     protected UnmarkedRoadRenderer(Way w, MapView mv, LaneMappingMode parent) {
         super(w, mv, parent);
+        Map<String, String> tags = w.getKeys();
+        _widthStart = CrossSection.getUnmarkedWidth(tags, isOneway(), true);
+        _widthEnd = CrossSection.getUnmarkedWidth(tags, isOneway(), false);
     }
 
     @Override
@@ -28,8 +36,8 @@ public class UnmarkedRoadRenderer extends RoadRenderer {
     }
 
     private void renderRoadEdges(Graphics2D g) {
-        Color left = Utils.isRightHand(getWay()) && Utils.isOneway(getWay()) ? Utils.DEFAULT_CENTRE_DIVIDER_COLOR : Utils.DEFAULT_DIVIDER_COLOR;
-        Color right = !Utils.isRightHand(getWay()) && Utils.isOneway(getWay()) ? Utils.DEFAULT_CENTRE_DIVIDER_COLOR : Utils.DEFAULT_DIVIDER_COLOR;
+        Color left = getRegion().isRightHand() && isOneway() ? Utils.DEFAULT_CENTRE_DIVIDER_COLOR : Utils.DEFAULT_DIVIDER_COLOR;
+        Color right = !getRegion().isRightHand() && isOneway() ? Utils.DEFAULT_CENTRE_DIVIDER_COLOR : Utils.DEFAULT_DIVIDER_COLOR;
         double hw = (getWidth(true)-Utils.RENDERING_WIDTH_DIVIDER)/2;
         Utils.renderRoadLine(g, _mv, this, 0, 0, hw, hw, Utils.DividerType.UNMARKED_ROAD_EDGE, left);
         Utils.renderRoadLine(g, _mv, this, 0, 0, -hw, -hw, Utils.DividerType.UNMARKED_ROAD_EDGE, right);
@@ -41,42 +49,29 @@ public class UnmarkedRoadRenderer extends RoadRenderer {
     }
 
     @Override
-    Way getLeftEdge(Way waySegment, int segment) {
+    Way computeLeftEdge(Way waySegment, double start, double end) {
         return Utils.getParallel(waySegment != null ? waySegment : getAlignment(), getWidth(true)/2,
                 getWidth(false)/2, false,
-                (startPoints.get(segment) < 0.1 || waySegment == null) ? otherStartAngle : Double.NaN,
-                (endPoints.get(segment) > getAlignment().getLength()-0.1 || waySegment == null) ? otherEndAngle : Double.NaN);
+                (start < 0.1 || waySegment == null) ? otherStartAngle : Double.NaN,
+                (end > getAlignment().getLength()-0.1 || waySegment == null) ? otherEndAngle : Double.NaN);
     }
 
     @Override
-    Way getRightEdge(Way waySegment, int segment) {
+    Way computeRightEdge(Way waySegment, double start, double end) {
         return Utils.getParallel((waySegment != null) ? waySegment : getAlignment(), 0 - getWidth(true)/2,
                 0 - getWidth(false)/2, false,
-                (startPoints.get(segment) < 0.1 || waySegment == null) ? otherStartAngle : Double.NaN,
-                (endPoints.get(segment) > getAlignment().getLength()-0.1 || waySegment == null) ? otherEndAngle : Double.NaN);
+                (start < 0.1 || waySegment == null) ? otherStartAngle : Double.NaN,
+                (end > getAlignment().getLength()-0.1 || waySegment == null) ? otherEndAngle : Double.NaN);
     }
 
     @Override
     public double getWidth(boolean start) {
-        double defaultWidth = (Utils.isOneway(getWay()) ? 1 : 2) * Utils.WIDTH_LANES;
-        try {
-            double width;
-            if (_way.hasTag("width")) {
-                width = Utils.parseWidth(_way.get("width"));
-            } else if (_way.hasTag("width:start") && start) {
-                width = Utils.parseWidth(_way.get("width:start"));
-            } else if (_way.hasTag("width:end") && !start) {
-                width = Utils.parseWidth(_way.get("width:end"));
-            } else if (_way.hasTag("lanes:forward") && _way.hasTag("lanes:backward")) {
-                width = Utils.WIDTH_LANES * (Double.parseDouble(_way.get("lanes:forward")) + Double.parseDouble(_way.get("lanes:backward")));
-            } else if (_way.hasTag("lanes")) {
-                width = Utils.WIDTH_LANES * Double.parseDouble(_way.get("lanes"));
-            } else {
-                width = defaultWidth;
-            }
-            return width + Utils.RENDERING_WIDTH_DIVIDER;
-        } catch (Exception e) {
-            return defaultWidth + Utils.RENDERING_WIDTH_DIVIDER;
-        }
+        return start ? _widthStart : _widthEnd;
+    }
+
+    @Override
+    void estimateFootprint(LaneMemory.Estimate e) {
+        super.estimateFootprint(e);
+        e.object(0, 8 + 8);
     }
 }
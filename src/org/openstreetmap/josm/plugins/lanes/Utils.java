@@ -14,7 +14,6 @@ import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.MapView;
 import org.openstreetmap.josm.gui.util.GuiHelper;
 import org.openstreetmap.josm.tools.ImageProvider;
-import org.openstreetmap.josm.tools.RightAndLefthandTraffic;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -50,6 +49,10 @@ public class Utils {
     public final static Color DEFAULT_UNTAGGED_ROADEDGE_COLOR = Color.WHITE;
     public final static Color DEFAULT_INVALID_COLOR = new Color(255, 40, 0);
 
+    // Set after drawing, to get rid of the white box around the screen (see renderRoadLine).
+    public final static Color TRANSPARENT = new Color(0, 0, 0, 0);
+    public final static Stroke RESET_STROKE = GuiHelper.getCustomizedStroke("0");
+
     public final static Image uTurnLeft = ImageProvider.get("roadmarkings", "u_turn_left.png").getImage();
     public final static Image uTurnRight = ImageProvider.get("roadmarkings", "u_turn_right.png").getImage();
     public final static Image left = ImageProvider.get("roadmarkings", "left.png").getImage();
@@ -99,9 +102,9 @@ public class Utils {
     public final static String[] twowayrighthandpresets = new String[] {"mt101y", "u2", "mt202y", "u1.5", "mt303y", "u1"};
     public final static String[] twowayrighthandpresetsUSCA = new String[] {"mt101y", "u2", "mt202y", "u1.5", "mt303y", "u1", "mt111y", "mt212y"};
 
-    public final static Map<String, String> isCenterYellow = getYML("resources/renderinginfo/isCenterYellow");
-    public final static Map<String, String> shoulderLineColor = getYML("resources/renderinginfo/shoulderLineColor");
-    public Map<String, String> isCenterTurnLaneKnown = getYML("resources/renderinginfo/isCenterTurnLaneKnown");
+    public final static Map<String, String> isCenterYellow = RegionDefaults.IS_CENTER_YELLOW;
+    public final static Map<String, String> shoulderLineColor = RegionDefaults.SHOULDER_LINE_COLOR;
+    public final static Map<String, String> isCenterTurnLaneKnown = RegionDefaults.IS_CENTER_TURN_LANE_KNOWN;
 
     public enum LaneType {DRIVING, BICYCLE, BUS, HOV}
     public enum DividerType {DASHED, QUICK_DASHED, DASHED_FOR_RIGHT, DASHED_FOR_LEFT, SOLID, DOUBLE_SOLID, CENTRE_DIVIDER_WIDE,
@@ -113,94 +116,26 @@ public class Utils {
     // <editor-fold defaultstate="collapsed" desc="Methods for Finding Parallel Ways">
 
     public static Way getParallel(Way way, double offsetStart, double offsetEnd, boolean useAngleOffset, double angStart, double angEnd) {
-        LatLon[] points = new LatLon[way.getNodesCount()];
-        double[] distanceIntoWay = new double[way.getNodesCount()];
-        double distanceOfWay = 0;
-        for (int i = 0; i < points.length; i++) {
-            points[i] = way.getNode(i).getCoor();
-            if (i != 0) {
-                try {
-                    distanceOfWay += points[i - 1].greatCircleDistance(points[i]);
-                } catch (Exception ignored) {}
-            }
-            distanceIntoWay[i] = distanceOfWay;
-        }
-
-        // Get angle offset:
-        double angleOffset = (useAngleOffset ? -1 : 0) * Math.asin((offsetEnd-offsetStart)/distanceOfWay);
-
-        LatLon[] output = new LatLon[points.length];
-
-        // Deal with first node
-        double angle;
-        if (points.length < 2) return null;
-        try {
-            angle = points[0].bearing(points[1]);
-        } catch (NullPointerException e) {
-            return way;
-        }
-
-        double angleWithoutOtherWay = (angle - (Math.PI / 2.0)) % (2*Math.PI);
-        double angleToUse = angleWithoutOtherWay;
-        double multiplierToUse = 1.0;
-
-        if (!Double.isNaN(angStart)) {
-            double angleOfOtherWay = ((angStart + (Math.PI / 2)) % (Math.PI * 2));
-            if (anglesAreWithinAngle(angleOfOtherWay, angleWithoutOtherWay, 1.8)) {
-                angleToUse = getAngleAverage(angleWithoutOtherWay, angleOfOtherWay);
-
-                multiplierToUse = 1 / Math.cos(Math.abs(angleToUse - angleWithoutOtherWay));
-            }
+        int n = way.getNodesCount();
+        if (n < 2) return null;
+
+        double[] lat = new double[n];
+        double[] lon = new double[n];
+        for (int i = 0; i < n; i++) {
+            LatLon ll = way.getNode(i).getCoor();
+            if (ll == null) return way; // Can't offset a way with incomplete nodes.
+            lat[i] = ll.lat();
+            lon[i] = ll.lon();
         }
 
-        output[0] = getLatLonRelative(points[0], angleToUse, offsetStart*multiplierToUse);
-
-        // Deal with all other nodes
-        for (int i = 1; i < points.length - 1; i++) {
-            double angleToPrevPoint;
-            double angleToNextPoint;
-            try {
-                // If points are at same location, return the way, since getting a parallel way would be hard.
-                angleToPrevPoint = points[i].bearing(points[i - 1]);
-                angleToNextPoint = points[i].bearing(points[i + 1]);
-            } catch (NullPointerException e) {
-                return way;
-            }
-            double angleBetween = (angleToNextPoint + angleToPrevPoint) / 2;
-            if (angleToNextPoint < angleToPrevPoint) angleBetween = (angleBetween + Math.PI) % (Math.PI * 2.0);
-
-            double amountThrough = distanceIntoWay[i]/distanceOfWay;
-            double offsetAtNode = offsetStart * (1 - amountThrough) + offsetEnd * amountThrough;
-
-            double anglePrevToNormal = (angleBetween - angleToNextPoint) % (2 * Math.PI);
-
-            double offset = offsetAtNode / Math.abs(Math.sin(anglePrevToNormal));
-
-            output[i] = getLatLonRelative(points[i], angleBetween + angleOffset, offset);
-        }
-
-        // Deal with last node
-        double angleToPrev = points[points.length - 1].bearing(points[points.length - 2]);
-
-        angleWithoutOtherWay = (angleToPrev + (Math.PI / 2.0)) % (2*Math.PI);
-        angleToUse = angleWithoutOtherWay + angleOffset;
-        multiplierToUse = 1.0;
-
-        if (!Double.isNaN(angEnd)) {
-            double angleOfOtherWay = ((angEnd - (Math.PI / 2)) % (Math.PI * 2));
-            if (anglesAreWithinAngle(angleOfOtherWay, angleWithoutOtherWay + angleOffset, 1.8)) {
-                angleToUse = getAngleAverage(angleWithoutOtherWay + angleOffset, angleOfOtherWay);
-                multiplierToUse = 1 / Math.cos(Math.abs(angleToUse - angleWithoutOtherWay - angleOffset));
-            }
-        }
-
-        output[points.length - 1] = getLatLonRelative(points[points.length - 1], angleToUse, offsetEnd*multiplierToUse);
-
-
+        // If all points are at the same location, return the way, since there's no direction to offset in.
+        double[] outLat = new double[n];
+        double[] outLon = new double[n];
+        if (!OffsetCurve.offset(lat, lon, n, offsetStart, offsetEnd, useAngleOffset, angStart, angEnd, outLat, outLon)) return way;
 
         // Convert to way format and return
-        List<Node> outputNodes = new ArrayList<>();
-        for (LatLon ll : output) outputNodes.add(new Node(ll));
+        List<Node> outputNodes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) outputNodes.add(new Node(new LatLon(outLat[i], outLon[i])));
 
         Way outputWay = new Way();
         outputWay.setNodes(outputNodes);
@@ -208,14 +143,6 @@ public class Utils {
         return outputWay;
     }
 
-    private static double getAngleAverage(double a, double b) {
-        a = a % (2*Math.PI);
-        b = b % (2*Math.PI);
-        double angleBetween = (a + b) / 2;
-        if (Math.abs(a-b) > Math.PI) angleBetween = (angleBetween + Math.PI) % (Math.PI * 2.0);
-        return angleBetween;
-    }
-
     public static boolean anglesAreWithinAngle(double a, double b, double maxDiff) {
         a = a % (2*Math.PI);
         b = b % (2*Math.PI);
@@ -400,19 +327,12 @@ public class Utils {
 
     public static void renderRoadLine(Graphics2D g, MapView mv, RoadRenderer parent,
                                       double widthStart, double widthEnd, double offsetStart, double offsetEnd, DividerType type, Color color) {
-        double pixelsPerMeter = 100.0 / mv.getDist100Pixel();
+        double pixelsPerMeter = 100.0 / BulkProjector.getDist100Pixel(mv);
         double stripeWidth = 1.4/8;
 
-        if (type == DividerType.DASHED) {
-            g.setStroke(getCustomStroke(pixelsPerMeter / 8 + 1, pixelsPerMeter * 3, pixelsPerMeter * 9, 0));
-        } else if (type == DividerType.QUICK_DASHED) {
-            g.setStroke(getCustomStroke(pixelsPerMeter / 8 + 1, pixelsPerMeter * 1, pixelsPerMeter * 3, pixelsPerMeter*3));
-        } else if (type == DividerType.SOLID) {
-            g.setStroke(getCustomStroke(pixelsPerMeter / 8 + 1, pixelsPerMeter * 3, 0, 0));
-        } else if (type == DividerType.UNTAGGED_ROAD_EDGE) {
-            g.setStroke(getCustomStroke(pixelsPerMeter / 8 + 1, pixelsPerMeter * 1, 0, 0));
-        } else if (type == DividerType.UNMARKED_ROAD_EDGE) {
-            g.setStroke(getCustomStroke(pixelsPerMeter / 8 + 1, pixelsPerMeter * 3, 0, 0));
+        if (type == DividerType.DASHED || type == DividerType.QUICK_DASHED || type == DividerType.SOLID
+                || type == DividerType.UNTAGGED_ROAD_EDGE || type == DividerType.UNMARKED_ROAD_EDGE) {
+            g.setStroke(getDividerStroke(type, pixelsPerMeter));
         } else if (type == DividerType.DOUBLE_SOLID) {
             renderRoadLine(g, mv, parent, widthStart, widthEnd, offsetStart + stripeWidth, offsetEnd + stripeWidth, DividerType.SOLID, color);
             renderRoadLine(g, mv, parent, widthStart, widthEnd,offsetStart - stripeWidth, offsetEnd - stripeWidth, DividerType.SOLID, color);
@@ -444,32 +364,24 @@ public class Utils {
                     offsetEnd - ((widthEnd-RENDERING_WIDTH_DIVIDER) / 2), DividerType.DASHED_FOR_LEFT, color);
             return;
         }
-        List<Way> parentAlignments = parent.getAlignments();
+        RoadRenderer.AlignmentParts parts = parent.getAlignmentParts();
+        double length = parent.getAlignment().getLength();
         g.setColor(color);
 
-        for (int i = 0; i < parentAlignments.size(); i++) {
-            double swt = (Math.max(parent.startPoints.get(i), 0)/parent.getAlignment().getLength());
+        for (int i = 0; i < parts.size(); i++) {
+            double swt = (Math.max(parts.start(i), 0)/length);
             double startOffset = swt*offsetEnd + (1-swt)*offsetStart;
-            double ewt = (Math.min(parent.endPoints.get(i), parent.getAlignment().getLength())/parent.getAlignment().getLength());
+            double ewt = (Math.min(parts.end(i), length)/length);
             double endOffset = ewt*offsetEnd + (1-ewt)*offsetStart;
-            Way alignment = getParallel(parentAlignments.get(i), startOffset, endOffset, false,
-                    parent.startPoints.get(i) < 0.1 ? parent.otherStartAngle : Double.NaN,
-                    parent.endPoints.get(i) > parent.getAlignment().getLength() - 0.1 ? parent.otherEndAngle : Double.NaN);
-
-            int[] xPoints = new int[alignment.getNodesCount()];
-            int[] yPoints = new int[alignment.getNodesCount()];
-
-            for (int j = 0; j < alignment.getNodesCount(); j++) {
-                xPoints[j] = (int) (mv.getPoint(alignment.getNode(j).getCoor()).getX() + 0.5);
-                yPoints[j] = (int) (mv.getPoint(alignment.getNode(j).getCoor()).getY() + 0.5);
-            }
-
-            g.drawPolyline(xPoints, yPoints, xPoints.length);
+            BulkProjector.Buffers points = parts.projectParallel(i, startOffset, endOffset,
+                    parts.start(i) < 0.1 ? parent.otherStartAngle : Double.NaN,
+                    parts.end(i) > length - 0.1 ? parent.otherEndAngle : Double.NaN, mv);
+            g.drawPolyline(points.x, points.y, points.size);
         }
 
         // THESE TWO LINES ARE FOR REMOVING THE WHITE BOX AROUND THE SCREEN... DON'T DELETE THESE
-        g.setColor(new Color(0, 0, 0, 0));
-        g.setStroke(GuiHelper.getCustomizedStroke("0"));
+        g.setColor(TRANSPARENT);
+        g.setStroke(RESET_STROKE);
     }
 
     public static void renderRoadLinePopup(Graphics2D g, Point start, Point end, double bearing,
@@ -537,8 +449,34 @@ public class Utils {
         g.drawLine(start.x, start.y, end.x, end.y);
 
         // THESE TWO LINES ARE FOR REMOVING THE WHITE BOX AROUND THE SCREEN... DON'T DELETE THESE
-        g.setColor(new Color(0, 0, 0, 0));
-        g.setStroke(GuiHelper.getCustomizedStroke("0"));
+        g.setColor(TRANSPARENT);
+        g.setStroke(RESET_STROKE);
+    }
+
+    // Strokes for the divider types drawn as a single line, at the last zoom renderRoadLine drew at.  They're the
+    //  same for every line on screen, so they're only built again when the zoom changes.  Only used on the EDT.
+    private static final Stroke[] _dividerStrokes = new Stroke[DividerType.values().length];
+    private static double _dividerStrokesPixelsPerMeter = Double.NaN;
+
+    private static Stroke getDividerStroke(DividerType type, double pixelsPerMeter) {
+        if (pixelsPerMeter != _dividerStrokesPixelsPerMeter) {
+            Arrays.fill(_dividerStrokes, null);
+            _dividerStrokesPixelsPerMeter = pixelsPerMeter;
+        }
+        Stroke stroke = _dividerStrokes[type.ordinal()];
+        if (stroke == null) {
+            if (type == DividerType.DASHED) {
+                stroke = getCustomStroke(pixelsPerMeter / 8 + 1, pixelsPerMeter * 3, pixelsPerMeter * 9, 0);
+            } else if (type == DividerType.QUICK_DASHED) {
+                stroke = getCustomStroke(pixelsPerMeter / 8 + 1, pixelsPerMeter * 1, pixelsPerMeter * 3, pixelsPerMeter*3);
+            } else if (type == DividerType.UNTAGGED_ROAD_EDGE) {
+                stroke = getCustomStroke(pixelsPerMeter / 8 + 1, pixelsPerMeter * 1, 0, 0);
+            } else { // SOLID and UNMARKED_ROAD_EDGE
+                stroke = getCustomStroke(pixelsPerMeter / 8 + 1, pixelsPerMeter * 3, 0, 0);
+            }
+            _dividerStrokes[type.ordinal()] = stroke;
+        }
+        return stroke;
     }
 
     public static Stroke getCustomStroke(double width, double metersDash, double metersGap, double offset) {
@@ -551,15 +489,8 @@ public class Utils {
     }
 
     public static Polygon wayToPolygon(Way w, MapView mv) {
-        int[] xPoints = new int[w.getNodesCount()];
-        int[] yPoints = new int[xPoints.length];
-
-        for (int i = 0; i < w.getNodesCount(); i++) {
-            xPoints[i] = (int) (mv.getPoint(w.getNode(i).getCoor()).getX() + 0.5);
-            yPoints[i] = (int) (mv.getPoint(w.getNode(i).getCoor()).getY() + 0.5);
-        }
-
-        return new Polygon(xPoints, yPoints, xPoints.length);
+        BulkProjector.Buffers points = BulkProjector.forView(mv).project(w);
+        return new Polygon(points.x, points.y, points.size); // Polygon copies the pooled buffers.
     }
 
     public static Point goInDirection(Point from, double bearing, double dist) {
@@ -591,52 +522,11 @@ public class Utils {
     // <editor-fold defaultstate=collapsed desc="Tools">
 
     public static boolean isRightHand(Way location) {
-        return RightAndLefthandTraffic.isRightHandTraffic(location.getNode(0).getCoor());
+        return RegionDefaults.of(location).isRightHand();
     }
 
     public static double parseWidth(String value) {
-        try {
-            if (value == null || value.equals("")) {
-                return 0;
-            } else if (value.endsWith(" lane")) {
-                return WIDTH_LANES * Double.parseDouble(value.substring(0, value.length() - 5));
-            } else if (value.endsWith(" lanes")) {
-                return WIDTH_LANES * Double.parseDouble(value.substring(0, value.length() - 6));
-            } else if (value.endsWith(" m")) {
-                return Double.parseDouble(value.substring(0, value.length() - 2));
-            } else if (value.endsWith(" km")) {
-                return 1000 * Double.parseDouble(value.substring(0, value.length() - 3));
-            } else if (value.endsWith(" mi")) {
-                return 1609.344 * Double.parseDouble(value.substring(0, value.length() - 3));
-            } else if (value.endsWith("'")) {
-                return 1 / 3.28084 * Double.parseDouble(value.substring(0, value.length() - 1));
-            } else if (value.endsWith("\"") && !value.contains("'")) {
-                return 1 / 3.28084 / 12 * Double.parseDouble(value.substring(0, value.length() - 1));
-            } else if (value.endsWith("\"") && value.contains("'")) {
-                String[] split = value.split("'");
-                double feet = Double.parseDouble(split[0]);
-                double inches = Double.parseDouble(split[1].substring(0, value.length() - 1));
-                return 1 / 3.28084 * (feet + inches / 12);
-            }
-            return Double.parseDouble(value);
-        } catch (Exception e) { return Double.NaN; }
-    }
-
-    private static Map<String, String> getYML(String path) {
-        // This is a pretty basic parser that only supports very simple YML.
-        try {
-            Map<String, String> output = new HashMap<>();
-            File f = new File(path);
-            Scanner s = new Scanner(f);
-            while (s.hasNext()) {
-                String next = s.next();
-                if (next.charAt(0) == '#') continue;
-                output.put(next.split(":")[0].trim().toUpperCase(), next.split(":")[1].split("#")[0].trim());
-            }
-            return output;
-        } catch (IOException e) {
-            return new HashMap<>();
-        }
+        return LaneProfile.parseWidth(value);
     }
 
     public static boolean isOneway(Way w) {
@@ -0,0 +1,655 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * VectorTileGenerator - cuts the lane geometry of an .osm file into Mapbox Vector Tiles (version 2.1), so the lane
+ * rendering can be shown on a web map without JOSM.
+ *
+ * -> Geometry comes from OsmStreamReader (the same cross-sections and offsets as the renderers) and is kept in
+ *    memory in world coordinates, so this is meant for cities and regions rather than planets.
+ * -> Every layer starts at the zoom where LaneMappingMode starts drawing it (see the MapView.getScale() checks in
+ *    LaneMappingMode, Divider and Lane), and lines are simplified with PolylineSimplifier using the same 1 pixel
+ *    tolerance as on screen.  Geometry is clipped to each tile plus a small buffer.
+ * -> Tiles are generated in parallel, one task per tile at the lowest zoom (with everything under it).  Features
+ *    are sorted before they're cut, so the same input always gives byte for byte the same tiles.
+ *
+ * Output: [output]/[z]/[x]/[y].mvt (uncompressed) and [output]/metadata.json.
+ * Usage: java -cp josm.jar:Lanes.jar org.openstreetmap.josm.plugins.lanes.VectorTileGenerator input.osm.bz2 output [minZoom] [maxZoom] [threads]
+ */
+
+public final class VectorTileGenerator implements OsmStreamReader.Listener {
+
+    // <editor-fold defaultstate="collapsed" desc="Layers and Zoom Levels">
+
+    // Meters per pixel (256 pixel tiles) at zoom 0, the same units as MapView.getScale() in web mercator.
+    private static final double SCALE_AT_ZOOM_0 = 156543.03392804097;
+
+    private static final String[] LAYERS = {"lanes", "road_edges", "intersections", "dividers", "turn_markings"};
+    private static final int LANES = 0, ROAD_EDGES = 1, INTERSECTIONS = 2, DIVIDERS = 3, TURN_MARKINGS = 4;
+
+    // Largest MapView scale each layer is drawn at: roads at 16 (LaneMappingMode), dividers at 4 (Divider) and
+    //  turn markings at 0.5 (Lane).
+    private static final double[] MAX_SCALE = {16, 16, 16, 4, 0.5};
+
+    public static final int DEFAULT_MIN_ZOOM = getMinZoom(LANES);
+    public static final int DEFAULT_MAX_ZOOM = getMinZoom(TURN_MARKINGS);
+
+    private static final int EXTENT = 4096; // Tile size in tile units.
+    private static final int BUFFER = 128; // Tile units kept around each tile, so lines don't end at tile edges.
+    private static final double TOLERANCE = PolylineSimplifier.TOLERANCE_PIXELS * EXTENT / 256.0;
+
+    private static final int POINT = 1, LINESTRING = 2, POLYGON = 3; // Feature.GeomType
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Variables">
+
+    private final File _output;
+    private final int _minZoom;
+    private final int _maxZoom;
+    private final int _threads;
+
+    private final List<Feature> _features = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong _tiles = new AtomicLong();
+    private final AtomicLong _bytes = new AtomicLong();
+
+    // A feature in world coordinates, x and y from 0 to 1 (web mercator, y down, like tile numbers).
+    private static final class Feature implements Comparable<Feature> {
+        private final int _layer;
+        private final long _id; // OSM id of the way or node.
+        private final int _part; // Orders features of the same way, the index of the road piece.
+        private final int _subPart; // Orders features of the same road piece, like the turn markings of a lane.
+        private long _tileId; // Feature id written to the tiles, see generate().
+        private final int _type;
+        private final double[] _x;
+        private final double[] _y;
+        private final Map<String, Object> _properties;
+        private double _minX = Double.MAX_VALUE, _minY = Double.MAX_VALUE, _maxX = -Double.MAX_VALUE, _maxY = -Double.MAX_VALUE;
+
+        private Feature(int layer, long id, int part, int subPart, int type, double[] lat, double[] lon,
+                        Map<String, Object> properties) {
+            _layer = layer;
+            _id = id;
+            _part = part;
+            _subPart = subPart;
+            _type = type;
+            _x = new double[lat.length];
+            _y = new double[lat.length];
+            for (int i = 0; i < lat.length; i++) {
+                _x[i] = (lon[i] + 180) / 360;
+                double sinLat = Math.sin(Math.toRadians(Math.max(-85.0511, Math.min(85.0511, lat[i]))));
+                _y[i] = 0.5 - Math.log((1 + sinLat) / (1 - sinLat)) / (4 * Math.PI);
+                _minX = Math.min(_minX, _x[i]);
+                _minY = Math.min(_minY, _y[i]);
+                _maxX = Math.max(_maxX, _x[i]);
+                _maxY = Math.max(_maxY, _y[i]);
+            }
+            _properties = properties;
+        }
+
+        @Override
+        public int compareTo(Feature other) {
+            if (_layer != other._layer) return Integer.compare(_layer, other._layer);
+            if (_id != other._id) return Long.compare(_id, other._id);
+            if (_part != other._part) return Integer.compare(_part, other._part);
+            return Integer.compare(_subPart, other._subPart);
+        }
+    }
+
+    // </editor-fold>
+
+    public VectorTileGenerator(File output, int minZoom, int maxZoom, int threads) {
+        _output = output;
+        _minZoom = minZoom;
+        _maxZoom = maxZoom;
+        _threads = Math.max(threads, 1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: VectorTileGenerator <input.osm[.gz|.bz2]> <output directory> [minZoom] [maxZoom] [threads]");
+            System.exit(2);
+        }
+        int minZoom = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MIN_ZOOM;
+        int maxZoom = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_MAX_ZOOM;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        long time = System.nanoTime();
+        VectorTileGenerator generator = new VectorTileGenerator(new File(args[1]), minZoom, maxZoom, threads);
+        OsmStreamReader reader = new OsmStreamReader(new File(args[0]), threads);
+        generator.generate(reader);
+        System.err.println(reader.getStats());
+        System.err.println(generator._features.size() + " features in " + generator._tiles.get() + " tiles (" +
+                generator._bytes.get() / 1024 + " KB) in " + (System.nanoTime() - time) / 1000000 + " ms");
+    }
+
+    /**
+     * Reads everything from the reader, then writes all tiles from the min zoom to the max zoom, and the metadata.
+     */
+    public void generate(OsmStreamReader reader) throws IOException, XMLStreamException, InterruptedException {
+        reader.read(this);
+        List<Feature> features = new ArrayList<>(_features);
+        Collections.sort(features);
+
+        // OSM ids repeat within a layer (a way has several lanes) and new objects have negative ids, which don't fit
+        //  the tiles' unsigned ids.  So features are numbered from 1 within their layer, in sorted order, and the OSM
+        //  id is only in the "way" or "node" property.
+        long[] next = new long[LAYERS.length];
+        for (Feature f : features) f._tileId = ++next[f._layer];
+
+        // Group the features by the tiles they touch at the lowest zoom, each group is one task.
+        Map<Long, List<Feature>> roots = new TreeMap<>();
+        int tiles = 1 << _minZoom;
+        for (Feature f : features) {
+            double buffer = (double) BUFFER / EXTENT;
+            int minX = clampTile((int) Math.floor(f._minX * tiles - buffer), tiles);
+            int maxX = clampTile((int) Math.floor(f._maxX * tiles + buffer), tiles);
+            int minY = clampTile((int) Math.floor(f._minY * tiles - buffer), tiles);
+            int maxY = clampTile((int) Math.floor(f._maxY * tiles + buffer), tiles);
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    roots.computeIfAbsent(((long) x << 32) | y, k -> new ArrayList<>()).add(f);
+                }
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(_threads);
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (Map.Entry<Long, List<Feature>> root : roots.entrySet()) {
+                int x = (int) (root.getKey() >>> 32);
+                int y = (int) (long) root.getKey();
+                tasks.add(executor.submit(() -> {
+                    writeTiles(_minZoom, x, y, root.getValue());
+                    return null;
+                }));
+            }
+            for (Future<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                    throw new IOException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        writeMetadata(features);
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Collecting Features">
+
+    @Override
+    public void way(WayGeometry way) {
+        int n = way.getNodesCount();
+        double[] lat = new double[n], lon = new double[n];
+        for (int i = 0; i < way.getPieceCount(); i++) {
+            Map<String, Object> properties = new LinkedHashMap<>();
+            properties.put("way", way.getId());
+            properties.put("direction", way.getDirection(i));
+            properties.put("position", way.getPosition(i));
+
+            if (way.getKind(i) == WayGeometry.LANE) {
+                double[][] outline = way.getOutline(i);
+                if (outline == null) continue;
+                LaneProfile profile = way.getProfile();
+                properties.put("lane_type", profile.getLaneType(way.getDirection(i), way.getPosition(i)).toString());
+                String turn = profile.getTurn(way.getDirection(i), way.getPosition(i));
+                if (turn != null) properties.put("turn", turn);
+                _features.add(new Feature(LANES, way.getId(), i, 0, POLYGON, outline[0], outline[1], properties));
+
+                double[][] anchors = way.getTurnAnchors(i);
+                for (int j = 0; j < anchors[0].length; j++) {
+                    Map<String, Object> marking = new LinkedHashMap<>(properties);
+                    marking.put("bearing", Math.round(Math.toDegrees(anchors[2][j])));
+                    _features.add(new Feature(TURN_MARKINGS, way.getId(), i, j, POINT,
+                            new double[] {anchors[0][j]}, new double[] {anchors[1][j]}, marking));
+                }
+            } else if (way.getLine(i, 0, lat, lon)) {
+                int layer = way.getKind(i) == WayGeometry.DIVIDER ? DIVIDERS : ROAD_EDGES;
+                _features.add(new Feature(layer, way.getId(), i, 0, LINESTRING, lat.clone(), lon.clone(), properties));
+            }
+        }
+    }
+
+    @Override
+    public void intersection(IntersectionGeometry intersection) {
+        double[][] outline = intersection.getOutline();
+        if (outline == null) return;
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("node", intersection.getNodeId());
+        properties.put("arms", intersection.getArms().size());
+        properties.put("complete", intersection.isComplete());
+        _features.add(new Feature(INTERSECTIONS, intersection.getNodeId(), 0, 0, POLYGON, outline[0], outline[1], properties));
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Cutting Tiles">
+
+    // Writes the tile and every tile under it down to the max zoom.
+    private void writeTiles(int z, int x, int y, List<Feature> candidates) throws IOException {
+        double tiles = 1 << z;
+        double buffer = (double) BUFFER / EXTENT;
+        List<Feature> inTile = new ArrayList<>();
+        for (Feature f : candidates) {
+            if (f._maxX * tiles < x - buffer || f._minX * tiles > x + 1 + buffer ||
+                    f._maxY * tiles < y - buffer || f._minY * tiles > y + 1 + buffer) continue;
+            inTile.add(f);
+        }
+        if (inTile.isEmpty()) return;
+
+        byte[] tile = encodeTile(z, x, y, inTile);
+        if (tile.length != 0) {
+            File file = new File(_output, z + File.separator + x + File.separator + y + ".mvt");
+            file.getParentFile().mkdirs();
+            try (OutputStream out = new FileOutputStream(file)) {
+                out.write(tile);
+            }
+            _tiles.incrementAndGet();
+            _bytes.addAndGet(tile.length);
+        }
+
+        if (z < _maxZoom) {
+            for (int i = 0; i < 4; i++) writeTiles(z + 1, 2*x + i % 2, 2*y + i / 2, inTile);
+        }
+    }
+
+    private byte[] encodeTile(int z, int x, int y, List<Feature> features) {
+        ProtobufWriter tile = new ProtobufWriter();
+        int start = 0;
+        for (int layer = 0; layer < LAYERS.length; layer++) {
+            // Features are sorted by layer.
+            int end = start;
+            while (end < features.size() && features.get(end)._layer == layer) end++;
+            if (end > start && z >= getMinZoom(layer)) {
+                byte[] encoded = encodeLayer(LAYERS[layer], z, x, y, features.subList(start, end));
+                if (encoded != null) tile.writeBytes(3, encoded);
+            }
+            start = end;
+        }
+        return tile.toByteArray();
+    }
+
+    private byte[] encodeLayer(String name, int z, int tileX, int tileY, List<Feature> features) {
+        ProtobufWriter layer = new ProtobufWriter();
+        layer.writeVarint(15, 2); // version
+        layer.writeString(1, name);
+
+        Map<String, Integer> keys = new LinkedHashMap<>();
+        Map<Object, Integer> values = new LinkedHashMap<>();
+        double scale = (double) (1 << z) * EXTENT;
+        int written = 0;
+
+        for (Feature f : features) {
+            int[] geometry = encodeGeometry(f, scale, tileX * (double) EXTENT, tileY * (double) EXTENT);
+            if (geometry == null) continue;
+
+            List<Integer> tags = new ArrayList<>();
+            for (Map.Entry<String, Object> property : f._properties.entrySet()) {
+                Object value = property.getValue() instanceof Integer ? (Object) ((Integer) property.getValue()).longValue() : property.getValue();
+                tags.add(keys.computeIfAbsent(property.getKey(), k -> keys.size()));
+                tags.add(values.computeIfAbsent(value, k -> values.size()));
+            }
+
+            ProtobufWriter feature = new ProtobufWriter();
+            feature.writeVarint(1, f._tileId);
+            feature.writePackedVarints(2, tags.stream().mapToInt(Integer::intValue).toArray(), tags.size());
+            feature.writeVarint(3, f._type);
+            feature.writePackedVarints(4, geometry, geometry.length);
+            layer.writeBytes(2, feature.toByteArray());
+            written++;
+        }
+        if (written == 0) return null;
+
+        for (String key : keys.keySet()) layer.writeString(3, key);
+        for (Object value : values.keySet()) {
+            ProtobufWriter encoded = new ProtobufWriter();
+            if (value instanceof String) {
+                encoded.writeString(1, (String) value);
+            } else if (value instanceof Boolean) {
+                encoded.writeVarint(7, (Boolean) value ? 1 : 0);
+            } else if (value instanceof Double) {
+                encoded.writeDouble(3, (Double) value);
+            } else {
+                encoded.writeVarint(6, ProtobufWriter.zigZag(((Number) value).longValue())); // sint_value
+            }
+            layer.writeBytes(4, encoded.toByteArray());
+        }
+        layer.writeVarint(5, EXTENT);
+        return layer.toByteArray();
+    }
+
+    /**
+     * Projects, simplifies and clips the feature into the tile, and encodes it as MVT geometry commands.
+     * @return The commands, or null if nothing of the feature is left in the tile.
+     */
+    private static int[] encodeGeometry(Feature f, double scale, double left, double top) {
+        int n = f._x.length;
+        double[] x = new double[n], y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = f._x[i] * scale - left;
+            y[i] = f._y[i] * scale - top;
+        }
+
+        GeometryEncoder encoder = new GeometryEncoder();
+        if (f._type == POINT) {
+            if (x[0] < 0 || x[0] >= EXTENT || y[0] < 0 || y[0] >= EXTENT) return null; // Only in the tile it's in.
+            encoder.moveTo(new int[] {(int) Math.floor(x[0])}, new int[] {(int) Math.floor(y[0])}, 1);
+            return encoder.toArray();
+        }
+
+        int[] keep = PolylineSimplifier.simplify(x, y, n, TOLERANCE);
+        double[] sx = new double[keep.length], sy = new double[keep.length];
+        for (int i = 0; i < keep.length; i++) {
+            sx[i] = x[keep[i]];
+            sy[i] = y[keep[i]];
+        }
+
+        if (f._type == POLYGON) {
+            double[][] clipped = clipPolygon(sx, sy, sx.length);
+            if (!encoder.ring(clipped[0], clipped[1], clipped[0].length)) return null;
+        } else {
+            for (double[][] part : clipLine(sx, sy, sx.length)) encoder.line(part[0], part[1], part[0].length);
+        }
+        return encoder.isEmpty() ? null : encoder.toArray();
+    }
+
+    // Sutherland-Hodgman against the tile plus buffer.  The ring may or may not repeat its first point.
+    private static double[][] clipPolygon(double[] x, double[] y, int n) {
+        double[] px = Arrays.copyOf(x, n), py = Arrays.copyOf(y, n);
+        int count = n;
+        for (int edge = 0; edge < 4 && count > 0; edge++) {
+            double[] ox = new double[count * 2 + 1], oy = new double[count * 2 + 1];
+            int out = 0;
+            for (int i = 0; i < count; i++) {
+                int j = (i + 1) % count;
+                boolean inI = inside(px[i], py[i], edge), inJ = inside(px[j], py[j], edge);
+                if (inI) {
+                    ox[out] = px[i];
+                    oy[out++] = py[i];
+                }
+                if (inI != inJ) {
+                    double t = crossing(px[i], py[i], px[j], py[j], edge);
+                    ox[out] = px[i] + t * (px[j] - px[i]);
+                    oy[out++] = py[i] + t * (py[j] - py[i]);
+                }
+            }
+            px = ox;
+            py = oy;
+            count = out;
+        }
+        return new double[][] {Arrays.copyOf(px, count), Arrays.copyOf(py, count)};
+    }
+
+    // Splits the line into the parts that are inside the tile plus buffer (Liang-Barsky on each segment).
+    private static List<double[][]> clipLine(double[] x, double[] y, int n) {
+        List<double[][]> output = new ArrayList<>();
+        List<double[]> part = new ArrayList<>();
+        for (int i = 0; i < n - 1; i++) {
+            double t0 = 0, t1 = 1;
+            double dx = x[i+1] - x[i], dy = y[i+1] - y[i];
+            double[] p = {-dx, dx, -dy, dy};
+            double[] q = {x[i] + BUFFER, EXTENT + BUFFER - x[i], y[i] + BUFFER, EXTENT + BUFFER - y[i]};
+            boolean visible = true;
+            for (int k = 0; k < 4 && visible; k++) {
+                if (p[k] == 0) {
+                    if (q[k] < 0) visible = false;
+                } else {
+                    double t = q[k] / p[k];
+                    if (p[k] < 0) t0 = Math.max(t0, t); else t1 = Math.min(t1, t);
+                    if (t0 > t1) visible = false;
+                }
+            }
+            if (!visible) {
+                addPart(output, part);
+                continue;
+            }
+            if (part.isEmpty() || t0 > 0) {
+                addPart(output, part);
+                part.add(new double[] {x[i] + t0 * dx, y[i] + t0 * dy});
+            }
+            part.add(new double[] {x[i] + t1 * dx, y[i] + t1 * dy});
+            if (t1 < 1) addPart(output, part);
+        }
+        addPart(output, part);
+        return output;
+    }
+
+    private static void addPart(List<double[][]> output, List<double[]> part) {
+        if (part.size() >= 2) {
+            double[][] line = new double[2][part.size()];
+            for (int i = 0; i < part.size(); i++) {
+                line[0][i] = part.get(i)[0];
+                line[1][i] = part.get(i)[1];
+            }
+            output.add(line);
+        }
+        part.clear();
+    }
+
+    // Edges: 0 left, 1 right, 2 top, 3 bottom.
+    private static boolean inside(double x, double y, int edge) {
+        switch (edge) {
+            case 0: return x >= -BUFFER;
+            case 1: return x <= EXTENT + BUFFER;
+            case 2: return y >= -BUFFER;
+            default: return y <= EXTENT + BUFFER;
+        }
+    }
+
+    private static double crossing(double x1, double y1, double x2, double y2, int edge) {
+        switch (edge) {
+            case 0: return (-BUFFER - x1) / (x2 - x1);
+            case 1: return (EXTENT + BUFFER - x1) / (x2 - x1);
+            case 2: return (-BUFFER - y1) / (y2 - y1);
+            default: return (EXTENT + BUFFER - y1) / (y2 - y1);
+        }
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Encoding">
+
+    // MVT geometry commands, with coordinates as zigzag encoded deltas from the last point.
+    private static final class GeometryEncoder {
+        private int[] _commands = new int[64];
+        private int _size = 0;
+        private int _x = 0, _y = 0;
+
+        boolean isEmpty() { return _size == 0; }
+
+        int[] toArray() { return Arrays.copyOf(_commands, _size); }
+
+        void moveTo(int[] x, int[] y, int n) {
+            add(command(1, n));
+            for (int i = 0; i < n; i++) point(x[i], y[i]);
+        }
+
+        void line(double[] x, double[] y, int n) {
+            int[][] points = round(x, y, n, false);
+            int count = points[0].length;
+            if (count < 2) return;
+            add(command(1, 1));
+            point(points[0][0], points[1][0]);
+            add(command(2, count - 1));
+            for (int i = 1; i < count; i++) point(points[0][i], points[1][i]);
+        }
+
+        // Exterior ring, made clockwise (positive area with y down) as the spec requires.
+        boolean ring(double[] x, double[] y, int n) {
+            int[][] points = round(x, y, n, true);
+            int count = points[0].length;
+            if (count < 3) return false;
+
+            long area = 0;
+            for (int i = 0; i < count; i++) {
+                int j = (i + 1) % count;
+                area += (long) points[0][i] * points[1][j] - (long) points[0][j] * points[1][i];
+            }
+            if (area == 0) return false;
+            if (area < 0) {
+                for (int k = 0; k < 2; k++) {
+                    for (int i = 0, j = count - 1; i < j; i++, j--) {
+                        int swap = points[k][i];
+                        points[k][i] = points[k][j];
+                        points[k][j] = swap;
+                    }
+                }
+            }
+
+            add(command(1, 1));
+            point(points[0][0], points[1][0]);
+            add(command(2, count - 1));
+            for (int i = 1; i < count; i++) point(points[0][i], points[1][i]);
+            add(command(7, 1));
+            return true;
+        }
+
+        // Rounds to tile units, dropping repeated points (and for rings, the closing point).
+        private static int[][] round(double[] x, double[] y, int n, boolean ring) {
+            int[] rx = new int[n], ry = new int[n];
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                int px = (int) Math.round(x[i]), py = (int) Math.round(y[i]);
+                if (count > 0 && rx[count-1] == px && ry[count-1] == py) continue;
+                rx[count] = px;
+                ry[count++] = py;
+            }
+            if (ring && count > 1 && rx[0] == rx[count-1] && ry[0] == ry[count-1]) count--;
+            return new int[][] {Arrays.copyOf(rx, count), Arrays.copyOf(ry, count)};
+        }
+
+        private void point(int x, int y) {
+            add(ProtobufWriter.zigZag(x - _x));
+            add(ProtobufWriter.zigZag(y - _y));
+            _x = x;
+            _y = y;
+        }
+
+        private static int command(int id, int count) { return (id & 7) | (count << 3); }
+
+        private void add(long value) {
+            if (_size == _commands.length) _commands = Arrays.copyOf(_commands, _size * 2);
+            _commands[_size++] = (int) value;
+        }
+    }
+
+    // Just enough of the protobuf wire format for vector tiles.
+    private static final class ProtobufWriter {
+        private byte[] _buffer = new byte[256];
+        private int _size = 0;
+
+        static long zigZag(long value) { return (value << 1) ^ (value >> 63); }
+
+        byte[] toByteArray() { return Arrays.copyOf(_buffer, _size); }
+
+        void writeVarint(int field, long value) {
+            tag(field, 0);
+            varint(value);
+        }
+
+        void writeDouble(int field, double value) {
+            tag(field, 1);
+            long bits = Double.doubleToLongBits(value);
+            for (int i = 0; i < 8; i++) put((byte) (bits >>> (8 * i)));
+        }
+
+        void writeString(int field, String value) {
+            writeBytes(field, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void writeBytes(int field, byte[] value) {
+            tag(field, 2);
+            varint(value.length);
+            ensure(value.length);
+            System.arraycopy(value, 0, _buffer, _size, value.length);
+            _size += value.length;
+        }
+
+        void writePackedVarints(int field, int[] values, int n) {
+            if (n == 0) return;
+            ProtobufWriter packed = new ProtobufWriter();
+            for (int i = 0; i < n; i++) packed.varint(values[i] & 0xffffffffL);
+            writeBytes(field, packed.toByteArray());
+        }
+
+        private void tag(int field, int wireType) { varint((field << 3) | wireType); }
+
+        private void varint(long value) {
+            while ((value & ~0x7fL) != 0) {
+                put((byte) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            put((byte) value);
+        }
+
+        private void put(byte b) {
+            ensure(1);
+            _buffer[_size++] = b;
+        }
+
+        private void ensure(int extra) {
+            if (_size + extra > _buffer.length) _buffer = Arrays.copyOf(_buffer, Math.max(_buffer.length * 2, _size + extra));
+        }
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Metadata">
+
+    // Lowest zoom at which a layer is drawn: the first zoom where the scale is at most MAX_SCALE.
+    private static int getMinZoom(int layer) {
+        return (int) Math.ceil(Math.log(SCALE_AT_ZOOM_0 / MAX_SCALE[layer]) / Math.log(2));
+    }
+
+    private static int clampTile(int tile, int tiles) {
+        return Math.max(0, Math.min(tiles - 1, tile));
+    }
+
+    private void writeMetadata(List<Feature> features) throws IOException {
+        double minX = 1, minY = 1, maxX = 0, maxY = 0;
+        for (Feature f : features) {
+            minX = Math.min(minX, f._minX);
+            minY = Math.min(minY, f._minY);
+            maxX = Math.max(maxX, f._maxX);
+            maxY = Math.max(maxY, f._maxY);
+        }
+
+        StringBuilder metadata = new StringBuilder("{\"format\":\"pbf\",\"minzoom\":").append(_minZoom)
+                .append(",\"maxzoom\":").append(_maxZoom).append(",\"bounds\":[");
+        if (!features.isEmpty()) {
+            metadata.append(minX * 360 - 180).append(',').append(toLat(maxY)).append(',')
+                    .append(maxX * 360 - 180).append(',').append(toLat(minY));
+        }
+        metadata.append("],\"vector_layers\":[");
+        for (int layer = 0; layer < LAYERS.length; layer++) {
+            if (layer != 0) metadata.append(',');
+            metadata.append("{\"id\":\"").append(LAYERS[layer]).append("\",\"minzoom\":")
+                    .append(Math.max(getMinZoom(layer), _minZoom)).append(",\"maxzoom\":").append(_maxZoom).append('}');
+        }
+        metadata.append("]}\n");
+
+        _output.mkdirs();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(new File(_output, "metadata.json")), StandardCharsets.UTF_8)) {
+            out.append(metadata);
+        }
+    }
+
+    private static double toLat(double y) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y))));
+    }
+
+    // </editor-fold>
+}
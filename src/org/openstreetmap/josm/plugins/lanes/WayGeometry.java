@@ -0,0 +1,311 @@
+package org.openstreetmap.josm.plugins.lanes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The cross-section and geometry of one road, built from plain tags and coordinates so it can be used without a
+ * DataSet or MapView (see OsmStreamReader).  Marked roads are laid out and placed by CrossSection, the same as
+ * MarkedRoadRenderer, including the shift of the alignment when the placement changes along the way; roads that
+ * aren't drawn lane by lane only get their two edges, as wide as UnmarkedRoadRenderer or UntaggedRoadRenderer draw them.
+ *
+ * Lines are computed with OffsetCurve when asked for and aren't kept, so holding on to one of these is cheap.
+ * Unlike the renderers, ends aren't angled to match connected ways, since those aren't known yet when it's built.
+ */
+public final class WayGeometry {
+
+    // <editor-fold defaultstate="collapsed" desc="Piece Kinds">
+
+    public static final int EDGE = CrossSection.EDGE;
+    public static final int LANE = CrossSection.LANE;
+    public static final int DIVIDER = CrossSection.DIVIDER;
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Variables">
+
+    private final long _id;
+    private final Map<String, String> _tags;
+    private final LaneProfile _profile;
+    private final boolean _marked; // Drawn lane by lane, like MarkedRoadRenderer.
+    private final boolean _rightHand;
+
+    private final double[] _lat;
+    private final double[] _lon;
+    private final double[] _distanceIntoWay; // Meters from the first node.
+    private final double[] _alignmentLat; // The way itself unless the placement changes along it.
+    private final double[] _alignmentLon;
+
+    // Indexed by piece, from left to right.
+    private final int[] _kind;
+    private final int[] _direction;
+    private final int[] _position;
+    private final double[] _widthStart;
+    private final double[] _widthEnd;
+    private final double[] _offsetStart; // Meters to the left of the alignment.
+    private final double[] _offsetEnd;
+
+    private final double _totalWidthStart;
+    private final double _totalWidthEnd;
+    private final double _offsetToLeftStart; // Same as MarkedRoadRenderer._offsetToLeftStart.
+    private final double _offsetToLeftEnd;
+
+    // </editor-fold>
+
+    // Marked roads, laid out by cs.
+    private WayGeometry(long id, Map<String, String> tags, LaneProfile profile, boolean rightHand, double[] lat,
+                        double[] lon, CrossSection cs) {
+        _id = id;
+        _tags = tags;
+        _profile = profile;
+        _marked = true;
+        _rightHand = rightHand;
+        _lat = lat;
+        _lon = lon;
+        _distanceIntoWay = getDistances(lat, lon);
+
+        int n = cs.size();
+        _kind = new int[n];
+        _direction = new int[n];
+        _position = new int[n];
+        _widthStart = new double[n];
+        _widthEnd = new double[n];
+        _offsetStart = new double[n];
+        _offsetEnd = new double[n];
+
+        // Same as MarkedRoadRenderer.getPlacementInformation.
+        double alignmentShift = cs.getAlignmentShift(tags, profile.isOneway());
+        _offsetToLeftStart = cs.getOffsetToLeft(tags, profile.isOneway(), true);
+        _offsetToLeftEnd = cs.getOffsetToLeft(tags, profile.isOneway(), false) - alignmentShift;
+        double[] alignmentLat = lat, alignmentLon = lon;
+        if (alignmentShift != 0) {
+            alignmentLat = new double[lat.length];
+            alignmentLon = new double[lon.length];
+            if (!OffsetCurve.offset(lat, lon, lat.length, 0, alignmentShift, true, Double.NaN, Double.NaN, alignmentLat, alignmentLon)) {
+                alignmentLat = lat;
+                alignmentLon = lon;
+            }
+        }
+        _alignmentLat = alignmentLat;
+        _alignmentLon = alignmentLon;
+
+        for (int i = 0; i < n; i++) {
+            _kind[i] = cs.getKind(i);
+            _direction[i] = cs.getDirection(i);
+            _position[i] = cs.getPosition(i);
+            _widthStart[i] = cs.getWidth(i, true);
+            _widthEnd[i] = cs.getWidth(i, false);
+            _offsetStart[i] = _offsetToLeftStart - cs.getDistanceFromLeft(i, true);
+            _offsetEnd[i] = _offsetToLeftEnd - cs.getDistanceFromLeft(i, false);
+        }
+        _totalWidthStart = cs.getTotalWidth(true);
+        _totalWidthEnd = cs.getTotalWidth(false);
+    }
+
+    // Roads that aren't drawn lane by lane, just asphalt between two edges centred on the way.
+    private WayGeometry(long id, Map<String, String> tags, LaneProfile profile, boolean rightHand, double[] lat,
+                        double[] lon, double widthStart, double widthEnd) {
+        _id = id;
+        _tags = tags;
+        _profile = profile;
+        _marked = false;
+        _rightHand = rightHand;
+        _lat = lat;
+        _lon = lon;
+        _distanceIntoWay = getDistances(lat, lon);
+        _alignmentLat = lat;
+        _alignmentLon = lon;
+
+        _kind = new int[] {EDGE, EDGE};
+        _direction = new int[] {rightHand ? -1 : 1, rightHand ? 1 : -1};
+        _position = new int[] {-1, -1};
+        _widthStart = new double[] {Utils.RENDERING_WIDTH_DIVIDER, Utils.RENDERING_WIDTH_DIVIDER};
+        _widthEnd = new double[] {Utils.RENDERING_WIDTH_DIVIDER, Utils.RENDERING_WIDTH_DIVIDER};
+
+        _offsetToLeftStart = (widthStart - Utils.RENDERING_WIDTH_DIVIDER) / 2;
+        _offsetToLeftEnd = (widthEnd - Utils.RENDERING_WIDTH_DIVIDER) / 2;
+        _offsetStart = new double[] {_offsetToLeftStart, -_offsetToLeftStart};
+        _offsetEnd = new double[] {_offsetToLeftEnd, -_offsetToLeftEnd};
+        _totalWidthStart = widthStart;
+        _totalWidthEnd = widthEnd;
+    }
+
+    /**
+     * Builds the geometry of a road.
+     * @param tags Tags of the way, which has to be a road (see RoadTags).
+     * @param lat Latitudes of the nodes, not copied.
+     * @param lon Longitudes of the nodes, not copied.
+     * @param region Defaults where the way is, only the traffic side is used.
+     */
+    public static WayGeometry build(long id, Map<String, String> tags, double[] lat, double[] lon, RegionDefaults region) {
+        LaneProfile profile = LaneProfile.get(tags);
+        boolean rightHand = region.isRightHand();
+        boolean area = RoadTags.hasAreaTags(tags);
+        boolean unmarked = RoadTags.isUnmarked(tags);
+
+        if (RoadTags.hasLaneTags(tags, area) && !unmarked && profile.isValid()) {
+            return new WayGeometry(id, tags, profile, rightHand, lat, lon, new CrossSection(profile, rightHand));
+        }
+        double widthStart = unmarked ? CrossSection.getUnmarkedWidth(tags, profile.isOneway(), true) :
+                CrossSection.getUntaggedWidth(profile.isOneway());
+        double widthEnd = unmarked ? CrossSection.getUnmarkedWidth(tags, profile.isOneway(), false) :
+                CrossSection.getUntaggedWidth(profile.isOneway());
+        return new WayGeometry(id, tags, profile, rightHand, lat, lon, widthStart, widthEnd);
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="Getters">
+
+    public long getId() { return _id; }
+
+    public Map<String, String> getTags() { return _tags; }
+
+    public LaneProfile getProfile() { return _profile; }
+
+    // Whether the road has lanes and dividers (like MarkedRoadRenderer), otherwise it only has its two edges.
+    public boolean isMarked() { return _marked; }
+
+    public boolean isRightHand() { return _rightHand; }
+
+    public int getNodesCount() { return _lat.length; }
+
+    public double getLat(int node) { return _lat[node]; }
+
+    public double getLon(int node) { return _lon[node]; }
+
+    public double getLength() { return _distanceIntoWay[_distanceIntoWay.length - 1]; }
+
+    public double getDistanceIntoWay(int node) { return _distanceIntoWay[node]; }
+
+    public int getPieceCount() { return _kind.length; }
+
+    // EDGE, LANE or DIVIDER.
+    public int getKind(int piece) { return _kind[piece]; }
+
+    public int getDirection(int piece) { return _direction[piece]; }
+
+    public int getPosition(int piece) { return _position[piece]; }
+
+    public double getWidth(int piece, boolean start) { return start ? _widthStart[piece] : _widthEnd[piece]; }
+
+    // Offset of the centre of the piece, in meters to the left of the alignment (see getLine).
+    public double getOffset(int piece, boolean start) { return start ? _offsetStart[piece] : _offsetEnd[piece]; }
+
+    // Width of the whole road, same as RoadRenderer.getWidth.
+    public double getWidth(boolean start) {
+        return start ? _totalWidthStart : _totalWidthEnd;
+    }
+
+    // Same as RoadRenderer.sideWidth, fraction is how far along the way (0 is the start and 1 the end).
+    public double getSideWidth(double fraction, boolean left) {
+        double offsetToLeft = (1 - fraction) * _offsetToLeftStart + fraction * _offsetToLeftEnd;
+        double width = (1 - fraction) * getWidth(true) + fraction * getWidth(false);
+        if (!_marked) return width / 2;
+        double toLeft = offsetToLeft + Utils.RENDERING_WIDTH_DIVIDER / 2;
+        return left ? toLeft : width - Utils.RENDERING_WIDTH_DIVIDER - toLeft;
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Lines">
+
+    /**
+     * Line along a piece, like Utils.getParallel, offset from the alignment (the way, shifted when the placement
+     * changes along it, like MarkedRoadRenderer.getAlignment).
+     * @param side 0 for the centre of the piece, 1 for its left side and -1 for its right side.
+     * @return False if the way has no direction to offset in (all nodes at one place), outLat/outLon are untouched.
+     */
+    public boolean getLine(int piece, double side, double[] outLat, double[] outLon) {
+        double offsetStart = _offsetStart[piece] + side * _widthStart[piece] / 2;
+        double offsetEnd = _offsetEnd[piece] + side * _widthEnd[piece] / 2;
+        return OffsetCurve.offset(_alignmentLat, _alignmentLon, _alignmentLat.length, offsetStart, offsetEnd, false, Double.NaN,
+                Double.NaN, outLat, outLon);
+    }
+
+    /**
+     * Outline of a piece (e.g. a lane's asphalt), as a closed ring: its left side, then its right side backwards.
+     * @return {latitudes, longitudes}, or null if the way has no direction to offset in.
+     */
+    public double[][] getOutline(int piece) {
+        int n = _lat.length;
+        double[] leftLat = new double[n], leftLon = new double[n], rightLat = new double[n], rightLon = new double[n];
+        if (!getLine(piece, 1, leftLat, leftLon) || !getLine(piece, -1, rightLat, rightLon)) return null;
+
+        double[][] output = new double[2][2*n + 1];
+        for (int i = 0; i < n; i++) {
+            output[0][i] = leftLat[i];
+            output[1][i] = leftLon[i];
+            output[0][2*n - 1 - i] = rightLat[i];
+            output[1][2*n - 1 - i] = rightLon[i];
+        }
+        output[0][2*n] = leftLat[0];
+        output[1][2*n] = leftLon[0];
+        return output;
+    }
+
+    /**
+     * Where Lane draws the turn arrows of a lane: every Utils.DIST_BETWEEN_TURNS meters along its centre, starting
+     * Utils.DIST_TO_FIRST_TURN in.  Pieces that aren't lanes with turn tagging have none.
+     * @return {latitudes, longitudes, bearings of the arrows (in the direction of travel)}
+     */
+    public double[][] getTurnAnchors(int piece) {
+        if (_kind[piece] != LANE || _profile.getTurnMask(_direction[piece], _position[piece]) == 0) return new double[3][0];
+        int n = _lat.length;
+        double[] lat = new double[n], lon = new double[n];
+        if (!getLine(piece, 0, lat, lon)) return new double[3][0];
+
+        List<double[]> anchors = new ArrayList<>();
+        double distanceSoFar = 0;
+        double next = Utils.DIST_TO_FIRST_TURN;
+        for (int i = 0; i < n - 1; i++) {
+            double metersPerDegreeLon = 111319.5 * Math.cos(Math.toRadians(lat[i]));
+            double dx = (lon[i+1] - lon[i]) * metersPerDegreeLon;
+            double dy = (lat[i+1] - lat[i]) * 111319.5;
+            double length = Math.sqrt(dx*dx + dy*dy);
+            double bearing = Math.atan2(dx, dy) + (_direction[piece] == -1 ? Math.PI : 0);
+            while (length > 0 && distanceSoFar + length >= next) {
+                double portion = (next - distanceSoFar) / length;
+                anchors.add(new double[] {lat[i] + (lat[i+1] - lat[i]) * portion, lon[i] + (lon[i+1] - lon[i]) * portion,
+                        (bearing + 2 * Math.PI) % (2 * Math.PI)});
+                next += Utils.DIST_BETWEEN_TURNS;
+            }
+            distanceSoFar += length;
+        }
+
+        double[][] output = new double[3][anchors.size()];
+        for (int i = 0; i < anchors.size(); i++) {
+            for (int j = 0; j < 3; j++) output[j][i] = anchors.get(i)[j];
+        }
+        return output;
+    }
+
+    /**
+     * Bearing (radians clockwise from north) of the way going out of a node, towards the next node with a different
+     * location in the given direction, or NaN if there's none.
+     */
+    public double getBearing(int node, boolean forward) {
+        int step = forward ? 1 : -1;
+        for (int other = node + step; other >= 0 && other < _lat.length; other += step) {
+            double dy = _lat[other] - _lat[node];
+            double dx = (_lon[other] - _lon[node]) * Math.cos(Math.toRadians(_lat[node]));
+            if (dx != 0 || dy != 0) return (Math.atan2(dx, dy) + 2 * Math.PI) % (2 * Math.PI);
+        }
+        return Double.NaN;
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="Distances">
+
+    private static double[] getDistances(double[] lat, double[] lon) {
+        double[] output = new double[lat.length];
+        for (int i = 1; i < lat.length; i++) {
+            double dy = (lat[i] - lat[i-1]) * 111319.5;
+            double dx = (lon[i] - lon[i-1]) * 111319.5 * Math.cos(Math.toRadians((lat[i] + lat[i-1]) / 2));
+            output[i] = output[i-1] + Math.sqrt(dx*dx + dy*dy);
+        }
+        return output;
+    }
+
+    // </editor-fold>
+}